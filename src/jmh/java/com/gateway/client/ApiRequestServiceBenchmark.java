@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.gateway.app.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.gateway.client.Utils.Prefixes.ORDER;
+import static com.gateway.client.Utils.Prefixes.TRANS;
+
+/**
+ * Request side of the client: payload and NVP map building, URL construction and ID generation. Run with
+ * <pre>mvn -Pbenchmarks test-compile exec:exec -Djmh.args="ApiRequestService"</pre>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiRequestServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Requests {
+        Config config;
+        ApiRequest request;
+
+        @Setup
+        public void setUp() {
+            config = config();
+            request = ApiRequestService.createApiRequest(ApiOperation.PAY.toString(), config);
+            request.setSessionId("SESSION0002345678901234567890");
+        }
+    }
+
+    /**
+     * A request as the sample pages build it for each operation
+     */
+    @State(Scope.Benchmark)
+    public static class OperationRequests {
+        @Param({"CREATE_SESSION", "PAY", "UPDATE_SESSION", "AUTHORIZE", "CREATE_CHECKOUT_SESSION",
+                "RETRIEVE_TRANSACTION", "RETRIEVE_ORDER", "UPDATE_AUTHORIZATION", "VOID", "REFUND", "CAPTURE",
+                "INITIATE_BROWSER_PAYMENT", "CONFIRM_BROWSER_PAYMENT", "VERIFY", "CHECK_3DS_ENROLLMENT",
+                "PROCESS_ACS_RESULT", "OPEN_WALLET", "UPDATE_SESSION_FROM_WALLET", "RETRIEVE_SESSION",
+                "CREATE_TOKEN", "PAYMENT_OPTIONS_INQUIRY"})
+        public String operation;
+
+        ApiRequest request;
+
+        @Setup
+        public void setUp() {
+            request = ApiRequestService.createApiRequest(operation, config());
+            switch (ApiOperation.valueOf(operation)) {
+                case PAY:
+                case AUTHORIZE:
+                case VERIFY:
+                case CREATE_TOKEN:
+                    request.setSourceType("CARD");
+                    request.setCardNumber("5123450000000008");
+                    request.setExpiryMonth("05");
+                    request.setExpiryYear("39");
+                    request.setSecurityCode("100");
+                    break;
+                case CAPTURE:
+                case REFUND:
+                case VOID:
+                case UPDATE_AUTHORIZATION:
+                    request.setTransactionAmount("50.00");
+                    request.setTransactionCurrency("USD");
+                    request.setTargetTransactionId(Utils.createUniqueId(TRANS));
+                    break;
+                case CREATE_CHECKOUT_SESSION:
+                    request.setReturnUrl("https://merchant.example.com/hostedCheckout/order/SUCCESS");
+                    request.setInteractionOperation("PURCHASE");
+                    break;
+                case INITIATE_BROWSER_PAYMENT:
+                case CONFIRM_BROWSER_PAYMENT:
+                    request.setSourceType("PAYPAL");
+                    request.setBrowserPaymentOperation("PAY");
+                    request.setReturnUrl("https://merchant.example.com/browserPaymentReceipt");
+                    break;
+                case UPDATE_SESSION:
+                    request.setAcceptVersions("3DS2,3DS1");
+                    request.setAuthenticationChannel("PAYER_BROWSER");
+                    request.setRedirectResponseUrl("https://merchant.example.com/process3ds2Redirect");
+                    break;
+                case CHECK_3DS_ENROLLMENT:
+                    request.setSecureId(Utils.createUniqueId(Utils.Prefixes.THREEDS));
+                    request.setSecureIdResponseUrl("https://merchant.example.com/process3ds");
+                    break;
+                case PROCESS_ACS_RESULT:
+                    request.setSecureId(Utils.createUniqueId(Utils.Prefixes.THREEDS));
+                    request.setPaymentAuthResponse("eAHNWFmTqsgSfvdXdPQ8Gj0sikqH7Y1iE1FUUFB4Q0BEQVTQRn");
+                    break;
+                case OPEN_WALLET:
+                case UPDATE_SESSION_FROM_WALLET:
+                    request.setWalletProvider("MASTERPASS_ONLINE");
+                    request.setMasterpassOriginUrl("https://merchant.example.com/masterpassResponse");
+                    request.setMasterpassOauthToken("f2e3c2b8d5a7f1e0c9b4a3d2e1f0a9b8c7d6e5f4");
+                    request.setMasterpassOauthVerifier("a7b6c5d4e3f2a1b0c9d8e7f6a5b4c3d2e1f0a9b8");
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public String buildJSONPayload(OperationRequests requests) {
+        return ApiRequestService.buildJSONPayload(requests.request);
+    }
+
+    @Benchmark
+    public Map<String, String> buildMap(Requests requests) {
+        return ApiRequestService.buildMap(requests.request);
+    }
+
+    @Benchmark
+    public String getRequestUrl(Requests requests) {
+        return ApiRequestService.getRequestUrl(ApiProtocol.REST, requests.config, requests.request);
+    }
+
+    @Benchmark
+    public String getNVPRequestUrl(Requests requests) {
+        return ApiRequestService.getRequestUrl(ApiProtocol.NVP, requests.config, requests.request);
+    }
+
+    @Benchmark
+    public String getSessionRequestUrl(Requests requests) {
+        return ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, requests.config);
+    }
+
+    @Benchmark
+    public String getSessionRequestUrlWithId(Requests requests) {
+        return ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, requests.config, requests.request.getSessionId());
+    }
+
+    @Benchmark
+    public String createUniqueId() {
+        return Utils.createUniqueId(ORDER);
+    }
+
+    static Config config() {
+        Config config = new Config();
+        config.setMerchantId("TESTMERCHANTID");
+        config.setApiPassword("APIPASSWORD1234");
+        config.setApiBaseURL("https://test-gateway.com");
+        config.setGatewayHost("https://test-gateway.com");
+        config.setCurrency("USD");
+        config.setApiVersion(52);
+        return config;
+    }
+}
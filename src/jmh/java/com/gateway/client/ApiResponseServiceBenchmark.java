@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.gateway.response.BrowserPaymentResponse;
+import com.gateway.response.SecureIdEnrollmentResponse;
+import com.gateway.response.TransactionResponse;
+import com.gateway.response.WalletResponse;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Response side of the client: every ApiResponseService parser, starting from the response body as it is received
+ * from the gateway. Run with <pre>mvn -Pbenchmarks test-compile exec:exec -Djmh.args="ApiResponseService"</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiResponseServiceBenchmark {
+
+    private static final String SESSION = "{\"merchant\":\"TESTAB2894354\",\"result\":\"SUCCESS\",\"session\":{\"id\":\"SESSION0002799480514F69145320L2\",\"updateStatus\":\"SUCCESS\",\"version\":\"6f8b683701\"},\"successIndicator\":\"0a292205c57e4dc8\"}";
+    private static final String SECURE_ID = "{\"3DSecure\":{\"authenticationRedirect\":{\"customized\":{\"acsUrl\":\"https://www.issuer.com/acsUrl\",\"paReq\":\"PAREQ_VALUE\"}},\"summaryStatus\":\"CARD_ENROLLED\"},\"3DSecureId\":\"wqUyNrvOO6\",\"merchant\":\"TESTAB2894354\",\"response\":{\"3DSecure\":{\"gatewayCode\":\"CARD_ENROLLED\"}}}";
+    private static final String HOSTED_CHECKOUT = "{\"amount\":\"100.00\",\"currency\":\"USD\",\"description\":\"Ordered goods\",\"id\":\"order-W9JzSaC1Ky\",\"merchant\":\"TESTSIMPLIFYDEV1\",\"result\":\"SUCCESS\",\"status\":\"CAPTURED\",\"transaction\":[{\"order\":{\"amount\":\"100.00\",\"currency\":\"USD\",\"description\":\"Ordered goods\",\"id\":\"order-W9JzSaC1Ky\"},\"response\":{\"acquirerCode\":\"00\",\"cardSecurityCode\":{\"acquirerCode\":\"M\",\"gatewayCode\":\"MATCH\"},\"gatewayCode\":\"APPROVED\"},\"result\":\"SUCCESS\",\"transaction\":{\"acquirer\":{\"batch\":1,\"id\":\"SYSTEST_ACQ1\",\"merchantId\":\"646515314\"},\"amount\":100,\"authorizationCode\":\"027465\",\"currency\":\"USD\",\"frequency\":\"SINGLE\",\"id\":\"1\",\"receipt\":\"180131305\",\"source\":\"INTERNET\",\"terminal\":\"9358\",\"type\":\"PAYMENT\"},\"version\":\"45\"}]}";
+    private static final String MASTERPASS = "{\"order\":{\"amount\":\"5000.00\",\"currency\":\"USD\",\"id\":\"order-78oSgRzCqs\",\"status\":\"CAPTURED\",\"totalAuthorizedAmount\":5000,\"totalCapturedAmount\":5000,\"totalRefundedAmount\":0,\"walletIndicator\":\"101\",\"walletProvider\":\"MASTERPASS_ONLINE\"},\"response\":{\"acquirerCode\":\"00\",\"acquirerMessage\":\"Approved\",\"gatewayCode\":\"APPROVED\"},\"result\":\"SUCCESS\"}";
+    private static final String SECURE_REMOTE_COMMERCE = "{\"order\":{\"amount\":\"50.00\",\"currency\":\"USD\",\"id\":\"order-4GkPz0qJ1b\",\"status\":\"CAPTURED\",\"totalAuthorizedAmount\":50,\"totalCapturedAmount\":50,\"totalRefundedAmount\":0,\"walletProvider\":\"SECURE_REMOTE_COMMERCE\"},\"response\":{\"acquirerCode\":\"00\",\"acquirerMessage\":\"Approved\",\"gatewayCode\":\"APPROVED\"},\"result\":\"SUCCESS\"}";
+    private static final String BROWSER_PAYMENT = "{\"browserPayment\":{\"interaction\":{\"status\":\"COMPLETED\"},\"operation\":\"PAY\"},\"order\":{\"amount\":\"50.00\",\"currency\":\"USD\",\"id\":\"order-E5AaY8Hsuo\",\"status\":\"CAPTURED\"},\"response\":{\"acquirerCode\":\"Success\",\"gatewayCode\":\"APPROVED\"},\"result\":\"SUCCESS\"}";
+    private static final String BROWSER_PAYMENT_REDIRECT = "{\"browserPayment\":{\"interaction\":{\"status\":\"INITIATED\"},\"operation\":\"PAY\",\"browserPayment\":{\"displayShippingAddress\":true,\"overrideShippingAddress\":true,\"paymentConfirmation\":\"CONFIRM_AT_PROVIDER\"},\"redirectUrl\":\"https://test-gateway.com/bpui/pp/out/BP-4652f0dd79cade57ba6726992464c994\",\"returnUrl\":\"http://localhost:5000/browserPaymentReceipt?transactionId=oZRL5sU3Fm&orderId=Qcgkl4EGnR\"},\"gatewayEntryPoint\":\"WEB_SERVICES_API\",\"merchant\":\"TESTSIMPLIFYDEV1\",\"order\":{\"amount\":50.00,\"creationTime\":\"2018-01-29T16:08:39.296Z\",\"currency\":\"USD\",\"id\":\"Qcgkl4EGnR\",\"status\":\"INITIATED\",\"totalAuthorizedAmount\":0,\"totalCapturedAmount\":0,\"totalRefundedAmount\":0},\"response\":{\"gatewayCode\":\"SUBMITTED\"},\"result\":\"SUCCESS\",\"sourceOfFunds\":{\"type\":\"UNION_PAY\"},\"timeOfRecord\":\"2018-01-29T16:08:39.296Z\",\"transaction\":{\"acquirer\":{\"date\":\"2018-01-29\",\"id\":\"UNION_PAY\",\"merchantId\":\"test.sandbox@unionpay.com\",\"time\":\"16:08:39\"},\"amount\":50.00,\"currency\":\"USD\",\"frequency\":\"SINGLE\",\"id\":\"oZRL5sU3Fm\",\"source\":\"CALL_CENTRE\",\"type\":\"PAYMENT\"},\"version\":\"45\"}";
+    private static final String WALLET = "{\"merchant\":\"TESTCSTESTMID\",\"order\":{\"amount\":\"50.00\",\"currency\":\"USD\",\"walletProvider\":\"MASTERPASS_ONLINE\"},\"session\":{\"id\":\"SESSION0002798226376L35023121J8\",\"updateStatus\":\"SUCCESS\",\"version\":\"831cb86303\"},\"version\":\"45\",\"wallet\":{\"masterpass\":{\"allowedCardTypes\":\"visa,master\",\"merchantCheckoutId\":\"MERCHANT_CHECKOUT_ID\",\"originUrl\":\"http://localhost:5000/masterpassResponse\",\"requestToken\":\"REQUEST_TOKEN\"}}}";
+    private static final String TOKEN = "{\"repositoryId\":\"7000000000000001\",\"result\":\"SUCCESS\",\"sourceOfFunds\":{\"provided\":{\"card\":{\"brand\":\"MASTERCARD\",\"expiry\":\"0539\",\"fundingMethod\":\"CREDIT\",\"number\":\"512345xxxxxx0008\",\"scheme\":\"MASTERCARD\"}},\"type\":\"CARD\"},\"status\":\"VALID\",\"token\":\"9102370654386151\",\"usage\":{\"lastUpdated\":\"2019-04-11T13:04:19.218Z\",\"lastUpdatedBy\":\"TESTMERCHANTID\",\"lastUsed\":\"2019-04-11T13:04:19.218Z\"},\"verificationStrategy\":\"BASIC\"}";
+    private static final String ERROR = "{\"error\":{\"cause\":\"INVALID_REQUEST\",\"explanation\":\"Invalid request\",\"field\":\"order.amount\",\"validationType\":\"INVALID\"},\"result\":\"ERROR\"}";
+    private static final String NVP = "merchant=TESTCSTESTMID&order.amount=50.00&order.currency=USD&order.id=IXoAyo48VS&order.status=CAPTURED&response.gatewayCode=APPROVED&result=SUCCESS";
+
+    private String authorize;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("json/Response_AUTHORIZE.json")) {
+            authorize = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public HostedSession parseSessionResponse() {
+        return ApiResponseService.parseSessionResponse(SESSION);
+    }
+
+    @Benchmark
+    public SecureIdEnrollmentResponse parse3DSecureResponse() {
+        return ApiResponseService.parse3DSecureResponse(SECURE_ID);
+    }
+
+    @Benchmark
+    public TransactionResponse parseHostedCheckoutResponse() {
+        return ApiResponseService.parseHostedCheckoutResponse(HOSTED_CHECKOUT);
+    }
+
+    @Benchmark
+    public TransactionResponse parseAuthorizeResponse() {
+        return ApiResponseService.parseAuthorizeResponse(authorize);
+    }
+
+    @Benchmark
+    public TransactionResponse parseMasterpassResponse() {
+        return ApiResponseService.parseMasterpassResponse(MASTERPASS);
+    }
+
+    @Benchmark
+    public TransactionResponse parseSecureRemoteCommerceResponse() {
+        return ApiResponseService.parseSecureRemoteCommerceResponse(SECURE_REMOTE_COMMERCE);
+    }
+
+    @Benchmark
+    public BrowserPaymentResponse parseBrowserPaymentResponse() {
+        return ApiResponseService.parseBrowserPaymentResponse(BROWSER_PAYMENT);
+    }
+
+    @Benchmark
+    public String getBrowserPaymentRedirectUrl() {
+        return ApiResponseService.getBrowserPaymentRedirectUrl(BROWSER_PAYMENT_REDIRECT);
+    }
+
+    @Benchmark
+    public WalletResponse parseWalletResponse() {
+        return ApiResponseService.parseWalletResponse(WALLET, "masterpass");
+    }
+
+    @Benchmark
+    public String parseTokenResponse() {
+        return ApiResponseService.parseTokenResponse(TOKEN);
+    }
+
+    @Benchmark
+    public ApiResponse parseErrorResponse() {
+        return ApiResponse.parse(ERROR);
+    }
+
+    @Benchmark
+    public Map parseNVPResponse() throws ApiException {
+        return ApiResponseService.parseNVPResponse(NVP);
+    }
+}
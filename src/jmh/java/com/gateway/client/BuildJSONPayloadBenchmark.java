@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.gateway.client.ApiOperation.CREATE_CHECKOUT_SESSION;
+import static com.gateway.client.ApiOperation.CREATE_SESSION;
+import static com.gateway.client.ApiOperation.INITIATE_BROWSER_PAYMENT;
+import static com.gateway.client.ApiOperation.PAY;
+import static com.gateway.client.ApiOperation.UPDATE_SESSION;
+
+/**
+ * Compares {@link ApiRequestService#buildJSONPayload(ApiRequest)} with the JsonObject tree based implementation it
+ * replaced. Run with <pre>mvn -Pbenchmarks test-compile exec:exec -Djmh.args="BuildJSONPayload"</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildJSONPayloadBenchmark {
+
+    @Param({"PAY", "PAY_3DS2", "UPDATE_SESSION_WALLET", "CREATE_CHECKOUT_SESSION", "INITIATE_BROWSER_PAYMENT"})
+    public String shape;
+
+    private static final Gson prettyGson = new GsonBuilder().setPrettyPrinting().create();
+
+    private ApiRequest request;
+
+    @Setup
+    public void setUp() {
+        request = request(shape);
+        // Both implementations must produce the same payload for the comparison to mean anything. The tree baseline
+        // is pretty-printed, as payloads used to be sent; the streamed payload is compact.
+        if (!new JsonParser().parse(treePayload(request)).equals(new JsonParser().parse(ApiRequestService.buildJSONPayload(request)))) {
+            throw new IllegalStateException("Payloads differ for " + shape);
+        }
+    }
+
+    @Benchmark
+    public String tree() {
+        return treePayload(request);
+    }
+
+    @Benchmark
+    public String streaming() {
+        return ApiRequestService.buildJSONPayload(request);
+    }
+
+    static ApiRequest request(String shape) {
+        ApiRequest request = new ApiRequest();
+        request.setOrderId("ORDER-3f8a2c91");
+        request.setTransactionId("TRANS-77b1e0d4");
+        request.setOrderAmount("50.00");
+        request.setOrderCurrency("USD");
+        request.setSessionId("SESSION0002345678901234567890");
+        switch (shape) {
+            case "PAY":
+                request.setApiOperation(PAY.toString());
+                request.setSourceType("CARD");
+                request.setCardNumber("5123450000000008");
+                request.setExpiryMonth("05");
+                request.setExpiryYear("39");
+                request.setSecurityCode("100");
+                break;
+            case "PAY_3DS2":
+                request.setApiOperation(PAY.toString());
+                request.setAuthenticationTransactionId("AUTH-5c0e1b2a");
+                request.setRedirectResponseUrl("https://merchant.example.com/process3ds2Redirect?order=ORDER-3f8a2c91");
+                break;
+            case "UPDATE_SESSION_WALLET":
+                request.setApiOperation(UPDATE_SESSION.toString());
+                request.setWalletProvider("MASTERPASS_ONLINE");
+                request.setMasterpassOriginUrl("https://merchant.example.com/masterpassResponse");
+                request.setMasterpassOauthToken("f2e3c2b8d5a7f1e0c9b4a3d2e1f0a9b8c7d6e5f4");
+                request.setMasterpassOauthVerifier("a7b6c5d4e3f2a1b0c9d8e7f6a5b4c3d2e1f0a9b8");
+                request.setMasterpassCheckoutUrl("https://sandbox.masterpass.com/routing/v2/mobileapi/web-checkout");
+                break;
+            case "CREATE_CHECKOUT_SESSION":
+                request.setApiOperation(CREATE_CHECKOUT_SESSION.toString());
+                request.setReturnUrl("https://merchant.example.com/hostedCheckout/ORDER-3f8a2c91/SUCCESS");
+                request.setInteractionOperation("PURCHASE");
+                break;
+            case "INITIATE_BROWSER_PAYMENT":
+                request.setApiOperation(INITIATE_BROWSER_PAYMENT.toString());
+                request.setSourceType("PAYPAL");
+                request.setBrowserPaymentOperation("PAY");
+                request.setTransactionAmount("50.00");
+                request.setTransactionCurrency("USD");
+                request.setReturnUrl("https://merchant.example.com/browserPaymentReceipt?transactionId=TRANS-77b1e0d4");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown request shape: " + shape);
+        }
+        return request;
+    }
+
+    /**
+     * The previous implementation of buildJSONPayload, kept as the baseline
+     */
+    static String treePayload(ApiRequest request) {
+        JsonObject secureId = new JsonObject();
+        if (Utils.notNullOrEmpty(request.getPaymentAuthResponse())) {
+            // Used for 3DS Process ACS Result operation
+            secureId.addProperty("paRes", request.getPaymentAuthResponse());
+        }
+
+        JsonObject authenticationRedirect = new JsonObject();
+        // Used for 3DS check enrollment operation
+        if (Utils.notNullOrEmpty(request.getSecureIdResponseUrl())) {
+            authenticationRedirect.addProperty("responseUrl", request.getSecureIdResponseUrl());
+            authenticationRedirect.addProperty("pageGenerationMode", "CUSTOMIZED");
+            secureId.add("authenticationRedirect", authenticationRedirect);
+        }
+
+        // Used for hosted checkout - CREATE_CHECKOUT_SESSION operation
+        JsonObject order = new JsonObject();
+        // Need to add order ID in the request body only for some operations. Its presence in the body will cause an error for the other operations.
+        if (Utils.notNullOrEmpty(request.getOrderId()) && Utils.notNullOrEmpty(request.getApiOperation()) &&
+                Arrays.asList(CREATE_CHECKOUT_SESSION.toString(), UPDATE_SESSION.toString(), PAY.toString())
+                        .contains(request.getApiOperation())) {
+            // Need to add order ID as reference in the request body only for PAY when having authenticated with 3DS2
+            if (request.getApiOperation().equals(PAY.toString()) &&
+                        Utils.notNullOrEmpty(request.getAuthenticationTransactionId())) {
+                order.addProperty("reference", request.getOrderId());
+                } else {
+                    order.addProperty("id", request.getOrderId());
+                }
+        }
+
+        if (Utils.notNullOrEmpty(request.getOrderAmount())) order.addProperty("amount", request.getOrderAmount());
+        if (Utils.notNullOrEmpty(request.getOrderCurrency())) order.addProperty("currency", request.getOrderCurrency());
+
+        //3DS2
+        JsonObject authentication = new JsonObject();
+        if (Utils.notNullOrEmpty(request.getAuthenticationChannel())) authentication.addProperty("channel", request.getAuthenticationChannel());
+        if (Utils.notNullOrEmpty(request.getAcceptVersions()))
+            authentication.addProperty("acceptVersions", request.getAcceptVersions());
+        if (Utils.notNullOrEmpty(request.getRedirectResponseUrl()))
+            authentication.addProperty("redirectResponseUrl", request.getRedirectResponseUrl());
+        // The transactionId you used for the Initiate Authentication operation.
+        if (request.getApiOperation() != null && request.getApiOperation().equals(PAY.toString()) &&
+                Utils.notNullOrEmpty(request.getAuthenticationTransactionId()))
+            authentication.addProperty("transactionId", request.getAuthenticationTransactionId());
+
+        JsonObject wallet = new JsonObject();
+        /* essentials_exclude_start */
+        if (Utils.notNullOrEmpty(request.getWalletProvider())) {
+            order.addProperty("walletProvider", request.getWalletProvider());
+            /* essentials_exclude_start */
+            // Used for Masterpass operations
+            if(request.getWalletProvider().equals("MASTERPASS_ONLINE")) {
+                JsonObject masterpass = new JsonObject();
+                if(Utils.notNullOrEmpty(request.getMasterpassOriginUrl())) masterpass.addProperty("originUrl", request.getMasterpassOriginUrl());
+                if(Utils.notNullOrEmpty(request.getMasterpassOauthToken())) masterpass.addProperty("oauthToken", request.getMasterpassOauthToken());
+                if(Utils.notNullOrEmpty(request.getMasterpassOauthVerifier())) masterpass.addProperty("oauthVerifier", request.getMasterpassOauthVerifier());
+                if(Utils.notNullOrEmpty(request.getMasterpassCheckoutUrl())) masterpass.addProperty("checkoutUrl", request.getMasterpassCheckoutUrl());
+                if (!masterpass.entrySet().isEmpty()) wallet.add("masterpass", masterpass);
+            }
+            /* essentials_exclude_end */
+            if(request.getWalletProvider().equals("SECURE_REMOTE_COMMERCE")) {
+                JsonObject secureRemoteCommerce = new JsonObject();
+                if(Utils.notNullOrEmpty(request.getCorrelationId())) secureRemoteCommerce.addProperty("srcCorrelationId", request.getCorrelationId());
+                if(Utils.notNullOrEmpty(request.getScheme())) secureRemoteCommerce.addProperty("scheme", request.getScheme());
+                if (!secureRemoteCommerce.entrySet().isEmpty()) wallet.add("secureRemoteCommerce", secureRemoteCommerce);
+            }
+        }
+
+
+        JsonObject transaction = new JsonObject();
+        if (Utils.notNullOrEmpty(request.getTransactionAmount()))
+            transaction.addProperty("amount", request.getTransactionAmount());
+        if (Utils.notNullOrEmpty(request.getTransactionCurrency()))
+            transaction.addProperty("currency", request.getTransactionCurrency());
+        if (Utils.notNullOrEmpty(request.getTargetTransactionId()))
+            transaction.addProperty("targetTransactionId", request.getTargetTransactionId());
+        //for PAY wth 3ds
+        if (request.getApiOperation() != null && request.getApiOperation().equals(PAY.toString()) &&
+                Utils.notNullOrEmpty(request.getOrderId()))
+            transaction.addProperty("reference", request.getOrderId());
+
+        JsonObject expiry = new JsonObject();
+        if (Utils.notNullOrEmpty(request.getExpiryMonth())) expiry.addProperty("month", request.getExpiryMonth());
+        if (Utils.notNullOrEmpty(request.getExpiryYear())) expiry.addProperty("year", request.getExpiryYear());
+
+        JsonObject card = new JsonObject();
+        if (Utils.notNullOrEmpty(request.getSecurityCode())) card.addProperty("securityCode", request.getSecurityCode());
+        if (Utils.notNullOrEmpty(request.getCardNumber())) card.addProperty("number", request.getCardNumber());
+        if (!expiry.entrySet().isEmpty()) card.add("expiry", expiry);
+
+        JsonObject provided = new JsonObject();
+        if (!card.entrySet().isEmpty()) provided.add("card", card);
+
+        JsonObject sourceOfFunds = new JsonObject();
+        if (Utils.notNullOrEmpty(request.getSourceType())) sourceOfFunds.addProperty("type", request.getSourceType());
+        if (Utils.notNullOrEmpty(request.getSourceToken())) sourceOfFunds.addProperty("token", request.getSourceToken());
+        if (!provided.entrySet().isEmpty()) sourceOfFunds.add("provided", provided);
+
+        JsonObject browserPayment = new JsonObject();
+        /* essentials_exclude_start */
+        if (Utils.notNullOrEmpty(request.getBrowserPaymentOperation()))
+            browserPayment.addProperty("operation", request.getBrowserPaymentOperation());
+        /* targeted_exclude_start */
+        if (Utils.notNullOrEmpty(request.getSourceType()) && request.getSourceType().equals("PAYPAL")) {
+            JsonObject paypal = new JsonObject();
+            paypal.addProperty("paymentConfirmation", "CONFIRM_AT_PROVIDER");
+            browserPayment.add("paypal", paypal);
+        }
+        /* targeted_exclude_end */
+        /* essentials_exclude_end */
+
+        JsonObject interaction = new JsonObject();
+        if (Utils.notNullOrEmpty(request.getApiOperation())) {
+            // Return URL needs to be added differently for browser payments and hosted checkout payments
+            if (request.getApiOperation().equals(CREATE_CHECKOUT_SESSION.toString())) {
+                if(Utils.notNullOrEmpty(request.getReturnUrl())){
+                    interaction.addProperty("returnUrl", request.getReturnUrl());
+                }
+                if(Utils.notNullOrEmpty(request.getInteractionOperation())) {
+                    interaction.addProperty("operation", request.getInteractionOperation());
+                }
+            } else if (Utils.notNullOrEmpty(request.getReturnUrl())
+                    && (request.getApiOperation().equals(INITIATE_BROWSER_PAYMENT.toString())
+                    || request.getApiOperation().equals("CONFIRM_BROWSER_PAYMENT")
+                    || request.getApiOperation().equals(UPDATE_SESSION.toString()))) {
+                browserPayment.addProperty("returnUrl", request.getReturnUrl());
+            }
+        }
+
+        JsonObject session = new JsonObject();
+        if (Utils.notNullOrEmpty(request.getSessionId())) session.addProperty("id", request.getSessionId());
+
+        // Add all the elements to the main JSON object we'll return from this method
+        JsonObject data = new JsonObject();
+        if (Utils.notNullOrEmpty(request.getApiOperation()) && !request.getApiOperation().equals(UPDATE_SESSION.toString())
+                && !request.getApiOperation().equals(CREATE_SESSION.toString()))
+            data.addProperty("apiOperation", request.getApiOperation());
+        if (Utils.notNullOrEmpty(request.getSecureId())) data.addProperty("3DSecureId", request.getSecureId());
+        if (!order.entrySet().isEmpty()) data.add("order", order);
+        if (!authentication.entrySet().isEmpty()) data.add("authentication", authentication);
+        if (!wallet.entrySet().isEmpty()) data.add("wallet", wallet);
+        if (!transaction.entrySet().isEmpty()) data.add("transaction", transaction);
+        if (!sourceOfFunds.entrySet().isEmpty()) data.add("sourceOfFunds", sourceOfFunds);
+        if (!browserPayment.entrySet().isEmpty()) data.add("browserPayment", browserPayment);
+        if (!interaction.entrySet().isEmpty()) data.add("interaction", interaction);
+        if (!session.entrySet().isEmpty()) data.add("session", session);
+        if (!secureId.entrySet().isEmpty()) data.add("3DSecure", secureId);
+
+        return prettyGson.toJson(data);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the ID generators under contention, from 1 to 64 threads sharing one generator. The commons-lang
+ * generator is the one {@link Utils#createUniqueId(Utils.Prefixes)} used before, with a single shared Random. Run with
+ * <pre>mvn -Pbenchmarks test-compile exec:exec -Djmh.args="IdGenerator"</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    @Param({"commons-lang", "random", "time-ordered"})
+    public String generator;
+
+    private IdGenerator idGenerator;
+
+    @Setup
+    public void setUp() {
+        switch (generator) {
+            case "commons-lang":
+                idGenerator = () -> RandomStringUtils.random(10, true, true);
+                break;
+            case "random":
+                idGenerator = new RandomIdGenerator();
+                break;
+            case "time-ordered":
+                idGenerator = new TimeOrderedIdGenerator(1);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown generator: " + generator);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String threads01() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public String threads02() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String threads04() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String threads08() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String threads16() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String threads32() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String threads64() {
+        return idGenerator.nextId();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.loadtest;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency and outcome counts of one endpoint. Response time is measured from the moment the request was scheduled to
+ * be sent, so a request held up behind a slow one is charged for the wait (no coordinated omission). Service time is
+ * measured from the moment it was actually handed to the client, for comparison.
+ */
+final class EndpointStats {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final String name;
+    private final Recorder responseTime = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Recorder serviceTime = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    EndpointStats(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @param intended time in nanoseconds the request was scheduled for
+     * @param sent     time in nanoseconds the request was handed to the client
+     * @param outcome  what came back
+     */
+    void record(long intended, long sent, Outcome outcome) {
+        long now = System.nanoTime();
+        responseTime.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(now - intended), HIGHEST_TRACKABLE_MICROS));
+        serviceTime.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(now - sent), HIGHEST_TRACKABLE_MICROS));
+        switch (outcome) {
+            case SUCCESS:
+                successes.increment();
+                break;
+            case ERROR:
+                errors.increment();
+                break;
+            default:
+                failures.increment();
+                break;
+        }
+    }
+
+    /**
+     * Forgets everything recorded so far, e.g. at the end of the warm-up
+     */
+    void reset() {
+        responseTime.reset();
+        serviceTime.reset();
+        successes.reset();
+        errors.reset();
+        failures.reset();
+    }
+
+    Result result() {
+        return new Result(name, responseTime.getIntervalHistogram(), serviceTime.getIntervalHistogram(),
+                successes.sum(), errors.sum(), failures.sum());
+    }
+
+    enum Outcome {
+        /**
+         * The page rendered without an error
+         */
+        SUCCESS,
+        /**
+         * The app answered with an error status or its error page, e.g. because the gateway declined or failed
+         */
+        ERROR,
+        /**
+         * No answer: connection failure, timeout or cancellation
+         */
+        FAILURE
+    }
+
+    static final class Result {
+        final String name;
+        final Histogram responseTime;
+        final Histogram serviceTime;
+        final long successes;
+        final long errors;
+        final long failures;
+
+        Result(String name, Histogram responseTime, Histogram serviceTime, long successes, long errors, long failures) {
+            this.name = name;
+            this.responseTime = responseTime;
+            this.serviceTime = serviceTime;
+            this.successes = successes;
+            this.errors = errors;
+            this.failures = failures;
+        }
+
+        long count() {
+            return successes + errors + failures;
+        }
+
+        Result add(Result other) {
+            Histogram response = responseTime.copy();
+            response.add(other.responseTime);
+            Histogram service = serviceTime.copy();
+            service.add(other.serviceTime);
+            return new Result(name, response, service, successes + other.successes, errors + other.errors,
+                    failures + other.failures);
+        }
+
+        void print(PrintStream out, double seconds) {
+            out.printf("%-34s %8d %9.1f %7.2f%% %7.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, count(),
+                    count() / seconds, percentage(errors), percentage(failures), millis(responseTime, 50),
+                    millis(responseTime, 90), millis(responseTime, 99), millis(responseTime, 99.9),
+                    responseTime.getMaxValue() / 1000.0, millis(serviceTime, 99));
+        }
+
+        static void printHeader(PrintStream out) {
+            out.printf("%-34s %8s %9s %8s %8s %9s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "req/s", "errors",
+                    "failures", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99");
+        }
+
+        /**
+         * Writes the full percentile distribution in milliseconds, in the format the HdrHistogram plotter reads
+         */
+        void writeDistribution(String path) throws FileNotFoundException {
+            try (PrintStream out = new PrintStream(path)) {
+                responseTime.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+
+        private double percentage(long value) {
+            return count() == 0 ? 0 : 100.0 * value / count();
+        }
+
+        private static double millis(Histogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+}
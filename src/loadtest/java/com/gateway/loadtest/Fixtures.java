@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.gateway.app.Config;
+import com.gateway.client.ApiOperation;
+import com.gateway.client.ApiProtocol;
+import com.gateway.client.ApiRequest;
+import com.gateway.client.ApiRequestService;
+import com.gateway.client.RESTApiClient;
+
+/**
+ * Gateway data the scenarios refer to, created directly on the gateway before the run: sessions for the pages that
+ * would have collected card details in the browser, and authorized orders to capture, refund, void and retrieve.
+ */
+final class Fixtures {
+
+    static final String AUTHORIZED_AMOUNT = "100.00";
+
+    private final Config config;
+    private final List<String> sessionIds = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+
+    Fixtures(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Creates the sessions and authorizes the orders, one after the other so the gateway isn't loaded before the run
+     */
+    Fixtures create(int sessions, int authorizedOrders) throws Exception {
+        for (int i = 0; i < sessions; i++) {
+            sessionIds.add(ApiRequestService.createHostedSession(config).getId());
+        }
+        RESTApiClient connection = new RESTApiClient();
+        for (int i = 0; i < authorizedOrders; i++) {
+            ApiRequest request = ApiRequestService.createApiRequest(ApiOperation.AUTHORIZE.toString(), config);
+            request.setOrderAmount(AUTHORIZED_AMOUNT);
+            request.setSourceType("CARD");
+            request.setCardNumber("5123450000000008");
+            request.setExpiryMonth("05");
+            request.setExpiryYear("39");
+            request.setSecurityCode("100");
+            connection.sendTransaction(ApiRequestService.buildJSONPayload(request),
+                    ApiRequestService.getRequestUrl(ApiProtocol.REST, config, request), config, ApiOperation.AUTHORIZE);
+            orders.add(new Order(request.getOrderId(), request.getTransactionId()));
+        }
+        return this;
+    }
+
+    String getCurrency() {
+        return config.getCurrency();
+    }
+
+    /**
+     * @return the secret the gateway sends with webhook notifications; the header is required even when it's unset
+     */
+    String getWebhookSecret() {
+        return config.getWebhooksNotificationSecret() != null ? config.getWebhooksNotificationSecret() : "";
+    }
+
+    String randomSessionId() {
+        return sessionIds.get(ThreadLocalRandom.current().nextInt(sessionIds.size()));
+    }
+
+    Order randomOrder() {
+        return orders.get(ThreadLocalRandom.current().nextInt(orders.size()));
+    }
+
+    static final class Order {
+        final String orderId;
+        final String authorizationId;
+
+        Order(String orderId, String authorizationId) {
+            this.orderId = orderId;
+            this.authorizationId = authorizationId;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.gateway.app.Config;
+import com.gateway.app.Main;
+import com.gateway.simulator.GatewaySimulator;
+import com.gateway.simulator.LatencyDistribution;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Drives the web endpoints with a weighted mix of {@link Scenario}s at a constant arrival rate (open loop): requests
+ * are sent on schedule whether or not the earlier ones have been answered, the way independent shoppers would send
+ * them. Latency is counted from the scheduled send time, so a stall in the app shows up in the percentiles instead of
+ * silently lowering the request rate. The report gives throughput, error rates and latency percentiles per endpoint.
+ *
+ * Run with <pre>mvn -Ploadtest test-compile exec:exec -Dloadtest.args="<options>"</pre>. Options:
+ * <pre>
+ * --target URL           app to load (default http://localhost:5000)
+ * --gateway URL          gateway the app is configured with, to create the sessions and orders the scenarios use
+ * --merchant ID          merchant ID the app is configured with (default TESTMERCHANTID)
+ * --password PASSWORD    API password the app is configured with (default APIPASSWORD1234)
+ * --api-version N        API version the app is configured with (default 52)
+ * --currency CODE        currency the app is configured with (default USD)
+ * --webhook-secret S     webhook notification secret the app is configured with
+ * --embedded             start a GatewaySimulator and the app in this JVM instead of using --target and --gateway
+ * --latency SPEC         gateway latency of the embedded simulator, see LatencyDistribution.parse
+ * --error-rate R         share of gateway calls the embedded simulator fails
+ * --rate N               requests per second across all endpoints (default 50)
+ * --warmup S             seconds of load before measuring (default 10)
+ * --duration S           seconds of measured load (default 60)
+ * --connections N        maximum connections to the app (default 200)
+ * --timeout MS           time to wait for a response (default 60000)
+ * --mix SCENARIO=W,...   relative weights of the scenarios (default: a checkout-heavy mix of all of them)
+ * --sessions N           gateway sessions to create for the scenarios (default 200)
+ * --orders N             authorized orders to create for the scenarios (default 200)
+ * --histograms DIR       also write each endpoint's full latency distribution to DIR
+ * </pre>
+ * The embedded mode is the quickest way to get numbers on one box, but the generator, the app and the simulator then
+ * compete for the same CPUs; for capacity planning run them as separate processes.
+ */
+public class LoadGenerator {
+
+    private static final String ERROR_PAGE_MARKER = "<h3>Error</h3>";
+
+    private final String target;
+    private final Fixtures fixtures;
+    private final Scenario[] scenarios;
+    private final int[] cumulativeWeights;
+    private final Map<Scenario, EndpointStats> stats = new EnumMap<>(Scenario.class);
+    private final CloseableHttpAsyncClient client;
+    private final AtomicLong inFlight = new AtomicLong();
+
+    LoadGenerator(String target, Fixtures fixtures, Map<Scenario, Integer> mix, int connections, int timeout) {
+        this.target = target;
+        this.fixtures = fixtures;
+        this.scenarios = mix.keySet().toArray(new Scenario[0]);
+        this.cumulativeWeights = new int[scenarios.length];
+        int total = 0;
+        for (int i = 0; i < scenarios.length; i++) {
+            total += mix.get(scenarios[i]);
+            cumulativeWeights[i] = total;
+            stats.put(scenarios[i], new EndpointStats(scenarios[i].getEndpoint()));
+        }
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .build();
+        this.client = HttpAsyncClients.custom()
+                .setMaxConnTotal(connections)
+                .setMaxConnPerRoute(connections)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        this.client.start();
+    }
+
+    /**
+     * Sends requests at the given rate for the given time, then waits for the outstanding ones
+     *
+     * @param rate     requests per second
+     * @param duration time in seconds
+     */
+    void run(double rate, long duration) throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(duration);
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended >= end) {
+                break;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(nextScenario(), intended);
+        }
+        while (inFlight.get() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    void reset() {
+        stats.values().forEach(EndpointStats::reset);
+    }
+
+    List<EndpointStats.Result> results() {
+        List<EndpointStats.Result> results = new ArrayList<>();
+        for (EndpointStats endpointStats : stats.values()) {
+            results.add(endpointStats.result());
+        }
+        return results;
+    }
+
+    void close() throws IOException {
+        client.close();
+    }
+
+    private Scenario nextScenario() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return scenarios[i];
+            }
+        }
+        return scenarios[scenarios.length - 1];
+    }
+
+    private void send(Scenario scenario, long intended) {
+        EndpointStats endpointStats = stats.get(scenario);
+        HttpUriRequest request = scenario.create(target, fixtures);
+        long sent = System.nanoTime();
+        inFlight.incrementAndGet();
+        client.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                EndpointStats.Outcome outcome = EndpointStats.Outcome.SUCCESS;
+                try {
+                    String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+                    if (response.getStatusLine().getStatusCode() >= 400 || body.contains(ERROR_PAGE_MARKER)) {
+                        outcome = EndpointStats.Outcome.ERROR;
+                    }
+                } catch (IOException e) {
+                    outcome = EndpointStats.Outcome.FAILURE;
+                }
+                done(outcome);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                done(EndpointStats.Outcome.FAILURE);
+            }
+
+            @Override
+            public void cancelled() {
+                done(EndpointStats.Outcome.FAILURE);
+            }
+
+            private void done(EndpointStats.Outcome outcome) {
+                endpointStats.record(intended, sent, outcome);
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        double rate = Double.parseDouble(options.getOrDefault("rate", "50"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+
+        Config config = new Config();
+        config.setMerchantId(options.getOrDefault("merchant", "TESTMERCHANTID"));
+        config.setApiUsername("merchant." + config.getMerchantId());
+        config.setApiPassword(options.getOrDefault("password", "APIPASSWORD1234"));
+        config.setAuthenticationType(Config.AuthenticationType.PASSWORD);
+        config.setApiVersion(Integer.parseInt(options.getOrDefault("api-version", "52")));
+        config.setCurrency(options.getOrDefault("currency", "USD"));
+        config.setWebhooksNotificationSecret(options.get("webhook-secret"));
+
+        String target = options.getOrDefault("target", "http://localhost:5000");
+        GatewaySimulator simulator = null;
+        ConfigurableApplicationContext app = null;
+        LoadGenerator generator = null;
+        try {
+            if (options.containsKey("embedded")) {
+                simulator = new GatewaySimulator(config.getMerchantId(), config.getApiPassword())
+                        .setLatency(LatencyDistribution.parse(options.getOrDefault("latency", "none")))
+                        .setErrorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")))
+                        .start();
+                options.put("gateway", simulator.getBaseUrl());
+                // Devtools would otherwise restart this main method in a new class loader
+                System.setProperty("spring.devtools.restart.enabled", "false");
+                app = new SpringApplicationBuilder(Main.class).run(
+                        "--server.port=0",
+                        "--gateway.base.url=" + simulator.getBaseUrl(),
+                        "--gateway.merchant.id=" + config.getMerchantId(),
+                        "--gateway.api.password=" + config.getApiPassword(),
+                        "--gateway.api.version=" + config.getApiVersion(),
+                        "--gateway.currency=" + config.getCurrency());
+                target = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+            }
+            if (!options.containsKey("gateway")) {
+                throw new IllegalArgumentException("--gateway is required unless the run is --embedded");
+            }
+            config.setGatewayHost(options.get("gateway"));
+            config.setApiBaseURL(options.get("gateway"));
+
+            System.out.println("Creating gateway sessions and orders on " + config.getGatewayHost() + "...");
+            Fixtures fixtures = new Fixtures(config).create(Integer.parseInt(options.getOrDefault("sessions", "200")),
+                    Integer.parseInt(options.getOrDefault("orders", "200")));
+
+            generator = new LoadGenerator(target, fixtures, parseMix(options.get("mix")),
+                    Integer.parseInt(options.getOrDefault("connections", "200")),
+                    Integer.parseInt(options.getOrDefault("timeout", "60000")));
+            System.out.printf("Warming up %s for %ds at %.1f req/s...%n", target, warmup, rate);
+            generator.run(rate, warmup);
+            generator.reset();
+            System.out.printf("Measuring for %ds at %.1f req/s...%n", duration, rate);
+            long start = System.nanoTime();
+            generator.run(rate, duration);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            report(generator.results(), seconds, options.get("histograms"));
+        } finally {
+            if (generator != null) {
+                generator.close();
+            }
+            if (app != null) {
+                app.close();
+            }
+            if (simulator != null) {
+                simulator.stop();
+            }
+        }
+    }
+
+    private static void report(List<EndpointStats.Result> results, double seconds, String histograms)
+            throws IOException {
+        System.out.println();
+        EndpointStats.Result.printHeader(System.out);
+        EndpointStats.Result total = null;
+        for (EndpointStats.Result result : results) {
+            result.print(System.out, seconds);
+            total = total == null ? result : total.add(result);
+        }
+        if (total != null) {
+            new EndpointStats.Result("total", total.responseTime, total.serviceTime, total.successes, total.errors,
+                    total.failures).print(System.out, seconds);
+        }
+        if (histograms != null) {
+            File directory = new File(histograms);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create " + directory);
+            }
+            for (EndpointStats.Result result : results) {
+                String fileName = result.name.replaceAll("[^A-Za-z0-9_-]+", "_").replaceAll("^_", "") + ".hgrm";
+                result.writeDistribution(new File(directory, fileName).getPath());
+            }
+            System.out.println("Latency distributions written to " + directory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @param spec e.g. <pre>HOSTED_SESSION_PAY=30,CAPTURE=10</pre>; null for the default mix
+     */
+    static Map<Scenario, Integer> parseMix(String spec) {
+        Map<Scenario, Integer> mix = new LinkedHashMap<>();
+        if (spec == null) {
+            mix.put(Scenario.HOSTED_SESSION_PAY, 25);
+            mix.put(Scenario.HOSTED_SESSION_AUTHORIZE, 10);
+            mix.put(Scenario.TOKENIZE, 10);
+            mix.put(Scenario.NVP_PAY, 5);
+            mix.put(Scenario.CAPTURE, 10);
+            mix.put(Scenario.REFUND, 5);
+            mix.put(Scenario.VOID, 5);
+            mix.put(Scenario.RETRIEVE, 15);
+            mix.put(Scenario.WEBHOOK, 15);
+            return mix;
+        }
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.split("=");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (weight > 0) {
+                mix.put(Scenario.valueOf(parts[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no scenarios: " + spec);
+        }
+        return mix;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "true");
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gateway.client.Utils;
+import com.google.gson.JsonObject;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicNameValuePair;
+
+import static com.gateway.client.Utils.Prefixes.ORDER;
+import static com.gateway.client.Utils.Prefixes.TRANS;
+
+/**
+ * The requests a browser or the gateway sends to the web endpoints, built the way the sample pages and the gateway
+ * build them
+ */
+enum Scenario {
+
+    /**
+     * Card payment from the Pay page, with a session the Hosted Session fields would have filled in
+     */
+    HOSTED_SESSION_PAY("/processHostedSession PAY") {
+        @Override
+        HttpUriRequest create(String target, Fixtures fixtures) {
+            return json(target + "/processHostedSession", hostedSessionData("PAY", fixtures));
+        }
+    },
+    HOSTED_SESSION_AUTHORIZE("/processHostedSession AUTHORIZE") {
+        @Override
+        HttpUriRequest create(String target, Fixtures fixtures) {
+            return json(target + "/processHostedSession", hostedSessionData("AUTHORIZE", fixtures));
+        }
+    },
+    /**
+     * Tokenizes the session's card and pays with the token, from the Pay with Token page
+     */
+    TOKENIZE("/tokenize") {
+        @Override
+        HttpUriRequest create(String target, Fixtures fixtures) {
+            return json(target + "/tokenize", hostedSessionData(null, fixtures));
+        }
+    },
+    NVP_PAY("/processPayThroughNVP") {
+        @Override
+        HttpUriRequest create(String target, Fixtures fixtures) {
+            return json(target + "/processPayThroughNVP", hostedSessionData("PAY", fixtures));
+        }
+    },
+    CAPTURE("/process CAPTURE") {
+        @Override
+        HttpUriRequest create(String target, Fixtures fixtures) {
+            return process(target, "CAPTURE", "PUT", fixtures);
+        }
+    },
+    REFUND("/process REFUND") {
+        @Override
+        HttpUriRequest create(String target, Fixtures fixtures) {
+            return process(target, "REFUND", "PUT", fixtures);
+        }
+    },
+    VOID("/process VOID") {
+        @Override
+        HttpUriRequest create(String target, Fixtures fixtures) {
+            return process(target, "VOID", "PUT", fixtures);
+        }
+    },
+    RETRIEVE("/process RETRIEVE_ORDER") {
+        @Override
+        HttpUriRequest create(String target, Fixtures fixtures) {
+            return process(target, "RETRIEVE_ORDER", "GET", fixtures);
+        }
+    },
+    /**
+     * Order notification from the gateway
+     */
+    WEBHOOK("/process-webhook") {
+        @Override
+        HttpUriRequest create(String target, Fixtures fixtures) {
+            Fixtures.Order order = fixtures.randomOrder();
+            JsonObject orderJson = new JsonObject();
+            orderJson.addProperty("id", order.orderId);
+            orderJson.addProperty("amount", Fixtures.AUTHORIZED_AMOUNT);
+            orderJson.addProperty("currency", fixtures.getCurrency());
+            orderJson.addProperty("status", "CAPTURED");
+            JsonObject transaction = new JsonObject();
+            transaction.addProperty("id", Utils.createUniqueId(TRANS));
+            transaction.addProperty("type", "CAPTURE");
+            JsonObject notification = new JsonObject();
+            notification.add("order", orderJson);
+            notification.add("transaction", transaction);
+            notification.addProperty("result", "SUCCESS");
+
+            HttpPost post = json(target + "/process-webhook", notification);
+            post.setHeader("X-Notification-Secret", fixtures.getWebhookSecret());
+            return post;
+        }
+    };
+
+    private final String endpoint;
+
+    Scenario(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @param target base URL of the app
+     */
+    abstract HttpUriRequest create(String target, Fixtures fixtures);
+
+    /**
+     * The fields hostedSession.js posts once the session has been updated from the card form
+     */
+    private static JsonObject hostedSessionData(String apiOperation, Fixtures fixtures) {
+        JsonObject data = new JsonObject();
+        data.addProperty("apiOperation", apiOperation);
+        data.addProperty("sessionId", fixtures.randomSessionId());
+        data.addProperty("orderId", Utils.createUniqueId(ORDER));
+        data.addProperty("transactionId", Utils.createUniqueId(TRANS));
+        data.addProperty("orderAmount", "50.00");
+        data.addProperty("orderCurrency", fixtures.getCurrency());
+        data.addProperty("orderDescription", "Load test order");
+        return data;
+    }
+
+    /**
+     * The form the capture, refund, void and retrieve pages submit, against one of the authorized orders
+     */
+    private static HttpUriRequest process(String target, String apiOperation, String apiMethod, Fixtures fixtures) {
+        Fixtures.Order order = fixtures.randomOrder();
+        List<NameValuePair> form = new ArrayList<>();
+        form.add(new BasicNameValuePair("apiOperation", apiOperation));
+        form.add(new BasicNameValuePair("apiMethod", apiMethod));
+        form.add(new BasicNameValuePair("orderId", order.orderId));
+        if ("PUT".equals(apiMethod)) {
+            form.add(new BasicNameValuePair("transactionId", Utils.createUniqueId(TRANS)));
+            form.add(new BasicNameValuePair("transactionAmount", "10.00"));
+            form.add(new BasicNameValuePair("transactionCurrency", fixtures.getCurrency()));
+            form.add(new BasicNameValuePair("targetTransactionId", order.authorizationId));
+        }
+        HttpPost post = new HttpPost(target + "/process");
+        post.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
+        return post;
+    }
+
+    private static HttpPost json(String url, JsonObject body) {
+        HttpPost post = new HttpPost(url);
+        post.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+        return post;
+    }
+}
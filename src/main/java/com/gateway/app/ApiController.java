@@ -4,20 +4,26 @@
 
 package com.gateway.app;
 
+import java.net.MalformedURLException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gateway.client.ApiException;
+import com.gateway.client.ApiOperation;
 import com.gateway.client.ApiProtocol;
 import com.gateway.client.ApiRequest;
 import com.gateway.client.ApiRequestService;
+import com.gateway.client.ApiResponse;
 import com.gateway.client.ApiResponseService;
 import com.gateway.client.ExceptionService;
+import com.gateway.client.GatewayGuards;
 import com.gateway.client.HostedSession;
 import com.gateway.client.NVPApiClient;
 import com.gateway.client.RESTApiClient;
+import com.gateway.client.RequestDeadline;
 import com.gateway.client.Utils;
 import com.gateway.response.BrowserPaymentResponse;
 import com.gateway.response.SecureIdEnrollmentResponse;
@@ -26,11 +32,13 @@ import com.gateway.response.WalletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 
@@ -42,14 +50,26 @@ public class ApiController {
 
     private static final Logger logger = LoggerFactory.getLogger(ApiController.class);
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     @Autowired
     public Config config;
 
+    @Autowired
+    private GatewayExecutor gatewayExecutor;
+
+    @Autowired
+    private OrderStateStore orderStateStore;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
     /**
-     * Beautify the API request and response so they're readable in the view
+     * Beautify the API request and response so they're readable in the view. They are only pretty-printed when the
+     * view is rendered.
      *
      * @param mav The ModelAndView object from the controller
-     * @param apiResponse The response from the API
+     * @param apiResponse The parsed response from the API
      * @param payload The request payload (want to display this to the user, as it's helpful to see both request and
      * response)
      * @param config contains frequently used information like Merchant ID, API password, etc.
@@ -58,19 +78,19 @@ public class ApiController {
      * @return Modified ModelAndView object or throw exception
      * @throws Exception
      */
-    private static ModelAndView formatApiResponse(ModelAndView mav, String apiResponse, String payload, Config config,
+    private static ModelAndView formatApiResponse(ModelAndView mav, ApiResponse apiResponse, String payload, Config config,
             ApiRequest apiRequest, String requestUrl) throws Exception {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            Object prettyResp = mapper.readValue(apiResponse, Object.class);
-            Object prettyPayload = mapper.readValue(payload, Object.class);
+            // The response was already parsed when it was received, so print it straight from the tree
+            PrettyJson prettyResp = PrettyJson.of(apiResponse.getJson());
+            PrettyJson prettyPayload = PrettyJson.of(payload);
 
             mav.setViewName("apiResponse");
             mav.addObject("config", config);
-            mav.addObject("resp", mapper.writerWithDefaultPrettyPrinter().writeValueAsString(prettyResp));
+            mav.addObject("resp", prettyResp);
             mav.addObject("operation", apiRequest.getApiOperation());
             mav.addObject("method", apiRequest.getApiMethod());
-            mav.addObject("request", mapper.writerWithDefaultPrettyPrinter().writeValueAsString(prettyPayload));
+            mav.addObject("request", prettyPayload);
             mav.addObject("requestUrl", requestUrl);
             return mav;
         } catch (Exception e) {
@@ -80,6 +100,49 @@ public class ApiController {
 
     }
 
+    /**
+     * Runs the gateway calls of a request on the gateway executor, so the request thread is released while waiting on
+     * the gateway. All the calls share the request deadline. Errors are turned into the error view the same way for
+     * every handler.
+     *
+     * @param call the work to perform, filling in the given ModelAndView
+     * @return ModelAndView completed once the gateway calls are done
+     */
+    private CompletableFuture<ModelAndView> callGateway(GatewayCall call) {
+        ModelAndView mav = new ModelAndView();
+        // The deadline starts when the request arrives, so time spent waiting for a gateway thread counts against it
+        long deadline = System.currentTimeMillis() + config.getRequestDeadline();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                RequestDeadline.set(deadline);
+                try {
+                    call.execute(mav);
+                } catch (ApiException e) {
+                    if (GatewayGuards.CIRCUIT_OPEN.equals(e.getErrorCode()) || GatewayGuards.BULKHEAD_FULL.equals(e.getErrorCode())) {
+                        // The call was never sent, so the user can safely try again later
+                        mav.setStatus(HttpStatus.SERVICE_UNAVAILABLE);
+                    }
+                    ExceptionService.constructApiErrorResponse(mav, e);
+                } catch (Exception e) {
+                    ExceptionService.constructGeneralErrorResponse(mav, e);
+                } finally {
+                    RequestDeadline.clear();
+                }
+                return mav;
+            }, gatewayExecutor);
+        } catch (RejectedExecutionException e) {
+            // Every gateway thread is busy and the queue is full - shed the request rather than wait
+            mav.setStatus(HttpStatus.SERVICE_UNAVAILABLE);
+            return CompletableFuture.completedFuture(ExceptionService.constructGeneralErrorResponse(mav,
+                    new Exception("Too many payments in progress, please try again", e)));
+        }
+    }
+
+    @FunctionalInterface
+    private interface GatewayCall {
+        void execute(ModelAndView mav) throws Exception;
+    }
+
     /* essentials_exclude_start */
     /**
      * Create session and fetch Masterpass configuration details
@@ -89,16 +152,16 @@ public class ApiController {
      * @return ModelAndView for masterpassButton.html
      */
     @PostMapping("/processMasterpass")
-    public ModelAndView processMasterpass(HttpServletRequest httpServletRequest, ApiRequest request) {
+    public CompletableFuture<ModelAndView> processMasterpass(HttpServletRequest httpServletRequest, ApiRequest request) {
 
-        ModelAndView mav = new ModelAndView();
+        HttpSession httpSession = httpServletRequest.getSession();
 
-        try {
+        return callGateway(mav -> {
             RESTApiClient connection = new RESTApiClient();
 
             // Create session to use with OPEN_WALLET operation
             String sessionRequestUrl = ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config);
-            String sessionResponse = connection.postTransaction(sessionRequestUrl, config);
+            ApiResponse sessionResponse = connection.postTransaction(sessionRequestUrl, config);
             HostedSession hostedSession = ApiResponseService.parseSessionResponse(sessionResponse);
 
             // Call UPDATE_SESSION to add order information to session
@@ -107,23 +170,17 @@ public class ApiController {
             // Call OPEN_WALLET to retrieve Masterpass configuration
             String walletRequestUrl = ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config, hostedSession.getId());
             String openWalletPayload = ApiRequestService.buildJSONPayload(request);
-            String walletResponse = connection.postTransaction(openWalletPayload, walletRequestUrl, config);
+            ApiResponse walletResponse = connection.postTransaction(openWalletPayload, walletRequestUrl, config, ApiOperation.OPEN_WALLET);
             WalletResponse wallet = ApiResponseService.parseWalletResponse(walletResponse, "masterpass");
 
             // Save this value in HttpSession to retrieve after returning from issuer authentication form
-            HttpSession httpSession = httpServletRequest.getSession();
             httpSession.setAttribute("sessionId", hostedSession.getId());
 
             mav.setViewName("masterpassButton");
             mav.addObject("wallet", wallet);
             mav.addObject("config", config);
             mav.addObject("hostedSession", hostedSession);
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        } catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+        });
     }
     /* essentials_exclude_end */
 
@@ -136,16 +193,14 @@ public class ApiController {
      * @return ModelAndView for masterpassResponse.html
      */
     @GetMapping("/masterpassResponse")
-    public ModelAndView completeMasterpassPayment(HttpServletRequest request, @RequestParam("oauth_token") String oauthToken, @RequestParam("oauth_verifier") String oauthVerifier,
+    public CompletableFuture<ModelAndView> completeMasterpassPayment(HttpServletRequest request, @RequestParam("oauth_token") String oauthToken, @RequestParam("oauth_verifier") String oauthVerifier,
                                                   @RequestParam("checkout_resource_url") String checkoutResourceUrl) {
 
-        ModelAndView mav = new ModelAndView();
-
         // Retrieve Checkout Session ID from HttpServletRequest session (saved earlier in the Masterpass process)
         HttpSession session = request.getSession();
         String sessionId = (String) session.getAttribute("sessionId");
 
-        try {
+        return callGateway(mav -> {
             // UPDATE_SESSION_FROM_WALLET - Retrieve payment details from wallet using session ID
             ApiRequest req = new ApiRequest();
             req.setApiOperation("UPDATE_SESSION_FROM_WALLET");
@@ -158,7 +213,7 @@ public class ApiController {
             String data = ApiRequestService.buildJSONPayload(req);
 
             RESTApiClient connection = new RESTApiClient();
-            String response = connection.postTransaction(data, url, config);
+            ApiResponse response = connection.postTransaction(data, url, config, ApiOperation.UPDATE_SESSION_FROM_WALLET);
 
             // Make a payment using the session
             // Construct API request
@@ -169,20 +224,13 @@ public class ApiController {
 
             // Perform API operation
             RESTApiClient apiConnection = new RESTApiClient();
-            String apiResponse = apiConnection.sendTransaction(payload, reqUrl, config);
+            ApiResponse apiResponse = apiConnection.sendTransaction(payload, reqUrl, config, ApiOperation.PAY);
+            orderStateStore.update(apiResponse.getJson());
 
             TransactionResponse masterpassResponse = ApiResponseService.parseMasterpassResponse(apiResponse);
             mav.setViewName("receipt");
             mav.addObject("response", masterpassResponse);
-
-        }
-        catch(ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        }
-        catch(Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+        });
     }
     /* essentials_exclude_end */
 
@@ -195,11 +243,19 @@ public class ApiController {
      * @return ModelAndView for hosted checkout receipt page or error page
      */
     @GetMapping("/hostedCheckout/{orderId}/{result}")
-    public ModelAndView hostedCheckoutReceipt(@PathVariable(value = "orderId") String orderId, @PathVariable(value = "result") String result) {
-
-        ModelAndView mav = new ModelAndView();
+    public CompletableFuture<ModelAndView> hostedCheckoutReceipt(@PathVariable(value = "orderId") String orderId, @PathVariable(value = "result") String result) {
+
+        // The webhook notification or our own response often got here first, sparing the RETRIEVE_ORDER. Only the
+        // payment makes a receipt, not e.g. the payer authentication before it.
+        OrderStateStore.OrderState orderState = orderStateStore.get(orderId);
+        if (result.equals(ApiResponses.SUCCESS.toString()) && orderState != null && orderState.isPayment()
+                && orderState.hasReceiptDetails()) {
+            ModelAndView mav = new ModelAndView("receipt");
+            mav.addObject("response", orderState.toTransactionResponse());
+            return CompletableFuture.completedFuture(mav);
+        }
 
-        try {
+        return callGateway(mav -> {
             if (result.equals(ApiResponses.SUCCESS.toString())) {
                 ApiRequest req = new ApiRequest();
                 req.setApiOperation("RETRIEVE_ORDER");
@@ -208,7 +264,7 @@ public class ApiController {
                 String requestUrl = ApiRequestService.getRequestUrl(ApiProtocol.REST, config, req);
 
                 RESTApiClient connection = new RESTApiClient();
-                String resp = connection.getTransaction(requestUrl, config);
+                ApiResponse resp = connection.getTransaction(requestUrl, config, ApiOperation.RETRIEVE_ORDER);
                 TransactionResponse hostedCheckoutResponse = ApiResponseService.parseHostedCheckoutResponse(resp);
 
                 mav.addObject("response", hostedCheckoutResponse);
@@ -219,15 +275,7 @@ public class ApiController {
                 mav.addObject("cause", "Payment was unsuccessful");
                 mav.addObject("message", "There was a problem completing your transaction.");
             }
-        }
-        catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        }
-        catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-
-        return mav;
+        });
     }
 
     @GetMapping("/hostedCheckout/{orderId}/{successIndicator}/{sessionId}")
@@ -249,14 +297,16 @@ public class ApiController {
      * Whenever card details need to be collected from the browser, Hosted Session is the preferred method.
      *
      * @param apiRequest needed to retrieve various data to complete API operation
+     * @param idempotencyKey identifies retries of the same submission; defaults to the operation, order and transaction
      * @return ModelAndView for API response page or error page
      */
     @PostMapping("/processHostedSession")
-    public ModelAndView processHostedSession(@RequestBody ApiRequest apiRequest) {
+    public CompletableFuture<ModelAndView> processHostedSession(@RequestBody ApiRequest apiRequest,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
 
-        ModelAndView mav = new ModelAndView();
-
-        try {
+        String key = IdempotencyStore.key(idempotencyKey, apiRequest.getApiOperation(), apiRequest.getOrderId(),
+                apiRequest.getTransactionId());
+        return idempotencyStore.execute(key, () -> callGateway(mav -> {
             ApiRequestService.updateSessionWithOrderInfo(ApiProtocol.REST, apiRequest, config, apiRequest.getSessionId());
 
             String jsonPayload = ApiRequestService.buildJSONPayload(apiRequest);
@@ -264,23 +314,21 @@ public class ApiController {
 
             // Perform API operation
             RESTApiClient apiConnection = new RESTApiClient();
-            String apiResponse = apiConnection.sendTransaction(jsonPayload, requestUrl, config);
+            ApiResponse apiResponse = apiConnection.sendTransaction(jsonPayload, requestUrl, config,
+                    ApiOperation.lookup(apiRequest.getApiOperation()));
+            orderStateStore.update(apiResponse.getJson());
 
             // Format request/response for easy viewing
-            mav = formatApiResponse(mav, apiResponse, jsonPayload, config, apiRequest, requestUrl);
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        } catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+            formatApiResponse(mav, apiResponse, jsonPayload, config, apiRequest, requestUrl);
+        }));
     }
 
     @PostMapping("/tokenize")
-    public ModelAndView tokenizeAndPay(@RequestBody ApiRequest tokenRequest) {
-        ModelAndView mav = new ModelAndView();
-
-        try {
+    public CompletableFuture<ModelAndView> tokenizeAndPay(@RequestBody ApiRequest tokenRequest,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        // The token is only created to pay with, so the submission is identified by its payment
+        String key = IdempotencyStore.key(idempotencyKey, "PAY", tokenRequest.getOrderId(), tokenRequest.getTransactionId());
+        return idempotencyStore.execute(key, () -> callGateway(mav -> {
             ApiRequestService.updateSessionWithOrderInfo(ApiProtocol.REST, tokenRequest, config, tokenRequest.getSessionId());
 
             String tokenRequestUrl = ApiRequestService.getTokenRequestUrl(ApiProtocol.REST, config);
@@ -301,7 +349,7 @@ public class ApiController {
             String tokenPayload = ApiRequestService.buildJSONPayload(tokenRequest);
 
             RESTApiClient tokenConnection = new RESTApiClient();
-            String tokenResponse = tokenConnection.postTransaction(tokenPayload, tokenRequestUrl, config);
+            ApiResponse tokenResponse = tokenConnection.postTransaction(tokenPayload, tokenRequestUrl, config, ApiOperation.CREATE_TOKEN);
             String token = ApiResponseService.parseTokenResponse(tokenResponse);
 
             payRequest.setSourceToken(token);
@@ -309,16 +357,12 @@ public class ApiController {
 
             String paymentPayload = ApiRequestService.buildJSONPayload(payRequest);
             RESTApiClient paymentConnection = new RESTApiClient();
-            String paymentResponse = paymentConnection.sendTransaction(paymentPayload, paymentRequestUrl, config);
+            ApiResponse paymentResponse = paymentConnection.sendTransaction(paymentPayload, paymentRequestUrl, config, ApiOperation.PAY);
+            orderStateStore.update(paymentResponse.getJson());
 
             // Format request/response for easy viewing
-            mav = formatApiResponse(mav, paymentResponse, paymentPayload, config, payRequest, paymentRequestUrl);
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        } catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+            formatApiResponse(mav, paymentResponse, paymentPayload, config, payRequest, paymentRequestUrl);
+        }));
     }
 
     /**
@@ -327,11 +371,9 @@ public class ApiController {
      * @return ModelAndView for api response page or error page
      */
     @PostMapping("/processPayThroughNVP")
-    public ModelAndView processNVPHostedSession(@RequestBody ApiRequest apiRequest) {
-
-        ModelAndView mav = new ModelAndView();
+    public CompletableFuture<ModelAndView> processNVPHostedSession(@RequestBody ApiRequest apiRequest) {
 
-        try {
+        return callGateway(mav -> {
             ApiRequestService.updateSessionWithOrderInfo(ApiProtocol.REST, apiRequest, config, apiRequest.getSessionId());
 
             apiRequest.setApiMethod("POST");
@@ -349,12 +391,7 @@ public class ApiController {
             mav.addObject("method", apiRequest.getApiMethod());
             mav.addObject("request", dataMap);
             mav.addObject("requestUrl", requestUrl);
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        } catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+        });
     }
 
     /**
@@ -362,34 +399,34 @@ public class ApiController {
      * These are operations that would not commonly be invoked via a user interacting with the browser, but a system event (CAPTURE, REFUND, VOID).
      *
      * @param request contains info on how to construct API call
+     * @param idempotencyKey identifies retries of the same submission; defaults to the operation, order and transaction
      * @return ModelAndView for api response page or error page
      */
     @PostMapping("/process")
-    public ModelAndView process(ApiRequest request) {
-
-        ModelAndView mav = new ModelAndView();
+    public CompletableFuture<ModelAndView> process(ApiRequest request,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
 
         String requestUrl = ApiRequestService.getRequestUrl(ApiProtocol.REST, config, request);
         String jsonPayload = ApiRequestService.buildJSONPayload(request);
 
-        String resp = "";
+        ApiOperation operation = ApiOperation.lookup(request.getApiOperation());
 
-        try {
+        // Retrievals are safe to repeat; only transactions are collapsed
+        String key = "PUT".equals(request.getApiMethod()) ? IdempotencyStore.key(idempotencyKey,
+                request.getApiOperation(), request.getOrderId(), request.getTransactionId()) : null;
+        return idempotencyStore.execute(key, () -> callGateway(mav -> {
+            ApiResponse resp = null;
             RESTApiClient connection = new RESTApiClient();
             if (request.getApiMethod().equals("PUT")) {
-                resp = connection.sendTransaction(jsonPayload, requestUrl, config);
+                resp = connection.sendTransaction(jsonPayload, requestUrl, config, operation);
+                orderStateStore.update(resp.getJson());
             } else if (request.getApiMethod().equals("GET")) {
-                resp = connection.getTransaction(requestUrl, config);
+                resp = connection.getTransaction(requestUrl, config, operation);
             }
 
             // Format request/response for easy viewing
-            mav = formatApiResponse(mav, resp, jsonPayload, config, request, requestUrl);
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        } catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+            formatApiResponse(mav, resp, jsonPayload, config, request, requestUrl);
+        }));
     }
 
     /**
@@ -399,23 +436,16 @@ public class ApiController {
      * @return ModelAndView - either redirects to appropriate provider website or returns error page
      */
     @PostMapping("/processBrowserPayment")
-    public ModelAndView processBrowserPayment(ApiRequest request) {
-        ModelAndView mav = new ModelAndView();
-
+    public CompletableFuture<ModelAndView> processBrowserPayment(ApiRequest request) {
         String requestUrl = ApiRequestService.getRequestUrl(ApiProtocol.REST, config, request);
         String jsonPayload = ApiRequestService.buildJSONPayload(request);
 
-        try {
+        return callGateway(mav -> {
             RESTApiClient connection = new RESTApiClient();
-            String resp = connection.sendTransaction(jsonPayload, requestUrl, config);
+            ApiResponse resp = connection.sendTransaction(jsonPayload, requestUrl, config, ApiOperation.INITIATE_BROWSER_PAYMENT);
             // Redirect to provider's website
             mav.setViewName("redirect:" + ApiResponseService.getBrowserPaymentRedirectUrl(resp));
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        } catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+        });
     }
 
     /* essentials_exclude_start */
@@ -428,9 +458,7 @@ public class ApiController {
      * @return ModelAndView for browser payment receipt page or error page
      */
     @GetMapping("/browserPaymentReceipt")
-    public ModelAndView browserPaymentReceipt(@RequestParam("transactionId") String transactionId, @RequestParam("orderId") String orderId) {
-
-        ModelAndView mav = new ModelAndView();
+    public CompletableFuture<ModelAndView> browserPaymentReceipt(@RequestParam("transactionId") String transactionId, @RequestParam("orderId") String orderId) {
 
         ApiRequest apiReq = new ApiRequest();
         apiReq.setTransactionId(transactionId);
@@ -438,27 +466,36 @@ public class ApiController {
 
         String requestUrl = ApiRequestService.getRequestUrl(ApiProtocol.REST, config, apiReq);
 
-        String data = "";
-        try {
+        // Use the known state when it's for this transaction and the payer has completed the interaction; until then
+        // the payment is only initiated, and the gateway may already know more than we do
+        OrderStateStore.OrderState orderState = orderStateStore.get(orderId);
+        if (orderState != null && transactionId.equals(orderState.getTransactionId()) && orderState.hasReceiptDetails()
+                && ApiResponses.COMPLETED.toString().equals(orderState.getInteractionStatus())) {
+            ModelAndView mav = new ModelAndView();
+            showBrowserPaymentReceipt(mav, orderState.toBrowserPaymentResponse());
+            return CompletableFuture.completedFuture(mav);
+        }
+
+        return callGateway(mav -> {
             // Retrieve transaction
             RESTApiClient connection = new RESTApiClient();
-            String resp = connection.getTransaction(requestUrl, config);
+            ApiResponse resp = connection.getTransaction(requestUrl, config, ApiOperation.RETRIEVE_TRANSACTION);
             BrowserPaymentResponse browserPaymentResponse = ApiResponseService.parseBrowserPaymentResponse(resp);
+            orderStateStore.update(resp.getJson());
 
-            if (browserPaymentResponse.getApiResult().equals(ApiResponses.SUCCESS.toString()) && browserPaymentResponse.getInteractionStatus().equals(ApiResponses.COMPLETED.toString())) {
-                mav.addObject("response", browserPaymentResponse);
-                mav.setViewName("receipt");
-            } else {
-                mav.setViewName("error");
-                mav.addObject("cause", browserPaymentResponse.getApiResult());
-                mav.addObject("message", browserPaymentResponse.getAcquirerMessage());
-            }
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        } catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
+            showBrowserPaymentReceipt(mav, browserPaymentResponse);
+        });
+    }
+
+    private static void showBrowserPaymentReceipt(ModelAndView mav, BrowserPaymentResponse browserPaymentResponse) {
+        if (browserPaymentResponse.getApiResult().equals(ApiResponses.SUCCESS.toString()) && browserPaymentResponse.getInteractionStatus().equals(ApiResponses.COMPLETED.toString())) {
+            mav.addObject("response", browserPaymentResponse);
+            mav.setViewName("receipt");
+        } else {
+            mav.setViewName("error");
+            mav.addObject("cause", browserPaymentResponse.getApiResult());
+            mav.addObject("message", browserPaymentResponse.getAcquirerMessage());
         }
-        return mav;
     }
     /* essentials_exclude_end */
 
@@ -471,11 +508,18 @@ public class ApiController {
      * @return ModelAndView - displays issuer authentication form or error page
      */
     @PostMapping("/check3dsEnrollment")
-    public ModelAndView check3dsEnrollment(HttpServletRequest request, @RequestBody ApiRequest apiRequest) {
-
-        ModelAndView mav = new ModelAndView();
+    public CompletableFuture<ModelAndView> check3dsEnrollment(HttpServletRequest request, @RequestBody ApiRequest apiRequest) {
 
+        HttpSession httpSession = request.getSession();
+        // Read on the request thread: the request may be recycled by the time the gateway call runs
+        String responseUrl;
         try {
+            responseUrl = ApiRequestService.getCurrentContext(request) + "/process3ds";
+        } catch (MalformedURLException e) {
+            return CompletableFuture.completedFuture(ExceptionService.constructGeneralErrorResponse(new ModelAndView(), e));
+        }
+
+        return callGateway(mav -> {
             // Retrieve session
             HostedSession session = ApiRequestService.retrieveSession(config, apiRequest.getSessionId());
 
@@ -486,7 +530,6 @@ public class ApiController {
             String secureId = Utils.createUniqueId(THREEDS);
 
             // Save this value in HttpSession to retrieve after returning from issuer authentication form
-            HttpSession httpSession = request.getSession();
             httpSession.setAttribute("secureId", secureId);
             httpSession.setAttribute("sessionId", session.getId());
 
@@ -494,10 +537,10 @@ public class ApiController {
 
             // Perform API operation
             RESTApiClient apiConnection = new RESTApiClient();
-            String apiResponse = apiConnection.sendTransaction(jsonPayload, requestUrl, config);
+            ApiResponse apiResponse = apiConnection.sendTransaction(jsonPayload, requestUrl, config, ApiOperation.CHECK_3DS_ENROLLMENT);
 
             SecureIdEnrollmentResponse secureIdEnrollmentResponseObject = ApiResponseService.parse3DSecureResponse(apiResponse);
-            secureIdEnrollmentResponseObject.setResponseUrl(ApiRequestService.getCurrentContext(request) + "/process3ds");
+            secureIdEnrollmentResponseObject.setResponseUrl(responseUrl);
 
             if (secureIdEnrollmentResponseObject.getStatus().equals(ApiResponses.CARD_ENROLLED.toString())) {
                 mav.setViewName("3dSecurePayerAuthenticationForm");
@@ -508,15 +551,7 @@ public class ApiController {
                 mav.addObject("cause", secureIdEnrollmentResponseObject.getStatus());
                 mav.addObject("message", "Card not enrolled in 3DS.");
             }
-        }
-        catch(ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        }
-        catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-
-        return mav;
+        });
     }
 
     /**
@@ -527,20 +562,18 @@ public class ApiController {
      * @return ModelAndView - displays api response page or error page
      */
     @PostMapping("/process3ds")
-    public ModelAndView process3ds(HttpServletRequest request) {
-
-        ModelAndView mav = new ModelAndView();
+    public CompletableFuture<ModelAndView> process3ds(HttpServletRequest request) {
 
         ApiRequest processAcsRequest = new ApiRequest();
         processAcsRequest.setApiOperation("PROCESS_ACS_RESULT");
         // Retrieve Payment Authentication Response (PaRes) from request
         processAcsRequest.setPaymentAuthResponse(request.getParameter("PaRes"));
 
-        try {
-            HttpSession session = request.getSession();
-            String secureId = (String) session.getAttribute("secureId");
-            String sessionId = (String) session.getAttribute("sessionId");
+        HttpSession session = request.getSession();
+        String secureId = (String) session.getAttribute("secureId");
+        String sessionId = (String) session.getAttribute("sessionId");
 
+        return callGateway(mav -> {
             ApiRequestService.updateSessionWithOrderInfo(ApiProtocol.REST, processAcsRequest, config, sessionId);
 
             // Remove from session after using
@@ -552,7 +585,8 @@ public class ApiController {
             RESTApiClient processAcsConnection = new RESTApiClient();
 
             String data = ApiRequestService.buildJSONPayload(processAcsRequest);
-            String processAcsResponse = processAcsConnection.postTransaction(data, processAcsRequestUrl, config);
+            ApiResponse processAcsResponse = processAcsConnection.postTransaction(data, processAcsRequestUrl, config,
+                    ApiOperation.PROCESS_ACS_RESULT);
             SecureIdEnrollmentResponse secureIdEnrollmentResponseObject = ApiResponseService.parse3DSecureResponse(processAcsResponse);
 
             if (!secureIdEnrollmentResponseObject.getStatus().equals(ApiResponses.AUTHENTICATION_FAILED.toString())) {
@@ -566,21 +600,17 @@ public class ApiController {
 
                 // Perform API operation
                 RESTApiClient paymentConnection = new RESTApiClient();
-                String apiResponse = paymentConnection.sendTransaction(paymentData, paymentRequestUrl, config);
+                ApiResponse apiResponse = paymentConnection.sendTransaction(paymentData, paymentRequestUrl, config, ApiOperation.PAY);
+                orderStateStore.update(apiResponse.getJson());
 
                 // Format request/response for easy viewing
-                mav = formatApiResponse(mav, apiResponse, paymentData, config, paymentRequest, paymentRequestUrl);
+                formatApiResponse(mav, apiResponse, paymentData, config, paymentRequest, paymentRequestUrl);
             } else {
                 mav.setViewName("error");
                 mav.addObject("cause", ApiResponses.AUTHENTICATION_FAILED.toString());
                 mav.addObject("message", "3DS authentication failed. Please try again with another card.");
             }
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        } catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+        });
     }
 
     /**
@@ -588,12 +618,16 @@ public class ApiController {
      * redirected to this URL will be after completing the payer authentication process.
      */
     @PostMapping(value = "/process3ds2Redirect")
-    public ModelAndView process3ds2Redirect(HttpServletRequest request) {
-        ModelAndView mav = new ModelAndView("receipt");
-        try {
-            String gatewayRecommendation = request.getParameter("response.gatewayRecommendation") != null ?
-                    request.getParameter("response.gatewayRecommendation") :
-                    request.getParameter("gatewayRecommendation");
+    public CompletableFuture<ModelAndView> process3ds2Redirect(HttpServletRequest request) {
+        String gatewayRecommendation = request.getParameter("response.gatewayRecommendation") != null ?
+                request.getParameter("response.gatewayRecommendation") :
+                request.getParameter("gatewayRecommendation");
+        String sessionId = request.getParameter("sessionId");
+        String transactionId = request.getParameter("transaction.id");
+        String orderId = request.getParameter("order.id");
+
+        return callGateway(mav -> {
+            mav.setViewName("receipt");
             // When the result of the Authenticate Payer operation indicates that you can proceed with the payment, you
             // may initiate an Authorize or Pay operation.
             if (gatewayRecommendation != null &&
@@ -601,31 +635,24 @@ public class ApiController {
                 // The gateway will use the authentication.transactionId (provided in the request) to lookup the
                 // authentication results that is stored when you asked to perform authentication. The gateway will
                 // pass the required information to the acquirer.
-                TransactionResponse paymentResponse = ApiRequestService.performTransaction(request, config);
-                mav.addObject("response", paymentResponse);
+                ApiResponse apiResponse = ApiRequestService.submitTransaction(sessionId, transactionId, orderId, config);
+                orderStateStore.update(apiResponse.getJson());
+                mav.addObject("response", ApiResponseService.parseAuthorizeResponse(apiResponse));
                 mav.addObject("config", config);
 
             } else {
                 throw new Exception("Gateway Recommendation not " + ApiResponses.PROCEED.toString());
 
             }
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        }
-        catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+        });
     }
 
     /**
      * Pay via SRC
      */
     @PostMapping("/payWithSRC")
-    public ModelAndView payWithSRC(String correlationId, String networkScheme, String sessionId) {
-        ModelAndView mav = new ModelAndView();
-
-        try {
+    public CompletableFuture<ModelAndView> payWithSRC(String correlationId, String networkScheme, String sessionId) {
+        return callGateway(mav -> {
             // Update session from wallet
             ApiRequest req = new ApiRequest();
             req.setApiOperation("UPDATE_SESSION_FROM_WALLET");
@@ -637,7 +664,7 @@ public class ApiController {
             String data = ApiRequestService.buildJSONPayload(req);
 
             RESTApiClient connection = new RESTApiClient();
-            String response = connection.postTransaction(data, url, config);
+            ApiResponse response = connection.postTransaction(data, url, config, ApiOperation.UPDATE_SESSION_FROM_WALLET);
 
             // Make payment using updated session
             ApiRequest apiReq = ApiRequestService.createApiRequest("PAY", config);
@@ -647,17 +674,13 @@ public class ApiController {
 
             // Perform API operation
             RESTApiClient apiConnection = new RESTApiClient();
-            String apiResponse = apiConnection.sendTransaction(payload, reqUrl, config);
+            ApiResponse apiResponse = apiConnection.sendTransaction(payload, reqUrl, config, ApiOperation.PAY);
+            orderStateStore.update(apiResponse.getJson());
 
             TransactionResponse srcResponse = ApiResponseService.parseSecureRemoteCommerceResponse(apiResponse);
             mav.setViewName("receipt");
             mav.addObject("response", srcResponse);
-        } catch (ApiException e) {
-            ExceptionService.constructApiErrorResponse(mav, e);
-        } catch (Exception e) {
-            ExceptionService.constructGeneralErrorResponse(mav, e);
-        }
-        return mav;
+        });
     }
 
 }
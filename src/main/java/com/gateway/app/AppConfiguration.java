@@ -4,9 +4,31 @@
 
 package com.gateway.app;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Clock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.gateway.client.ApiRequestService;
+import com.gateway.client.ApiService;
+import com.gateway.client.GatewayGuards;
+import com.gateway.client.HttpClientProvider;
+import com.gateway.client.PaymentOptionsCache;
+import com.gateway.client.RandomIdGenerator;
+import com.gateway.client.TimeOrderedIdGenerator;
+import com.gateway.client.TimeoutPolicy;
+import com.gateway.client.TransactionLedger;
+import com.gateway.client.Utils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 
 @Configuration
 public class AppConfiguration {
@@ -38,15 +60,162 @@ public class AppConfiguration {
     @Value("${gateway.keystore.password}")
     private String keystorePassword;
 
+    @Value("${gateway.keystore.reload-interval}")
+    private long keystoreReloadInterval;
+
     @Value("${webhooks.notification.secret}")
     private String webhooksNotificationSecret;
 
+    @Value("${webhooks.log.directory}")
+    private String webhooksLogDirectory;
+
+    @Value("${webhooks.log.segment-bytes}")
+    private long webhooksLogSegmentBytes;
+
+    @Value("${webhooks.queue.capacity}")
+    private int webhooksQueueCapacity;
+
+    @Value("${webhooks.queue.workers}")
+    private int webhooksQueueWorkers;
+
+    @Value("${webhooks.queue.overflow}")
+    private String webhooksQueueOverflow;
+
+    @Value("${webhooks.queue.block-timeout}")
+    private long webhooksQueueBlockTimeout;
+
+    @Value("${webhooks.stream.buffer-size}")
+    private int webhooksStreamBufferSize;
+
+    @Value("${webhooks.stream.timeout}")
+    private long webhooksStreamTimeout;
+
+    @Value("${gateway.order-state.max-size}")
+    private int orderStateMaxSize;
+
+    @Value("${gateway.order-state.max-age}")
+    private long orderStateMaxAge;
+
     @Value("${gateway.threeds.api.version}")
     private String threeDSApiVersion;
 
     @Value("${GATEWAY_SRCI_VERSION:1.0.0}")
     private String srciVersion;
 
+    @Value("${gateway.http.pool.max-total}")
+    private int httpMaxConnections;
+
+    @Value("${gateway.http.pool.max-per-route}")
+    private int httpMaxConnectionsPerRoute;
+
+    @Value("${gateway.http.pool.idle-timeout}")
+    private long httpIdleConnectionTimeout;
+
+    @Value("${gateway.http.keep-alive}")
+    private long httpKeepAliveDuration;
+
+    @Value("${gateway.http.timeout.connect}")
+    private int httpConnectTimeout;
+
+    @Value("${gateway.http.timeout.socket}")
+    private int httpSocketTimeout;
+
+    @Value("${gateway.http.timeout.connection-request}")
+    private int httpConnectionRequestTimeout;
+
+    @Value("${gateway.http.timeout.operations}")
+    private String httpOperationTimeouts;
+
+    @Value("${gateway.request.deadline}")
+    private long requestDeadline;
+
+    @Value("${gateway.circuit-breaker.failure-rate-threshold}")
+    private int circuitBreakerFailureRateThreshold;
+
+    @Value("${gateway.circuit-breaker.slow-call-rate-threshold}")
+    private int circuitBreakerSlowCallRateThreshold;
+
+    @Value("${gateway.circuit-breaker.slow-call-duration}")
+    private long circuitBreakerSlowCallDuration;
+
+    @Value("${gateway.circuit-breaker.minimum-calls}")
+    private int circuitBreakerMinimumCalls;
+
+    @Value("${gateway.circuit-breaker.window}")
+    private long circuitBreakerWindow;
+
+    @Value("${gateway.circuit-breaker.open-duration}")
+    private long circuitBreakerOpenDuration;
+
+    @Value("${gateway.circuit-breaker.half-open-calls}")
+    private int circuitBreakerHalfOpenCalls;
+
+    @Value("${gateway.bulkhead.max-concurrent-calls}")
+    private int bulkheadMaxConcurrentCalls;
+
+    @Value("${gateway.bulkhead.families}")
+    private String bulkheadFamilies;
+
+    @Value("${gateway.bulkhead.max-wait}")
+    private long bulkheadMaxWait;
+
+    @Value("${gateway.executor.threads}")
+    private int executorThreads;
+
+    @Value("${gateway.executor.queue-capacity}")
+    private int executorQueueCapacity;
+
+    @Value("${gateway.payment-options.ttl}")
+    private long paymentOptionsTimeToLive;
+
+    @Value("${gateway.payment-options.refresh-ahead}")
+    private long paymentOptionsRefreshAhead;
+
+    @Value("${gateway.payment-options.warm-up}")
+    private boolean paymentOptionsWarmUp;
+
+    @Value("${gateway.session-pool.low-watermark}")
+    private int sessionPoolLowWatermark;
+
+    @Value("${gateway.session-pool.high-watermark}")
+    private int sessionPoolHighWatermark;
+
+    @Value("${gateway.session-pool.max-age}")
+    private long sessionPoolMaxAge;
+
+    @Value("${gateway.session-pool.refill-interval}")
+    private long sessionPoolRefillInterval;
+
+    @Value("${gateway.id.generator}")
+    private String idGenerator;
+
+    @Value("${gateway.id.node}")
+    private int idNode;
+
+    @Value("${spring.datasource.url}")
+    private String datasourceUrl;
+
+    @Value("${spring.datasource.hikari.connection-timeout}")
+    private long datasourceConnectionTimeout;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size}")
+    private int datasourceMaximumPoolSize;
+
+    @Value("${gateway.idempotency.max-size}")
+    private int idempotencyMaxSize;
+
+    @Value("${gateway.idempotency.ttl}")
+    private long idempotencyTimeToLive;
+
+    @Value("${gateway.ledger.queue-capacity}")
+    private int ledgerQueueCapacity;
+
+    @Value("${gateway.ledger.batch-size}")
+    private int ledgerBatchSize;
+
+    @Value("${gateway.ledger.max-delay}")
+    private long ledgerMaxDelay;
+
     @Bean
     public Config buildConfig() {
 
@@ -64,8 +233,16 @@ public class AppConfiguration {
             config.setAuthenticationType(Config.AuthenticationType.CERTIFICATE);
             config.setKeyStore(keystore);
             config.setKeyStorePassword(keystorePassword);
+            config.setKeyStoreReloadInterval(keystoreReloadInterval);
             if (gatewayHost != null)
                 config.setGatewayHost(gatewayHost.trim());
+
+            // Build the TLS key material up front so a bad keystore fails at startup rather than on the first payment
+            try {
+                HttpClientProvider.getKeyStoreSocketFactory(config);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Unable to load the keystore " + keystore, e);
+            }
         }
         else if (apiPassword != null) {
             config.setAuthenticationType(Config.AuthenticationType.PASSWORD);
@@ -85,7 +262,198 @@ public class AppConfiguration {
         config.setApmVersion(apmVersion);
         config.setApiThreeDsVersion(threeDSApiVersion);
         config.setSrciVersion(srciVersion);
+        config.setHttpMaxConnections(httpMaxConnections);
+        config.setHttpMaxConnectionsPerRoute(httpMaxConnectionsPerRoute);
+        config.setHttpIdleConnectionTimeout(httpIdleConnectionTimeout);
+        config.setHttpKeepAliveDuration(httpKeepAliveDuration);
+
+        TimeoutPolicy timeoutPolicy = new TimeoutPolicy(httpConnectTimeout, httpSocketTimeout, httpConnectionRequestTimeout);
+        timeoutPolicy.parseOperationTimeouts(httpOperationTimeouts);
+        config.setTimeoutPolicy(timeoutPolicy);
+
+        GatewayGuards gatewayGuards = new GatewayGuards();
+        gatewayGuards.setFailureRateThreshold(circuitBreakerFailureRateThreshold);
+        gatewayGuards.setSlowCallRateThreshold(circuitBreakerSlowCallRateThreshold);
+        gatewayGuards.setSlowCallDuration(circuitBreakerSlowCallDuration);
+        gatewayGuards.setMinimumCalls(circuitBreakerMinimumCalls);
+        gatewayGuards.setWindow(circuitBreakerWindow);
+        gatewayGuards.setOpenDuration(circuitBreakerOpenDuration);
+        gatewayGuards.setHalfOpenCalls(circuitBreakerHalfOpenCalls);
+        gatewayGuards.setMaxConcurrentCalls(bulkheadMaxConcurrentCalls);
+        gatewayGuards.parseFamilyMaxConcurrentCalls(bulkheadFamilies);
+        gatewayGuards.setMaxWait(bulkheadMaxWait);
+        config.setGatewayGuards(gatewayGuards);
+        config.setRequestDeadline(requestDeadline);
+        config.setPaymentOptionsTimeToLive(paymentOptionsTimeToLive);
+        config.setPaymentOptionsRefreshAhead(paymentOptionsRefreshAhead);
 
         return config;
     }
+
+    /**
+     * Selects how order, transaction and other identifiers are generated
+     */
+    @PostConstruct
+    public void configureIdGenerator() {
+        switch (idGenerator) {
+            case "random":
+                Utils.setIdGenerator(new RandomIdGenerator());
+                break;
+            case "time-ordered":
+                Utils.setIdGenerator(new TimeOrderedIdGenerator(idNode < 0 ? TimeOrderedIdGenerator.defaultNode() : idNode));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown ID generator " + idGenerator + ", expected random or time-ordered");
+        }
+    }
+
+    /**
+     * Thread pool used by {@link ApiController} to call the gateway without holding on to a request thread
+     */
+    @Bean(destroyMethod = "shutdown")
+    public GatewayExecutor gatewayExecutor() {
+        return new GatewayExecutor(executorThreads, executorQueueCapacity);
+    }
+
+    /**
+     * Sessions created ahead of time for the pages that need one to render
+     */
+    @Bean(destroyMethod = "shutdown")
+    public HostedSessionPool hostedSessionPool(Config config) {
+        return new HostedSessionPool(() -> ApiRequestService.createHostedSession(config), sessionPoolLowWatermark,
+                sessionPoolHighWatermark, sessionPoolMaxAge, sessionPoolRefillInterval);
+    }
+
+    /**
+     * Log the webhook notifications received from the gateway are appended to
+     */
+    @Bean(destroyMethod = "close")
+    public WebhookLog webhookLog() throws IOException {
+        return new WebhookLog(Paths.get(webhooksLogDirectory), webhooksLogSegmentBytes);
+    }
+
+    /**
+     * Queue the webhook notifications wait in until they're appended to the log. Spilled notifications go to a log in
+     * the <pre>spill</pre> directory next to the notifications.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public WebhookIngestionQueue webhookIngestionQueue(WebhookLog webhookLog) throws IOException {
+        return new WebhookIngestionQueue(webhookLog, webhooksQueueCapacity, webhooksQueueWorkers,
+                WebhookIngestionQueue.Overflow.valueOf(webhooksQueueOverflow.trim().toUpperCase()),
+                webhooksQueueBlockTimeout, Paths.get(webhooksLogDirectory, "spill"), webhooksLogSegmentBytes);
+    }
+
+    /**
+     * Pushes the notifications to the webhooks page as they're logged
+     */
+    @Bean(destroyMethod = "shutdown")
+    public WebhookNotificationBroadcaster webhookNotificationBroadcaster(WebhookLog webhookLog,
+            WebhookIngestionQueue webhookIngestionQueue) {
+        WebhookNotificationBroadcaster broadcaster = new WebhookNotificationBroadcaster(webhooksStreamBufferSize,
+                webhooksStreamTimeout, webhookLog.getNextOffset());
+        webhookIngestionQueue.addListener((offset, notification, payload) -> broadcaster.publish(offset, notification));
+        return broadcaster;
+    }
+
+    /**
+     * Time source of the state that expires, replaced in tests
+     */
+    @Bean
+    public Clock clock() {
+        return Clock.systemUTC();
+    }
+
+    /**
+     * Latest state of recent orders, fed by our transaction responses and the webhook notifications, so receipts
+     * don't need a round trip to the gateway
+     */
+    @Bean
+    public OrderStateStore orderStateStore(WebhookIngestionQueue webhookIngestionQueue, Clock clock) {
+        OrderStateStore store = new OrderStateStore(orderStateMaxSize, orderStateMaxAge, clock);
+        webhookIngestionQueue.addListener((offset, notification, payload) -> store.update(payload));
+        return store;
+    }
+
+    /**
+     * Collapses duplicate payment submissions into one gateway call
+     */
+    @Bean
+    public IdempotencyStore idempotencyStore() {
+        return new IdempotencyStore(idempotencyMaxSize, idempotencyTimeToLive);
+    }
+
+    /**
+     * Connection pool of the application database, only set up when a database URL is configured
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("!'${spring.datasource.url:}'.isEmpty()")
+    public HikariDataSource dataSource() {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("gateway-db");
+        hikariConfig.setJdbcUrl(datasourceUrl);
+        hikariConfig.setConnectionTimeout(datasourceConnectionTimeout);
+        hikariConfig.setMaximumPoolSize(datasourceMaximumPoolSize);
+        if (datasourceUrl.startsWith("jdbc:postgresql:")) {
+            // Lets the driver send each ledger batch as multi-row inserts rather than one statement per row
+            hikariConfig.addDataSourceProperty("reWriteBatchedInserts", "true");
+        }
+        return new HikariDataSource(hikariConfig);
+    }
+
+    /**
+     * Records every gateway call and its outcome in the application database, when there is one
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnExpression("!'${spring.datasource.url:}'.isEmpty()")
+    public JdbcTransactionLedger transactionLedger(HikariDataSource dataSource) {
+        JdbcTransactionLedger ledger = new JdbcTransactionLedger(dataSource, ledgerQueueCapacity, ledgerBatchSize,
+                ledgerMaxDelay);
+        ApiService.setTransactionLedger(ledger);
+        return ledger;
+    }
+
+    /**
+     * Per-operation gateway latency, payload size and error counts, and the circuit breaker states, served by actuator
+     */
+    @Bean
+    public GatewayMetricsEndpoint gatewayMetricsEndpoint(Config config) {
+        return new GatewayMetricsEndpoint(config);
+    }
+
+    /**
+     * Starts filling the session pool once the application has started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startHostedSessionPool(ApplicationReadyEvent event) {
+        event.getApplicationContext().getBean(HostedSessionPool.class).start();
+    }
+
+    /**
+     * Starts appending queued webhook notifications to the log once the application has started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWebhookIngestion(ApplicationReadyEvent event) {
+        event.getApplicationContext().getBean(WebhookIngestionQueue.class).start();
+    }
+
+    /**
+     * Retrieves the payment options in the background once the application has started, so the first payment doesn't
+     * wait for the Payment Options Inquiry
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpPaymentOptions(ApplicationReadyEvent event) {
+        if (paymentOptionsWarmUp) {
+            PaymentOptionsCache.forConfig(event.getApplicationContext().getBean(Config.class)).warmUp();
+        }
+    }
+
+    /**
+     * Releases the pooled gateway connections and cached payment options when the application context is closed
+     */
+    @PreDestroy
+    public void closeHttpClients() {
+        ApiService.setTransactionLedger(TransactionLedger.NONE);
+        HttpClientProvider.shutdown();
+        PaymentOptionsCache.shutdown();
+    }
 }
@@ -4,8 +4,12 @@
 
 package com.gateway.app;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
 
+import com.gateway.client.GatewayGuards;
+import com.gateway.client.TimeoutPolicy;
 import com.gateway.model.SupportedPaymentOperation;
 import com.gateway.model.TransactionMode;
 
@@ -29,6 +33,17 @@ public class Config {
     private AuthenticationType authenticationType;
     private TransactionMode transactionMode;
     private List<SupportedPaymentOperation> supportedPaymentOperations;
+    private int httpMaxConnections = 50;
+    private int httpMaxConnectionsPerRoute = 20;
+    private long httpIdleConnectionTimeout = 30000;
+    private long httpKeepAliveDuration = 30000;
+    private long keyStoreReloadInterval = 10000;
+    private TimeoutPolicy timeoutPolicy = TimeoutPolicy.defaultPolicy();
+    private GatewayGuards gatewayGuards = new GatewayGuards();
+    private long requestDeadline = 45000;
+    private long paymentOptionsTimeToLive = 3600000;
+    private long paymentOptionsRefreshAhead = 300000;
+    private volatile String basicAuthorization;
 
 
     public List<SupportedPaymentOperation> getSupportedPaymentOperations() { return supportedPaymentOperations; }
@@ -79,6 +94,7 @@ public class Config {
 
     public void setApiPassword(String apiPassword) {
         this.apiPassword = apiPassword;
+        this.basicAuthorization = null;
     }
 
     public String getApiBaseURL() {
@@ -119,6 +135,23 @@ public class Config {
 
     public void setApiUsername(String apiUsername) {
         this.apiUsername = apiUsername;
+        this.basicAuthorization = null;
+    }
+
+    /**
+     * Basic authorization header value for the API username and password, built once and rebuilt after either of
+     * them changes
+     *
+     * @return authorization header value
+     */
+    public String getBasicAuthorization() {
+        String authorization = basicAuthorization;
+        if (authorization == null) {
+            String credentials = apiUsername + ":" + apiPassword;
+            authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+            basicAuthorization = authorization;
+        }
+        return authorization;
     }
 
     public String getKeyStore() {
@@ -176,4 +209,84 @@ public class Config {
     public void setSrciVersion(String srciVersion) {
         this.srciVersion = srciVersion;
     }
+
+    public int getHttpMaxConnections() {
+        return httpMaxConnections;
+    }
+
+    public void setHttpMaxConnections(int httpMaxConnections) {
+        this.httpMaxConnections = httpMaxConnections;
+    }
+
+    public int getHttpMaxConnectionsPerRoute() {
+        return httpMaxConnectionsPerRoute;
+    }
+
+    public void setHttpMaxConnectionsPerRoute(int httpMaxConnectionsPerRoute) {
+        this.httpMaxConnectionsPerRoute = httpMaxConnectionsPerRoute;
+    }
+
+    public long getHttpIdleConnectionTimeout() {
+        return httpIdleConnectionTimeout;
+    }
+
+    public void setHttpIdleConnectionTimeout(long httpIdleConnectionTimeout) {
+        this.httpIdleConnectionTimeout = httpIdleConnectionTimeout;
+    }
+
+    public long getHttpKeepAliveDuration() {
+        return httpKeepAliveDuration;
+    }
+
+    public void setHttpKeepAliveDuration(long httpKeepAliveDuration) {
+        this.httpKeepAliveDuration = httpKeepAliveDuration;
+    }
+
+    public long getKeyStoreReloadInterval() {
+        return keyStoreReloadInterval;
+    }
+
+    public void setKeyStoreReloadInterval(long keyStoreReloadInterval) {
+        this.keyStoreReloadInterval = keyStoreReloadInterval;
+    }
+
+    public TimeoutPolicy getTimeoutPolicy() {
+        return timeoutPolicy;
+    }
+
+    public void setTimeoutPolicy(TimeoutPolicy timeoutPolicy) {
+        this.timeoutPolicy = timeoutPolicy;
+    }
+
+    public GatewayGuards getGatewayGuards() {
+        return gatewayGuards;
+    }
+
+    public void setGatewayGuards(GatewayGuards gatewayGuards) {
+        this.gatewayGuards = gatewayGuards;
+    }
+
+    public long getRequestDeadline() {
+        return requestDeadline;
+    }
+
+    public void setRequestDeadline(long requestDeadline) {
+        this.requestDeadline = requestDeadline;
+    }
+
+    public long getPaymentOptionsTimeToLive() {
+        return paymentOptionsTimeToLive;
+    }
+
+    public void setPaymentOptionsTimeToLive(long paymentOptionsTimeToLive) {
+        this.paymentOptionsTimeToLive = paymentOptionsTimeToLive;
+    }
+
+    public long getPaymentOptionsRefreshAhead() {
+        return paymentOptionsRefreshAhead;
+    }
+
+    public void setPaymentOptionsRefreshAhead(long paymentOptionsRefreshAhead) {
+        this.paymentOptionsRefreshAhead = paymentOptionsRefreshAhead;
+    }
 }
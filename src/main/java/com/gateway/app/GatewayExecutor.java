@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Bounded thread pool that runs the gateway calls made by {@link ApiController}. Request threads hand the work over and
+ * go back to Tomcat while the gateway is being called. When every worker is busy and the queue is full, new work is
+ * rejected straight away instead of piling up behind a slow gateway.
+ *
+ * The pool state is published under <pre>gateway.executor.*</pre> on the actuator metrics endpoint.
+ */
+public class GatewayExecutor implements Executor, PublicMetrics {
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param threads       maximum number of gateway calls running at the same time
+     * @param queueCapacity maximum number of gateway calls waiting for a thread
+     */
+    public GatewayExecutor(int threads, int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new GatewayThreadFactory());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        try {
+            executor.execute(command);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("gateway.executor.active", executor.getActiveCount()));
+        metrics.add(new Metric<>("gateway.executor.pool.size", executor.getPoolSize()));
+        metrics.add(new Metric<>("gateway.executor.pool.max", executor.getMaximumPoolSize()));
+        metrics.add(new Metric<>("gateway.executor.queue.size", executor.getQueue().size()));
+        metrics.add(new Metric<>("gateway.executor.queue.remaining", executor.getQueue().remainingCapacity()));
+        metrics.add(new Metric<>("gateway.executor.completed", executor.getCompletedTaskCount()));
+        metrics.add(new Metric<>("gateway.executor.rejected", rejected.get()));
+        return metrics;
+    }
+
+    /**
+     * Stops accepting work and waits briefly for the running gateway calls to finish
+     */
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static final class GatewayThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gateway-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.util.Map;
+
+import com.gateway.client.GatewayGuards;
+import com.gateway.client.GatewayMetrics;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+/**
+ * Actuator endpoint at <pre>/gateway</pre> reporting the latency percentiles, payload sizes and error codes of every
+ * gateway operation, and the connection pool lease waits, as recorded by {@link GatewayMetrics}, along with the state
+ * of the circuit breakers and bulkheads and their recent state changes, from {@link GatewayGuards}. Like the other
+ * actuator endpoints that describe the application internals it is sensitive, so it is only exposed to authorized
+ * users unless <pre>endpoints.gateway.sensitive=false</pre>.
+ */
+public class GatewayMetricsEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final Config config;
+
+    public GatewayMetricsEndpoint(Config config) {
+        super("gateway");
+        this.config = config;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        Map<String, Object> snapshot = GatewayMetrics.snapshot();
+        snapshot.put("guards", config.getGatewayGuards().snapshot());
+        return snapshot;
+    }
+}
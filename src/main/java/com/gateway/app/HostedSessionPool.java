@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gateway.client.HostedSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Pool of empty gateway sessions created ahead of time, so pages that need a session can be rendered without waiting
+ * for a CREATE_SESSION call. A background thread tops the pool up to the high watermark whenever it drops below the
+ * low watermark. Sessions are handed out oldest first and dropped once they reach the maximum age, well before the
+ * gateway would expire them. When the pool is empty, a session is created on the calling thread as before.
+ *
+ * The pool state is published under <pre>gateway.sessions.pool.*</pre> on the actuator metrics endpoint.
+ */
+public class HostedSessionPool implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(HostedSessionPool.class);
+
+    private final SessionFactory sessionFactory;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final long maxAge;
+    private final long refillInterval;
+    private final Deque<PooledSession> sessions = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong taken = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final ScheduledExecutorService refiller;
+
+    /**
+     * Creates a new gateway session
+     */
+    @FunctionalInterface
+    public interface SessionFactory {
+        HostedSession create() throws Exception;
+    }
+
+    /**
+     * @param sessionFactory creates the sessions, e.g. with CREATE_SESSION
+     * @param lowWatermark   number of sessions below which the pool is refilled
+     * @param highWatermark  number of sessions the pool is refilled to, 0 to disable pooling
+     * @param maxAge         time in milliseconds after which a session is no longer handed out
+     * @param refillInterval time in milliseconds between background checks for aged sessions
+     */
+    public HostedSessionPool(SessionFactory sessionFactory, int lowWatermark, int highWatermark, long maxAge,
+            long refillInterval) {
+        this.sessionFactory = sessionFactory;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+        this.highWatermark = highWatermark;
+        this.maxAge = maxAge;
+        this.refillInterval = refillInterval;
+        this.refiller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gateway-session-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Fills the pool in the background and keeps it filled. Does nothing when pooling is disabled.
+     */
+    public void start() {
+        if (highWatermark > 0) {
+            refiller.scheduleWithFixedDelay(this::refill, 0, refillInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes a session from the pool, or creates one if the pool is empty. The session belongs to the caller and is
+     * never handed out again.
+     *
+     * @return an empty gateway session
+     * @throws Exception if the pool was empty and the session couldn't be created
+     */
+    public HostedSession take() throws Exception {
+        long now = System.currentTimeMillis();
+        PooledSession pooled;
+        while ((pooled = sessions.pollFirst()) != null) {
+            size.decrementAndGet();
+            if (now - pooled.createdAt < maxAge) {
+                taken.incrementAndGet();
+                requestRefill();
+                return pooled.session;
+            }
+            expired.incrementAndGet();
+        }
+        misses.incrementAndGet();
+        requestRefill();
+        return sessionFactory.create();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("gateway.sessions.pool.size", size.get()));
+        metrics.add(new Metric<>("gateway.sessions.pool.low-watermark", lowWatermark));
+        metrics.add(new Metric<>("gateway.sessions.pool.high-watermark", highWatermark));
+        metrics.add(new Metric<>("gateway.sessions.pool.created", created.get()));
+        metrics.add(new Metric<>("gateway.sessions.pool.taken", taken.get()));
+        metrics.add(new Metric<>("gateway.sessions.pool.misses", misses.get()));
+        metrics.add(new Metric<>("gateway.sessions.pool.expired", expired.get()));
+        metrics.add(new Metric<>("gateway.sessions.pool.failures", failures.get()));
+        return metrics;
+    }
+
+    /**
+     * Stops refilling the pool. The pooled sessions are left to expire on the gateway.
+     */
+    public void shutdown() throws InterruptedException {
+        refiller.shutdownNow();
+        refiller.awaitTermination(10, TimeUnit.SECONDS);
+        sessions.clear();
+        size.set(0);
+    }
+
+    private void requestRefill() {
+        if (highWatermark > 0 && size.get() < lowWatermark && refillScheduled.compareAndSet(false, true)) {
+            try {
+                refiller.execute(this::refill);
+            } catch (RejectedExecutionException e) {
+                refillScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Drops the aged sessions, then creates sessions until the pool is back at the high watermark. Only ever runs on
+     * the refill thread.
+     */
+    private void refill() {
+        refillScheduled.set(false);
+        evictAged();
+        while (size.get() < highWatermark && !Thread.currentThread().isInterrupted()) {
+            try {
+                HostedSession session = sessionFactory.create();
+                sessions.offerLast(new PooledSession(session, System.currentTimeMillis()));
+                size.incrementAndGet();
+                created.incrementAndGet();
+            } catch (Exception e) {
+                // Try again on the next scheduled run rather than hammering a gateway that is failing
+                failures.incrementAndGet();
+                logger.warn("Unable to create a pooled session", e);
+                return;
+            }
+        }
+    }
+
+    private void evictAged() {
+        long now = System.currentTimeMillis();
+        PooledSession oldest;
+        while ((oldest = sessions.peekFirst()) != null && now - oldest.createdAt >= maxAge) {
+            if (sessions.removeFirstOccurrence(oldest)) {
+                size.decrementAndGet();
+                expired.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class PooledSession {
+        private final HostedSession session;
+        private final long createdAt;
+
+        private PooledSession(HostedSession session, long createdAt) {
+            this.session = session;
+            this.createdAt = createdAt;
+        }
+    }
+}
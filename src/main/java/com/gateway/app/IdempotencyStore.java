@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.servlet.ModelAndView;
+
+/**
+ * Collapses duplicate payment submissions - double clicks and browser retries - into a single gateway call. A
+ * submission is identified by its operation and order ID, along with the <pre>Idempotency-Key</pre> header when the
+ * client sends one and the transaction ID otherwise. A client key never matches across orders or operations, so
+ * reusing one can't replay another payment's result in place of sending a new one.
+ *
+ * A duplicate arriving while the first submission is still running waits for it and gets the same result. A duplicate
+ * arriving later gets the cached result, for as long as the time to live allows. Only successful results are cached:
+ * after an error page the submission can be retried.
+ *
+ * The store state is published under <pre>gateway.idempotency.*</pre> on the actuator metrics endpoint.
+ */
+public class IdempotencyStore implements PublicMetrics {
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final Map<String, CompletableFuture<ModelAndView>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * Results in the order they completed, which is also the order they expire in
+     */
+    private final Map<String, CachedResult> results = new LinkedHashMap<String, CachedResult>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+            return size() > maxSize || eldest.getValue().isExpired();
+        }
+    };
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
+    /**
+     * @param maxSize    number of results kept, 0 to only collapse concurrent duplicates
+     * @param timeToLive time in milliseconds a result is replayed for
+     */
+    public IdempotencyStore(int maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Builds the key of a submission
+     *
+     * @param idempotencyKey key sent by the client, or null
+     * @param operation      API operation of the submission
+     * @param orderId        order ID of the submission
+     * @param transactionId  transaction ID of the submission
+     * @return the key, or null if the submission can't be identified
+     */
+    public static String key(String idempotencyKey, String operation, String orderId, String transactionId) {
+        if (operation == null || orderId == null) {
+            return null;
+        }
+        if (idempotencyKey != null && !idempotencyKey.trim().isEmpty()) {
+            return operation + ":" + orderId + ":key:" + idempotencyKey.trim();
+        }
+        if (transactionId == null) {
+            return null;
+        }
+        return operation + ":" + orderId + ":" + transactionId;
+    }
+
+    /**
+     * Runs a submission, unless the same one is running or has recently completed
+     *
+     * @param key  key of the submission, or null to always run it
+     * @param call starts the submission
+     * @return the result of the submission, or a copy of the result of the first one
+     */
+    public CompletableFuture<ModelAndView> execute(String key, Supplier<CompletableFuture<ModelAndView>> call) {
+        if (key == null) {
+            executed.incrementAndGet();
+            return call.get();
+        }
+        ModelAndView cached = getCached(key);
+        if (cached != null) {
+            replayed.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<ModelAndView> result = new CompletableFuture<>();
+        CompletableFuture<ModelAndView> first = inFlight.putIfAbsent(key, result);
+        if (first != null) {
+            joined.incrementAndGet();
+            return first.thenApply(IdempotencyStore::copy);
+        }
+        // The first submission may have completed between the cache lookup and now
+        cached = getCached(key);
+        if (cached != null) {
+            inFlight.remove(key, result);
+            result.complete(cached);
+            replayed.incrementAndGet();
+            return result;
+        }
+
+        executed.incrementAndGet();
+        CompletableFuture<ModelAndView> submission;
+        try {
+            submission = call.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+        submission.whenComplete((mav, error) -> {
+            // Cache before leaving the in-flight map, so a duplicate always finds one or the other
+            if (error == null && isSuccessful(mav)) {
+                synchronized (results) {
+                    results.put(key, new CachedResult(copy(mav), System.currentTimeMillis() + timeToLive));
+                }
+            }
+            inFlight.remove(key, result);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(mav);
+            }
+        });
+        return result;
+    }
+
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("gateway.idempotency.in-flight", inFlight.size()));
+        metrics.add(new Metric<>("gateway.idempotency.cached", size()));
+        metrics.add(new Metric<>("gateway.idempotency.executed", executed.get()));
+        metrics.add(new Metric<>("gateway.idempotency.joined", joined.get()));
+        metrics.add(new Metric<>("gateway.idempotency.replayed", replayed.get()));
+        return metrics;
+    }
+
+    private ModelAndView getCached(String key) {
+        CachedResult cached;
+        synchronized (results) {
+            cached = results.get(key);
+            if (cached != null && cached.isExpired()) {
+                results.remove(key);
+                cached = null;
+            }
+        }
+        return cached != null ? copy(cached.mav) : null;
+    }
+
+    private static boolean isSuccessful(ModelAndView mav) {
+        return !"error".equals(mav.getViewName()) && (mav.getStatus() == null || mav.getStatus().value() < 400);
+    }
+
+    /**
+     * Every response gets its own ModelAndView, as Spring adds to the model while rendering
+     */
+    private static ModelAndView copy(ModelAndView mav) {
+        ModelAndView copy = new ModelAndView();
+        if (mav.isReference()) {
+            copy.setViewName(mav.getViewName());
+        } else {
+            copy.setView(mav.getView());
+        }
+        copy.addAllObjects(mav.getModel());
+        copy.setStatus(mav.getStatus());
+        return copy;
+    }
+
+    private static final class CachedResult {
+        private final ModelAndView mav;
+        private final long expiresAt;
+
+        CachedResult(ModelAndView mav, long expiresAt) {
+            this.mav = mav;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import com.gateway.client.LedgerEntry;
+import com.gateway.client.TransactionLedger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Transaction ledger kept in the <pre>gateway_ledger</pre> table of the application database. Recording an entry only
+ * queues it, so gateway calls never wait on the database. A single writer thread takes the entries off the queue and
+ * inserts them as one JDBC batch per transaction: a batch is written as soon as it's full, or once its first entry has
+ * waited for the maximum delay, so an entry is never held back for longer than that by a quiet period.
+ *
+ * The ledger is a record of the calls, not part of them: entries arriving while the queue is full are dropped, and a
+ * batch the database rejects is logged and dropped. Both are counted. The table is created on the first write if it
+ * doesn't exist. Entries still queued when the ledger is shut down are written before it returns.
+ *
+ * The ledger state is published under <pre>gateway.ledger.*</pre> on the actuator metrics endpoint.
+ */
+public class JdbcTransactionLedger implements TransactionLedger, PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcTransactionLedger.class);
+
+    static final String TABLE = "gateway_ledger";
+
+    private static final String[] CREATE_TABLE = {
+            "CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "id BIGSERIAL PRIMARY KEY, "
+                    + "created_at TIMESTAMP NOT NULL, "
+                    + "operation VARCHAR(64), "
+                    + "protocol VARCHAR(8) NOT NULL, "
+                    + "method VARCHAR(8) NOT NULL, "
+                    + "url VARCHAR NOT NULL, "
+                    + "order_id VARCHAR(64), "
+                    + "order_status VARCHAR(64), "
+                    + "amount NUMERIC(19, 4), "
+                    + "currency VARCHAR(3), "
+                    + "transaction_id VARCHAR(64), "
+                    + "transaction_type VARCHAR(64), "
+                    + "result VARCHAR(16), "
+                    + "gateway_code VARCHAR(64), "
+                    + "error_code VARCHAR, "
+                    + "latency_ms BIGINT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS " + TABLE + "_order_id ON " + TABLE + " (order_id)"
+    };
+
+    private static final String INSERT = "INSERT INTO " + TABLE + " (created_at, operation, protocol, method, url, "
+            + "order_id, order_status, amount, currency, transaction_id, transaction_type, result, gateway_code, "
+            + "error_code, latency_ms) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * How long the writer waits for an entry before checking whether the ledger was shut down
+     */
+    private static final long IDLE_POLL_INTERVAL = 100;
+
+    private final DataSource dataSource;
+    private final BlockingQueue<LedgerEntry> queue;
+    private final int batchSize;
+    private final long maxDelay;
+    private final Thread writer;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile boolean closed;
+    /**
+     * Whether the table is known to exist; only used on the writer thread
+     */
+    private boolean tableCreated;
+
+    /**
+     * Starts the writer thread
+     *
+     * @param dataSource    pool the ledger connections are taken from
+     * @param queueCapacity number of entries waiting to be written, beyond which new entries are dropped
+     * @param batchSize     maximum number of entries inserted in one transaction
+     * @param maxDelay      time in milliseconds an entry waits for its batch to fill up before being written anyway
+     */
+    public JdbcTransactionLedger(DataSource dataSource, int queueCapacity, int batchSize, long maxDelay) {
+        this.dataSource = dataSource;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.writer = new Thread(this::writeEntries, "transaction-ledger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void record(LedgerEntry entry) {
+        if (closed || !queue.offer(entry)) {
+            long count = dropped.incrementAndGet();
+            if (count == 1 || count % 1000 == 0) {
+                logger.warn("Transaction ledger queue is full, {} entries dropped so far", count);
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("gateway.ledger.queue.size", queue.size()));
+        metrics.add(new Metric<>("gateway.ledger.written", written.get()));
+        metrics.add(new Metric<>("gateway.ledger.dropped", dropped.get()));
+        metrics.add(new Metric<>("gateway.ledger.failed", failed.get()));
+        metrics.add(new Metric<>("gateway.ledger.batches", batches.get()));
+        return metrics;
+    }
+
+    /**
+     * Stops taking new entries and waits for the queued ones to be written
+     */
+    public void shutdown() throws InterruptedException {
+        closed = true;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        if (writer.isAlive()) {
+            logger.warn("Transaction ledger writer didn't finish, {} entries not written", queue.size());
+        }
+    }
+
+    private void writeEntries() {
+        List<LedgerEntry> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                LedgerEntry first = queue.poll(IDLE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() == batchSize || remaining <= 0 || closed) {
+                        break;
+                    }
+                    LedgerEntry next = queue.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_INTERVAL)),
+                            TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Transaction ledger writer interrupted, {} entries not written", batch.size() + queue.size());
+        }
+    }
+
+    private void write(List<LedgerEntry> batch) {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!tableCreated) {
+                try (Statement statement = connection.createStatement()) {
+                    for (String sql : CREATE_TABLE) {
+                        statement.execute(sql);
+                    }
+                }
+                tableCreated = true;
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                for (LedgerEntry entry : batch) {
+                    bind(insert, entry);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } catch (SQLException e) {
+            failed.addAndGet(batch.size());
+            logger.error("Unable to write " + batch.size() + " entries to the transaction ledger", e);
+        }
+    }
+
+    private static void bind(PreparedStatement insert, LedgerEntry entry) throws SQLException {
+        insert.setTimestamp(1, new Timestamp(entry.getCreatedAt()));
+        insert.setString(2, entry.getOperation());
+        insert.setString(3, entry.getProtocol());
+        insert.setString(4, entry.getMethod());
+        insert.setString(5, entry.getUrl());
+        insert.setString(6, entry.getOrderId());
+        insert.setString(7, entry.getOrderStatus());
+        BigDecimal amount = toAmount(entry.getAmount());
+        if (amount != null) {
+            insert.setBigDecimal(8, amount);
+        } else {
+            insert.setNull(8, Types.NUMERIC);
+        }
+        insert.setString(9, entry.getCurrency());
+        insert.setString(10, entry.getTransactionId());
+        insert.setString(11, entry.getTransactionType());
+        insert.setString(12, entry.getResult());
+        insert.setString(13, entry.getGatewayCode());
+        insert.setString(14, entry.getErrorCode());
+        insert.setLong(15, entry.getLatencyMillis());
+    }
+
+    private static BigDecimal toAmount(String amount) {
+        try {
+            return amount != null ? new BigDecimal(amount) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
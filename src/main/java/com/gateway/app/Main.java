@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.servlet.ModelAndView;
@@ -21,8 +22,12 @@ public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
     public static void main(String[] args) throws Exception {
-        initWebhooksNotificationsFolder();
-        SpringApplication.run(Main.class, args);
+        run(args);
+    }
+
+    static ConfigurableApplicationContext run(String... args) {
+        deleteLegacyNotifications();
+        return SpringApplication.run(Main.class, args);
     }
 
     @RequestMapping("/")
@@ -30,19 +35,17 @@ public class Main {
         return new ModelAndView("redirect:/config");
     }
 
-    private static void initWebhooksNotificationsFolder() {
-        File webhooksNotificationsFolder = new File(Config.WEBHOOKS_NOTIFICATION_FOLDER);
-        if (!webhooksNotificationsFolder.exists()) {
-            logger.info("Creating Webhooks Notifications folder... ");
-            webhooksNotificationsFolder.mkdir();
-        } else {
-            logger.info("Webhooks Notifications folder already exists!");
-            //delete all json files from notifications folder
-            File[] files = webhooksNotificationsFolder.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    file.delete();
-                }
+    /**
+     * Removes the one-file-per-notification JSON files written before notifications were kept in the
+     * {@link WebhookLog}. The log segments next to them are left alone.
+     */
+    private static void deleteLegacyNotifications() {
+        File[] files = new File(Config.WEBHOOKS_NOTIFICATION_FOLDER).listFiles(
+                (dir, name) -> name.startsWith("WebHookNotifications_") && name.endsWith(".json"));
+        if (files != null && files.length > 0) {
+            logger.info("Deleting {} legacy webhook notification files", files.length);
+            for (File file : files) {
+                file.delete();
             }
         }
     }
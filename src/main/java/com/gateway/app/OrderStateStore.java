@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gateway.response.BrowserPaymentResponse;
+import com.gateway.response.TransactionResponse;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Latest known state of recent orders, so receipts can be rendered without a RETRIEVE_ORDER or RETRIEVE_TRANSACTION
+ * round trip. It's fed by the transaction responses of our own gateway calls and by the webhook notifications, which
+ * share the same order, transaction and response fields. An update only fills in the fields it carries, and is ignored
+ * if its time of record is older than the state already held.
+ *
+ * The store keeps the most recently updated orders up to its maximum size, and only hands out state younger than its
+ * maximum age; callers fall back to the gateway otherwise.
+ *
+ * The store state is published under <pre>gateway.order-state.*</pre> on the actuator metrics endpoint.
+ */
+public class OrderStateStore implements PublicMetrics {
+
+    private final int maxSize;
+    private final long maxAge;
+    private final Clock clock;
+    private final Map<String, OrderState> orders = new LinkedHashMap<String, OrderState>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OrderState> eldest) {
+            return size() > maxSize;
+        }
+    };
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    /**
+     * @param maxSize number of orders kept, 0 to disable the store
+     * @param maxAge  time in milliseconds after an update during which the state is handed out
+     */
+    public OrderStateStore(int maxSize, long maxAge) {
+        this(maxSize, maxAge, Clock.systemUTC());
+    }
+
+    /**
+     * @param maxSize number of orders kept, 0 to disable the store
+     * @param maxAge  time in milliseconds after an update during which the state is handed out
+     * @param clock   time source the age of the state is measured with
+     */
+    public OrderStateStore(int maxSize, long maxAge, Clock clock) {
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    /**
+     * Records the order state carried by a transaction response or a webhook notification. JSON without an order ID
+     * is ignored.
+     *
+     * @param json transaction response or notification
+     */
+    public void update(JsonObject json) {
+        JsonObject order = getObject(json, "order");
+        String orderId = getString(order, "id");
+        if (orderId == null || maxSize == 0) {
+            return;
+        }
+        JsonObject transaction = getObject(json, "transaction");
+        JsonObject response = getObject(json, "response");
+        JsonObject interaction = getObject(getObject(json, "browserPayment"), "interaction");
+
+        OrderState update = new OrderState(orderId);
+        update.status = getString(order, "status");
+        update.amount = getString(order, "amount");
+        update.currency = getString(order, "currency");
+        update.description = getString(order, "description");
+        update.transactionId = getString(transaction, "id");
+        update.transactionType = getString(transaction, "type");
+        update.result = getString(json, "result");
+        update.gatewayCode = getString(response, "gatewayCode");
+        update.acquirerMessage = getString(response, "acquirerMessage");
+        update.interactionStatus = getString(interaction, "status");
+        update.timeOfRecord = getString(json, "timeOfRecord");
+        update.updatedAt = clock.millis();
+
+        synchronized (orders) {
+            OrderState current = orders.remove(orderId);
+            if (current != null && current.isNewerThan(update)) {
+                orders.put(orderId, current);
+                return;
+            }
+            orders.put(orderId, current != null ? current.mergedWith(update) : update);
+        }
+        updates.incrementAndGet();
+    }
+
+    /**
+     * @param orderId order to look up
+     * @return the latest state of the order, or null if it isn't known or is older than the maximum age
+     */
+    public OrderState get(String orderId) {
+        OrderState state;
+        synchronized (orders) {
+            state = orders.get(orderId);
+        }
+        if (state == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (clock.millis() - state.updatedAt >= maxAge) {
+            stale.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return state;
+    }
+
+    public int size() {
+        synchronized (orders) {
+            return orders.size();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("gateway.order-state.size", size()));
+        metrics.add(new Metric<>("gateway.order-state.updates", updates.get()));
+        metrics.add(new Metric<>("gateway.order-state.hits", hits.get()));
+        metrics.add(new Metric<>("gateway.order-state.misses", misses.get()));
+        metrics.add(new Metric<>("gateway.order-state.stale", stale.get()));
+        return metrics;
+    }
+
+    private static JsonObject getObject(JsonObject json, String member) {
+        return json != null && json.has(member) && json.get(member).isJsonObject() ? json.getAsJsonObject(member) : null;
+    }
+
+    private static String getString(JsonObject json, String member) {
+        JsonElement element = json != null ? json.get(member) : null;
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    /**
+     * Order fields and the fields of its latest transaction. Instances are never modified once stored.
+     */
+    public static final class OrderState {
+        private final String orderId;
+        private String status;
+        private String amount;
+        private String currency;
+        private String description;
+        private String transactionId;
+        private String transactionType;
+        private String result;
+        private String gatewayCode;
+        private String acquirerMessage;
+        private String interactionStatus;
+        private String timeOfRecord;
+        private long updatedAt;
+
+        private OrderState(String orderId) {
+            this.orderId = orderId;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getTransactionId() {
+            return transactionId;
+        }
+
+        public String getTransactionType() {
+            return transactionType;
+        }
+
+        public String getInteractionStatus() {
+            return interactionStatus;
+        }
+
+        /**
+         * @return whether the latest transaction is the payment itself, rather than e.g. the payer authentication
+         */
+        public boolean isPayment() {
+            return "PAYMENT".equals(transactionType) || "AUTHORIZATION".equals(transactionType);
+        }
+
+        /**
+         * @return whether the state holds everything a receipt shows
+         */
+        public boolean hasReceiptDetails() {
+            return result != null && gatewayCode != null && amount != null && currency != null;
+        }
+
+        /**
+         * @return the state as the receipt of a Hosted Checkout payment
+         */
+        public TransactionResponse toTransactionResponse() {
+            TransactionResponse response = new TransactionResponse();
+            fill(response);
+            return response;
+        }
+
+        /**
+         * @return the state as the receipt of a browser payment
+         */
+        public BrowserPaymentResponse toBrowserPaymentResponse() {
+            BrowserPaymentResponse response = new BrowserPaymentResponse();
+            fill(response);
+            response.setInteractionStatus(interactionStatus);
+            response.setAcquirerMessage(acquirerMessage);
+            return response;
+        }
+
+        private void fill(TransactionResponse response) {
+            response.setApiResult(result);
+            response.setGatewayCode(gatewayCode);
+            response.setOrderId(orderId);
+            response.setOrderAmount(amount);
+            response.setOrderCurrency(currency);
+            response.setOrderDescription(description);
+        }
+
+        /**
+         * Times of record are in the same ISO 8601 format and time zone, so they compare as strings
+         */
+        private boolean isNewerThan(OrderState other) {
+            return timeOfRecord != null && other.timeOfRecord != null && timeOfRecord.compareTo(other.timeOfRecord) > 0;
+        }
+
+        private OrderState mergedWith(OrderState update) {
+            OrderState merged = new OrderState(orderId);
+            merged.status = update.status != null ? update.status : status;
+            merged.amount = update.amount != null ? update.amount : amount;
+            merged.currency = update.currency != null ? update.currency : currency;
+            merged.description = update.description != null ? update.description : description;
+            // The transaction fields belong together, so they're only taken from the same transaction
+            boolean sameTransaction = update.transactionId == null || update.transactionId.equals(transactionId);
+            merged.transactionId = update.transactionId != null ? update.transactionId : transactionId;
+            merged.transactionType = update.transactionType != null || !sameTransaction ? update.transactionType : transactionType;
+            merged.gatewayCode = update.gatewayCode != null || !sameTransaction ? update.gatewayCode : gatewayCode;
+            merged.acquirerMessage = update.acquirerMessage != null || !sameTransaction ? update.acquirerMessage : acquirerMessage;
+            merged.interactionStatus = update.interactionStatus != null || !sameTransaction ? update.interactionStatus : interactionStatus;
+            merged.result = update.result != null || !sameTransaction ? update.result : result;
+            merged.timeOfRecord = update.timeOfRecord != null ? update.timeOfRecord : timeOfRecord;
+            merged.updatedAt = update.updatedAt;
+            return merged;
+        }
+    }
+}
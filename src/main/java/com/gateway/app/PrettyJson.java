@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * JSON added to a view model for display. The indented text is only produced when the view renders it, so flows that
+ * redirect or show a receipt instead never pay for pretty-printing the payloads sent over the wire.
+ */
+public final class PrettyJson {
+
+    private static final Gson prettyGson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    private final String json;
+    private final JsonElement tree;
+    private String pretty;
+
+    private PrettyJson(String json, JsonElement tree) {
+        this.json = json;
+        this.tree = tree;
+    }
+
+    /**
+     * @param json compact JSON text, e.g. a request payload
+     */
+    public static PrettyJson of(String json) {
+        return new PrettyJson(json, null);
+    }
+
+    /**
+     * @param tree JSON that has already been parsed, e.g. an API response
+     */
+    public static PrettyJson of(JsonElement tree) {
+        return new PrettyJson(null, tree);
+    }
+
+    /**
+     * @return the indented JSON text
+     */
+    @Override
+    public String toString() {
+        if (pretty == null) {
+            JsonElement element = tree != null ? tree : json == null ? null : new JsonParser().parse(json);
+            pretty = prettyGson.toJson(element);
+        }
+        return pretty;
+    }
+}
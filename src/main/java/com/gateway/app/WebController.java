@@ -12,11 +12,13 @@ import com.gateway.client.ApiException;
 import com.gateway.client.ApiProtocol;
 import com.gateway.client.ApiRequest;
 import com.gateway.client.ApiRequestService;
+import com.gateway.client.ApiResponse;
 import com.gateway.client.ApiResponseService;
 import com.gateway.client.ExceptionService;
 import com.gateway.client.HostedSession;
 import com.gateway.client.RESTApiClient;
 import com.gateway.client.Utils;
+import com.gateway.response.PaymentOptionsResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,6 +42,9 @@ public class WebController {
     @Autowired
     public Config config;
 
+    @Autowired
+    private HostedSessionPool hostedSessionPool;
+
     /**
      * If -Dlocal=https (or http) argument is passed, then the base url will be pointing to http(s)://localhost,
      * otherwise base url will point to the GATEWAY_BASE_URL passed in the env variables.
@@ -180,13 +185,8 @@ public class WebController {
         req.setApiOperation("CREATE_SESSION");
         req.setOrderId(Utils.createUniqueId(ORDER));
 
-        String requestUrl = ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config);
-
         try {
-            RESTApiClient connection = new RESTApiClient();
-            String resp = connection.postTransaction(requestUrl, config);
-
-            HostedSession hostedSession = ApiResponseService.parseSessionResponse(resp);
+            HostedSession hostedSession = hostedSessionPool.take();
 
             mav.setViewName("src");
             mav.addObject("config", config);
@@ -215,13 +215,8 @@ public class WebController {
         req.setOrderId(Utils.createUniqueId(ORDER));
         req.setTransactionId(Utils.createUniqueId(TRANS));
 
-        String requestUrl = ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config);
-
         try {
-            RESTApiClient connection = new RESTApiClient();
-            String resp = connection.postTransaction(requestUrl, config);
-
-            HostedSession hostedSession = ApiResponseService.parseSessionResponse(resp);
+            HostedSession hostedSession = hostedSessionPool.take();
 
             String correlationId = Utils.createUniqueId(APM);
             req.setApiOperation(UPDATE_SESSION.toString());
@@ -271,18 +266,11 @@ public class WebController {
         ModelAndView mav = new ModelAndView();
 
         try {
-            if (config.getApiVersion() >= 52) {
-                if (config.getSupportedPaymentOperations() == null) {
-                    config.setSupportedPaymentOperations(ApiRequestService.retrievePaymentOptionsInquiry(config).getSupportedPaymentOperations());
-                }
-            } else {
-                 if (config.getTransactionMode() == null) {
-                    config.setTransactionMode(ApiRequestService.retrievePaymentOptionsInquiry(config).getTransactionMode());
-                 }
-            }
+            PaymentOptionsResponse paymentOptions = ApiRequestService.getPaymentOptions(config);
 
             mav.setViewName("config");
             mav.addObject("config", config);
+            mav.addObject("paymentOptions", paymentOptions);
             mav.addObject("apmApiVersion", config.getApmVersion());
             mav.addObject("baseUrl", getBaseUrl());
         } catch (Exception e) {
@@ -433,8 +421,8 @@ public class WebController {
             //CREATE_SESSION
             // The API works off of Session Id based authentication. As a first step, you must create a session to
             // securely provide sensitive data, which you can then update with the request fields and values you wish to
-            // store in the session.
-            HostedSession hostedSession = ApiRequestService.createHostedSession(config);
+            // store in the session. The session is taken from a pool of sessions created ahead of time.
+            HostedSession hostedSession = hostedSessionPool.take();
 
             //UPDATE_SESSION FOR 3DS2
             // The Update Session call allows you to add payment and payer data into a session that can subsequently
@@ -446,7 +434,7 @@ public class WebController {
             final String redirectResponseUrl = ApiRequestService.getCurrentContext(httpServletRequest) +
                     "/process3ds2Redirect?" + "merchantId=" + config.getMerchantId() + "&sessionId=" +
                     hostedSession.getId();
-            String updateResp = ApiRequestService
+            ApiResponse updateResp = ApiRequestService
                     .update3DSSession(ApiProtocol.REST, updateSessionRequest, config, hostedSession.getId(),
                             redirectResponseUrl);
             hostedSession = ApiResponseService.parseSessionResponse(updateResp);
@@ -481,19 +469,17 @@ public class WebController {
 
         try {
 
+            PaymentOptionsResponse paymentOptions = null;
             if (config.getApiVersion() >= 52) {
-                if (config.getSupportedPaymentOperations() == null) {
-                    config.setSupportedPaymentOperations(ApiRequestService.retrievePaymentOptionsInquiry(config).getSupportedPaymentOperations());
-                }
-
-                req.setInteractionOperation(config.getSupportedPaymentOperations().get(0).name());
+                paymentOptions = ApiRequestService.getPaymentOptions(config);
+                req.setInteractionOperation(paymentOptions.getSupportedPaymentOperations().get(0).name());
             }
 
             String requestUrl = ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config);
             String data = ApiRequestService.buildJSONPayload(req);
 
             RESTApiClient connection = new RESTApiClient();
-            String resp = connection.postTransaction(data, requestUrl, config);
+            ApiResponse resp = connection.postTransaction(data, requestUrl, config, CREATE_CHECKOUT_SESSION);
 
             // Note that the type of the below variable is just a naming convention. We are not using Hosted Session here anymore.
             // The purpose of this variable is to make Session Id available in hostedCheckout view
@@ -503,6 +489,7 @@ public class WebController {
             mav.addObject("config", config);
             mav.addObject("currencies", currencies);
             mav.addObject("checkoutSession", checkoutSession);
+            mav.addObject("paymentOptions", paymentOptions);
             mav.addObject("baseUrl", getBaseUrl());
         } catch (ApiException e) {
             ExceptionService.constructApiErrorResponse(mav, e);
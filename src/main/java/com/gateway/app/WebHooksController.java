@@ -8,20 +8,23 @@ import com.gateway.client.WebhookNotification;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 @Controller
 public class WebHooksController {
@@ -30,9 +33,29 @@ public class WebHooksController {
 
     private static final String NotificationSecret = null;
 
+    private static final Gson gson = new GsonBuilder().create();
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Records a page looks at before returning, so a filter matching few notifications can't scan the whole log
+     */
+    private static final int MAX_SCANNED_PER_PAGE = 10000;
+
     @Autowired
     private Config config;
 
+    @Autowired
+    private WebhookLog webhookLog;
+
+    @Autowired
+    private WebhookIngestionQueue webhookIngestionQueue;
+
+    @Autowired
+    private WebhookNotificationBroadcaster webhookNotificationBroadcaster;
+
 
     @GetMapping("/webhooks")
     public ModelAndView showWebhooks() {
@@ -46,61 +69,124 @@ public class WebHooksController {
         return mav;
     }
 
+    /**
+     * Streams one page of notifications, oldest first, as <pre>{"notifications": [...], "nextCursor": offset}</pre>.
+     * The page holds up to <pre>limit</pre> notifications matching the filters; pass its <pre>nextCursor</pre> back to
+     * get the next page. <pre>nextCursor</pre> is null once the end of the log is reached. A page can hold fewer
+     * notifications, even none, when the filters skip many records, since each page scans a bounded number of records.
+     * Each notification carries its <pre>offset</pre>, the event ID it is streamed with.
+     *
+     * @param limit       maximum number of notifications in the page, capped at {@value #MAX_PAGE_SIZE}
+     * @param cursor      offset to resume from, as returned in the previous page
+     * @param orderId     only notifications for this order
+     * @param orderStatus only notifications with this order status
+     * @param from        only notifications received at or after this time, in milliseconds since the epoch
+     * @param to          only notifications received before this time, in milliseconds since the epoch
+     */
     @GetMapping("/list-webhook-notifications")
-    public @ResponseBody List<WebhookNotification> listWebhooks() throws IOException {
-
-        File notificationsFolder = new File(Config.WEBHOOKS_NOTIFICATION_FOLDER);
-
-        File[] files = notificationsFolder.listFiles();
-
-        List<WebhookNotification> notifications = new ArrayList<>();
-
-        if (files != null) {
-            for (File file : files) {
-                Gson gson = new Gson();
-                WebhookNotification notification = gson.fromJson(new FileReader(file), WebhookNotification.class);
-                notifications.add(notification);
-            }
+    public void listWebhooks(@RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+                             @RequestParam(required = false) Long cursor,
+                             @RequestParam(required = false) String orderId,
+                             @RequestParam(required = false) String orderStatus,
+                             @RequestParam(required = false) Long from,
+                             @RequestParam(required = false) Long to,
+                             HttpServletResponse response) throws IOException {
+
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        writer.beginObject().name("notifications").beginArray();
+
+        NotificationPage page = new NotificationPage(writer, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)), orderId,
+                orderStatus, from, to);
+        webhookLog.read(cursor != null ? cursor : 0, page);
+
+        writer.endArray().name("nextCursor");
+        if (page.nextCursor != null) {
+            writer.value(page.nextCursor);
         } else {
-            logger.info("No webhook notifications files found!");
+            writer.nullValue();
         }
-        return notifications;
+        writer.endObject();
+        writer.flush();
     }
 
+    /**
+     * Streams the notifications logged from now on as Server-Sent Events named <pre>notification</pre>, with the log
+     * offset as the event ID. A browser reconnecting with <pre>Last-Event-ID</pre> first gets the recent notifications
+     * it missed.
+     */
+    @GetMapping("/webhook-notifications/stream")
+    public SseEmitter streamWebhooks(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return webhookNotificationBroadcaster.subscribe(lastEventId);
+    }
+
+    /**
+     * Acknowledges a notification from the gateway as soon as its secret has been checked and it has been queued. The
+     * gateway gets a 503 when the ingestion queue is full, and retries the notification later.
+     */
     @PostMapping("/process-webhook")
-    @ResponseStatus(HttpStatus.OK)
-    public String processWebhook(@RequestBody String payload, @RequestHeader("X-Notification-Secret") String notificationSecret) throws IOException {
+    public ResponseEntity<Void> processWebhook(@RequestBody String payload,
+                                               @RequestHeader("X-Notification-Secret") String notificationSecret,
+                                               @RequestHeader(value = "X-Notification-Id", required = false) String notificationId)
+            throws IOException, InterruptedException {
 
         if (config.getWebhooksNotificationSecret() != null && notificationSecret != null && !config.getWebhooksNotificationSecret().equalsIgnoreCase(notificationSecret)) {
             logger.error("Web hooks notification secret doesn't match, so not processing the incoming request!");
-            return notificationSecret;
+        } else if (!webhookIngestionQueue.offer(notificationId, payload)) {
+            logger.warn("Web hooks notification queue is full, asking the gateway to retry");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } else {
             logger.info("Web hooks  notification");
-            return NotificationSecret;
         }
+        return ResponseEntity.ok().build();
     }
 
-    private void writeWebhookNotification(String orderId, String transactionId, String orderStatus, String orderAmount) throws IOException {
-        FileWriter fileWriter = null;
-        try {
-            logger.info("Webhook Notification - orderId = " + orderId + ", transactionId = " + transactionId + ", orderStatus = " + orderStatus + ", Amount = " + orderAmount);
-
-            long timeInMillis = System.currentTimeMillis();
-            File jsonFile = new File(Config.WEBHOOKS_NOTIFICATION_FOLDER, "WebHookNotifications_" + timeInMillis + ".json");
-
-            logger.info("Writing webhook notification file - " + jsonFile.getAbsolutePath() + "...");
-
-            fileWriter = new FileWriter(jsonFile);
-            Gson gson = new GsonBuilder().create();
+    /**
+     * Writes the notifications of a page as they are read from the log, so only one is held in memory at a time
+     */
+    private static final class NotificationPage implements WebhookLog.RecordVisitor {
+        private final JsonWriter writer;
+        private final int limit;
+        private final String orderId;
+        private final String orderStatus;
+        private final Long from;
+        private final Long to;
+        private int matched;
+        private int scanned;
+        private Long nextCursor;
+
+        NotificationPage(JsonWriter writer, int limit, String orderId, String orderStatus, Long from, Long to) {
+            this.writer = writer;
+            this.limit = limit;
+            this.orderId = orderId;
+            this.orderStatus = orderStatus;
+            this.from = from;
+            this.to = to;
+        }
 
-            WebhookNotification notification = new WebhookNotification(orderId, transactionId, orderStatus, orderAmount);
-            gson.toJson(notification, fileWriter);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (fileWriter != null) {
-                fileWriter.close();
+        @Override
+        public boolean visit(long offset, ByteBuffer payload) throws IOException {
+            if (matched == limit || scanned == MAX_SCANNED_PER_PAGE) {
+                nextCursor = offset;
+                return false;
             }
+            scanned++;
+            WebhookNotification notification = gson.fromJson(StandardCharsets.UTF_8.decode(payload).toString(),
+                    WebhookNotification.class);
+            if (matches(notification)) {
+                JsonObject json = gson.toJsonTree(notification, WebhookNotification.class).getAsJsonObject();
+                json.addProperty("offset", offset);
+                gson.toJson(json, writer);
+                matched++;
+            }
+            return true;
+        }
+
+        private boolean matches(WebhookNotification notification) {
+            return (orderId == null || orderId.equals(notification.getOrderId()))
+                    && (orderStatus == null || orderStatus.equalsIgnoreCase(notification.getOrderStatus()))
+                    && (from == null || notification.getTimestamp() >= from)
+                    && (to == null || notification.getTimestamp() < to);
         }
     }
 
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.gateway.client.WebhookNotification;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Bounded queue between <pre>/process-webhook</pre> and the {@link WebhookLog}, so the gateway gets its 200 as soon as
+ * the notification secret has been checked instead of after the notification is on disk. Background workers parse
+ * the queued notifications, drop the ones already seen and append the rest to the log.
+ *
+ * When the queue is full, the {@link Overflow} policy decides what happens to a new notification: wait for room, turn
+ * it away so the gateway retries it later, or spill it to a log on disk that the workers drain once the queue has
+ * caught up. Spilled notifications left over from a previous run are processed again on start up, so a notification
+ * can be logged twice across a restart.
+ *
+ * The queue state is published under <pre>webhooks.queue.*</pre> on the actuator metrics endpoint.
+ */
+public class WebhookIngestionQueue implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookIngestionQueue.class);
+
+    private static final Gson gson = new Gson();
+
+    /**
+     * Number of recent notification keys remembered to drop gateway retries
+     */
+    private static final int DEDUPLICATION_WINDOW = 10000;
+
+    /**
+     * Time in milliseconds idle workers wait for a notification before checking the spill log and for shutdown
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    private final WebhookLog webhookLog;
+    private final Overflow overflow;
+    private final long blockTimeout;
+    private final BlockingQueue<QueuedNotification> queue;
+    private final Thread[] workers;
+    private final Map<String, Boolean> recentKeys = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > DEDUPLICATION_WINDOW;
+        }
+    };
+    private final Path spillDirectory;
+    private final long spillSegmentBytes;
+    private final ReadWriteLock spillLock = new ReentrantReadWriteLock();
+    private volatile WebhookLog spill;
+    private volatile long spillReadOffset;
+    private volatile boolean stopping;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastLag;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Told about each notification once it's in the log
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called on a worker thread, so it must not block
+         *
+         * @param offset       offset of the notification in the log
+         * @param notification the notification
+         * @param payload      the notification as the gateway sent it
+         */
+        void logged(long offset, WebhookNotification notification, JsonObject payload);
+    }
+
+    /**
+     * What to do with a notification that arrives when the queue is full
+     */
+    public enum Overflow {
+        /**
+         * Wait for room up to the block timeout, then turn the notification away
+         */
+        BLOCK,
+        /**
+         * Turn the notification away straight away
+         */
+        REJECT,
+        /**
+         * Append the notification to the spill log
+         */
+        SPILL
+    }
+
+    /**
+     * @param webhookLog        log the notifications are appended to
+     * @param capacity          maximum number of notifications waiting in memory
+     * @param workers           number of threads appending notifications to the log
+     * @param overflow          what to do when the queue is full
+     * @param blockTimeout      time in milliseconds a notification waits for room with {@link Overflow#BLOCK}
+     * @param spillDirectory    directory of the spill log with {@link Overflow#SPILL}
+     * @param spillSegmentBytes segment size of the spill log
+     * @throws IOException if the spill log can't be opened
+     */
+    public WebhookIngestionQueue(WebhookLog webhookLog, int capacity, int workers, Overflow overflow, long blockTimeout,
+            Path spillDirectory, long spillSegmentBytes) throws IOException {
+        this.webhookLog = webhookLog;
+        this.overflow = overflow;
+        this.blockTimeout = blockTimeout;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.spillDirectory = spillDirectory;
+        this.spillSegmentBytes = spillSegmentBytes;
+        if (overflow == Overflow.SPILL) {
+            this.spill = new WebhookLog(spillDirectory, spillSegmentBytes);
+        }
+        this.workers = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Thread(this::work, "webhook-ingestion-" + (i + 1));
+            this.workers[i].setDaemon(true);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts the workers
+     */
+    public void start() {
+        for (Thread worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues a notification whose secret has already been checked
+     *
+     * @param notificationId identifier the gateway sends with each notification and its retries, if any
+     * @param payload        body of the notification
+     * @return true if the notification will be processed, false if it was turned away because the queue is full
+     * @throws IOException if the notification couldn't be spilled to disk
+     */
+    public boolean offer(String notificationId, String payload) throws IOException, InterruptedException {
+        QueuedNotification notification = new QueuedNotification(notificationId, payload, System.currentTimeMillis());
+        boolean queued;
+        switch (overflow) {
+            case BLOCK:
+                queued = queue.offer(notification, blockTimeout, TimeUnit.MILLISECONDS);
+                break;
+            case SPILL:
+                // Once spilling, keep spilling until the workers have caught up so notifications stay in order
+                queued = getSpillBacklog() == 0 && queue.offer(notification);
+                if (!queued) {
+                    spill(notification);
+                    queued = true;
+                }
+                break;
+            default:
+                queued = queue.offer(notification);
+        }
+        if (queued) {
+            accepted.incrementAndGet();
+        } else {
+            rejected.incrementAndGet();
+        }
+        return queued;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        QueuedNotification oldest = queue.peek();
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("webhooks.queue.depth", queue.size()));
+        metrics.add(new Metric<>("webhooks.queue.remaining", queue.remainingCapacity()));
+        metrics.add(new Metric<>("webhooks.queue.spill.backlog", getSpillBacklog()));
+        metrics.add(new Metric<>("webhooks.queue.lag", oldest != null ? System.currentTimeMillis() - oldest.receivedAt : 0));
+        metrics.add(new Metric<>("webhooks.queue.lag.last", lastLag));
+        metrics.add(new Metric<>("webhooks.queue.accepted", accepted.get()));
+        metrics.add(new Metric<>("webhooks.queue.rejected", rejected.get()));
+        metrics.add(new Metric<>("webhooks.queue.spilled", spilled.get()));
+        metrics.add(new Metric<>("webhooks.queue.duplicates", duplicates.get()));
+        metrics.add(new Metric<>("webhooks.queue.processed", processed.get()));
+        metrics.add(new Metric<>("webhooks.queue.failures", failures.get()));
+        return metrics;
+    }
+
+    /**
+     * Stops the workers once they've emptied the queue, waiting up to 10 seconds. Notifications in the spill log are
+     * kept for the next run.
+     */
+    public void shutdown() throws InterruptedException, IOException {
+        stopping = true;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("{} webhook notifications were still queued at shutdown and are lost", queue.size());
+        }
+        spillLock.writeLock().lock();
+        try {
+            if (spill != null) {
+                spill.close();
+            }
+        } finally {
+            spillLock.writeLock().unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            QueuedNotification notification;
+            try {
+                notification = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (notification == null && !stopping) {
+                    notification = takeSpilled();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                failures.incrementAndGet();
+                logger.error("Unable to read the webhook spill log", e);
+                continue;
+            }
+            if (notification == null) {
+                if (stopping) {
+                    return;
+                }
+                continue;
+            }
+            process(notification);
+        }
+    }
+
+    private void process(QueuedNotification queued) {
+        String key = null;
+        try {
+            JsonObject payload = gson.fromJson(queued.payload, JsonObject.class);
+            JsonObject order = getObject(payload, "order");
+            JsonObject transaction = getObject(payload, "transaction");
+            WebhookNotification notification = new WebhookNotification(getString(order, "id"),
+                    getString(transaction, "id"), getString(order, "status"), getString(order, "amount"));
+            notification.setTimestamp(queued.receivedAt);
+
+            key = queued.notificationId != null ? queued.notificationId
+                    : notification.getOrderId() + "/" + notification.getTransactionId() + "/" + notification.getOrderStatus();
+            synchronized (recentKeys) {
+                if (recentKeys.put(key, Boolean.TRUE) != null) {
+                    duplicates.incrementAndGet();
+                    logger.info("Dropping duplicate webhook notification {}", key);
+                    return;
+                }
+            }
+
+            logger.info("Webhook Notification - orderId = " + notification.getOrderId() + ", transactionId = " + notification.getTransactionId() + ", orderStatus = " + notification.getOrderStatus() + ", Amount = " + notification.getAmount());
+            long offset = webhookLog.append(gson.toJson(notification).getBytes(StandardCharsets.UTF_8));
+            processed.incrementAndGet();
+            lastLag = System.currentTimeMillis() - queued.receivedAt;
+            for (Listener listener : listeners) {
+                try {
+                    listener.logged(offset, notification, payload);
+                } catch (RuntimeException e) {
+                    logger.warn("Webhook notification listener failed", e);
+                }
+            }
+        } catch (RuntimeException | IOException e) {
+            // Malformed payloads can fail anywhere in Gson, and must not end the worker
+            if (key != null) {
+                // Let the gateway's retry through
+                synchronized (recentKeys) {
+                    recentKeys.remove(key);
+                }
+            }
+            failures.incrementAndGet();
+            logger.error("Unable to process webhook notification " + queued.payload, e);
+        }
+    }
+
+    private long getSpillBacklog() {
+        WebhookLog log = spill;
+        return log != null ? log.getNextOffset() - spillReadOffset : 0;
+    }
+
+    private void spill(QueuedNotification notification) throws IOException {
+        spillLock.readLock().lock();
+        try {
+            spill.append(gson.toJson(notification).getBytes(StandardCharsets.UTF_8));
+            spilled.incrementAndGet();
+        } finally {
+            spillLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Takes the oldest spilled notification. Once every spilled notification has been taken, the spill log is
+     * emptied so it doesn't grow across bursts.
+     */
+    private QueuedNotification takeSpilled() throws IOException {
+        if (getSpillBacklog() == 0) {
+            return null;
+        }
+        spillLock.writeLock().lock();
+        try {
+            if (getSpillBacklog() == 0) {
+                return null;
+            }
+            List<QueuedNotification> taken = new ArrayList<>(1);
+            spill.read(spillReadOffset, (offset, payload) -> {
+                taken.add(gson.fromJson(StandardCharsets.UTF_8.decode(payload).toString(), QueuedNotification.class));
+                return false;
+            });
+            spillReadOffset++;
+            if (getSpillBacklog() == 0) {
+                clearSpill();
+            }
+            return taken.get(0);
+        } finally {
+            spillLock.writeLock().unlock();
+        }
+    }
+
+    private void clearSpill() throws IOException {
+        spill.close();
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(spillDirectory, "*" + WebhookLog.SEGMENT_SUFFIX)) {
+            for (Path segment : segments) {
+                Files.delete(segment);
+            }
+        }
+        spill = new WebhookLog(spillDirectory, spillSegmentBytes);
+        spillReadOffset = 0;
+    }
+
+    private static JsonObject getObject(JsonObject json, String member) {
+        return json != null && json.has(member) && json.get(member).isJsonObject() ? json.getAsJsonObject(member) : null;
+    }
+
+    private static String getString(JsonObject json, String member) {
+        return json != null && json.has(member) && !json.get(member).isJsonNull() ? json.get(member).getAsString() : null;
+    }
+
+    /**
+     * A notification as received, also the format of the spill log records
+     */
+    private static final class QueuedNotification {
+        private String notificationId;
+        private String payload;
+        private long receivedAt;
+
+        QueuedNotification(String notificationId, String payload, long receivedAt) {
+            this.notificationId = notificationId;
+            this.payload = payload;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Append-only log of webhook notifications, split into segment files of bounded size. Each record is stored as its
+ * length, a CRC32 of the payload and the payload, and is identified by its offset: its position in the log, starting
+ * at 0. Segment files are named after the offset of their first record.
+ *
+ * Appends write to the end of the newest segment and return once the record is on disk. Concurrent appends share
+ * fsyncs: whoever forces the segment makes every record written so far durable, so under load most appends find their
+ * record already on disk. Reads start from any offset through an in-memory index of record positions and walk the
+ * segments sequentially through read-only memory maps.
+ *
+ * On start up the segments are scanned to rebuild the index. A record cut short by a crash, or failing its checksum,
+ * is truncated along with everything after it.
+ *
+ * The log state is published under <pre>webhooks.log.*</pre> on the actuator metrics endpoint.
+ */
+public class WebhookLog implements Closeable, PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookLog.class);
+
+    static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Record length and checksum
+     */
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Object appendLock = new Object();
+    private final Object flushLock = new Object();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private Segment active;
+    private volatile long nextOffset;
+    private volatile long durableOffset;
+
+    /**
+     * Receives the records of the log in order
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+
+        /**
+         * @param offset  offset of the record
+         * @param payload payload of the record, only valid until the method returns
+         * @return true to receive the next record, false to stop reading
+         */
+        boolean visit(long offset, ByteBuffer payload) throws IOException;
+    }
+
+    /**
+     * Opens the log in a directory, creating the directory if needed and recovering the segments already in it
+     *
+     * @param directory    directory holding the segment files
+     * @param segmentBytes size in bytes at which a new segment is started
+     * @throws IOException if the directory or the segments can't be read
+     */
+    public WebhookLog(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+
+        List<Long> baseOffsets = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    baseOffsets.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring {}, which isn't a webhook log segment", file);
+                }
+            }
+        }
+        baseOffsets.sort(null);
+
+        for (int i = 0; i < baseOffsets.size(); i++) {
+            long baseOffset = baseOffsets.get(i);
+            if (baseOffset != nextOffset) {
+                // Left in place, they would cover offsets about to be appended again
+                logger.warn("Webhook log segment {} doesn't follow on from offset {}, deleting it and the segments after it",
+                        baseOffset, nextOffset);
+                for (long orphan : baseOffsets.subList(i, baseOffsets.size())) {
+                    Files.delete(segmentPath(orphan));
+                }
+                break;
+            }
+            Segment segment = Segment.recover(segmentPath(baseOffset), baseOffset);
+            segments.put(baseOffset, segment);
+            nextOffset = baseOffset + segment.count;
+        }
+        active = segments.isEmpty() ? createSegment(nextOffset) : segments.lastEntry().getValue();
+        durableOffset = nextOffset;
+
+        logger.info("Opened webhook log in {} - {} records in {} segments", directory, nextOffset, segments.size());
+    }
+
+    /**
+     * Appends a record and waits for it to be on disk
+     *
+     * @param payload content of the record
+     * @return offset of the record
+     * @throws IOException if the record can't be written
+     */
+    public long append(byte[] payload) throws IOException {
+        long offset;
+        synchronized (appendLock) {
+            if (active.count > 0 && active.size + HEADER_BYTES + payload.length > segmentBytes) {
+                roll();
+            }
+            offset = nextOffset;
+            active.append(payload);
+            nextOffset = offset + 1;
+        }
+        awaitDurable(offset + 1);
+        return offset;
+    }
+
+    /**
+     * Reads the records from an offset onwards, until the visitor stops or the end of the log is reached. Records
+     * appended while reading may or may not be visited.
+     *
+     * @param fromOffset offset of the first record to read; offsets before the start of the log read from the start
+     * @param visitor    receives each record
+     * @throws IOException if a segment can't be mapped
+     */
+    public void read(long fromOffset, RecordVisitor visitor) throws IOException {
+        Map.Entry<Long, Segment> first = segments.floorEntry(Math.max(fromOffset, 0));
+        Long start = first != null ? first.getKey() : segments.isEmpty() ? null : segments.firstKey();
+        if (start == null) {
+            return;
+        }
+        for (Segment segment : segments.tailMap(start, true).values()) {
+            if (!segment.read(Math.max(fromOffset, segment.baseOffset), visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return offset the next record will be appended at, which is also the number of records in the log
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long bytes = 0;
+        for (Segment segment : segments.values()) {
+            bytes += segment.size;
+        }
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("webhooks.log.records", nextOffset));
+        metrics.add(new Metric<>("webhooks.log.segments", segments.size()));
+        metrics.add(new Metric<>("webhooks.log.bytes", bytes));
+        metrics.add(new Metric<>("webhooks.log.fsyncs", fsyncs.get()));
+        return metrics;
+    }
+
+    /**
+     * Closes the segment files. Records being appended concurrently may fail.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        }
+    }
+
+    /**
+     * Forces the active segment to disk, unless another append already did it for the record at targetOffset - 1.
+     * Appends that arrive while a force is running wait for it and are then all covered by the next one.
+     */
+    private void awaitDurable(long targetOffset) throws IOException {
+        if (durableOffset >= targetOffset) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (durableOffset >= targetOffset) {
+                return;
+            }
+            Segment segment;
+            long upTo;
+            synchronized (appendLock) {
+                segment = active;
+                upTo = nextOffset;
+            }
+            // Earlier segments were forced when they were rolled
+            segment.channel.force(false);
+            fsyncs.incrementAndGet();
+            durableOffset = upTo;
+        }
+    }
+
+    /**
+     * Starts a new segment after forcing the current one to disk. The old segment stays open for reading.
+     */
+    private void roll() throws IOException {
+        active.channel.force(false);
+        fsyncs.incrementAndGet();
+        active = createSegment(nextOffset);
+    }
+
+    private Segment createSegment(long baseOffset) throws IOException {
+        Segment segment = new Segment(FileChannel.open(segmentPath(baseOffset), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE), baseOffset);
+        segments.put(baseOffset, segment);
+        return segment;
+    }
+
+    private Path segmentPath(long baseOffset) {
+        return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * One segment file and the positions of its records. Appends are serialized by the log; reads only look at the
+     * records counted when they start.
+     */
+    private static final class Segment {
+        private final FileChannel channel;
+        private final long baseOffset;
+        private volatile int[] positions = new int[1024];
+        private volatile int count;
+        private volatile long size;
+        private MappedByteBuffer mapped;
+
+        private Segment(FileChannel channel, long baseOffset) {
+            this.channel = channel;
+            this.baseOffset = baseOffset;
+        }
+
+        /**
+         * Rebuilds the index of an existing segment, truncating it at the first incomplete or corrupt record
+         */
+        static Segment recover(Path file, long baseOffset) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(channel, baseOffset);
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Webhook log segment " + file + " is larger than 2GB");
+            }
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            while (data.remaining() >= HEADER_BYTES) {
+                int position = data.position();
+                int length = data.getInt();
+                int crc = data.getInt();
+                if (length < 0 || length > data.remaining()) {
+                    data.position(position);
+                    break;
+                }
+                ByteBuffer payload = data.slice();
+                payload.limit(length);
+                if (checksum(payload) != crc) {
+                    data.position(position);
+                    break;
+                }
+                segment.index(position);
+                data.position(position + HEADER_BYTES + length);
+            }
+            segment.size = data.position();
+            if (segment.size < fileSize) {
+                logger.warn("Truncating webhook log segment {} from {} to {} bytes after an incomplete record",
+                        file, fileSize, segment.size);
+                channel.truncate(segment.size);
+                channel.force(false);
+            }
+            channel.position(segment.size);
+            return segment;
+        }
+
+        void append(byte[] payload) throws IOException {
+            ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+            record.putInt(payload.length);
+            record.putInt(checksum(ByteBuffer.wrap(payload)));
+            record.put(payload);
+            record.flip();
+            long position = size;
+            while (record.hasRemaining()) {
+                channel.write(record, position + record.position());
+            }
+            size = position + record.limit();
+            index((int) position);
+        }
+
+        boolean read(long fromOffset, RecordVisitor visitor) throws IOException {
+            int recordCount = count;
+            int first = (int) (fromOffset - baseOffset);
+            if (first >= recordCount) {
+                return true;
+            }
+            ByteBuffer data = map().duplicate();
+            data.position(positions[first]);
+            for (int i = first; i < recordCount; i++) {
+                int length = data.getInt();
+                data.getInt();
+                ByteBuffer payload = data.slice();
+                payload.limit(length);
+                if (!visitor.visit(baseOffset + i, payload.asReadOnlyBuffer())) {
+                    return false;
+                }
+                data.position(data.position() + length);
+            }
+            return true;
+        }
+
+        /**
+         * Maps the records written so far. Segments that were rolled are mapped once; the active one is remapped when
+         * it grew.
+         */
+        private synchronized ByteBuffer map() throws IOException {
+            long mappedSize = size;
+            if (mapped == null || mapped.capacity() < mappedSize) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, mappedSize);
+            }
+            return mapped;
+        }
+
+        private void index(int position) {
+            int[] current = positions;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[count] = position;
+            positions = current;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gateway.client.WebhookNotification;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes webhook notifications to the browsers showing the webhooks page, as Server-Sent Events. The most recent
+ * notifications are kept in a ring buffer, so a browser that reconnects with a <pre>Last-Event-ID</pre> gets what it
+ * missed without the log being read. A browser that was away for longer than the buffer covers gets the whole buffer.
+ *
+ * Events are sent from a single thread, so a slow browser never holds up webhook ingestion. Notifications are published
+ * by several ingestion workers and can arrive out of order, so they're held back until the ones before them have
+ * arrived and always go out in log order. A notification that never arrives, because its worker failed after logging
+ * it, holds the others back for at most a heartbeat interval. The thread also sends a comment every so often, so idle
+ * connections aren't dropped by proxies and closed ones are noticed.
+ *
+ * The stream state is published under <pre>webhooks.stream.*</pre> on the actuator metrics endpoint.
+ */
+public class WebhookNotificationBroadcaster implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookNotificationBroadcaster.class);
+
+    private static final String EVENT_NAME = "notification";
+
+    private static final long HEARTBEAT_INTERVAL = 15000;
+
+    private static final Gson gson = new Gson();
+
+    private final BufferedNotification[] buffer;
+    private final long timeout;
+    private final Set<SseEmitter> subscribers = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService sender;
+    private final AtomicLong published = new AtomicLong();
+    /**
+     * Number of notifications ever buffered; only used on the sender thread
+     */
+    private long buffered;
+    /**
+     * Notifications waiting for the ones before them, by offset; only used on the sender thread
+     */
+    private final NavigableMap<Long, BufferedNotification> pending = new TreeMap<>();
+    /**
+     * Offset of the next notification to send; only used on the sender thread
+     */
+    private long nextOffset;
+    /**
+     * Offset that was next at the previous heartbeat; only used on the sender thread
+     */
+    private long nextOffsetAtHeartbeat = -1;
+
+    /**
+     * @param bufferSize number of recent notifications replayed to reconnecting browsers
+     * @param timeout    time in milliseconds after which a stream is closed; browsers reconnect by themselves
+     * @param nextOffset offset the next notification will be logged at
+     */
+    public WebhookNotificationBroadcaster(int bufferSize, long timeout, long nextOffset) {
+        this.buffer = new BufferedNotification[bufferSize];
+        this.timeout = timeout;
+        this.nextOffset = nextOffset;
+        this.sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webhook-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sender.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a stream of the notifications logged from now on
+     *
+     * @param lastEventId offset of the last notification the browser received, to first replay the ones after it
+     * @return the stream, to be returned from the controller
+     */
+    public SseEmitter subscribe(Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        AtomicBoolean closed = new AtomicBoolean();
+        Runnable unsubscribe = () -> {
+            closed.set(true);
+            subscribers.remove(emitter);
+        };
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        try {
+            sender.execute(() -> {
+                if (lastEventId != null) {
+                    for (long i = Math.max(0, buffered - buffer.length); i < buffered; i++) {
+                        BufferedNotification notification = buffer[(int) (i % buffer.length)];
+                        if (notification.offset > lastEventId && !send(emitter, notification)) {
+                            return;
+                        }
+                    }
+                }
+                subscribers.add(emitter);
+                // The stream may have closed before it was added, in which case nothing else removes it
+                if (closed.get()) {
+                    subscribers.remove(emitter);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    /**
+     * Buffers a notification and sends it to the open streams, once the notifications before it have been sent
+     *
+     * @param offset       offset of the notification in the log, used as the event ID
+     * @param notification the notification
+     */
+    public void publish(long offset, WebhookNotification notification) {
+        try {
+            sender.execute(() -> {
+                pending.put(offset, new BufferedNotification(offset, gson.toJson(notification)));
+                if (pending.size() > buffer.length) {
+                    skipGap();
+                }
+                sendPending();
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Not streaming webhook notification {}, shutting down", offset);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("webhooks.stream.subscribers", subscribers.size()));
+        metrics.add(new Metric<>("webhooks.stream.published", published.get()));
+        metrics.add(new Metric<>("webhooks.stream.buffer.size", buffer.length));
+        return metrics;
+    }
+
+    /**
+     * Closes the open streams
+     */
+    public void shutdown() throws InterruptedException {
+        sender.shutdownNow();
+        sender.awaitTermination(10, TimeUnit.SECONDS);
+        for (SseEmitter emitter : subscribers) {
+            emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    private boolean send(SseEmitter emitter, BufferedNotification notification) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(Long.toString(notification.offset))
+                    .name(EVENT_NAME)
+                    .data(notification.json, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // The browser went away
+            subscribers.remove(emitter);
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Sends the pending notifications that follow on from the last one sent
+     */
+    private void sendPending() {
+        while (!pending.isEmpty() && pending.firstKey() <= nextOffset) {
+            BufferedNotification entry = pending.pollFirstEntry().getValue();
+            if (entry.offset < nextOffset) {
+                // Arrived after its gap was skipped; sending it now would move browsers back
+                logger.debug("Not streaming webhook notification {}, which arrived too late", entry.offset);
+                continue;
+            }
+            nextOffset = entry.offset + 1;
+            buffer[(int) (buffered++ % buffer.length)] = entry;
+            published.incrementAndGet();
+            for (SseEmitter emitter : subscribers) {
+                send(emitter, entry);
+            }
+        }
+    }
+
+    private void skipGap() {
+        logger.warn("Webhook notifications {} to {} were never published, streaming the ones after them", nextOffset,
+                pending.firstKey() - 1);
+        nextOffset = pending.firstKey();
+    }
+
+    private void heartbeat() {
+        if (!pending.isEmpty() && nextOffset == nextOffsetAtHeartbeat) {
+            skipGap();
+            sendPending();
+        }
+        nextOffsetAtHeartbeat = nextOffset;
+        for (SseEmitter emitter : subscribers) {
+            try {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(emitter);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private static final class BufferedNotification {
+        private final long offset;
+        private final String json;
+
+        BufferedNotification(long offset, String json) {
+            this.offset = offset;
+            this.json = json;
+        }
+    }
+}
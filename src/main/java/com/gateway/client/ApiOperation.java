@@ -33,4 +33,32 @@ public enum ApiOperation {
     VOID,
     REFUND,
     CAPTURE,
-    INITIATE_BROWSER_PAYMENT}
+    INITIATE_BROWSER_PAYMENT,
+    CONFIRM_BROWSER_PAYMENT,
+    VERIFY,
+    CHECK_3DS_ENROLLMENT,
+    PROCESS_ACS_RESULT,
+    OPEN_WALLET,
+    UPDATE_SESSION_FROM_WALLET,
+    RETRIEVE_SESSION,
+    CREATE_TOKEN,
+    PAYMENT_OPTIONS_INQUIRY;
+
+    /**
+     * Looks up an operation by name without failing on names this enum doesn't know about
+     *
+     * @param name operation name, as sent in the apiOperation field
+     * @return the matching operation, or null if there is none
+     */
+    public static ApiOperation lookup(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (ApiOperation operation : values()) {
+            if (operation.name().equals(name)) {
+                return operation;
+            }
+        }
+        return null;
+    }
+}
@@ -20,7 +20,6 @@ import com.gateway.response.TransactionResponse;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,7 +57,7 @@ public class ApiRequestService {
      * @see https://test-gateway.mastercard.com/api/documentation/apiDocumentation/rest-json/version/latest/operation/Session%3a
      * Update Session.html
      */
-    public static String update3DSSession(ApiProtocol protocol, ApiRequest request, Config config, String sessionId,
+    public static ApiResponse update3DSSession(ApiProtocol protocol, ApiRequest request, Config config, String sessionId,
             String redirectResponseUrl) throws Exception {
         request.setApiOperation(UPDATE_SESSION.toString())
                 .setApiMethod("PUT")
@@ -69,7 +68,7 @@ public class ApiRequestService {
         String updateSessionPayload = ApiRequestService.buildJSONPayload(request);
         try {
             String updateSessionRequestUrl = ApiRequestService.getSessionRequestUrl(protocol, config, sessionId);
-            return connection.sendTransaction(updateSessionPayload, updateSessionRequestUrl, config);
+            return connection.sendTransaction(updateSessionPayload, updateSessionRequestUrl, config, UPDATE_SESSION);
         } catch (Exception e) {
             logger.error("Unable to update session", e);
             throw e;
@@ -214,160 +213,142 @@ public class ApiRequestService {
      * Constructs the API payload based on properties of ApiRequest
      *
      * @param request contains info on what data the payload should include (order ID, amount, currency, etc) depending on the operation (PAY, AUTHORIZE, CAPTURE, etc)
-     * @return JSON string
+     * @return compact JSON string, as sent to the gateway
      */
     public static String buildJSONPayload(ApiRequest request) {
+        String apiOperation = request.getApiOperation();
+        boolean isPay = PAY.toString().equals(apiOperation);
+        boolean isCheckoutSession = CREATE_CHECKOUT_SESSION.toString().equals(apiOperation);
 
-        JsonObject secureId = new JsonObject();
-        if (Utils.notNullOrEmpty(request.getPaymentAuthResponse())) {
-            // Used for 3DS Process ACS Result operation
-            secureId.addProperty("paRes", request.getPaymentAuthResponse());
-        }
-
-        JsonObject authenticationRedirect = new JsonObject();
-        // Used for 3DS check enrollment operation
-        if (Utils.notNullOrEmpty(request.getSecureIdResponseUrl())) {
-            authenticationRedirect.addProperty("responseUrl", request.getSecureIdResponseUrl());
-            authenticationRedirect.addProperty("pageGenerationMode", "CUSTOMIZED");
-            secureId.add("authenticationRedirect", authenticationRedirect);
-        }
+        // Fields are streamed in the order the gateway documentation lists them; objects left empty are omitted
+        JsonPayloadWriter payload = new JsonPayloadWriter(false);
+        if (Utils.notNullOrEmpty(apiOperation) && !apiOperation.equals(UPDATE_SESSION.toString())
+                && !apiOperation.equals(CREATE_SESSION.toString()))
+            payload.property("apiOperation", apiOperation);
+        payload.property("3DSecureId", request.getSecureId());
 
         // Used for hosted checkout - CREATE_CHECKOUT_SESSION operation
-        JsonObject order = new JsonObject();
+        payload.beginObject("order");
         // Need to add order ID in the request body only for some operations. Its presence in the body will cause an error for the other operations.
-        if (Utils.notNullOrEmpty(request.getOrderId()) && Utils.notNullOrEmpty(request.getApiOperation()) &&
+        if (Utils.notNullOrEmpty(request.getOrderId()) && Utils.notNullOrEmpty(apiOperation) &&
                 Arrays.asList(CREATE_CHECKOUT_SESSION.toString(), UPDATE_SESSION.toString(), PAY.toString())
-                        .contains(request.getApiOperation())) {
+                        .contains(apiOperation)) {
             // Need to add order ID as reference in the request body only for PAY when having authenticated with 3DS2
-            if (request.getApiOperation().equals(PAY.toString()) &&
-                        Utils.notNullOrEmpty(request.getAuthenticationTransactionId())) {
-                order.addProperty("reference", request.getOrderId());
-                } else {
-                    order.addProperty("id", request.getOrderId());
-                }
+            if (isPay && Utils.notNullOrEmpty(request.getAuthenticationTransactionId())) {
+                payload.property("reference", request.getOrderId());
+            } else {
+                payload.property("id", request.getOrderId());
+            }
         }
-
-        if (Utils.notNullOrEmpty(request.getOrderAmount())) order.addProperty("amount", request.getOrderAmount());
-        if (Utils.notNullOrEmpty(request.getOrderCurrency())) order.addProperty("currency", request.getOrderCurrency());
+        payload.property("amount", request.getOrderAmount());
+        payload.property("currency", request.getOrderCurrency());
+        /* essentials_exclude_start */
+        payload.property("walletProvider", request.getWalletProvider());
+        /* essentials_exclude_end */
+        payload.endObject();
 
         //3DS2
-        JsonObject authentication = new JsonObject();
-        if (Utils.notNullOrEmpty(request.getAuthenticationChannel())) authentication.addProperty("channel", request.getAuthenticationChannel());
-        if (Utils.notNullOrEmpty(request.getAcceptVersions()))
-            authentication.addProperty("acceptVersions", request.getAcceptVersions());
-        if (Utils.notNullOrEmpty(request.getRedirectResponseUrl()))
-            authentication.addProperty("redirectResponseUrl", request.getRedirectResponseUrl());
+        payload.beginObject("authentication")
+                .property("channel", request.getAuthenticationChannel())
+                .property("acceptVersions", request.getAcceptVersions())
+                .property("redirectResponseUrl", request.getRedirectResponseUrl());
         // The transactionId you used for the Initiate Authentication operation.
-        if (request.getApiOperation() != null && request.getApiOperation().equals(PAY.toString()) &&
-                Utils.notNullOrEmpty(request.getAuthenticationTransactionId()))
-            authentication.addProperty("transactionId", request.getAuthenticationTransactionId());
+        if (isPay)
+            payload.property("transactionId", request.getAuthenticationTransactionId());
+        payload.endObject();
 
-        JsonObject wallet = new JsonObject();
+        payload.beginObject("wallet");
         /* essentials_exclude_start */
         if (Utils.notNullOrEmpty(request.getWalletProvider())) {
-            order.addProperty("walletProvider", request.getWalletProvider());
             /* essentials_exclude_start */
             // Used for Masterpass operations
             if(request.getWalletProvider().equals("MASTERPASS_ONLINE")) {
-                JsonObject masterpass = new JsonObject();
-                if(Utils.notNullOrEmpty(request.getMasterpassOriginUrl())) masterpass.addProperty("originUrl", request.getMasterpassOriginUrl());
-                if(Utils.notNullOrEmpty(request.getMasterpassOauthToken())) masterpass.addProperty("oauthToken", request.getMasterpassOauthToken());
-                if(Utils.notNullOrEmpty(request.getMasterpassOauthVerifier())) masterpass.addProperty("oauthVerifier", request.getMasterpassOauthVerifier());
-                if(Utils.notNullOrEmpty(request.getMasterpassCheckoutUrl())) masterpass.addProperty("checkoutUrl", request.getMasterpassCheckoutUrl());
-                if (!masterpass.entrySet().isEmpty()) wallet.add("masterpass", masterpass);
+                payload.beginObject("masterpass")
+                        .property("originUrl", request.getMasterpassOriginUrl())
+                        .property("oauthToken", request.getMasterpassOauthToken())
+                        .property("oauthVerifier", request.getMasterpassOauthVerifier())
+                        .property("checkoutUrl", request.getMasterpassCheckoutUrl())
+                        .endObject();
             }
             /* essentials_exclude_end */
             if(request.getWalletProvider().equals("SECURE_REMOTE_COMMERCE")) {
-                JsonObject secureRemoteCommerce = new JsonObject();
-                if(Utils.notNullOrEmpty(request.getCorrelationId())) secureRemoteCommerce.addProperty("srcCorrelationId", request.getCorrelationId());
-                if(Utils.notNullOrEmpty(request.getScheme())) secureRemoteCommerce.addProperty("scheme", request.getScheme());
-                if (!secureRemoteCommerce.entrySet().isEmpty()) wallet.add("secureRemoteCommerce", secureRemoteCommerce);
+                payload.beginObject("secureRemoteCommerce")
+                        .property("srcCorrelationId", request.getCorrelationId())
+                        .property("scheme", request.getScheme())
+                        .endObject();
             }
         }
+        /* essentials_exclude_end */
+        payload.endObject();
 
-
-        JsonObject transaction = new JsonObject();
-        if (Utils.notNullOrEmpty(request.getTransactionAmount()))
-            transaction.addProperty("amount", request.getTransactionAmount());
-        if (Utils.notNullOrEmpty(request.getTransactionCurrency()))
-            transaction.addProperty("currency", request.getTransactionCurrency());
-        if (Utils.notNullOrEmpty(request.getTargetTransactionId()))
-            transaction.addProperty("targetTransactionId", request.getTargetTransactionId());
+        payload.beginObject("transaction")
+                .property("amount", request.getTransactionAmount())
+                .property("currency", request.getTransactionCurrency())
+                .property("targetTransactionId", request.getTargetTransactionId());
         //for PAY wth 3ds
-        if (request.getApiOperation() != null && request.getApiOperation().equals(PAY.toString()) &&
-                Utils.notNullOrEmpty(request.getOrderId()))
-            transaction.addProperty("reference", request.getOrderId());
-
-        JsonObject expiry = new JsonObject();
-        if (Utils.notNullOrEmpty(request.getExpiryMonth())) expiry.addProperty("month", request.getExpiryMonth());
-        if (Utils.notNullOrEmpty(request.getExpiryYear())) expiry.addProperty("year", request.getExpiryYear());
-
-        JsonObject card = new JsonObject();
-        if (Utils.notNullOrEmpty(request.getSecurityCode())) card.addProperty("securityCode", request.getSecurityCode());
-        if (Utils.notNullOrEmpty(request.getCardNumber())) card.addProperty("number", request.getCardNumber());
-        if (!expiry.entrySet().isEmpty()) card.add("expiry", expiry);
-
-        JsonObject provided = new JsonObject();
-        if (!card.entrySet().isEmpty()) provided.add("card", card);
-
-        JsonObject sourceOfFunds = new JsonObject();
-        if (Utils.notNullOrEmpty(request.getSourceType())) sourceOfFunds.addProperty("type", request.getSourceType());
-        if (Utils.notNullOrEmpty(request.getSourceToken())) sourceOfFunds.addProperty("token", request.getSourceToken());
-        if (!provided.entrySet().isEmpty()) sourceOfFunds.add("provided", provided);
-
-        JsonObject browserPayment = new JsonObject();
+        if (isPay)
+            payload.property("reference", request.getOrderId());
+        payload.endObject();
+
+        payload.beginObject("sourceOfFunds")
+                .property("type", request.getSourceType())
+                .property("token", request.getSourceToken())
+                .beginObject("provided")
+                .beginObject("card")
+                .property("securityCode", request.getSecurityCode())
+                .property("number", request.getCardNumber())
+                .beginObject("expiry")
+                .property("month", request.getExpiryMonth())
+                .property("year", request.getExpiryYear())
+                .endObject()
+                .endObject()
+                .endObject()
+                .endObject();
+
+        payload.beginObject("browserPayment");
         /* essentials_exclude_start */
-        if (Utils.notNullOrEmpty(request.getBrowserPaymentOperation()))
-            browserPayment.addProperty("operation", request.getBrowserPaymentOperation());
+        payload.property("operation", request.getBrowserPaymentOperation());
         /* targeted_exclude_start */
         if (Utils.notNullOrEmpty(request.getSourceType()) && request.getSourceType().equals("PAYPAL")) {
-            JsonObject paypal = new JsonObject();
-            paypal.addProperty("paymentConfirmation", "CONFIRM_AT_PROVIDER");
-            browserPayment.add("paypal", paypal);
+            payload.beginObject("paypal")
+                    .property("paymentConfirmation", "CONFIRM_AT_PROVIDER")
+                    .endObject();
         }
         /* targeted_exclude_end */
         /* essentials_exclude_end */
+        // Return URL needs to be added differently for browser payments and hosted checkout payments
+        if (Utils.notNullOrEmpty(apiOperation) && !isCheckoutSession
+                && (apiOperation.equals(INITIATE_BROWSER_PAYMENT.toString())
+                || apiOperation.equals("CONFIRM_BROWSER_PAYMENT")
+                || apiOperation.equals(UPDATE_SESSION.toString()))) {
+            payload.property("returnUrl", request.getReturnUrl());
+        }
+        payload.endObject();
 
-        JsonObject interaction = new JsonObject();
-        if (Utils.notNullOrEmpty(request.getApiOperation())) {
-            // Return URL needs to be added differently for browser payments and hosted checkout payments
-            if (request.getApiOperation().equals(CREATE_CHECKOUT_SESSION.toString())) {
-                if(Utils.notNullOrEmpty(request.getReturnUrl())){
-                    interaction.addProperty("returnUrl", request.getReturnUrl());
-                }
-                if(Utils.notNullOrEmpty(request.getInteractionOperation())) {
-                    interaction.addProperty("operation", request.getInteractionOperation());
-                }
-            } else if (Utils.notNullOrEmpty(request.getReturnUrl())
-                    && (request.getApiOperation().equals(INITIATE_BROWSER_PAYMENT.toString())
-                    || request.getApiOperation().equals("CONFIRM_BROWSER_PAYMENT")
-                    || request.getApiOperation().equals(UPDATE_SESSION.toString()))) {
-                browserPayment.addProperty("returnUrl", request.getReturnUrl());
-            }
+        payload.beginObject("interaction");
+        if (isCheckoutSession) {
+            payload.property("returnUrl", request.getReturnUrl());
+            payload.property("operation", request.getInteractionOperation());
+        }
+        payload.endObject();
+
+        payload.beginObject("session")
+                .property("id", request.getSessionId())
+                .endObject();
+
+        payload.beginObject("3DSecure");
+        // Used for 3DS Process ACS Result operation
+        payload.property("paRes", request.getPaymentAuthResponse());
+        // Used for 3DS check enrollment operation
+        if (Utils.notNullOrEmpty(request.getSecureIdResponseUrl())) {
+            payload.beginObject("authenticationRedirect")
+                    .property("responseUrl", request.getSecureIdResponseUrl())
+                    .property("pageGenerationMode", "CUSTOMIZED")
+                    .endObject();
         }
+        payload.endObject();
 
-        JsonObject session = new JsonObject();
-        if (Utils.notNullOrEmpty(request.getSessionId())) session.addProperty("id", request.getSessionId());
-
-        // Add all the elements to the main JSON object we'll return from this method
-        JsonObject data = new JsonObject();
-        if (Utils.notNullOrEmpty(request.getApiOperation()) && !request.getApiOperation().equals(UPDATE_SESSION.toString())
-                && !request.getApiOperation().equals(CREATE_SESSION.toString()))
-            data.addProperty("apiOperation", request.getApiOperation());
-        if (Utils.notNullOrEmpty(request.getSecureId())) data.addProperty("3DSecureId", request.getSecureId());
-        if (!order.entrySet().isEmpty()) data.add("order", order);
-        if (!authentication.entrySet().isEmpty()) data.add("authentication", authentication);
-        if (!wallet.entrySet().isEmpty()) data.add("wallet", wallet);
-        if (!transaction.entrySet().isEmpty()) data.add("transaction", transaction);
-        if (!sourceOfFunds.entrySet().isEmpty()) data.add("sourceOfFunds", sourceOfFunds);
-        if (!browserPayment.entrySet().isEmpty()) data.add("browserPayment", browserPayment);
-        if (!interaction.entrySet().isEmpty()) data.add("interaction", interaction);
-        if (!session.entrySet().isEmpty()) data.add("session", session);
-        if (!secureId.entrySet().isEmpty()) data.add("3DSecure", secureId);
-
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-
-        return gson.toJson(data);
+        return payload.finish();
     }
 
     /**
@@ -442,7 +423,7 @@ public class ApiRequestService {
             updateSessionRequest.setReturnUrl(request.getReturnUrl());
             updateSessionRequest.setBrowserPaymentOperation(request.getBrowserPaymentOperation());
             String updateSessionPayload = ApiRequestService.buildJSONPayload(updateSessionRequest);
-            connection.sendTransaction(updateSessionPayload, updateSessionRequestUrl, config);
+            connection.sendTransaction(updateSessionPayload, updateSessionRequestUrl, config, UPDATE_SESSION);
         } catch (Exception e) {
             logger.error("Unable to update session", e);
             throw e;
@@ -458,7 +439,7 @@ public class ApiRequestService {
      */
     public static HostedSession createHostedSession(Config config) throws Exception {
         String requestUrl = ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config);
-        String createResp = connection.postTransaction(requestUrl, config);
+        ApiResponse createResp = connection.postTransaction(requestUrl, config);
         return ApiResponseService.parseSessionResponse(createResp);
     }
 
@@ -479,7 +460,7 @@ public class ApiRequestService {
             updateSessionRequest.setOrderCurrency(request.getOrderCurrency());
             updateSessionRequest.setOrderId(request.getOrderId());
             String updateSessionPayload = ApiRequestService.buildJSONPayload(updateSessionRequest);
-            connection.sendTransaction(updateSessionPayload, updateSessionRequestUrl, config);
+            connection.sendTransaction(updateSessionPayload, updateSessionRequestUrl, config, UPDATE_SESSION);
         } catch (Exception e) {
             logger.error("Unable to update session", e);
             throw e;
@@ -534,6 +515,38 @@ public class ApiRequestService {
      */
     public static TransactionResponse performTransaction(HttpServletRequest request,
             Config config) throws Exception {
+        return performTransaction(request.getParameter("sessionId"), request.getParameter("transaction.id"),
+                request.getParameter("order.id"), config);
+    }
+
+    /**
+     * Performs the transaction based on the Payment Options retrieved for the customer (PAY or AUTHORIZE)
+     *
+     * @param sessionId session updated with the payer authentication result
+     * @param authenticationTransactionId transaction ID used to authenticate the payer
+     * @param orderId
+     * @param config
+     * @return
+     * @throws Exception
+     */
+    public static TransactionResponse performTransaction(String sessionId, String authenticationTransactionId,
+            String orderId, Config config) throws Exception {
+        return ApiResponseService.parseAuthorizeResponse(submitTransaction(sessionId, authenticationTransactionId,
+                orderId, config));
+    }
+
+    /**
+     * Performs the transaction based on the Payment Options retrieved for the customer (PAY or AUTHORIZE)
+     *
+     * @param sessionId session updated with the payer authentication result
+     * @param authenticationTransactionId transaction ID used to authenticate the payer
+     * @param orderId
+     * @param config
+     * @return the response of the transaction, as returned by the gateway
+     * @throws Exception
+     */
+    public static ApiResponse submitTransaction(String sessionId, String authenticationTransactionId,
+            String orderId, Config config) throws Exception {
         try {
             // Construct API request
             // Make a  Payment Options Inquiry first to determine for which is operation the Merchant is enabled (PAY/AUTHORIZE)
@@ -541,9 +554,9 @@ public class ApiRequestService {
 
             ApiRequest paymentRequest = new ApiRequest();
             paymentRequest.setApiOperation(apiOperation);
-            paymentRequest.setSessionId(request.getParameter("sessionId"));
-            paymentRequest.setAuthenticationTransactionId(request.getParameter("transaction.id"));
-            paymentRequest.setOrderId(request.getParameter("order.id"));
+            paymentRequest.setSessionId(sessionId);
+            paymentRequest.setAuthenticationTransactionId(authenticationTransactionId);
+            paymentRequest.setOrderId(orderId);
             paymentRequest.setSourceType("CARD");
 
 
@@ -552,8 +565,8 @@ public class ApiRequestService {
                     "/transaction/1";// + Utils.createUniqueId(Utils.Prefixes.TRANS);
 
             // Perform API operation
-            String apiResponse = connection.sendTransaction3DS(paymentData, paymentRequestUrl, config);
-            return ApiResponseService.parseAuthorizeResponse(apiResponse);
+            return connection.sendTransaction3DS(paymentData, paymentRequestUrl, config,
+                    ApiOperation.lookup(apiOperation));
         } catch (Exception e) {
             logger.debug("Unhandled exception caught", e);
             throw e;
@@ -572,7 +585,8 @@ public class ApiRequestService {
                 ApiRequestService.getMerchantRequestUrl(ApiProtocol.REST, config) + "/paymentOptionsInquiry";
 
         try {
-            String paymentOptionsInquiryResponse = connection.getTransaction(paymentOptionsInquiryUrl, config);
+            ApiResponse paymentOptionsInquiryResponse = connection.getTransaction(paymentOptionsInquiryUrl, config,
+                    ApiOperation.PAYMENT_OPTIONS_INQUIRY);
 
             GsonBuilder gsonBuilder = new GsonBuilder();
             gsonBuilder.registerTypeAdapter(new TypeToken<List<SupportedPaymentOperation>>() {
@@ -589,7 +603,7 @@ public class ApiRequestService {
                     });
             Gson gson = gsonBuilder.create();
 
-            return gson.fromJson(paymentOptionsInquiryResponse, PaymentOptionsResponse.class);
+            return gson.fromJson(paymentOptionsInquiryResponse.getJson(), PaymentOptionsResponse.class);
         } catch (Exception e) {
             logger.debug("Unable to retrieve Payment Options", e);
             throw e;
@@ -597,6 +611,23 @@ public class ApiRequestService {
 
     }
 
+    /**
+     * Returns the payment options of the merchant from the {@link PaymentOptionsCache}. Options set on the
+     * configuration take precedence and are returned without calling the gateway.
+     *
+     * @param config contains frequently used information like Merchant ID, API password, etc.
+     * @return the options available for processing a payment
+     * @throws Exception if the options had to be retrieved and the gateway call failed
+     */
+    public static PaymentOptionsResponse getPaymentOptions(Config config) throws Exception {
+        if (config.getTransactionMode() != null || config.getSupportedPaymentOperations() != null) {
+            return new PaymentOptionsResponse()
+                    .setTransactionMode(config.getTransactionMode())
+                    .setSupportedPaymentOperations(config.getSupportedPaymentOperations());
+        }
+        return PaymentOptionsCache.forConfig(config).get();
+    }
+
     /**
      * Defines the merchants transaction mode, i.e. if the funds are immediately requested to be moved from the payer's
      * account or the payment is authorized only and the funds will be moved/captured later.
@@ -607,14 +638,9 @@ public class ApiRequestService {
      * @see https://test-gateway.mastercard.com/api/documentation/apiDocumentation/rest-json/version/latest/operation/Gateway%3a%20%20Payment%20Options%20Inquiry.html?locale=en_US
      */
     public static ApiOperation getApiOperationFromPaymentOptionsInquiry(Config config) throws Exception {
-        if (config.getTransactionMode() == null && config.getSupportedPaymentOperations() == null) {
-            PaymentOptionsResponse paymentOptionsInquiry =
-                    ApiRequestService.retrievePaymentOptionsInquiry(config);
-            config.setTransactionMode(paymentOptionsInquiry.getTransactionMode());
-            config.setSupportedPaymentOperations(paymentOptionsInquiry.getSupportedPaymentOperations());
-        }
-        if (config.getTransactionMode() != null) {
-            switch (config.getTransactionMode()) {
+        PaymentOptionsResponse paymentOptions = getPaymentOptions(config);
+        if (paymentOptions.getTransactionMode() != null) {
+            switch (paymentOptions.getTransactionMode()) {
                 case AUTHORIZE_CAPTURE:
                     return AUTHORIZE;
                 case PURCHASE:
@@ -622,11 +648,11 @@ public class ApiRequestService {
                 default:
                     throw new IllegalArgumentException("Unsupported Payment Options Transaction Mode");
             }
-        } else {
-            if (config.getSupportedPaymentOperations().contains(SupportedPaymentOperation.AUTHORIZE)) {
+        } else if (paymentOptions.getSupportedPaymentOperations() != null) {
+            if (paymentOptions.getSupportedPaymentOperations().contains(SupportedPaymentOperation.AUTHORIZE)) {
                 return AUTHORIZE;
             }
-            if (config.getSupportedPaymentOperations().contains(SupportedPaymentOperation.PURCHASE)) {
+            if (paymentOptions.getSupportedPaymentOperations().contains(SupportedPaymentOperation.PURCHASE)) {
                 return PAY;
             }
         }
@@ -644,7 +670,7 @@ public class ApiRequestService {
         String url = getSessionRequestUrl(ApiProtocol.REST, config, sessionId);
         RESTApiClient sessionConnection = new RESTApiClient();
         try {
-            String sessionResponse = sessionConnection.getTransaction(url, config);
+            ApiResponse sessionResponse = sessionConnection.getTransaction(url, config, ApiOperation.RETRIEVE_SESSION);
             return ApiResponseService.parseSessionResponse(sessionResponse);
         } catch (Exception e) {
             logger.error("Unable to retrieve session", e);
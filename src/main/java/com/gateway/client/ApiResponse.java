@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * A REST API response, parsed once when it is received. It carries the raw body, the parsed JSON tree and the error
+ * returned by the gateway, if any, so the error check and the typed parsers in {@link ApiResponseService} all work
+ * from the same tree instead of parsing the body again.
+ */
+public class ApiResponse {
+
+    private static final Gson gson = new Gson();
+
+    private final String body;
+    private final JsonObject json;
+    private final ApiException error;
+
+    private ApiResponse(String body, JsonObject json, ApiException error) {
+        this.body = body;
+        this.json = json;
+        this.error = error;
+    }
+
+    /**
+     * Parses a JSON response body
+     *
+     * @param body response body from the API
+     * @return the parsed response
+     * @throws com.google.gson.JsonSyntaxException if the body isn't a JSON object
+     */
+    public static ApiResponse parse(String body) {
+        JsonObject json = gson.fromJson(body, JsonObject.class);
+        return new ApiResponse(body, json, json != null && json.has("error") ? toApiException(json) : null);
+    }
+
+    /**
+     * @return the response body as received from the API
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return the parsed response, or null if the body was empty
+     */
+    public JsonObject getJson() {
+        return json;
+    }
+
+    /**
+     * @return the error returned by the API, or null if the call succeeded
+     */
+    public ApiException getError() {
+        return error;
+    }
+
+    public boolean hasError() {
+        return error != null;
+    }
+
+    private static ApiException toApiException(JsonObject json) {
+        JsonObject errorJson = json.get("error").getAsJsonObject();
+        ApiException apiException = new ApiException("The API returned an error");
+        if(errorJson.has("cause")) apiException.setErrorCode(errorJson.get("cause").getAsString());
+        if(errorJson.has("explanation")) apiException.setExplanation(errorJson.get("explanation").getAsString());
+        if(errorJson.has("field")) apiException.setField(errorJson.get("field").getAsString());
+        if(errorJson.has("validationType")) apiException.setValidationType(errorJson.get("validationType").getAsString());
+        return apiException;
+    }
+}
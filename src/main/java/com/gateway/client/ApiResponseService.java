@@ -12,7 +12,6 @@ import com.gateway.response.BrowserPaymentResponse;
 import com.gateway.response.SecureIdEnrollmentResponse;
 import com.gateway.response.TransactionResponse;
 import com.gateway.response.WalletResponse;
-import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import org.apache.http.NameValuePair;
@@ -31,8 +30,18 @@ public class ApiResponseService {
      * @return HostedSession
      */
     public static HostedSession parseSessionResponse(String sessionResponse) {
+        return parseSessionResponse(parse(sessionResponse, "session"));
+    }
+
+    /**
+     * Parses JSON response from session-based API call into HostedSession object
+     *
+     * @param sessionResponse parsed response from API
+     * @return HostedSession
+     */
+    public static HostedSession parseSessionResponse(ApiResponse sessionResponse) {
         try {
-            JsonObject json = new Gson().fromJson(sessionResponse, JsonObject.class);
+            JsonObject json = sessionResponse.getJson();
             JsonObject jsonSession = json.get("session").getAsJsonObject();
 
             HostedSession hostedSession = new HostedSession();
@@ -59,8 +68,18 @@ public class ApiResponseService {
      * @return SecureIdEnrollmentResponse
      */
     public static SecureIdEnrollmentResponse parse3DSecureResponse(String response) {
+        return parse3DSecureResponse(parse(response, "3DSecure"));
+    }
+
+    /**
+     * Parses JSON response from 3DS transaction into SecureIdEnrollmentResponse object
+     *
+     * @param response parsed response from API
+     * @return SecureIdEnrollmentResponse
+     */
+    public static SecureIdEnrollmentResponse parse3DSecureResponse(ApiResponse response) {
         try {
-            JsonObject json = new Gson().fromJson(response, JsonObject.class);
+            JsonObject json = response.getJson();
             JsonObject json3ds = json.get("3DSecure").getAsJsonObject();
             JsonObject jsonAuth = json3ds.get("authenticationRedirect").getAsJsonObject();
             JsonObject jsonCustomized = jsonAuth.get("customized").getAsJsonObject();
@@ -85,12 +104,22 @@ public class ApiResponseService {
      * @return TransactionResponse
      */
     public static TransactionResponse parseHostedCheckoutResponse(String response) {
+        return parseHostedCheckoutResponse(parse(response, "Hosted Checkout"));
+    }
+
+    /**
+     * Parses JSON response from Hosted Checkout transaction into TransactionResponse object
+     *
+     * @param response parsed response from API
+     * @return TransactionResponse
+     */
+    public static TransactionResponse parseHostedCheckoutResponse(ApiResponse response) {
 
         try {
 
             TransactionResponse resp = new TransactionResponse();
 
-            JsonObject json = new Gson().fromJson(response, JsonObject.class);
+            JsonObject json = response.getJson();
             JsonArray arr = json.get("transaction").getAsJsonArray();
             JsonObject transactionJson = arr.get(0).getAsJsonObject();
             JsonObject orderJson = transactionJson.get("order").getAsJsonObject();
@@ -118,6 +147,16 @@ public class ApiResponseService {
      * @return TransactionResponse
      */
     public static TransactionResponse parseAuthorizeResponse(String response) {
+        return parseAuthorizeResponse(parse(response, "wallet"));
+    }
+
+    /**
+     * Parses JSON response from AUTHORIZE transaction into TransactionResponse object
+     *
+     * @param response parsed response from API
+     * @return TransactionResponse
+     */
+    public static TransactionResponse parseAuthorizeResponse(ApiResponse response) {
 
         return parseTransactionResponse(response);
 
@@ -131,6 +170,16 @@ public class ApiResponseService {
      * @return TransactionResponse
      */
     public static TransactionResponse parseMasterpassResponse(String response) {
+        return parseMasterpassResponse(parse(response, "wallet"));
+    }
+
+    /**
+     * Parses JSON response from Masterpass transaction into TransactionResponse object
+     *
+     * @param response parsed response from API
+     * @return TransactionResponse
+     */
+    public static TransactionResponse parseMasterpassResponse(ApiResponse response) {
 
         return parseTransactionResponse(response);
 
@@ -144,6 +193,16 @@ public class ApiResponseService {
      * @return TransactionResponse
      */
     public static TransactionResponse parseSecureRemoteCommerceResponse(String response) {
+        return parseSecureRemoteCommerceResponse(parse(response, "wallet"));
+    }
+
+    /**
+     * Parses JSON response from Secure Remote Commerce transaction into TransactionResponse object
+     *
+     * @param response parsed response from API
+     * @return TransactionResponse
+     */
+    public static TransactionResponse parseSecureRemoteCommerceResponse(ApiResponse response) {
 
         return parseTransactionResponse(response);
 
@@ -152,15 +211,15 @@ public class ApiResponseService {
     /**
      * Parses JSON response from a transaction into TransactionResponse object
      *
-     * @param response response from API
+     * @param response parsed response from API
      * @return TransactionResponse
      */
-    private static TransactionResponse parseTransactionResponse(String response) {
+    private static TransactionResponse parseTransactionResponse(ApiResponse response) {
         try {
 
             TransactionResponse resp = new TransactionResponse();
 
-            JsonObject json = new Gson().fromJson(response, JsonObject.class);
+            JsonObject json = response.getJson();
             JsonObject orderJson = json.get("order").getAsJsonObject();
             JsonObject responseJson = json.getAsJsonObject("response").getAsJsonObject();
 
@@ -184,11 +243,21 @@ public class ApiResponseService {
      * @return BrowserPaymentResponse
      */
     public static BrowserPaymentResponse parseBrowserPaymentResponse(String response) {
+        return parseBrowserPaymentResponse(parse(response, "browser payment"));
+    }
+
+    /**
+     * Parses JSON response from Browser Payment transaction into BrowserPaymentResponse object
+     *
+     * @param response parsed response from API
+     * @return BrowserPaymentResponse
+     */
+    public static BrowserPaymentResponse parseBrowserPaymentResponse(ApiResponse response) {
 
         try {
             BrowserPaymentResponse resp = new BrowserPaymentResponse();
 
-            JsonObject json = new Gson().fromJson(response, JsonObject.class);
+            JsonObject json = response.getJson();
             JsonObject r = json.get("response").getAsJsonObject();
             JsonObject browserPayment = json.get("browserPayment").getAsJsonObject();
             JsonObject interaction = browserPayment.get("interaction").getAsJsonObject();
@@ -220,10 +289,21 @@ public class ApiResponseService {
      * @return WalletResponse
      */
     public static WalletResponse parseWalletResponse(String response, String provider) {
+        return parseWalletResponse(parse(response, "wallet"), provider);
+    }
+
+    /**
+     * Parses JSON response from wallet transaction into WalletResponse object
+     *
+     * @param response parsed response from API
+     * @param provider wallet provider
+     * @return WalletResponse
+     */
+    public static WalletResponse parseWalletResponse(ApiResponse response, String provider) {
 
         try {
             WalletResponse wallet = new WalletResponse();
-            JsonObject json = new Gson().fromJson(response, JsonObject.class);
+            JsonObject json = response.getJson();
             JsonObject orderJson = json.get("order").getAsJsonObject();
             JsonObject walletJson = json.get("wallet").getAsJsonObject();
             JsonObject providerObj = walletJson.get(provider).getAsJsonObject();
@@ -270,8 +350,12 @@ public class ApiResponseService {
     }
 
     public static String parseTokenResponse(String response) {
+        return parseTokenResponse(parse(response, "token"));
+    }
+
+    public static String parseTokenResponse(ApiResponse response) {
         try {
-            JsonObject json = new Gson().fromJson(response, JsonObject.class);
+            JsonObject json = response.getJson();
             return json.get("token").getAsString();
         }
         catch(Exception e) {
@@ -287,9 +371,19 @@ public class ApiResponseService {
      * @return redirect URL or throw exception
      */
     public static String getBrowserPaymentRedirectUrl(String response) {
+        return getBrowserPaymentRedirectUrl(parse(response, "browser payment"));
+    }
+
+    /**
+     * Retrieve redirect URL from browser payment response
+     *
+     * @param response      parsed response from API
+     * @return redirect URL or throw exception
+     */
+    public static String getBrowserPaymentRedirectUrl(ApiResponse response) {
 
         try {
-            JsonObject json = new Gson().fromJson(response, JsonObject.class);
+            JsonObject json = response.getJson();
             JsonObject browserPayment = json.get("browserPayment").getAsJsonObject();
             return browserPayment.get("redirectUrl").getAsString();
         } catch (Exception e) {
@@ -298,4 +392,20 @@ public class ApiResponseService {
         }
     }
 
+    /**
+     * Parses a JSON response body, logging the failure the same way the typed parsers do
+     *
+     * @param response    response from API
+     * @param description kind of response, for the log message
+     * @return parsed response
+     */
+    private static ApiResponse parse(String response, String description) {
+        try {
+            return ApiResponse.parse(response);
+        } catch (Exception e) {
+            logger.error("Unable to parse " + description + " response", e);
+            throw e;
+        }
+    }
+
 }
@@ -4,29 +4,26 @@
 
 package com.gateway.client;
 
-import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.KeyStore;
-import javax.net.ssl.SSLContext;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.gateway.app.Config;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.SSLContexts;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +32,18 @@ public class ApiService {
 
     private static final Logger logger = LoggerFactory.getLogger(ApiService.class);
 
+    private static final AtomicLong authenticationChallenges = new AtomicLong();
+
+    private static volatile TransactionLedger transactionLedger = TransactionLedger.NONE;
+
+    /**
+     * Sets the ledger every gateway call is recorded in. Defaults to {@link TransactionLedger#NONE}.
+     *
+     * @param ledger transaction ledger
+     */
+    public static void setTransactionLedger(TransactionLedger ledger) {
+        transactionLedger = ledger;
+    }
 
     /**
      * Execute HTTP method for the HTTP client and Host configuration
@@ -45,92 +54,314 @@ public class ApiService {
      * @throws Exception
      */
     public static String executeHTTPMethod(HttpRequestBase httpMethod, Config config, ApiProtocol protocol) throws Exception {
+        return executeHTTPMethod(httpMethod, config, protocol, null);
+    }
+
+    /**
+     * Execute HTTP method for the HTTP client and Host configuration, using the timeouts of the given API operation
+     *
+     * @param httpMethod PUT, POST, or GET
+     * @param operation  operation being performed, or null to use the default timeouts
+     * @return body from API response
+     * @throws Exception
+     */
+    public static String executeHTTPMethod(HttpRequestBase httpMethod, Config config, ApiProtocol protocol,
+            ApiOperation operation) throws Exception {
+        if (protocol.equals(ApiProtocol.REST)) {
+            return executeRESTMethod(httpMethod, config, operation).getBody();
+        }
+        long start = System.nanoTime();
+        try {
+            String body = execute(httpMethod, config, protocol, operation,
+                    GatewayMetrics.forOperation(operation, protocol, httpMethod.getMethod()));
+            record(new LedgerEntry(operation, protocol, httpMethod, start).withNVPOutcome(body));
+            return body;
+        } catch (Exception e) {
+            record(new LedgerEntry(operation, protocol, httpMethod, start).withFailure(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Execute a REST API call. The response is parsed once and checked for an error; the returned envelope is then
+     * handed to the parsers in {@link ApiResponseService}.
+     *
+     * @param httpMethod PUT, POST, or GET
+     * @param operation  operation being performed, or null to use the default timeouts
+     * @return parsed API response
+     * @throws ApiException if the API returned an error
+     * @throws Exception
+     */
+    public static ApiResponse executeRESTMethod(HttpRequestBase httpMethod, Config config, ApiOperation operation)
+            throws Exception {
+        GatewayMetrics.Operation metrics = GatewayMetrics.forOperation(operation, ApiProtocol.REST, httpMethod.getMethod());
+        long start = System.nanoTime();
+        try {
+            ApiResponse response = checkForRESTErrorResponse(execute(httpMethod, config, ApiProtocol.REST, operation, metrics));
+            record(new LedgerEntry(operation, ApiProtocol.REST, httpMethod, start).withOutcome(response.getJson()));
+            return response;
+        } catch (ApiException apiException) {
+            metrics.recordError(apiException.getErrorCode());
+            logger.error("The API returned an error", apiException);
+            record(new LedgerEntry(operation, ApiProtocol.REST, httpMethod, start).withFailure(apiException));
+            throw apiException;
+        } catch (Exception e) {
+            record(new LedgerEntry(operation, ApiProtocol.REST, httpMethod, start).withFailure(e));
+            throw e;
+        }
+    }
+
+    private static String execute(HttpRequestBase httpMethod, Config config, ApiProtocol protocol,
+            ApiOperation operation, GatewayMetrics.Operation metrics) throws Exception {
         String body = "";
+        long start = 0;
+        // Fail fast if the gateway is already failing this kind of call, or too many of them are in flight
+        GatewayGuards.Permit permit = config.getGatewayGuards().acquire(protocol, httpMethod, operation);
+        boolean sent = false;
+        boolean failed = false;
         try {
-            // Set the proper authentication type - username/password or certificate authentication
-            if(config.getAuthenticationType().equals(Config.AuthenticationType.PASSWORD)) {
+            // The client is shared and pooled; it's configured for either username/password or certificate authentication
+            CloseableHttpClient httpClient = HttpClientProvider.getHttpClient(config);
 
-                CloseableHttpClient httpClient = HttpClients.createDefault();
-                HttpClientContext httpClientContext = HttpClientContext.create();
-                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            prepareRequest(httpMethod, config, protocol, operation);
 
-                // Load credentials
-                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(config.getApiUsername(), config.getApiPassword()));
-                httpClientContext.setCredentialsProvider(credentialsProvider);
+            // Execute the request. Closing the response hands the connection back to the pool for reuse.
+            start = System.nanoTime();
+            permit.sent();
+            sent = true;
+            try (CloseableHttpResponse response = httpClient.execute(httpMethod)) {
+                failed = isServerError(response);
+                body = readResponseBody(response, metrics);
+            }
+            metrics.recordCall(System.nanoTime() - start, GatewayMetrics.requestBytes(httpMethod));
+        }
+        catch (IOException ioe) {
+            if (sent) {
+                failed = isGatewayFailure(ioe);
+                metrics.recordFailure(System.nanoTime() - start, GatewayMetrics.requestBytes(httpMethod), ioe);
+            } else {
+                // e.g. the keystore couldn't be read; there's no call to time
+                metrics.recordError(ioe.getClass().getSimpleName());
+            }
+            // we can replace a specific exception that suits your application
+            throw new Exception(ioe);
+        } finally {
+            httpMethod.releaseConnection();
+            if (sent) {
+                permit.release(failed);
+            } else {
+                permit.cancel();
+            }
+        }
+        return body;
+    }
 
-                if (config.getHttpProxyHost() != null && config.getHttpProxyPort() != null) {
-                    logger.info("Using proxy settings - Host = {0} Port = {1}", config.getHttpProxyHost(),
-                            config.getHttpProxyPort());
-                    HttpHost proxy = new HttpHost(config.getHttpProxyHost(), config.getHttpProxyPort(),
-                            config.getHttpProxyHost().contains("https") ? "https" : "http");
+    /**
+     * Execute a REST API call without blocking the calling thread. The returned future completes with the parsed
+     * response, or exceptionally with the same exceptions {@link #executeRESTMethod} would throw (an
+     * {@link ApiException} when the gateway returns an error).
+     *
+     * @param httpMethod PUT, POST, or GET
+     * @param operation  operation being performed, or null to use the default timeouts
+     * @return future parsed API response
+     */
+    public static CompletableFuture<ApiResponse> executeAsyncHTTPMethod(HttpRequestBase httpMethod, Config config,
+            ApiOperation operation) {
+        CompletableFuture<ApiResponse> result = new CompletableFuture<>();
+        GatewayMetrics.Operation metrics = GatewayMetrics.forOperation(operation, ApiProtocol.REST, httpMethod.getMethod());
+        GatewayGuards.Permit acquired = null;
+        try {
+            GatewayGuards.Permit permit = config.getGatewayGuards().acquire(ApiProtocol.REST, httpMethod, operation);
+            acquired = permit;
+            CloseableHttpAsyncClient httpAsyncClient = HttpClientProvider.getHttpAsyncClient(config);
+            prepareRequest(httpMethod, config, ApiProtocol.REST, operation);
 
-                    RequestConfig requestConfig= RequestConfig.custom()
-                            .setProxy(proxy)
-                            .build();
+            long start = System.nanoTime();
+            permit.sent();
+            httpAsyncClient.execute(httpMethod, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    boolean failed = isServerError(response);
+                    try {
+                        String body = readResponseBody(response, metrics);
+                        metrics.recordCall(System.nanoTime() - start, GatewayMetrics.requestBytes(httpMethod));
+                        ApiResponse apiResponse = checkForRESTErrorResponse(body);
+                        record(new LedgerEntry(operation, ApiProtocol.REST, httpMethod, start).withOutcome(apiResponse.getJson()));
+                        result.complete(apiResponse);
+                    } catch (ApiException apiException) {
+                        metrics.recordError(apiException.getErrorCode());
+                        logger.error("The API returned an error", apiException);
+                        record(new LedgerEntry(operation, ApiProtocol.REST, httpMethod, start).withFailure(apiException));
+                        result.completeExceptionally(apiException);
+                    } catch (IOException ioe) {
+                        failed = isGatewayFailure(ioe);
+                        metrics.recordFailure(System.nanoTime() - start, GatewayMetrics.requestBytes(httpMethod), ioe);
+                        record(new LedgerEntry(operation, ApiProtocol.REST, httpMethod, start).withFailure(ioe));
+                        result.completeExceptionally(new Exception(ioe));
+                    } catch (Exception e) {
+                        record(new LedgerEntry(operation, ApiProtocol.REST, httpMethod, start).withFailure(e));
+                        result.completeExceptionally(e);
+                    } finally {
+                        permit.release(failed);
+                    }
+                }
 
-                    httpMethod.setConfig(requestConfig);
+                @Override
+                public void failed(Exception e) {
+                    permit.release(!(e instanceof IOException) || isGatewayFailure((IOException) e));
+                    metrics.recordFailure(System.nanoTime() - start, GatewayMetrics.requestBytes(httpMethod), e);
+                    record(new LedgerEntry(operation, ApiProtocol.REST, httpMethod, start).withFailure(e));
+                    result.completeExceptionally(e instanceof IOException ? new Exception(e) : e);
                 }
 
-                // Execute the request
-                HttpResponse response = httpClient.execute(httpMethod, httpClientContext);
-                HttpEntity entity = response.getEntity();
-                body = EntityUtils.toString(entity);
+                @Override
+                public void cancelled() {
+                    permit.cancel();
+                    result.cancel(false);
+                }
+            });
+        } catch (Exception e) {
+            if (acquired != null) {
+                acquired.cancel();
             }
-            else if(config.getAuthenticationType().equals(Config.AuthenticationType.CERTIFICATE)) {
-                KeyStore keyStore = KeyStore.getInstance("pkcs12");
-
-                // Read keystore
-                InputStream keyStoreInput = new FileInputStream(config.getKeyStore());
-                keyStore.load(keyStoreInput, config.getKeyStorePassword().toCharArray());
+            record(new LedgerEntry(operation, ApiProtocol.REST, httpMethod, System.nanoTime()).withFailure(e));
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 
-                // Create SSL context
-                SSLContext sslContext = SSLContexts.custom()
-                        .loadKeyMaterial(keyStore, config.getKeyStorePassword().toCharArray())
-                        .build();
+    /**
+     * Set the timeouts of the operation and the proper authentication type - username/password or certificate
+     * authentication. Certificate authentication is handled by the client's TLS socket factory, so only password
+     * authentication needs anything on the request.
+     *
+     * @throws ApiException if the deadline of the inbound request has already passed
+     */
+    private static void prepareRequest(HttpRequestBase httpMethod, Config config, ApiProtocol protocol,
+            ApiOperation operation) throws ApiException {
+        RequestDeadline.check(operation);
 
-                SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(sslContext);
-                CloseableHttpClient httpClient = HttpClients.custom().setSSLSocketFactory(sslsf).build();
+        // Never wait longer than the operation allows, nor past the deadline of the inbound request
+        TimeoutPolicy.Timeouts timeouts = config.getTimeoutPolicy().getTimeouts(operation);
+        RequestConfig.Builder requestConfig = RequestConfig.custom()
+                .setConnectTimeout(RequestDeadline.cap(timeouts.getConnectTimeout()))
+                .setSocketTimeout(RequestDeadline.cap(timeouts.getSocketTimeout()))
+                .setConnectionRequestTimeout(RequestDeadline.cap(timeouts.getConnectionRequestTimeout()));
 
-                //Execute request
-                HttpResponse response = httpClient.execute(httpMethod);
-                HttpEntity entity = response.getEntity();
-                body = EntityUtils.toString(entity);
+        if(config.getAuthenticationType().equals(Config.AuthenticationType.PASSWORD)) {
+            // Send the credentials with the request rather than waiting for the gateway to challenge for them,
+            // which would cost a second round trip and a second upload of the request body
+            if (protocol.equals(ApiProtocol.REST)) {
+                httpMethod.setHeader(HttpHeaders.AUTHORIZATION, config.getBasicAuthorization());
             }
-            if(protocol.equals(ApiProtocol.REST)) {
-                checkForRESTErrorResponse(body);
+
+            if (config.getHttpProxyHost() != null && config.getHttpProxyPort() != null) {
+                logger.info("Using proxy settings - Host = {0} Port = {1}", config.getHttpProxyHost(),
+                        config.getHttpProxyPort());
+                HttpHost proxy = new HttpHost(config.getHttpProxyHost(), config.getHttpProxyPort(),
+                        config.getHttpProxyHost().contains("https") ? "https" : "http");
+
+                requestConfig.setProxy(proxy);
             }
         }
-        catch (ApiException apiException) {
-            logger.error("The API returned an error", apiException);
-            throw apiException;
+
+        httpMethod.setConfig(requestConfig.build());
+    }
+
+    /**
+     * 5xx responses count against the circuit breaker; other errors are about the request, not the gateway
+     */
+    private static boolean isServerError(HttpResponse response) {
+        return response.getStatusLine().getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * Running out of pooled connections is our own congestion, which the bulkheads deal with
+     */
+    private static boolean isGatewayFailure(IOException ioe) {
+        return !(ioe instanceof ConnectionPoolTimeoutException);
+    }
+
+    private static String readResponseBody(HttpResponse response, GatewayMetrics.Operation metrics) throws IOException {
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+            long challenges = authenticationChallenges.incrementAndGet();
+            logger.warn("The gateway answered with an authentication challenge ({} so far)", challenges);
         }
-        catch (IOException ioe) {
-            // we can replace a specific exception that suits your application
-            throw new Exception(ioe);
+        CountingEntity entity = new CountingEntity(response.getEntity());
+        try {
+            return EntityUtils.toString(entity);
         } finally {
-            httpMethod.releaseConnection();
+            metrics.recordResponseBytes(entity.byteCount);
         }
-        return body;
     }
 
     /**
-     * Checks if the API response contains an error (handles JSON response from REST call)
+     * Hands the entry to the transaction ledger. A failing ledger never fails the call it records.
+     */
+    private static void record(LedgerEntry entry) {
+        try {
+            transactionLedger.record(entry);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to record the gateway call in the transaction ledger", e);
+        }
+    }
+
+    /**
+     * Number of 401 challenges received from the gateway. Credentials are sent preemptively, so this should stay at
+     * zero unless the API password is wrong.
+     *
+     * @return count of authentication challenges since startup
+     */
+    public static long getAuthenticationChallengeCount() {
+        return authenticationChallenges.get();
+    }
+
+    /**
+     * Parses the API response and checks if it contains an error (handles JSON response from REST call)
      *
      * @param response from the API call
+     * @return parsed response
      * @throws ApiException
      */
-    private static void checkForRESTErrorResponse(String response) throws ApiException {
+    private static ApiResponse checkForRESTErrorResponse(String response) throws ApiException {
+        ApiResponse apiResponse = ApiResponse.parse(response);
+        if (apiResponse.hasError()) {
+            throw apiResponse.getError();
+        }
+        return apiResponse;
+    }
+
+    /**
+     * Counts the bytes of the response body as it is read, whatever its encoding or transfer coding
+     */
+    private static final class CountingEntity extends HttpEntityWrapper {
+        private long byteCount;
 
-        JsonObject json = new Gson().fromJson(response, JsonObject.class);
+        private CountingEntity(HttpEntity entity) {
+            super(entity);
+        }
 
-        if (json.has("error")) {
-            JsonObject errorJson = json.get("error").getAsJsonObject();
-            ApiException apiException = new ApiException("The API returned an error");
-            if(errorJson.has("cause")) apiException.setErrorCode(errorJson.get("cause").getAsString());
-            if(errorJson.has("explanation")) apiException.setExplanation(errorJson.get("explanation").getAsString());
-            if(errorJson.has("field")) apiException.setField(errorJson.get("field").getAsString());
-            if(errorJson.has("validationType")) apiException.setValidationType(errorJson.get("validationType").getAsString());
-            throw apiException;
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        byteCount++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int count = super.read(buffer, offset, length);
+                    if (count > 0) {
+                        byteCount += count;
+                    }
+                    return count;
+                }
+            };
         }
     }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.gateway.app.Config;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.StringEntity;
+
+/**
+ * Non-blocking counterpart of {@link RESTApiClient}. Requests are executed by the asynchronous HTTP client, so the
+ * calling thread is released as soon as the request has been queued. The returned futures complete with the parsed
+ * response, or exceptionally with an {@link ApiException} when the gateway returns an error.
+ */
+public final class AsyncRESTApiClient {
+
+    private static final String UTF8_ENCODING = "UTF-8";
+
+    /**
+     * Performs a PUT operation (required for the following API operations: AUTHORIZE, CAPTURE, PAY, REFUND, UPDATE_AUTHORIZATION, VERIFY, VOID, CHECK_3DS_ENROLLMENT, INITIATE_BROWSER_PAYMENT)
+     *
+     * @param data       JSON payload
+     * @param requestUrl API endpoint
+     * @param config     contains frequently used information like Merchant ID, API password, etc.
+     * @param operation  operation being performed, or null to use the default timeouts
+     * @return future parsed API response
+     */
+    public CompletableFuture<ApiResponse> sendTransaction(String data, String requestUrl, Config config, ApiOperation operation) {
+        HttpPut httpPut = new HttpPut(requestUrl);
+        httpPut.setEntity(new StringEntity(data, UTF8_ENCODING));
+
+        return ApiService.executeAsyncHTTPMethod(httpPut, config, operation);
+    }
+
+    /**
+     * Performs a POST operation (required for the following API operations: PROCESS_ACS_RESULT, CREATE_CHECKOUT_SESSION)
+     *
+     * @param data       JSON payload
+     * @param requestUrl API endpoint
+     * @param config     contains frequently used information like Merchant ID, API password, etc.
+     * @param operation  operation being performed, or null to use the default timeouts
+     * @return future parsed API response
+     */
+    public CompletableFuture<ApiResponse> postTransaction(String data, String requestUrl, Config config, ApiOperation operation) {
+        HttpPost httpPost = new HttpPost(requestUrl);
+        httpPost.setEntity(new StringEntity(data, UTF8_ENCODING));
+
+        return ApiService.executeAsyncHTTPMethod(httpPost, config, operation);
+    }
+
+    /**
+     * Performs a POST operation without a body (required for creating a generic gateway session)
+     *
+     * @param requestUrl API endpoint
+     * @param config     contains frequently used information like Merchant ID, API password, etc.
+     * @return future parsed API response
+     */
+    public CompletableFuture<ApiResponse> postTransaction(String requestUrl, Config config) {
+        HttpPost httpPost = new HttpPost(requestUrl);
+
+        return ApiService.executeAsyncHTTPMethod(httpPost, config, ApiOperation.CREATE_SESSION);
+    }
+
+    /**
+     * Performs a GET operation (required for the following API operations: Retrieve session, Retrieve transaction, Retrieve order)
+     *
+     * @param requestUrl API endpoint
+     * @param config     contains frequently used information like Merchant ID, API password, etc.
+     * @param operation  operation being performed, or null to use the default timeouts
+     * @return future parsed API response
+     */
+    public CompletableFuture<ApiResponse> getTransaction(String requestUrl, Config config, ApiOperation operation) {
+        HttpGet httpGet = new HttpGet(requestUrl);
+
+        return ApiService.executeAsyncHTTPMethod(httpGet, config, operation);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Groups of gateway resources that degrade independently, each with its own circuit breaker and bulkhead in
+ * {@link GatewayGuards}
+ */
+public enum EndpointFamily {
+    SESSION,
+    /**
+     * Orders and their transactions
+     */
+    ORDER,
+    THREE_D_SECURE,
+    TOKEN,
+    NVP,
+    /**
+     * Any other REST resource, such as the payment options inquiry
+     */
+    OTHER;
+
+    private static final String MERCHANT_PATH = "/merchant/";
+
+    /**
+     * @param protocol   protocol of the call
+     * @param httpMethod request about to be sent
+     * @return the family of the resource the request is for
+     */
+    public static EndpointFamily of(ApiProtocol protocol, HttpRequestBase httpMethod) {
+        if (protocol == ApiProtocol.NVP) {
+            return NVP;
+        }
+        // REST resources follow /merchant/{merchantId}/
+        String path = httpMethod.getURI().getPath();
+        int merchant = path == null ? -1 : path.indexOf(MERCHANT_PATH);
+        int resourceStart = merchant < 0 ? -1 : path.indexOf('/', merchant + MERCHANT_PATH.length());
+        if (resourceStart < 0) {
+            return OTHER;
+        }
+        int resourceEnd = path.indexOf('/', resourceStart + 1);
+        String resource = path.substring(resourceStart + 1, resourceEnd < 0 ? path.length() : resourceEnd);
+        switch (resource) {
+            case "session":
+                return SESSION;
+            case "order":
+                return ORDER;
+            case "3DSecureId":
+                return THREE_D_SECURE;
+            case "token":
+                return TOKEN;
+            default:
+                return OTHER;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breakers and bulkheads around gateway calls, one of each per {@link EndpointFamily}, so a degraded gateway
+ * fails calls fast instead of tying up every thread until it times out.
+ *
+ * A circuit breaker tracks the calls of its family over a rolling window. Once the window holds enough calls and the
+ * share of failed calls (I/O errors and 5xx responses) or slow calls reaches its threshold, the breaker opens and calls
+ * are rejected straight away. After the open duration a few trial calls are let through: the breaker closes if they
+ * all succeed in time, and opens again otherwise.
+ *
+ * A bulkhead limits the calls of a family in flight at once. Reads (GET) and writes have separate limits, so a storm of
+ * retrievals can't hold every connection a payment needs. A call waits briefly for room, then is rejected.
+ *
+ * Rejected calls fail with an {@link ApiException} carrying {@link #CIRCUIT_OPEN} or {@link #BULKHEAD_FULL}. The state
+ * of every family and the recent state changes are reported by {@link #snapshot()}.
+ */
+public class GatewayGuards {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayGuards.class);
+
+    /**
+     * Error code of the {@link ApiException} thrown while a circuit is open
+     */
+    public static final String CIRCUIT_OPEN = "CIRCUIT_OPEN";
+
+    /**
+     * Error code of the {@link ApiException} thrown when a bulkhead has no room
+     */
+    public static final String BULKHEAD_FULL = "BULKHEAD_FULL";
+
+    private static final int WINDOW_BUCKETS = 10;
+
+    private static final int MAX_TRANSITIONS = 50;
+
+    private int failureRateThreshold = 50;
+    private int slowCallRateThreshold = 80;
+    private long slowCallDuration = 10000;
+    private int minimumCalls = 20;
+    private long window = 10000;
+    private long openDuration = 30000;
+    private int halfOpenCalls = 5;
+    private int maxConcurrentCalls = 20;
+    private final Map<EndpointFamily, Integer> familyMaxConcurrentCalls = new EnumMap<>(EndpointFamily.class);
+    private long maxWait = 500;
+
+    private final Map<EndpointFamily, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> transitions = new ArrayDeque<>();
+
+    /**
+     * Lets a call through, or rejects it if its circuit is open or its bulkhead is full
+     *
+     * @param protocol   protocol of the call
+     * @param httpMethod request about to be sent
+     * @param operation  operation being performed, used in the error
+     * @return the permit to release once the call completes
+     * @throws ApiException if the call is rejected
+     */
+    public Permit acquire(ApiProtocol protocol, HttpRequestBase httpMethod, ApiOperation operation)
+            throws ApiException, InterruptedException {
+        EndpointFamily family = EndpointFamily.of(protocol, httpMethod);
+        CircuitBreaker breaker = breakers.computeIfAbsent(family, CircuitBreaker::new);
+        Boolean trial = breaker.tryAcquire(System.currentTimeMillis());
+        if (trial == null) {
+            breaker.rejected.increment();
+            throw rejection(CIRCUIT_OPEN, "The gateway is failing " + family + " calls, " + describe(operation)
+                    + " was not sent");
+        }
+
+        String compartment = family + ("GET".equals(httpMethod.getMethod()) ? "_READ" : "_WRITE");
+        Semaphore bulkhead = bulkheads.computeIfAbsent(compartment,
+                key -> new Semaphore(familyMaxConcurrentCalls.getOrDefault(family, maxConcurrentCalls)));
+        long wait = Math.min(maxWait, Math.max(RequestDeadline.remaining(), 0));
+        if (!bulkhead.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+            breaker.cancel(trial);
+            breaker.full.increment();
+            throw rejection(BULKHEAD_FULL, "Too many " + family + " calls in progress, " + describe(operation)
+                    + " was not sent");
+        }
+        return new Permit(breaker, bulkhead, trial);
+    }
+
+    /**
+     * @return per family: the circuit state, the failure and slow call rates over the window, the room left in the
+     * bulkheads and the rejection counts; and the most recent state changes
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> families = new TreeMap<>();
+        breakers.forEach((family, breaker) -> families.put(family.name(), breaker.snapshot()));
+        Map<String, Object> available = new TreeMap<>();
+        bulkheads.forEach((compartment, bulkhead) -> available.put(compartment, bulkhead.availablePermits()));
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("circuitBreakers", families);
+        snapshot.put("bulkheadsAvailable", available);
+        synchronized (transitions) {
+            snapshot.put("stateChanges", new ArrayList<>(transitions));
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param threshold percentage of failed calls in the window at which the circuit opens
+     */
+    public void setFailureRateThreshold(int threshold) {
+        this.failureRateThreshold = threshold;
+    }
+
+    /**
+     * @param threshold percentage of slow calls in the window at which the circuit opens
+     */
+    public void setSlowCallRateThreshold(int threshold) {
+        this.slowCallRateThreshold = threshold;
+    }
+
+    /**
+     * @param slowCallDuration time in milliseconds from which a call counts as slow
+     */
+    public void setSlowCallDuration(long slowCallDuration) {
+        this.slowCallDuration = slowCallDuration;
+    }
+
+    /**
+     * @param minimumCalls number of calls the window needs before the rates are acted on
+     */
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    /**
+     * @param window length in milliseconds of the rolling window
+     */
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    /**
+     * @param openDuration time in milliseconds the circuit stays open before trial calls are let through
+     */
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * @param halfOpenCalls number of trial calls that must succeed to close the circuit
+     */
+    public void setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * @param maxConcurrentCalls reads, and separately writes, a family may have in flight
+     */
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    /**
+     * @param maxWait time in milliseconds a call waits for room in its bulkhead
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Reads per-family bulkhead limits in the form <pre>FAMILY=calls</pre>, separated by commas, e.g.
+     * <pre>ORDER=30,TOKEN=5</pre>. Families that are left out keep the default limit.
+     *
+     * @param limits comma separated list of family limits
+     * @throws IllegalArgumentException if an entry can't be parsed
+     */
+    public void parseFamilyMaxConcurrentCalls(String limits) {
+        if (limits == null || limits.trim().isEmpty()) {
+            return;
+        }
+        for (String entry : limits.split(",")) {
+            String[] keyValue = entry.trim().split("=");
+            try {
+                familyMaxConcurrentCalls.put(EndpointFamily.valueOf(keyValue[0].trim()), Integer.parseInt(keyValue[1].trim()));
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid bulkhead limit: " + entry, e);
+            }
+        }
+    }
+
+    private static String describe(ApiOperation operation) {
+        return operation == null ? "the call" : operation.toString();
+    }
+
+    private static ApiException rejection(String errorCode, String explanation) {
+        ApiException apiException = new ApiException("The gateway call was rejected");
+        apiException.setErrorCode(errorCode);
+        apiException.setExplanation(explanation);
+        return apiException;
+    }
+
+    private void recordTransition(EndpointFamily family, State from, State to) {
+        if (to == State.OPEN) {
+            logger.warn("Circuit breaker for {} gateway calls went from {} to {}", family, from, to);
+        } else {
+            logger.info("Circuit breaker for {} gateway calls went from {} to {}", family, from, to);
+        }
+        Map<String, Object> transition = new LinkedHashMap<>();
+        transition.put("timestamp", System.currentTimeMillis());
+        transition.put("family", family.name());
+        transition.put("from", from.name());
+        transition.put("to", to.name());
+        synchronized (transitions) {
+            transitions.addFirst(transition);
+            if (transitions.size() > MAX_TRANSITIONS) {
+                transitions.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Room taken in a bulkhead, and the circuit breaker the outcome of the call is reported to. Releasing it more than
+     * once has no effect.
+     */
+    public static final class Permit {
+        private final CircuitBreaker breaker;
+        private final Semaphore bulkhead;
+        private final boolean trial;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long start = System.nanoTime();
+
+        private Permit(CircuitBreaker breaker, Semaphore bulkhead, boolean trial) {
+            this.breaker = breaker;
+            this.bulkhead = bulkhead;
+            this.trial = trial;
+        }
+
+        /**
+         * Marks the request as sent; the call duration is measured from here
+         */
+        public void sent() {
+            start = System.nanoTime();
+        }
+
+        /**
+         * Reports the outcome of a call that was sent
+         *
+         * @param failed whether the gateway failed to answer properly
+         */
+        public void release(boolean failed) {
+            if (released.compareAndSet(false, true)) {
+                bulkhead.release();
+                breaker.record(trial, System.nanoTime() - start, failed);
+            }
+        }
+
+        /**
+         * Gives the room back for a call that was never sent
+         */
+        public void cancel() {
+            if (released.compareAndSet(false, true)) {
+                bulkhead.release();
+                breaker.cancel(trial);
+            }
+        }
+    }
+
+    /**
+     * Circuit breaker of one family. The window is split into buckets, so old calls drop out as time passes without
+     * anything being kept per call.
+     */
+    private final class CircuitBreaker {
+
+        private final EndpointFamily family;
+        private final long bucketMillis = Math.max(window / WINDOW_BUCKETS, 1);
+        private final long[] bucketStarts = new long[WINDOW_BUCKETS];
+        private final int[] calls = new int[WINDOW_BUCKETS];
+        private final int[] failures = new int[WINDOW_BUCKETS];
+        private final int[] slowCalls = new int[WINDOW_BUCKETS];
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder full = new LongAdder();
+        private State state = State.CLOSED;
+        private long openedAt;
+        private int trialsStarted;
+        private int trialsSucceeded;
+
+        CircuitBreaker(EndpointFamily family) {
+            this.family = family;
+        }
+
+        /**
+         * @return null if the call is rejected, otherwise whether it's a trial call
+         */
+        synchronized Boolean tryAcquire(long now) {
+            if (state == State.OPEN) {
+                if (now - openedAt < openDuration) {
+                    return null;
+                }
+                transition(State.HALF_OPEN);
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsStarted >= halfOpenCalls) {
+                    return null;
+                }
+                trialsStarted++;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void cancel(boolean trial) {
+            if (trial && state == State.HALF_OPEN) {
+                trialsStarted--;
+            }
+        }
+
+        synchronized void record(boolean trial, long nanos, boolean failed) {
+            boolean slow = nanos >= TimeUnit.MILLISECONDS.toNanos(slowCallDuration);
+            long now = System.currentTimeMillis();
+            if (trial) {
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                if (failed || slow) {
+                    open(now);
+                } else if (++trialsSucceeded >= halfOpenCalls) {
+                    Arrays.fill(bucketStarts, 0);
+                    transition(State.CLOSED);
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                // Calls sent before the circuit opened don't count towards closing it
+                return;
+            }
+            int bucket = bucket(now);
+            calls[bucket]++;
+            if (failed) {
+                failures[bucket]++;
+            }
+            if (slow) {
+                slowCalls[bucket]++;
+            }
+            int[] totals = totals(now);
+            if (totals[0] >= minimumCalls && (totals[1] * 100L >= failureRateThreshold * (long) totals[0]
+                    || totals[2] * 100L >= slowCallRateThreshold * (long) totals[0])) {
+                open(now);
+            }
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            int[] totals = totals(System.currentTimeMillis());
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("state", state.name());
+            snapshot.put("calls", totals[0]);
+            snapshot.put("failureRate", totals[0] == 0 ? 0.0 : totals[1] * 100.0 / totals[0]);
+            snapshot.put("slowCallRate", totals[0] == 0 ? 0.0 : totals[2] * 100.0 / totals[0]);
+            snapshot.put("rejected", rejected.sum());
+            snapshot.put("bulkheadFull", full.sum());
+            return snapshot;
+        }
+
+        private void open(long now) {
+            openedAt = now;
+            transition(State.OPEN);
+        }
+
+        private void transition(State to) {
+            State from = state;
+            state = to;
+            recordTransition(family, from, to);
+        }
+
+        /**
+         * @return index of the bucket for the time, emptied if it last held an earlier period
+         */
+        private int bucket(long now) {
+            long bucketStart = now - now % bucketMillis;
+            int bucket = (int) ((now / bucketMillis) % WINDOW_BUCKETS);
+            if (bucketStarts[bucket] != bucketStart) {
+                bucketStarts[bucket] = bucketStart;
+                calls[bucket] = 0;
+                failures[bucket] = 0;
+                slowCalls[bucket] = 0;
+            }
+            return bucket;
+        }
+
+        /**
+         * @return calls, failures and slow calls in the window
+         */
+        private int[] totals(long now) {
+            int[] totals = new int[3];
+            long windowStart = now - bucketMillis * WINDOW_BUCKETS;
+            for (int i = 0; i < WINDOW_BUCKETS; i++) {
+                if (bucketStarts[i] > windowStart) {
+                    totals[0] += calls[i];
+                    totals[1] += failures[i];
+                    totals[2] += slowCalls[i];
+                }
+            }
+            return totals;
+        }
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+}
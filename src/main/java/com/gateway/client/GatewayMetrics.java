@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+
+/**
+ * Records every gateway call made through {@link ApiService}: latency, request and response sizes and errors per API
+ * operation and HTTP method, and the time spent waiting for a pooled connection. Recording is lock-free, so it can stay
+ * on in production; the numbers are read through the <pre>gateway</pre> actuator endpoint.
+ */
+public final class GatewayMetrics {
+
+    /**
+     * Connection pool of the blocking client
+     */
+    public static final String SYNC_POOL = "sync";
+
+    /**
+     * Connection pool of the non-blocking client. Its leases include connecting when no idle connection is available.
+     */
+    public static final String ASYNC_POOL = "async";
+
+    private static final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private static final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private GatewayMetrics() {
+    }
+
+    /**
+     * Returns the metrics of an operation, creating them on first use
+     *
+     * @param operation operation being performed, or null when the caller didn't name it (e.g. NVP calls)
+     * @param protocol  REST or NVP, used in place of a missing operation
+     * @param method    HTTP method
+     * @return metrics of the operation and method
+     */
+    public static Operation forOperation(ApiOperation operation, ApiProtocol protocol, String method) {
+        String key = (operation != null ? operation.name() : protocol.name()) + " " + method;
+        Operation metrics = operations.get(key);
+        return metrics != null ? metrics : operations.computeIfAbsent(key, k -> new Operation());
+    }
+
+    /**
+     * @param pool     {@link #SYNC_POOL} or {@link #ASYNC_POOL}
+     * @param nanos    time spent waiting for the connection
+     * @param timedOut whether the wait ended without a connection
+     */
+    public static void recordLeaseWait(String pool, long nanos, boolean timedOut) {
+        Lease lease = leases.get(pool);
+        if (lease == null) {
+            lease = leases.computeIfAbsent(pool, k -> new Lease());
+        }
+        lease.waits.record(nanos);
+        if (timedOut) {
+            lease.timeouts.increment();
+        }
+    }
+
+    /**
+     * @return operations sorted by name, the connection pools, the authentication challenge count and the coalesced
+     * read counts
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> operationSnapshots = new TreeMap<>();
+        operations.forEach((key, operation) -> operationSnapshots.put(key, operation.snapshot()));
+        Map<String, Object> leaseSnapshots = new TreeMap<>();
+        leases.forEach((pool, lease) -> leaseSnapshots.put(pool, lease.snapshot()));
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("operations", operationSnapshots);
+        snapshot.put("connectionLeases", leaseSnapshots);
+        snapshot.put("authenticationChallenges", ApiService.getAuthenticationChallengeCount());
+        snapshot.put("coalescedReads", ReadCoalescer.snapshot());
+        return snapshot;
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public static void reset() {
+        operations.clear();
+        leases.clear();
+    }
+
+    /**
+     * @return length of the request body, or 0 if it has none or the length isn't known up front
+     */
+    static long requestBytes(HttpRequest request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && entity.getContentLength() > 0) {
+                return entity.getContentLength();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Metrics of one API operation and HTTP method
+     */
+    public static final class Operation {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        /**
+         * @param nanos        time from sending the request to reading the whole response
+         * @param requestBytes size of the request body
+         */
+        void recordCall(long nanos, long requestBytes) {
+            latency.record(nanos);
+            this.requestBytes.add(requestBytes);
+        }
+
+        void recordResponseBytes(long bytes) {
+            responseBytes.add(bytes);
+        }
+
+        /**
+         * Records a call that got no response, keyed by the exception type, e.g. SocketTimeoutException
+         */
+        void recordFailure(long nanos, long requestBytes, Exception e) {
+            recordCall(nanos, requestBytes);
+            recordError(e.getClass().getSimpleName());
+        }
+
+        /**
+         * Records an error the gateway answered with
+         *
+         * @param errorCode the error cause, as in {@link ApiException#getErrorCode()}
+         */
+        public void recordError(String errorCode) {
+            String key = errorCode != null ? errorCode : "UNKNOWN";
+            LongAdder count = errors.get(key);
+            if (count == null) {
+                count = errors.computeIfAbsent(key, k -> new LongAdder());
+            }
+            count.increment();
+        }
+
+        private Map<String, Object> snapshot() {
+            Map<String, Object> errorCounts = new TreeMap<>();
+            long errorTotal = 0;
+            for (Map.Entry<String, LongAdder> error : errors.entrySet()) {
+                long count = error.getValue().sum();
+                errorCounts.put(error.getKey(), count);
+                errorTotal += count;
+            }
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("latency", latency.percentiles());
+            snapshot.put("requestBytes", requestBytes.sum());
+            snapshot.put("responseBytes", responseBytes.sum());
+            snapshot.put("errors", errorTotal);
+            snapshot.put("errorCodes", errorCounts);
+            return snapshot;
+        }
+    }
+
+    private static final class Lease {
+        private final LatencyHistogram waits = new LatencyHistogram();
+        private final LongAdder timeouts = new LongAdder();
+
+        private Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("wait", waits.percentiles());
+            snapshot.put("timeouts", timeouts.sum());
+            return snapshot;
+        }
+    }
+}
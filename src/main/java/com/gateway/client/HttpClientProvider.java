@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.gateway.app.Config;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+import org.apache.http.nio.reactor.IOSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds one long-lived HTTP client per {@link Config}. Connections to the gateway are pooled and kept alive between
+ * calls, so the TCP and TLS handshakes are paid once per connection instead of once per request.
+ */
+public final class HttpClientProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientProvider.class);
+
+    private static final Map<Config, CloseableHttpClient> httpClients = new ConcurrentHashMap<>();
+    private static final Map<Config, CloseableHttpAsyncClient> httpAsyncClients = new ConcurrentHashMap<>();
+    private static final Map<Config, KeyStoreSocketFactory> keyStoreSocketFactories = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService asyncConnectionEvictor;
+
+    private HttpClientProvider() {
+    }
+
+    /**
+     * Returns the pooled HTTP client for the given configuration, creating it on first use
+     *
+     * @param config contains frequently used information like Merchant ID, API password, etc.
+     * @return shared HTTP client
+     * @throws Exception
+     */
+    public static CloseableHttpClient getHttpClient(Config config) throws Exception {
+        CloseableHttpClient httpClient = httpClients.get(config);
+        if (httpClient == null) {
+            synchronized (httpClients) {
+                httpClient = httpClients.get(config);
+                if (httpClient == null) {
+                    httpClient = createHttpClient(config);
+                    httpClients.put(config, httpClient);
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    /**
+     * Returns the non-blocking HTTP client for the given configuration, creating and starting it on first use. Requests
+     * are driven by a small number of I/O reactor threads instead of one blocked thread per request.
+     *
+     * @param config contains frequently used information like Merchant ID, API password, etc.
+     * @return shared asynchronous HTTP client
+     * @throws Exception
+     */
+    public static CloseableHttpAsyncClient getHttpAsyncClient(Config config) throws Exception {
+        CloseableHttpAsyncClient httpAsyncClient = httpAsyncClients.get(config);
+        if (httpAsyncClient == null) {
+            synchronized (httpClients) {
+                httpAsyncClient = httpAsyncClients.get(config);
+                if (httpAsyncClient == null) {
+                    httpAsyncClient = createHttpAsyncClient(config);
+                    httpAsyncClient.start();
+                    httpAsyncClients.put(config, httpAsyncClient);
+                }
+            }
+        }
+        return httpAsyncClient;
+    }
+
+    /**
+     * Returns the TLS socket factory holding the key material for certificate authentication. The keystore is loaded
+     * on first use and reloaded whenever the file changes.
+     *
+     * @param config contains the keystore path and password
+     * @return socket factory for the configured keystore
+     * @throws Exception if the keystore can't be read
+     */
+    public static KeyStoreSocketFactory getKeyStoreSocketFactory(Config config) throws Exception {
+        KeyStoreSocketFactory socketFactory = keyStoreSocketFactories.get(config);
+        if (socketFactory == null) {
+            synchronized (keyStoreSocketFactories) {
+                socketFactory = keyStoreSocketFactories.get(config);
+                if (socketFactory == null) {
+                    socketFactory = new KeyStoreSocketFactory(config.getKeyStore(), config.getKeyStorePassword(),
+                            config.getKeyStoreReloadInterval());
+                    keyStoreSocketFactories.put(config, socketFactory);
+                }
+            }
+        }
+        return socketFactory;
+    }
+
+    /**
+     * Closes every pooled client and its connections. Called when the application shuts down.
+     */
+    public static void shutdown() {
+        synchronized (httpClients) {
+            for (CloseableHttpClient httpClient : httpClients.values()) {
+                try {
+                    httpClient.close();
+                } catch (IOException e) {
+                    logger.warn("Unable to close HTTP client", e);
+                }
+            }
+            for (CloseableHttpAsyncClient httpAsyncClient : httpAsyncClients.values()) {
+                try {
+                    httpAsyncClient.close();
+                } catch (IOException e) {
+                    logger.warn("Unable to close asynchronous HTTP client", e);
+                }
+            }
+            if (asyncConnectionEvictor != null) {
+                asyncConnectionEvictor.shutdownNow();
+                asyncConnectionEvictor = null;
+            }
+            httpClients.clear();
+            httpAsyncClients.clear();
+            keyStoreSocketFactories.clear();
+        }
+    }
+
+    private static CloseableHttpClient createHttpClient(Config config) throws Exception {
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", createSSLSocketFactory(config))
+                .build();
+
+        PoolingHttpClientConnectionManager connectionManager = new TimedConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(config.getHttpMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getHttpMaxConnectionsPerRoute());
+
+        logger.info("Creating pooled HTTP client - max connections = {}, max connections per route = {}",
+                config.getHttpMaxConnections(), config.getHttpMaxConnectionsPerRoute());
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(createKeepAliveStrategy(config))
+                .evictExpiredConnections()
+                .evictIdleConnections(config.getHttpIdleConnectionTimeout(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private static CloseableHttpAsyncClient createHttpAsyncClient(Config config) throws Exception {
+        Registry<SchemeIOSessionStrategy> sessionStrategyRegistry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", createSSLSessionStrategy(config))
+                .build();
+
+        PoolingNHttpClientConnectionManager connectionManager =
+                new TimedAsyncConnectionManager(new DefaultConnectingIOReactor(), sessionStrategyRegistry);
+        connectionManager.setMaxTotal(config.getHttpMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getHttpMaxConnectionsPerRoute());
+
+        // The asynchronous client has no built-in evictor, so close idle and expired connections on a schedule
+        if (asyncConnectionEvictor == null) {
+            asyncConnectionEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "gateway-async-connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long idleTimeout = config.getHttpIdleConnectionTimeout();
+        asyncConnectionEvictor.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        }, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+
+        return HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(createKeepAliveStrategy(config))
+                .build();
+    }
+
+    /**
+     * Honours the Keep-Alive header sent by the gateway, but never keeps a connection longer than configured
+     */
+    private static ConnectionKeepAliveStrategy createKeepAliveStrategy(Config config) {
+        return (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            if (keepAlive <= 0 || keepAlive > config.getHttpKeepAliveDuration()) {
+                return config.getHttpKeepAliveDuration();
+            }
+            return keepAlive;
+        };
+    }
+
+    private static LayeredConnectionSocketFactory createSSLSocketFactory(Config config) throws Exception {
+        if (Config.AuthenticationType.CERTIFICATE.equals(config.getAuthenticationType())) {
+            return getKeyStoreSocketFactory(config);
+        }
+        return SSLConnectionSocketFactory.getSocketFactory();
+    }
+
+    private static SchemeIOSessionStrategy createSSLSessionStrategy(Config config) throws Exception {
+        if (!Config.AuthenticationType.CERTIFICATE.equals(config.getAuthenticationType())) {
+            return SSLIOSessionStrategy.getDefaultStrategy();
+        }
+        KeyStoreSocketFactory keyStoreSocketFactory = getKeyStoreSocketFactory(config);
+
+        // Look up the SSL context for every new connection so a reloaded keystore is picked up
+        return new SchemeIOSessionStrategy() {
+            @Override
+            public boolean isLayeringRequired() {
+                return true;
+            }
+
+            @Override
+            public IOSession upgrade(HttpHost host, IOSession session) throws IOException {
+                return new SSLIOSessionStrategy(keyStoreSocketFactory.getSSLContext()).upgrade(host, session);
+            }
+        };
+    }
+
+    /**
+     * Records in {@link GatewayMetrics} how long each request waits to lease a connection from the blocking pool
+     */
+    private static final class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+
+        private TimedConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+            super(socketFactoryRegistry);
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit tunit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    boolean leased = false;
+                    try {
+                        HttpClientConnection connection = request.get(timeout, tunit);
+                        leased = true;
+                        return connection;
+                    } finally {
+                        GatewayMetrics.recordLeaseWait(GatewayMetrics.SYNC_POOL, System.nanoTime() - start, !leased);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+    }
+
+    /**
+     * Records in {@link GatewayMetrics} how long each request waits to lease a connection from the non-blocking pool
+     */
+    private static final class TimedAsyncConnectionManager extends PoolingNHttpClientConnectionManager {
+
+        private TimedAsyncConnectionManager(ConnectingIOReactor ioReactor,
+                Registry<SchemeIOSessionStrategy> sessionStrategyRegistry) {
+            super(ioReactor, sessionStrategyRegistry);
+        }
+
+        @Override
+        public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state, long connectTimeout,
+                long leaseTimeout, TimeUnit tunit, FutureCallback<NHttpClientConnection> callback) {
+            long start = System.nanoTime();
+            return super.requestConnection(route, state, connectTimeout, leaseTimeout, tunit,
+                    new FutureCallback<NHttpClientConnection>() {
+                        @Override
+                        public void completed(NHttpClientConnection connection) {
+                            GatewayMetrics.recordLeaseWait(GatewayMetrics.ASYNC_POOL, System.nanoTime() - start, false);
+                            if (callback != null) {
+                                callback.completed(connection);
+                            }
+                        }
+
+                        @Override
+                        public void failed(Exception e) {
+                            GatewayMetrics.recordLeaseWait(GatewayMetrics.ASYNC_POOL, System.nanoTime() - start, true);
+                            if (callback != null) {
+                                callback.failed(e);
+                            }
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            if (callback != null) {
+                                callback.cancelled();
+                            }
+                        }
+                    });
+        }
+    }
+}
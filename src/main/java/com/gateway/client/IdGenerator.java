@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+/**
+ * Generates the identifiers used for orders, transactions and the other objects created by the sample code. The
+ * generator in use is set with {@link Utils#setIdGenerator(IdGenerator)}.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+    /**
+     * @return a new alphanumeric identifier, without prefix
+     */
+    String nextId();
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streams a request payload straight to text, without building a JSON tree first. Nested objects are opened lazily:
+ * an object's name and opening brace are only written once its first field is, so objects that end up empty are left
+ * out of the payload entirely. Empty or null values are skipped the same way.
+ *
+ * The output matches what Gson produces for the equivalent tree, including HTML-safe escaping. The text buffer is
+ * kept per thread and reused across payloads, unless an unusually large payload grew it past
+ * {@link #MAX_RETAINED_CAPACITY}, in which case it is dropped rather than held by the thread for good.
+ */
+final class JsonPayloadWriter {
+
+    private static final int MAX_DEPTH = 8;
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<StringWriter> buffers = ThreadLocal.withInitial(() -> new StringWriter(512));
+
+    private final StringWriter buffer;
+    private final JsonWriter writer;
+    private final String[] names = new String[MAX_DEPTH];
+    private final boolean[] opened = new boolean[MAX_DEPTH];
+    private int depth;
+
+    /**
+     * @param pretty indent the output like Gson's pretty printing, or write it compactly
+     */
+    JsonPayloadWriter(boolean pretty) {
+        buffer = buffers.get();
+        buffer.getBuffer().setLength(0);
+        writer = new JsonWriter(buffer);
+        writer.setHtmlSafe(true);
+        if (pretty) {
+            writer.setIndent("  ");
+        }
+        try {
+            writer.beginObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        opened[0] = true;
+    }
+
+    /**
+     * Starts a nested object. Nothing is written until the object gets its first field.
+     *
+     * @param name name of the object in its parent
+     * @return this writer
+     */
+    JsonPayloadWriter beginObject(String name) {
+        depth++;
+        names[depth] = name;
+        opened[depth] = false;
+        return this;
+    }
+
+    /**
+     * Ends the current nested object, if anything was written to it
+     *
+     * @return this writer
+     */
+    JsonPayloadWriter endObject() {
+        try {
+            if (opened[depth]) {
+                writer.endObject();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        names[depth] = null;
+        depth--;
+        return this;
+    }
+
+    /**
+     * Writes a field, unless the value is null or empty
+     *
+     * @param name  field name
+     * @param value field value
+     * @return this writer
+     */
+    JsonPayloadWriter property(String name, String value) {
+        if (!Utils.notNullOrEmpty(value)) {
+            return this;
+        }
+        try {
+            openPendingObjects();
+            writer.name(name).value(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Ends the payload
+     *
+     * @return the JSON text
+     */
+    String finish() {
+        try {
+            while (depth > 0) {
+                endObject();
+            }
+            writer.endObject();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String json = buffer.toString();
+        if (buffer.getBuffer().capacity() > MAX_RETAINED_CAPACITY) {
+            buffers.remove();
+        }
+        return json;
+    }
+
+    private void openPendingObjects() throws IOException {
+        for (int i = 1; i <= depth; i++) {
+            if (!opened[i]) {
+                writer.name(names[i]).beginObject();
+                opened[i] = true;
+            }
+        }
+    }
+}
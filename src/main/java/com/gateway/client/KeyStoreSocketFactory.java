@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TLS socket factory for certificate authentication. The PKCS12 keystore is parsed once and the resulting SSLContext
+ * is reused for every new connection. The keystore file is checked for changes (modification time and size) at most
+ * once per reload interval; when it has changed the key material is rebuilt and swapped in atomically. Connections
+ * that are already open keep using the material they were created with.
+ */
+public class KeyStoreSocketFactory implements LayeredConnectionSocketFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyStoreSocketFactory.class);
+
+    private final File keyStoreFile;
+    private final char[] keyStorePassword;
+    private final long reloadInterval;
+    private final AtomicReference<KeyMaterial> keyMaterial = new AtomicReference<>();
+    private volatile long nextCheck;
+
+    /**
+     * @param keyStore         path to the PKCS12 keystore
+     * @param keyStorePassword password of the keystore and of the key it contains
+     * @param reloadInterval   minimum time in milliseconds between two checks of the keystore file
+     * @throws Exception if the keystore can't be read
+     */
+    public KeyStoreSocketFactory(String keyStore, String keyStorePassword, long reloadInterval) throws Exception {
+        this.keyStoreFile = new File(keyStore);
+        this.keyStorePassword = keyStorePassword.toCharArray();
+        this.reloadInterval = reloadInterval;
+        this.keyMaterial.set(loadKeyMaterial());
+        this.nextCheck = System.currentTimeMillis() + reloadInterval;
+    }
+
+    /**
+     * @return the SSL context built from the current keystore contents
+     */
+    public SSLContext getSSLContext() {
+        return currentKeyMaterial().sslContext;
+    }
+
+    @Override
+    public Socket createSocket(HttpContext context) throws IOException {
+        return currentKeyMaterial().socketFactory.createSocket(context);
+    }
+
+    @Override
+    public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+            InetSocketAddress localAddress, HttpContext context) throws IOException {
+        return currentKeyMaterial().socketFactory.connectSocket(connectTimeout, sock, host, remoteAddress,
+                localAddress, context);
+    }
+
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+        return currentKeyMaterial().socketFactory.createLayeredSocket(socket, target, port, context);
+    }
+
+    private KeyMaterial currentKeyMaterial() {
+        long now = System.currentTimeMillis();
+        if (now >= nextCheck) {
+            synchronized (this) {
+                if (now >= nextCheck) {
+                    nextCheck = now + reloadInterval;
+                    reloadIfChanged();
+                }
+            }
+        }
+        return keyMaterial.get();
+    }
+
+    private void reloadIfChanged() {
+        KeyMaterial current = keyMaterial.get();
+        if (keyStoreFile.lastModified() == current.lastModified && keyStoreFile.length() == current.length) {
+            return;
+        }
+        try {
+            keyMaterial.set(loadKeyMaterial());
+            logger.info("Reloaded keystore {}", keyStoreFile.getAbsolutePath());
+        } catch (Exception e) {
+            // Keep serving with the previous key material rather than failing every new connection
+            logger.error("Unable to reload keystore " + keyStoreFile.getAbsolutePath() + ", keeping the previous one", e);
+        }
+    }
+
+    private KeyMaterial loadKeyMaterial() throws Exception {
+        // Read the file attributes first so a write racing with the load is picked up on the next check
+        long lastModified = keyStoreFile.lastModified();
+        long length = keyStoreFile.length();
+
+        KeyStore keyStore = KeyStore.getInstance("pkcs12");
+
+        // Read keystore
+        try (InputStream keyStoreInput = new FileInputStream(keyStoreFile)) {
+            keyStore.load(keyStoreInput, keyStorePassword);
+        }
+
+        // Create SSL context
+        SSLContext sslContext = SSLContexts.custom()
+                .loadKeyMaterial(keyStore, keyStorePassword)
+                .build();
+
+        return new KeyMaterial(lastModified, length, sslContext);
+    }
+
+    private static final class KeyMaterial {
+        private final long lastModified;
+        private final long length;
+        private final SSLContext sslContext;
+        private final SSLConnectionSocketFactory socketFactory;
+
+        private KeyMaterial(long lastModified, long length, SSLContext sslContext) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.sslContext = sslContext;
+            this.socketFactory = new SSLConnectionSocketFactory(sslContext);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency distribution that can be recorded from any number of threads without locking. Values are recorded in
+ * microseconds into a {@link Recorder}; reading the distribution folds what was recorded since the last read into a
+ * running total, so the percentiles cover everything since startup.
+ */
+final class LatencyHistogram {
+
+    private final Recorder recorder = new Recorder(3);
+    private final Histogram total = new Histogram(3);
+    private Histogram interval;
+
+    void record(long nanos) {
+        recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    /**
+     * @return count, mean, p50, p90, p99, p999 and max, in milliseconds
+     */
+    synchronized Map<String, Object> percentiles() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        percentiles.put("count", total.getTotalCount());
+        percentiles.put("mean", total.getMean() / 1000.0);
+        percentiles.put("p50", total.getValueAtPercentile(50) / 1000.0);
+        percentiles.put("p90", total.getValueAtPercentile(90) / 1000.0);
+        percentiles.put("p99", total.getValueAtPercentile(99) / 1000.0);
+        percentiles.put("p999", total.getValueAtPercentile(99.9) / 1000.0);
+        percentiles.put("max", total.getMaxValue() / 1000.0);
+        return percentiles;
+    }
+}
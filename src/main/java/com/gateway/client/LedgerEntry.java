@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URLEncodedUtils;
+
+/**
+ * A call made to the gateway and its outcome, as recorded in the {@link TransactionLedger}. The outcome holds the same
+ * order, transaction and response fields as {@link com.gateway.response.TransactionResponse} and
+ * {@link com.gateway.response.BrowserPaymentResponse}, taken from whichever response the call returned; fields the
+ * response doesn't carry are null. Instances are not modified once recorded.
+ */
+public class LedgerEntry {
+
+    private final long createdAt;
+    private final String operation;
+    private final String protocol;
+    private final String method;
+    private final String url;
+    private final long latencyMillis;
+    private String orderId;
+    private String orderStatus;
+    private String amount;
+    private String currency;
+    private String transactionId;
+    private String transactionType;
+    private String result;
+    private String gatewayCode;
+    private String errorCode;
+
+    /**
+     * @param operation  operation performed, or null
+     * @param protocol   protocol of the call
+     * @param httpMethod request sent to the gateway
+     * @param startNanos {@link System#nanoTime()} when the call started
+     */
+    public LedgerEntry(ApiOperation operation, ApiProtocol protocol, HttpRequestBase httpMethod, long startNanos) {
+        this.createdAt = System.currentTimeMillis();
+        this.operation = operation != null ? operation.name() : null;
+        this.protocol = protocol.name();
+        this.method = httpMethod.getMethod();
+        this.url = httpMethod.getURI().toString();
+        this.latencyMillis = (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * Takes the outcome from a REST response: a transaction, or an order with its transactions, in which case the
+     * latest transaction is recorded
+     */
+    public LedgerEntry withOutcome(JsonObject json) {
+        if (json == null) {
+            return this;
+        }
+        JsonObject order = getObject(json, "order");
+        JsonObject transaction = getObject(json, "transaction");
+        JsonElement transactions = json.get("transaction");
+        if (order == null && transactions != null && transactions.isJsonArray()) {
+            order = json;
+            JsonArray array = transactions.getAsJsonArray();
+            JsonElement latest = array.size() > 0 ? array.get(array.size() - 1) : null;
+            JsonObject latestTransaction = latest != null && latest.isJsonObject() ? latest.getAsJsonObject() : null;
+            transaction = getObject(latestTransaction, "transaction");
+            json = latestTransaction != null ? latestTransaction : json;
+        }
+        orderId = getString(order, "id");
+        orderStatus = getString(order, "status");
+        amount = getString(order, "amount");
+        currency = getString(order, "currency");
+        transactionId = getString(transaction, "id");
+        transactionType = getString(transaction, "type");
+        result = getString(json, "result");
+        gatewayCode = getString(getObject(json, "response"), "gatewayCode");
+        errorCode = getString(getObject(json, "error"), "cause");
+        return this;
+    }
+
+    /**
+     * Takes the outcome from an NVP response body
+     */
+    public LedgerEntry withNVPOutcome(String body) {
+        Map<String, String> fields = new HashMap<>();
+        for (NameValuePair pair : URLEncodedUtils.parse(body, StandardCharsets.UTF_8)) {
+            fields.put(pair.getName(), pair.getValue());
+        }
+        orderId = fields.get("order.id");
+        orderStatus = fields.get("order.status");
+        amount = fields.get("order.amount");
+        currency = fields.get("order.currency");
+        transactionId = fields.get("transaction.id");
+        transactionType = fields.get("transaction.type");
+        result = fields.get("result");
+        gatewayCode = fields.get("response.gatewayCode");
+        errorCode = fields.get("error.cause");
+        return this;
+    }
+
+    /**
+     * Records a call that returned an error or never got a response. Errors returned by the gateway keep their cause;
+     * other failures are recorded under the name of the exception.
+     */
+    public LedgerEntry withFailure(Throwable failure) {
+        if (failure instanceof ApiException && ((ApiException) failure).getErrorCode() != null) {
+            result = "ERROR";
+            errorCode = ((ApiException) failure).getErrorCode();
+        } else {
+            Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+            errorCode = cause.getClass().getSimpleName();
+        }
+        return this;
+    }
+
+    /**
+     * @return time the outcome was known, in milliseconds since the epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return name of the {@link ApiOperation}, or null for calls made without one
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getOrderStatus() {
+        return orderStatus;
+    }
+
+    public String getAmount() {
+        return amount;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public String getTransactionType() {
+        return transactionType;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public String getGatewayCode() {
+        return gatewayCode;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    private static JsonObject getObject(JsonObject json, String member) {
+        return json != null && json.has(member) && json.get(member).isJsonObject() ? json.getAsJsonObject(member) : null;
+    }
+
+    private static String getString(JsonObject json, String member) {
+        JsonElement element = json != null ? json.get(member) : null;
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+}
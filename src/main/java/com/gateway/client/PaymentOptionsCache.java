@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.gateway.app.Config;
+import com.gateway.response.PaymentOptionsResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the result of the Payment Options Inquiry, which only changes when the merchant profile does. The cached
+ * options are published atomically and expire after a configurable time to live. When many threads miss at once, only
+ * one of them calls the gateway and the others wait for its result. Options that are close to expiry are refreshed in
+ * the background, so requests keep being served from the cache while the new options are retrieved.
+ */
+public final class PaymentOptionsCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentOptionsCache.class);
+
+    private static final Map<Config, PaymentOptionsCache> caches = new ConcurrentHashMap<>();
+    private static final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gateway-payment-options-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Loader loader;
+    private final long timeToLive;
+    private final long refreshAhead;
+    private final ExecutorService executor;
+    private final AtomicReference<Entry> entry = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<PaymentOptionsResponse>> inFlight = new AtomicReference<>();
+
+    /**
+     * Retrieves the payment options from the gateway
+     */
+    @FunctionalInterface
+    public interface Loader {
+        PaymentOptionsResponse load() throws Exception;
+    }
+
+    /**
+     * @param loader       retrieves the payment options
+     * @param timeToLive   time in milliseconds the options are served from the cache
+     * @param refreshAhead time in milliseconds before expiry at which the options are refreshed in the background
+     * @param executor     runs the background refreshes
+     */
+    public PaymentOptionsCache(Loader loader, long timeToLive, long refreshAhead, ExecutorService executor) {
+        this.loader = loader;
+        this.timeToLive = timeToLive;
+        this.refreshAhead = Math.min(refreshAhead, timeToLive);
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the cache of the given configuration, creating it on first use
+     *
+     * @param config contains frequently used information like Merchant ID, API password, etc.
+     * @return payment options cache for the merchant
+     */
+    public static PaymentOptionsCache forConfig(Config config) {
+        return caches.computeIfAbsent(config, c -> new PaymentOptionsCache(
+                () -> ApiRequestService.retrievePaymentOptionsInquiry(c),
+                c.getPaymentOptionsTimeToLive(), c.getPaymentOptionsRefreshAhead(), refreshExecutor));
+    }
+
+    /**
+     * Discards every cache. Called when the application shuts down.
+     */
+    public static void shutdown() {
+        caches.clear();
+    }
+
+    /**
+     * Returns the cached payment options, retrieving them if they're missing or expired
+     *
+     * @return payment options of the merchant
+     * @throws Exception if the options had to be retrieved and the gateway call failed
+     */
+    public PaymentOptionsResponse get() throws Exception {
+        Entry current = entry.get();
+        long now = System.currentTimeMillis();
+        if (current != null && now < current.expiresAt) {
+            if (now >= current.expiresAt - refreshAhead) {
+                refreshInBackground();
+            }
+            return current.options;
+        }
+        return load();
+    }
+
+    /**
+     * Starts retrieving the payment options without waiting for the result. Used to fill the cache at startup.
+     */
+    public void warmUp() {
+        refreshInBackground();
+    }
+
+    public void invalidate() {
+        entry.set(null);
+    }
+
+    private void refreshInBackground() {
+        if (inFlight.get() != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    load();
+                } catch (Exception e) {
+                    logger.warn("Unable to refresh payment options", e);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Unable to schedule payment options refresh", e);
+        }
+    }
+
+    /**
+     * Retrieves the payment options, unless another thread is already doing so, in which case its result is used
+     */
+    private PaymentOptionsResponse load() throws Exception {
+        CompletableFuture<PaymentOptionsResponse> future = new CompletableFuture<>();
+        while (!inFlight.compareAndSet(null, future)) {
+            CompletableFuture<PaymentOptionsResponse> running = inFlight.get();
+            if (running != null) {
+                return await(running);
+            }
+        }
+        try {
+            // Another thread may have filled the cache between the miss and now
+            Entry current = entry.get();
+            if (current != null && System.currentTimeMillis() < current.expiresAt - refreshAhead) {
+                future.complete(current.options);
+                return current.options;
+            }
+            PaymentOptionsResponse options = loader.load();
+            entry.set(new Entry(options, System.currentTimeMillis() + timeToLive));
+            future.complete(options);
+            return options;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.set(null);
+        }
+    }
+
+    private static PaymentOptionsResponse await(CompletableFuture<PaymentOptionsResponse> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+        private final PaymentOptionsResponse options;
+        private final long expiresAt;
+
+        private Entry(PaymentOptionsResponse options, long expiresAt) {
+            this.options = options;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
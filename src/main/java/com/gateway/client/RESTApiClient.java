@@ -26,21 +26,39 @@ public final class RESTApiClient {
      * @param data       JSON payload
      * @param requestUrl API endpoint
      * @param config     contains frequently used information like Merchant ID, API password, etc.
-     * @return body
+     * @return parsed API response
      * @throws Exception
      */
-    public String sendTransaction(String data, String requestUrl, Config config) throws Exception {
+    public ApiResponse sendTransaction(String data, String requestUrl, Config config) throws Exception {
+        return sendTransaction(data, requestUrl, config, null);
+    }
+
+    /**
+     * Performs a PUT operation with the timeouts of the given API operation
+     *
+     * @param data       JSON payload
+     * @param requestUrl API endpoint
+     * @param config     contains frequently used information like Merchant ID, API password, etc.
+     * @param operation  operation being performed, or null to use the default timeouts
+     * @return parsed API response
+     * @throws Exception
+     */
+    public ApiResponse sendTransaction(String data, String requestUrl, Config config, ApiOperation operation) throws Exception {
         HttpPut httpPut = new HttpPut(requestUrl);
         httpPut.setEntity(new StringEntity(data, UTF8_ENCODING));
 
-        return ApiService.executeHTTPMethod(httpPut, config, ApiProtocol.REST);
+        return ApiService.executeRESTMethod(httpPut, config, operation);
+    }
+
+    public ApiResponse sendTransaction3DS(String data, String requestUrl, Config config) throws Exception {
+        return sendTransaction3DS(data, requestUrl, config, null);
     }
 
-    public String sendTransaction3DS(String data, String requestUrl, Config config) throws Exception {
+    public ApiResponse sendTransaction3DS(String data, String requestUrl, Config config, ApiOperation operation) throws Exception {
         HttpPut httpPut = new HttpPut(requestUrl);
         httpPut.setEntity(new StringEntity(data, UTF8_ENCODING));
 
-        return ApiService.executeHTTPMethod(httpPut, config, ApiProtocol.REST);
+        return ApiService.executeRESTMethod(httpPut, config, operation);
     }
 
     /**
@@ -49,14 +67,28 @@ public final class RESTApiClient {
      * @param data   JSON payload
      * @param requestUrl API endpoint
      * @param config contains frequently used information like Merchant ID, API password, etc.
-     * @return body
+     * @return parsed API response
      * @throws Exception
      */
-    public String postTransaction(String data, String requestUrl, Config config) throws Exception {
+    public ApiResponse postTransaction(String data, String requestUrl, Config config) throws Exception {
+        return postTransaction(data, requestUrl, config, null);
+    }
+
+    /**
+     * Performs a POST operation with the timeouts of the given API operation
+     *
+     * @param data       JSON payload
+     * @param requestUrl API endpoint
+     * @param config     contains frequently used information like Merchant ID, API password, etc.
+     * @param operation  operation being performed, or null to use the default timeouts
+     * @return parsed API response
+     * @throws Exception
+     */
+    public ApiResponse postTransaction(String data, String requestUrl, Config config, ApiOperation operation) throws Exception {
         HttpPost httpPost = new HttpPost(requestUrl);
         httpPost.setEntity(new StringEntity(data, UTF8_ENCODING));
 
-        return ApiService.executeHTTPMethod(httpPost, config, ApiProtocol.REST);
+        return ApiService.executeRESTMethod(httpPost, config, operation);
     }
 
     /**
@@ -64,13 +96,13 @@ public final class RESTApiClient {
      *
      * @param requestUrl API endpoint
      * @param config     contains frequently used information like Merchant ID, API password, etc.
-     * @return body
+     * @return parsed API response
      * @throws Exception
      */
-    public String postTransaction(String requestUrl, Config config) throws Exception {
+    public ApiResponse postTransaction(String requestUrl, Config config) throws Exception {
         HttpPost httpPost = new HttpPost(requestUrl);
 
-        return ApiService.executeHTTPMethod(httpPost, config, ApiProtocol.REST);
+        return ApiService.executeRESTMethod(httpPost, config, ApiOperation.CREATE_SESSION);
     }
 
     /**
@@ -78,12 +110,25 @@ public final class RESTApiClient {
      *
      * @param requestUrl API endpoint
      * @param config     contains frequently used information like Merchant ID, API password, etc.
-     * @return body
+     * @return parsed API response
      * @throws Exception
      */
-    public String getTransaction(String requestUrl, Config config) throws Exception {
-        HttpGet httpGet = new HttpGet(requestUrl);
+    public ApiResponse getTransaction(String requestUrl, Config config) throws Exception {
+        return getTransaction(requestUrl, config, null);
+    }
 
-        return ApiService.executeHTTPMethod(httpGet, config, ApiProtocol.REST);
+    /**
+     * Performs a GET operation with the timeouts of the given API operation. Concurrent identical GETs share one
+     * gateway call, see {@link ReadCoalescer}.
+     *
+     * @param requestUrl API endpoint
+     * @param config     contains frequently used information like Merchant ID, API password, etc.
+     * @param operation  operation being performed, or null to use the default timeouts
+     * @return parsed API response
+     * @throws Exception
+     */
+    public ApiResponse getTransaction(String requestUrl, Config config, ApiOperation operation) throws Exception {
+        return ReadCoalescer.execute(config.getMerchantId() + " " + requestUrl, operation,
+                () -> ApiService.executeRESTMethod(new HttpGet(requestUrl), config, operation));
     }
 }
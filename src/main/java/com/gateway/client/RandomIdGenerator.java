@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random 10 character alphanumeric identifiers. Each thread draws from its own random generator, so threads never
+ * contend on a shared seed. Identifiers are random rather than guaranteed unique, with 62^10 possible values.
+ */
+public class RandomIdGenerator implements IdGenerator {
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final int LENGTH = 10;
+
+    @Override
+    public String nextId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] id = new char[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            id[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(id);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent identical gateway reads: the first caller makes the call, and callers asking for the same URL
+ * of the same merchant while it's in flight wait for its response instead of making their own. Nothing is kept once
+ * the call completes, so a read never returns a response older than the call it waited for.
+ *
+ * Followers wait no longer than their own request deadline. A leader that ran out of time doesn't fail its followers:
+ * they make the call themselves.
+ *
+ * The counts are reported by {@link GatewayMetrics#snapshot()}: misses are the calls made, hits the reads answered by
+ * another caller's call, and merges the calls that answered at least one other caller.
+ */
+public final class ReadCoalescer {
+
+    private static final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder merges = new LongAdder();
+
+    private ReadCoalescer() {
+    }
+
+    /**
+     * Makes the read, or waits for the identical read already in flight
+     *
+     * @param key       identifies the read: merchant and URL
+     * @param operation operation being performed, used in the deadline error
+     * @param read      makes the gateway call
+     * @return the response of the call
+     * @throws Exception the exception thrown by the call
+     */
+    static ApiResponse execute(String key, ApiOperation operation, Callable<ApiResponse> read) throws Exception {
+        Flight flight = new Flight();
+        Flight leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            hits.increment();
+            if (leader.merged.compareAndSet(false, true)) {
+                merges.increment();
+            }
+            try {
+                return await(leader.response, operation);
+            } catch (ApiException e) {
+                if (RequestDeadline.DEADLINE_EXCEEDED.equals(e.getErrorCode()) && RequestDeadline.remaining() > 0) {
+                    // The leader had less time left than we do
+                    return execute(key, operation, read);
+                }
+                throw e;
+            }
+        }
+
+        misses.increment();
+        ApiResponse response;
+        try {
+            response = read.call();
+        } catch (Throwable t) {
+            inFlight.remove(key, flight);
+            flight.response.completeExceptionally(t);
+            throw t;
+        }
+        inFlight.remove(key, flight);
+        flight.response.complete(response);
+        return response;
+    }
+
+    /**
+     * @return the hit, miss and merge counts since startup, and the number of reads in flight
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("misses", misses.sum());
+        snapshot.put("hits", hits.sum());
+        snapshot.put("merges", merges.sum());
+        snapshot.put("inFlight", inFlight.size());
+        return snapshot;
+    }
+
+    private static ApiResponse await(CompletableFuture<ApiResponse> response, ApiOperation operation) throws Exception {
+        try {
+            long remaining = RequestDeadline.remaining();
+            return remaining == Long.MAX_VALUE ? response.get() : response.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            RequestDeadline.check(operation);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<ApiResponse> response = new CompletableFuture<>();
+        private final AtomicBoolean merged = new AtomicBoolean();
+    }
+}
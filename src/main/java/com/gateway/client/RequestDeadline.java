@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+/**
+ * Overall time budget of the inbound request being handled by the current thread. Flows that make several gateway
+ * calls (create session, update session, pay...) check it before every call and cap the call's timeouts to the time
+ * that is left, so a slow gateway fails the flow once instead of holding a thread for the sum of all the timeouts.
+ */
+public final class RequestDeadline {
+
+    /**
+     * Error code of the {@link ApiException} thrown once the deadline has passed
+     */
+    public static final String DEADLINE_EXCEEDED = "DEADLINE_EXCEEDED";
+
+    private static final ThreadLocal<Long> deadline = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * @param deadlineMillis time, in milliseconds since the epoch, by which the request must have completed
+     */
+    public static void set(long deadlineMillis) {
+        deadline.set(deadlineMillis);
+    }
+
+    public static void clear() {
+        deadline.remove();
+    }
+
+    /**
+     * @return milliseconds left before the deadline, or {@link Long#MAX_VALUE} when the thread has no deadline
+     */
+    public static long remaining() {
+        Long deadlineMillis = deadline.get();
+        return deadlineMillis == null ? Long.MAX_VALUE : deadlineMillis - System.currentTimeMillis();
+    }
+
+    /**
+     * @param operation operation about to be called, used in the error
+     * @throws ApiException if the deadline has already passed
+     */
+    public static void check(ApiOperation operation) throws ApiException {
+        if (remaining() <= 0) {
+            ApiException apiException = new ApiException("The request deadline was exceeded");
+            apiException.setErrorCode(DEADLINE_EXCEEDED);
+            apiException.setExplanation("The request ran out of time before " +
+                    (operation == null ? "the gateway call" : operation.toString()) + " could be sent");
+            throw apiException;
+        }
+    }
+
+    /**
+     * Caps a timeout to the time left before the deadline
+     *
+     * @param timeout timeout in milliseconds
+     * @return the smaller of the timeout and the remaining time
+     */
+    static int cap(int timeout) {
+        long remaining = remaining();
+        return remaining < timeout ? (int) Math.max(remaining, 1) : timeout;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time ordered identifiers, unique across instances as long as every instance has its own node number. Each identifier
+ * packs a 41 bit millisecond timestamp, a 10 bit node number and a 12 bit sequence into 64 bits, written as 13
+ * Crockford base 32 characters so the identifiers sort in the order they were created.
+ *
+ * The timestamp and sequence are advanced together with a single compare-and-set, so the generator never blocks. When
+ * more than 4096 identifiers are needed in a millisecond, or the clock steps back, the timestamp simply runs ahead of
+ * the clock until the clock catches up.
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+    /**
+     * 2019-01-01T00:00:00Z, so the 41 bit timestamp lasts until 2088
+     */
+    static final long EPOCH = 1546300800000L;
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int LENGTH = 13;
+
+    private final long node;
+    private final AtomicLong lastTimeAndSequence = new AtomicLong();
+
+    /**
+     * @param node number of this instance, from 0 to 1023, unique among the instances sharing a gateway merchant
+     */
+    public TimeOrderedIdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        this.node = node;
+    }
+
+    /**
+     * Derives a node number from the host name and process ID. Collisions between instances are unlikely but
+     * possible, so set the node explicitly when several instances run against the same merchant.
+     */
+    public static int defaultNode() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            name = InetAddress.getLocalHost().getHostName() + "/" + name;
+        } catch (Exception e) {
+            // The process name already contains the host name on most JVMs
+        }
+        return (name.hashCode() & Integer.MAX_VALUE) % (MAX_NODE + 1);
+    }
+
+    @Override
+    public String nextId() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long last;
+        long next;
+        do {
+            last = lastTimeAndSequence.get();
+            next = Math.max(last + 1, now);
+        } while (!lastTimeAndSequence.compareAndSet(last, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return encode((timestamp << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence);
+    }
+
+    static String encode(long value) {
+        char[] id = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            id[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(id);
+    }
+}
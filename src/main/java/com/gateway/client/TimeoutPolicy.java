@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Connect, socket and connection pool lease timeouts for gateway calls. Every operation uses the default timeouts
+ * unless it has its own, so slow operations like PAY can be given more time than a quick RETRIEVE_ORDER.
+ */
+public class TimeoutPolicy {
+
+    private final Timeouts defaults;
+    private final Map<ApiOperation, Timeouts> operationTimeouts = new EnumMap<>(ApiOperation.class);
+
+    /**
+     * @param connectTimeout           time in milliseconds to establish a connection to the gateway
+     * @param socketTimeout            maximum time in milliseconds to wait for data from the gateway
+     * @param connectionRequestTimeout time in milliseconds to wait for a connection from the pool
+     */
+    public TimeoutPolicy(int connectTimeout, int socketTimeout, int connectionRequestTimeout) {
+        this.defaults = new Timeouts(connectTimeout, socketTimeout, connectionRequestTimeout);
+    }
+
+    /**
+     * Timeouts used when no policy has been configured
+     */
+    public static TimeoutPolicy defaultPolicy() {
+        return new TimeoutPolicy(10000, 30000, 5000);
+    }
+
+    public Timeouts getDefaults() {
+        return defaults;
+    }
+
+    /**
+     * @param operation the API operation, or null when it isn't known
+     * @return the timeouts configured for the operation, or the default ones
+     */
+    public Timeouts getTimeouts(ApiOperation operation) {
+        Timeouts timeouts = operation == null ? null : operationTimeouts.get(operation);
+        return timeouts == null ? defaults : timeouts;
+    }
+
+    public void setTimeouts(ApiOperation operation, Timeouts timeouts) {
+        operationTimeouts.put(operation, timeouts);
+    }
+
+    /**
+     * Reads per-operation timeouts in the form <pre>OPERATION=socket[/connect[/connectionRequest]]</pre>, separated
+     * by commas, e.g. <pre>PAY=60000,RETRIEVE_ORDER=10000/5000/2000</pre>. Timeouts that are left out keep their
+     * default value.
+     *
+     * @param operationTimeouts comma separated list of operation timeouts
+     * @throws IllegalArgumentException if an entry can't be parsed
+     */
+    public void parseOperationTimeouts(String operationTimeouts) {
+        if (operationTimeouts == null || operationTimeouts.trim().isEmpty()) {
+            return;
+        }
+        for (String entry : operationTimeouts.split(",")) {
+            String[] keyValue = entry.trim().split("=");
+            ApiOperation operation = keyValue.length == 2 ? ApiOperation.lookup(keyValue[0].trim()) : null;
+            if (operation == null) {
+                throw new IllegalArgumentException("Invalid operation timeout: " + entry);
+            }
+            String[] values = keyValue[1].trim().split("/");
+            try {
+                int socketTimeout = Integer.parseInt(values[0].trim());
+                int connectTimeout = values.length > 1 ? Integer.parseInt(values[1].trim()) : defaults.getConnectTimeout();
+                int connectionRequestTimeout = values.length > 2 ? Integer.parseInt(values[2].trim()) :
+                        defaults.getConnectionRequestTimeout();
+                setTimeouts(operation, new Timeouts(connectTimeout, socketTimeout, connectionRequestTimeout));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid operation timeout: " + entry, e);
+            }
+        }
+    }
+
+    public static class Timeouts {
+        private final int connectTimeout;
+        private final int socketTimeout;
+        private final int connectionRequestTimeout;
+
+        public Timeouts(int connectTimeout, int socketTimeout, int connectionRequestTimeout) {
+            this.connectTimeout = connectTimeout;
+            this.socketTimeout = socketTimeout;
+            this.connectionRequestTimeout = connectionRequestTimeout;
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public int getSocketTimeout() {
+            return socketTimeout;
+        }
+
+        public int getConnectionRequestTimeout() {
+            return connectionRequestTimeout;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+/**
+ * Receives an entry for every call made to the gateway, once its outcome is known. It's called on the thread that
+ * completed the call, so implementations must hand the entry off rather than do any I/O. The ledger in use is set with
+ * {@link ApiService#setTransactionLedger(TransactionLedger)}.
+ */
+@FunctionalInterface
+public interface TransactionLedger {
+
+    /**
+     * Ledger that discards every entry, used when no database is configured
+     */
+    TransactionLedger NONE = entry -> { };
+
+    /**
+     * @param entry the call and its outcome
+     */
+    void record(LedgerEntry entry);
+}
@@ -4,18 +4,27 @@
 
 package com.gateway.client;
 
-import org.apache.commons.lang.RandomStringUtils;
-
 public class Utils {
 
+    private static volatile IdGenerator idGenerator = new RandomIdGenerator();
+
     /**
-     * Generates a random 10-digit alphanumeric number to use as a unique identifier (order ID and transaction ID, for instance)
+     * Generates an alphanumeric identifier to use as a unique identifier (order ID and transaction ID, for instance)
      * The unique ID need not have a prefix - it's being added here simply for debugging purposes
      *
-     * @return random identifier
+     * @return identifier from the configured {@link IdGenerator}
      */
     public static String createUniqueId(Prefixes prefix) {
-        return prefix + RandomStringUtils.random(10, true, true);
+        return prefix + idGenerator.nextId();
+    }
+
+    /**
+     * Sets the generator used by {@link #createUniqueId(Prefixes)}. Defaults to {@link RandomIdGenerator}.
+     *
+     * @param generator identifier generator
+     */
+    public static void setIdGenerator(IdGenerator generator) {
+        idGenerator = generator;
     }
 
     /**
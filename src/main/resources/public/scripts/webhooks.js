@@ -9,16 +9,61 @@ $(function () {
     $('.alert-info', '.webhooks').html(endpointInfoText);
 
 
-    $.getJSON("list-webhook-notifications", function (data) {
-        console.log("Webhooks Notifications - ", data);
-        var notifications = [];
-        $.each(data, function (key, val) {
-            var timestamp = new Date(val.timestamp).toISOString();
-            notifications.push("<tr><td scope=\"row\">" + timestamp + "</td><td>" + val.orderId + "</td><td>" + val.transactionId + "</td><td>" + val.orderStatus + "</td><td>" + val.amount + "</td></tr>");
-        });
+    function notificationRow(val) {
+        var timestamp = new Date(val.timestamp).toISOString();
+        return "<tr><td scope=\"row\">" + timestamp + "</td><td>" + val.orderId + "</td><td>" + val.transactionId + "</td><td>" + val.orderStatus + "</td><td>" + val.amount + "</td></tr>";
+    }
+
+    // Notifications are listed a page at a time, oldest first; "Load more" fetches the next page from where the last
+    // one ended. Streamed notifications are shown newest first above them, and paging stops where the stream started.
+    var nextCursor = null;
+    var lastPagedOffset = -1;
+    var firstStreamedOffset = null;
 
-        if (notifications.length > 0) {
-            $('.notifications').append(notifications).removeClass('invisible');
+    function loadNotifications() {
+        var params = {limit: 100};
+        if (nextCursor !== null) {
+            params.cursor = nextCursor;
         }
-    });
-});
\ No newline at end of file
+        $.getJSON("list-webhook-notifications", params, function (data) {
+            console.log("Webhooks Notifications - ", data);
+            var paged = $.grep(data.notifications, function (val) {
+                return firstStreamedOffset === null || val.offset < firstStreamedOffset;
+            });
+            var notifications = $.map(paged, notificationRow);
+
+            if (notifications.length > 0) {
+                lastPagedOffset = paged[paged.length - 1].offset;
+                $('.history', '.notifications').append(notifications);
+                $('.notifications').removeClass('invisible');
+            }
+            nextCursor = data.nextCursor;
+            if (firstStreamedOffset !== null && nextCursor !== null && nextCursor >= firstStreamedOffset) {
+                nextCursor = null;
+            }
+            $('.load-more').toggleClass('invisible', nextCursor === null);
+        });
+    }
+
+    $('.load-more').click(loadNotifications);
+    loadNotifications();
+
+    // New notifications are pushed as they arrive; the browser resumes from the last one it got when it reconnects
+    if (window.EventSource) {
+        var stream = new EventSource("webhook-notifications/stream");
+        stream.addEventListener("notification", function (event) {
+            var offset = Number(event.lastEventId);
+            if (offset <= lastPagedOffset) {
+                // Already listed by a page that was fetched after it was logged
+                return;
+            }
+            if (firstStreamedOffset === null) {
+                firstStreamedOffset = offset;
+            }
+            var notification = JSON.parse(event.data);
+            console.log("Webhooks Notification - ", notification);
+            $('.live', '.notifications').prepend(notificationRow(notification));
+            $('.notifications').removeClass('invisible');
+        });
+    }
+});
@@ -9,7 +9,6 @@ import java.util.Map;
 
 import com.gateway.app.Config;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import org.junit.Before;
@@ -88,7 +87,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"AUTHORIZE\",\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\"},\"sourceOfFunds\":{\"type\":\"CARD\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -101,7 +100,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"CAPTURE\",\"transaction\":{\"amount\":\"10.00\",\"currency\":\"USD\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -115,7 +114,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"PAY\",\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\"},\"sourceOfFunds\":{\"type\":\"CARD\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -128,7 +127,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"REFUND\",\"transaction\":{\"amount\":\"10.00\",\"currency\":\"USD\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -141,7 +140,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"VERIFY\",\"order\":{\"currency\":\"USD\"},\"sourceOfFunds\":{\"type\":\"CARD\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -153,7 +152,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"VOID\",\"transaction\":{\"targetTransactionId\":\"D9DK0KMWBS\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -164,7 +163,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"RETRIEVE_TRANSACTION\"}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -177,7 +176,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"CONFIRM_BROWSER_PAYMENT\",\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     /* essentials_exclude_start */
@@ -196,7 +195,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"INITIATE_BROWSER_PAYMENT\",\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\"},\"sourceOfFunds\":{\"type\":\"PAYPAL\"},\"browserPayment\":{\"operation\":\"PAY\",\"paypal\":{\"paymentConfirmation\":\"CONFIRM_AT_PROVIDER\"},\"returnUrl\":\"http://www.mysite.com/receipt\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
     /* targeted_exclude_end */
     /* essentials_exclude_end */
@@ -215,7 +214,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"INITIATE_BROWSER_PAYMENT\",\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\"},\"sourceOfFunds\":{\"type\":\"UNION_PAY\"},\"browserPayment\":{\"operation\":\"PAY\",\"returnUrl\":\"http://www.mysite.com/receipt\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
     /* essentials_exclude_end */
 
@@ -230,7 +229,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"CREATE_CHECKOUT_SESSION\",\"order\":{\"id\":\"DS9SJ3J39A\",\"currency\":\"USD\"},\"interaction\":{\"returnUrl\":\"http://www.mysite.com/receipt\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -244,7 +243,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"PAY\",\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\"},\"session\":{\"id\":\"SESSION0002647025380I5651515F86\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -259,7 +258,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"CHECK_3DS_ENROLLMENT\",\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\"},\"session\":{\"id\":\"SESSION0002647025380I5651515F86\"},\"3DSecure\":{\"authenticationRedirect\":{\"responseUrl\":\"http://www.mysite.com/receipt\",\"pageGenerationMode\": \"CUSTOMIZED\"}}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -290,7 +289,7 @@ public class ApiRequestServiceTest {
                 "  }\n" +
                 "}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -318,7 +317,7 @@ public class ApiRequestServiceTest {
                 "\"3DSecure\":{\"authenticationRedirect\":{\"responseUrl\":\""+secureIdResponseUrl+"\"," +
                 "\"pageGenerationMode\": \"CUSTOMIZED\"}}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -330,7 +329,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"PROCESS_ACS_RESULT\",\"3DSecure\":{\"paRes\":\"LONG_PARES_VALUE\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -345,7 +344,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"apiOperation\":\"PAY\",\"3DSecureId\":\"1234567890\",\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\"},\"session\":{\"id\":\"SESSION0002647025380I5651515F86\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     /* essentials_exclude_start */
@@ -361,7 +360,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\",\"walletProvider\":\"MASTERPASS_ONLINE\"},\"wallet\":{\"masterpass\":{\"originUrl\":\"http://www.mysite.com/receipt\"}}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
     /* essentials_exclude_end */
 
@@ -375,7 +374,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"order\":{\"walletProvider\":\"MASTERPASS_ONLINE\"}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
     /* essentials_exclude_end */
 
@@ -390,7 +389,7 @@ public class ApiRequestServiceTest {
 
         String data = "{\"order\":{\"walletProvider\":\"SECURE_REMOTE_COMMERCE\"},\"wallet\":{\"secureRemoteCommerce\":{\"srcCorrelationId\":\"1234567890000\", \"scheme\":\"MASTERCARD\"}}}";
 
-        assertEquals(prettifyJson(data), result);
+        assertEquals(compactJson(data), result);
     }
 
     @Test
@@ -417,10 +416,10 @@ public class ApiRequestServiceTest {
         assertEquals(requestMap, result);
     }
 
-    private String prettifyJson(String data) {
+    private String compactJson(String data) {
         JsonParser parser = new JsonParser();
         JsonObject json = parser.parse(data).getAsJsonObject();
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Gson gson = new Gson();
         return gson.toJson(json);
     }
 
@@ -10,17 +10,21 @@ import java.util.Map;
 
 import com.gateway.app.Config;
 import com.gateway.client.ApiException;
+import com.gateway.client.ApiResponse;
 import com.gateway.client.ApiResponseService;
 import com.gateway.client.HostedSession;
 import com.gateway.response.BrowserPaymentResponse;
 import com.gateway.response.SecureIdEnrollmentResponse;
 import com.gateway.response.TransactionResponse;
 import com.gateway.response.WalletResponse;
+import com.google.gson.JsonSyntaxException;
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class ApiResponseServiceTest {
@@ -212,6 +216,28 @@ public class ApiResponseServiceTest {
         assertEquals("MYTOKEN", ApiResponseService.parseTokenResponse(data));
     }
 
+    @Test(expected = JsonSyntaxException.class)
+    public void parseMalformedResponse() throws Exception {
+        ApiResponseService.parseTokenResponse("<html>Bad Gateway</html>");
+    }
+
+    @Test
+    public void parseRESTErrorResponse() throws Exception {
+        String data = "{\"error\":{\"cause\":\"INVALID_REQUEST\",\"explanation\":\"Invalid request\",\"field\":\"order.amount\"," +
+                "\"validationType\":\"INVALID\"},\"result\":\"ERROR\"}";
+        ApiResponse response = ApiResponse.parse(data);
+
+        assertTrue(response.hasError());
+        assertEquals(data, response.getBody());
+        assertEquals("ERROR", response.getJson().get("result").getAsString());
+        assertEquals("INVALID_REQUEST", response.getError().getErrorCode());
+        assertEquals("Invalid request", response.getError().getExplanation());
+        assertEquals("order.amount", response.getError().getField());
+        assertEquals("INVALID", response.getError().getValidationType());
+
+        assertFalse(ApiResponse.parse("{\"token\":\"MYTOKEN\"}").hasError());
+    }
+
     /* essentials_exclude_start */
     @Test
     public void getBrowserPaymentRedirectUrl() throws Exception {
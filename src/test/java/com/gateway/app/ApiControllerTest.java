@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.gateway.client.ApiRequestService;
+import com.gateway.client.ApiResponseService;
+import com.gateway.client.ApiService;
+import com.gateway.client.LedgerEntry;
+import com.gateway.client.TransactionLedger;
+import com.gateway.client.Utils;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "gateway.base.url=http://127.0.0.1:1",
+        "gateway.merchant.id=testMerchant",
+        "gateway.api.password=testP4ssword",
+        "gateway.payment-options.warm-up=false",
+        "gateway.session-pool.high-watermark=0",
+        "gateway.order-state.max-age=60000",
+        "webhooks.log.directory=target/webhooks-notifications/ApiControllerTest"
+})
+public class ApiControllerTest {
+
+    private static final long NOW = 1564135200000L;
+    private static final long MAX_AGE = 60000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ApiRequestService apiRequestService;
+    @MockBean
+    private ApiResponseService apiResponseService;
+
+    @MockBean
+    private Clock clock;
+
+    @Autowired
+    private OrderStateStore orderStateStore;
+
+    private final List<LedgerEntry> gatewayCalls = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        when(clock.millis()).thenReturn(NOW);
+        ApiService.setTransactionLedger(gatewayCalls::add);
+    }
+
+    @After
+    public void tearDown() {
+        ApiService.setTransactionLedger(TransactionLedger.NONE);
+    }
+
+    @Test
+    public void hostedCheckoutReceiptUsesTheKnownOrderState() throws Exception {
+        String orderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        orderStateStore.update(payment(orderId, "TRANS1", "PAYMENT", "COMPLETED"));
+
+        mockMvc.perform(asyncDispatch(start(get("/hostedCheckout/" + orderId + "/SUCCESS"))))
+                .andExpect(view().name("receipt"))
+                .andExpect(model().attributeExists("response"));
+        assertEquals(0, gatewayCalls.size());
+    }
+
+    @Test
+    public void hostedCheckoutReceiptRetrievesAStaleOrder() throws Exception {
+        String orderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        orderStateStore.update(payment(orderId, "TRANS1", "PAYMENT", "COMPLETED"));
+        when(clock.millis()).thenReturn(NOW + MAX_AGE);
+
+        mockMvc.perform(asyncDispatch(start(get("/hostedCheckout/" + orderId + "/SUCCESS"))))
+                .andExpect(view().name("error"));
+        assertCalled("RETRIEVE_ORDER");
+    }
+
+    @Test
+    public void browserPaymentReceiptUsesTheKnownOrderState() throws Exception {
+        String orderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        orderStateStore.update(payment(orderId, "TRANS1", "PAYMENT", "COMPLETED"));
+
+        mockMvc.perform(asyncDispatch(start(get("/browserPaymentReceipt")
+                .param("transactionId", "TRANS1")
+                .param("orderId", orderId))))
+                .andExpect(view().name("receipt"))
+                .andExpect(model().attributeExists("response"));
+        assertEquals(0, gatewayCalls.size());
+    }
+
+    @Test
+    public void browserPaymentReceiptRetrievesAStaleTransaction() throws Exception {
+        String orderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        orderStateStore.update(payment(orderId, "TRANS1", "PAYMENT", "COMPLETED"));
+        when(clock.millis()).thenReturn(NOW + MAX_AGE);
+
+        mockMvc.perform(asyncDispatch(start(get("/browserPaymentReceipt")
+                .param("transactionId", "TRANS1")
+                .param("orderId", orderId))))
+                .andExpect(view().name("error"));
+        assertCalled("RETRIEVE_TRANSACTION");
+    }
+
+    @Test
+    public void hostedCheckoutReceiptRetrievesTheOrderBeforeThePaymentIsKnown() throws Exception {
+        String orderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        orderStateStore.update(payment(orderId, "AUTH1", "AUTHENTICATION", null));
+
+        mockMvc.perform(asyncDispatch(start(get("/hostedCheckout/" + orderId + "/SUCCESS"))))
+                .andExpect(view().name("error"));
+        assertCalled("RETRIEVE_ORDER");
+    }
+
+    @Test
+    public void browserPaymentReceiptRetrievesAnInitiatedTransaction() throws Exception {
+        String orderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        orderStateStore.update(payment(orderId, "TRANS1", "PAYMENT", "INITIATED"));
+
+        mockMvc.perform(asyncDispatch(start(get("/browserPaymentReceipt")
+                .param("transactionId", "TRANS1")
+                .param("orderId", orderId))))
+                .andExpect(view().name("error"));
+        assertCalled("RETRIEVE_TRANSACTION");
+    }
+
+    private MvcResult start(RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(5000);
+        return result;
+    }
+
+    private void assertCalled(String operation) {
+        assertTrue("Expected a " + operation + " call", gatewayCalls.stream()
+                .anyMatch(call -> operation.equals(call.getOperation())));
+    }
+
+    private static JsonObject payment(String orderId, String transactionId, String type, String interactionStatus) {
+        String browserPayment = interactionStatus != null
+                ? ",\"browserPayment\":{\"interaction\":{\"status\":\"" + interactionStatus + "\"}}" : "";
+        return new Gson().fromJson("{\"result\":\"SUCCESS\",\"timeOfRecord\":\"2019-01-01T00:00:00.000Z\","
+                + "\"order\":{\"id\":\"" + orderId + "\",\"amount\":\"10.00\",\"currency\":\"USD\",\"status\":\"CAPTURED\"},"
+                + "\"transaction\":{\"id\":\"" + transactionId + "\",\"type\":\"" + type + "\"},"
+                + "\"response\":{\"gatewayCode\":\"APPROVED\"}" + browserPayment + "}", JsonObject.class);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class GatewayExecutorTest {
+
+    private final GatewayExecutor executor = new GatewayExecutor(1, 1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void rejectsWorkWhenPoolAndQueueAreFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            awaitRelease();
+        });
+        started.await();
+        executor.execute(this::awaitRelease);
+
+        try {
+            executor.execute(this::awaitRelease);
+            fail("Expected the third task to be rejected");
+        } catch (RejectedExecutionException e) {
+            assertEquals(1L, metric("gateway.executor.rejected"));
+            assertEquals(1L, metric("gateway.executor.queue.size"));
+            assertEquals(1L, metric("gateway.executor.active"));
+        }
+    }
+
+    private long metric(String name) {
+        for (Metric<?> metric : executor.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue().longValue();
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.gateway.client.HostedSession;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class HostedSessionPoolTest {
+
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private HostedSessionPool pool;
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdown();
+    }
+
+    @Test
+    public void fillsToHighWatermarkAndRefillsBelowLowWatermark() throws Exception {
+        pool = new HostedSessionPool(this::createSession, 2, 4, 60000, 60000);
+        pool.start();
+        awaitSize(4);
+
+        assertEquals("SESSION1", pool.take().getId());
+        assertEquals("SESSION2", pool.take().getId());
+        pool.take();
+        awaitSize(4);
+
+        assertEquals(3L, metric("gateway.sessions.pool.taken"));
+        assertEquals(7L, metric("gateway.sessions.pool.created"));
+        assertEquals(0L, metric("gateway.sessions.pool.misses"));
+    }
+
+    @Test
+    public void dropsSessionsOnceTheyReachTheMaximumAge() throws Exception {
+        pool = new HostedSessionPool(this::createSession, 1, 2, 100, 60000);
+        pool.start();
+        awaitSize(2);
+        Thread.sleep(150);
+
+        HostedSession session = pool.take();
+
+        assertNotEquals("SESSION1", session.getId());
+        assertNotEquals("SESSION2", session.getId());
+        assertEquals(2L, metric("gateway.sessions.pool.expired"));
+        assertEquals(1L, metric("gateway.sessions.pool.misses"));
+    }
+
+    @Test
+    public void createsSessionOnCallingThreadWhenDisabled() throws Exception {
+        pool = new HostedSessionPool(this::createSession, 0, 0, 60000, 60000);
+        pool.start();
+
+        assertEquals("SESSION1", pool.take().getId());
+        assertEquals(0, pool.size());
+        assertEquals(1L, metric("gateway.sessions.pool.misses"));
+    }
+
+    @Test
+    public void countsFailedRefills() throws Exception {
+        pool = new HostedSessionPool(() -> {
+            throw new IllegalStateException("Gateway unavailable");
+        }, 1, 2, 60000, 60000);
+        pool.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (metric("gateway.sessions.pool.failures") == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1L, metric("gateway.sessions.pool.failures"));
+        assertEquals(0, pool.size());
+    }
+
+    private HostedSession createSession() {
+        HostedSession session = new HostedSession();
+        session.setId("SESSION" + sessionCount.incrementAndGet());
+        return session;
+    }
+
+    private void awaitSize(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, pool.size());
+    }
+
+    private long metric(String name) {
+        for (Metric<?> metric : pool.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue().longValue();
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.web.servlet.ModelAndView;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class IdempotencyStoreTest {
+
+    @Test
+    public void concurrentDuplicateWaitsForTheFirstSubmission() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(10, 60000);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<ModelAndView> gateway = new CompletableFuture<>();
+
+        CompletableFuture<ModelAndView> first = store.execute("PAY:ORDER1:TRANS1", () -> {
+            calls.incrementAndGet();
+            return gateway;
+        });
+        CompletableFuture<ModelAndView> duplicate = store.execute("PAY:ORDER1:TRANS1", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        assertFalse(duplicate.isDone());
+
+        gateway.complete(receipt());
+
+        assertEquals(1, calls.get());
+        assertEquals("apiResponse", first.get().getViewName());
+        assertEquals("apiResponse", duplicate.get().getViewName());
+        assertEquals("SUCCESS", duplicate.get().getModel().get("result"));
+        assertNotSame(first.get(), duplicate.get());
+    }
+
+    @Test
+    public void replaysTheResultToLateDuplicatesUntilItExpires() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(10, 100);
+        AtomicInteger calls = new AtomicInteger();
+
+        store.execute("key:abc", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(receipt());
+        });
+        ModelAndView replayed = store.execute("key:abc", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(receipt());
+        }).get();
+        assertEquals(1, calls.get());
+        assertEquals("SUCCESS", replayed.getModel().get("result"));
+
+        Thread.sleep(150);
+        store.execute("key:abc", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(receipt());
+        });
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void letsAnErrorBeRetried() {
+        IdempotencyStore store = new IdempotencyStore(10, 60000);
+        AtomicInteger calls = new AtomicInteger();
+        ModelAndView error = new ModelAndView("error");
+
+        store.execute("PAY:ORDER1:TRANS1", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(error);
+        });
+        store.execute("PAY:ORDER1:TRANS1", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(receipt());
+        });
+
+        assertEquals(2, calls.get());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void identifiesSubmissionsByClientKeyOrTransaction() {
+        assertEquals("PAY:ORDER1:key:abc", IdempotencyStore.key(" abc ", "PAY", "ORDER1", "TRANS1"));
+        // A reused client key doesn't match the submissions of another order or operation
+        assertNotEquals(IdempotencyStore.key("abc", "PAY", "ORDER1", null), IdempotencyStore.key("abc", "PAY", "ORDER2", null));
+        assertNotEquals(IdempotencyStore.key("abc", "PAY", "ORDER1", null), IdempotencyStore.key("abc", "REFUND", "ORDER1", null));
+        assertEquals("PAY:ORDER1:TRANS1", IdempotencyStore.key(null, "PAY", "ORDER1", "TRANS1"));
+        assertNull(IdempotencyStore.key("", "PAY", "ORDER1", null));
+    }
+
+    private static ModelAndView receipt() {
+        ModelAndView mav = new ModelAndView("apiResponse");
+        mav.addObject("result", "SUCCESS");
+        return mav;
+    }
+}
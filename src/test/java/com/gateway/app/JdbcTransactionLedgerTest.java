@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.gateway.client.ApiException;
+import com.gateway.client.ApiOperation;
+import com.gateway.client.ApiProtocol;
+import com.gateway.client.LedgerEntry;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.http.client.methods.HttpPut;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the ledger against an in-memory H2 database in PostgreSQL compatibility mode
+ */
+public class JdbcTransactionLedgerTest {
+
+    private static final String PAY_RESPONSE = "{\"result\":\"SUCCESS\",\"order\":{\"id\":\"order-1\",\"status\":\"CAPTURED\","
+            + "\"amount\":\"50.00\",\"currency\":\"USD\"},\"transaction\":{\"id\":\"trans-1\",\"type\":\"PAYMENT\"},"
+            + "\"response\":{\"gatewayCode\":\"APPROVED\"}}";
+
+    private HikariDataSource dataSource;
+    private JdbcTransactionLedger ledger;
+
+    @Before
+    public void setUp() {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl("jdbc:h2:mem:ledger;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        dataSource = new HikariDataSource(hikariConfig);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (ledger != null) {
+            ledger.shutdown();
+        }
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        dataSource.close();
+    }
+
+    @Test
+    public void writesEntriesWithTheirOutcome() throws Exception {
+        ledger = new JdbcTransactionLedger(dataSource, 100, 10, 50);
+
+        ledger.record(payEntry().withOutcome(new Gson().fromJson(PAY_RESPONSE, JsonObject.class)));
+        ApiException declined = new ApiException("The API returned an error");
+        declined.setErrorCode("INVALID_REQUEST");
+        ledger.record(payEntry().withFailure(declined));
+        ledger.shutdown();
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT * FROM gateway_ledger ORDER BY id")) {
+            assertTrue(rows.next());
+            assertEquals("PAY", rows.getString("operation"));
+            assertEquals("PUT", rows.getString("method"));
+            assertEquals("order-1", rows.getString("order_id"));
+            assertEquals("trans-1", rows.getString("transaction_id"));
+            assertEquals("SUCCESS", rows.getString("result"));
+            assertEquals("APPROVED", rows.getString("gateway_code"));
+            assertEquals(0, new BigDecimal("50.00").compareTo(rows.getBigDecimal("amount")));
+            assertTrue(rows.next());
+            assertEquals("ERROR", rows.getString("result"));
+            assertEquals("INVALID_REQUEST", rows.getString("error_code"));
+            assertTrue(!rows.next());
+        }
+    }
+
+    @Test
+    public void writesFullBatches() throws Exception {
+        ledger = new JdbcTransactionLedger(dataSource, 1000, 10, 60000);
+
+        for (int i = 0; i < 95; i++) {
+            ledger.record(payEntry());
+        }
+        ledger.shutdown();
+
+        assertEquals(95, countRows());
+        assertEquals(95L, metric("gateway.ledger.written"));
+        assertEquals(10L, metric("gateway.ledger.batches"));
+    }
+
+    @Test
+    public void writesAPartialBatchAfterTheMaximumDelay() throws Exception {
+        ledger = new JdbcTransactionLedger(dataSource, 100, 100, 50);
+
+        ledger.record(payEntry());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (metric("gateway.ledger.written").equals(0L) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, countRows());
+    }
+
+    @Test
+    public void dropsEntriesOnceShutDown() throws Exception {
+        ledger = new JdbcTransactionLedger(dataSource, 100, 10, 50);
+        ledger.shutdown();
+
+        ledger.record(payEntry());
+
+        assertEquals(1L, metric("gateway.ledger.dropped"));
+    }
+
+    private static LedgerEntry payEntry() {
+        return new LedgerEntry(ApiOperation.PAY, ApiProtocol.REST,
+                new HttpPut("https://gateway.example.com/api/rest/version/52/merchant/TEST/order/order-1/transaction/trans-1"),
+                System.nanoTime());
+    }
+
+    private int countRows() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM gateway_ledger")) {
+            rows.next();
+            return rows.getInt(1);
+        }
+    }
+
+    private Object metric(String name) {
+        return ledger.metrics().stream().filter(metric -> metric.getName().equals(name)).findFirst().get().getValue();
+    }
+}
@@ -4,10 +4,16 @@
 
 package com.gateway.app;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -19,7 +25,10 @@ import static org.assertj.core.api.Assertions.assertThat;
 @TestPropertySource(properties = {
         "gateway.base.url=https://test-gateway.com",
         "gateway.merchant.id=testMerchant",
-        "gateway.api.password=testP4ssword"
+        "gateway.api.password=testP4ssword",
+        "gateway.payment-options.warm-up=false",
+        "gateway.session-pool.high-watermark=0",
+        "webhooks.log.directory=target/webhooks-notifications/MainTest"
 })
 public class MainTest {
     @Autowired
@@ -27,10 +36,35 @@ public class MainTest {
     @Autowired
     private WebController webController;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void main() {
         assertThat(apiController).isNotNull();
         assertThat(webController).isNotNull();
 
     }
+
+    @Test
+    public void keepsTheWebhookLogAcrossRestarts() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (WebhookLog log = new WebhookLog(directory, 4096)) {
+            for (int i = 0; i < 3; i++) {
+                log.append(("record " + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        try (ConfigurableApplicationContext context = Main.run(
+                "--server.port=0",
+                "--spring.jmx.enabled=false",
+                "--gateway.base.url=https://test-gateway.com",
+                "--gateway.merchant.id=testMerchant",
+                "--gateway.api.password=testP4ssword",
+                "--gateway.payment-options.warm-up=false",
+                "--gateway.session-pool.high-watermark=0",
+                "--webhooks.log.directory=" + directory)) {
+            assertThat(context.getBean(WebhookLog.class).getNextOffset()).isEqualTo(3);
+        }
+    }
 }
\ No newline at end of file
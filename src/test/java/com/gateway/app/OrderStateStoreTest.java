@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import com.gateway.response.BrowserPaymentResponse;
+import com.gateway.response.TransactionResponse;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OrderStateStoreTest {
+
+    @Test
+    public void servesTheReceiptOfATransactionResponse() {
+        OrderStateStore store = new OrderStateStore(10, 60000);
+        store.update(json("{\"result\":\"SUCCESS\",\"timeOfRecord\":\"2019-07-26T10:00:00.000Z\","
+                + "\"order\":{\"id\":\"ORDER1\",\"amount\":\"10.00\",\"currency\":\"USD\",\"description\":\"Shoes\",\"status\":\"CAPTURED\"},"
+                + "\"transaction\":{\"id\":\"TRANS1\",\"type\":\"PAYMENT\"},\"response\":{\"gatewayCode\":\"APPROVED\"}}"));
+
+        OrderStateStore.OrderState state = store.get("ORDER1");
+        assertNotNull(state);
+        assertTrue(state.hasReceiptDetails());
+        assertEquals("CAPTURED", state.getStatus());
+        TransactionResponse receipt = state.toTransactionResponse();
+        assertEquals("SUCCESS", receipt.getApiResult());
+        assertEquals("APPROVED", receipt.getGatewayCode());
+        assertEquals("10.00", receipt.getOrderAmount());
+        assertEquals("USD", receipt.getOrderCurrency());
+        assertEquals("Shoes", receipt.getOrderDescription());
+    }
+
+    @Test
+    public void mergesUpdatesAndIgnoresOlderOnes() {
+        OrderStateStore store = new OrderStateStore(10, 60000);
+        store.update(json("{\"result\":\"SUCCESS\",\"timeOfRecord\":\"2019-07-26T10:00:00.000Z\","
+                + "\"order\":{\"id\":\"ORDER1\",\"amount\":\"10.00\",\"currency\":\"USD\",\"description\":\"Shoes\",\"status\":\"AUTHORIZED\"},"
+                + "\"transaction\":{\"id\":\"TRANS1\",\"type\":\"AUTHORIZATION\"},\"response\":{\"gatewayCode\":\"APPROVED\"}}"));
+        store.update(json("{\"result\":\"SUCCESS\",\"timeOfRecord\":\"2019-07-26T10:05:00.000Z\","
+                + "\"order\":{\"id\":\"ORDER1\",\"status\":\"CAPTURED\"},\"transaction\":{\"id\":\"TRANS2\",\"type\":\"CAPTURE\"}}"));
+        store.update(json("{\"result\":\"SUCCESS\",\"timeOfRecord\":\"2019-07-26T10:01:00.000Z\","
+                + "\"order\":{\"id\":\"ORDER1\",\"status\":\"AUTHORIZED\"},\"transaction\":{\"id\":\"TRANS1\"}}"));
+
+        OrderStateStore.OrderState state = store.get("ORDER1");
+        assertEquals("CAPTURED", state.getStatus());
+        assertEquals("TRANS2", state.getTransactionId());
+        assertEquals("CAPTURE", state.getTransactionType());
+        assertEquals("Shoes", state.toTransactionResponse().getOrderDescription());
+        // The gateway code belonged to the authorization, not to the capture
+        assertFalse(state.hasReceiptDetails());
+    }
+
+    @Test
+    public void keepsBrowserPaymentInteractionStatus() {
+        OrderStateStore store = new OrderStateStore(10, 60000);
+        store.update(json("{\"result\":\"SUCCESS\",\"order\":{\"id\":\"ORDER1\",\"amount\":\"10.00\",\"currency\":\"USD\"},"
+                + "\"transaction\":{\"id\":\"TRANS1\"},\"response\":{\"gatewayCode\":\"APPROVED\",\"acquirerMessage\":\"Approved\"},"
+                + "\"browserPayment\":{\"interaction\":{\"status\":\"COMPLETED\"}}}"));
+
+        BrowserPaymentResponse receipt = store.get("ORDER1").toBrowserPaymentResponse();
+        assertEquals("COMPLETED", receipt.getInteractionStatus());
+        assertEquals("Approved", receipt.getAcquirerMessage());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUpdatedOrdersAndStaleState() throws Exception {
+        OrderStateStore store = new OrderStateStore(2, 60000);
+        store.update(json("{\"order\":{\"id\":\"ORDER1\"}}"));
+        store.update(json("{\"order\":{\"id\":\"ORDER2\"}}"));
+        store.update(json("{\"order\":{\"id\":\"ORDER1\",\"status\":\"CAPTURED\"}}"));
+        store.update(json("{\"order\":{\"id\":\"ORDER3\"}}"));
+
+        assertEquals(2, store.size());
+        assertNull(store.get("ORDER2"));
+        assertNotNull(store.get("ORDER1"));
+
+        OrderStateStore shortLived = new OrderStateStore(2, 10);
+        shortLived.update(json("{\"order\":{\"id\":\"ORDER1\"}}"));
+        Thread.sleep(20);
+        assertNull(shortLived.get("ORDER1"));
+    }
+
+    private static JsonObject json(String json) {
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+}
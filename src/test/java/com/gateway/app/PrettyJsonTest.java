@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrettyJsonTest {
+
+    @Test
+    public void indentsCompactPayload() {
+        String payload = "{\"apiOperation\":\"PAY\",\"order\":{\"amount\":\"10.00\",\"currency\":\"USD\"}}";
+
+        String expected = "{\n" +
+                "  \"apiOperation\": \"PAY\",\n" +
+                "  \"order\": {\n" +
+                "    \"amount\": \"10.00\",\n" +
+                "    \"currency\": \"USD\"\n" +
+                "  }\n" +
+                "}";
+        assertEquals(expected, PrettyJson.of(payload).toString());
+    }
+
+    @Test
+    public void printsParsedResponseWithoutHtmlEscaping() {
+        JsonObject response = new JsonObject();
+        response.addProperty("returnUrl", "https://merchant.example.com/receipt?order=1&result=SUCCESS");
+
+        assertEquals("{\n  \"returnUrl\": \"https://merchant.example.com/receipt?order=1&result=SUCCESS\"\n}",
+                PrettyJson.of(response).toString());
+    }
+}
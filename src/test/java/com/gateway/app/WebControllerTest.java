@@ -34,7 +34,10 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         "gateway.api.password=testP4ssword",
         "gateway.api.version=51",
         "gateway.apm.api.version=1.1.0",
-        "gateway.srci.version=1.0.0"
+        "gateway.srci.version=1.0.0",
+        "gateway.payment-options.warm-up=false",
+        "gateway.session-pool.high-watermark=0",
+        "webhooks.log.directory=target/webhooks-notifications/WebControllerTest"
 })
 public class WebControllerTest {
     @Autowired
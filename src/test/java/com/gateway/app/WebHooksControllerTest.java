@@ -6,18 +6,28 @@ package com.gateway.app;
 
 import com.gateway.client.ApiRequestService;
 import com.gateway.client.ApiResponseService;
+import com.gateway.client.Utils;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
 
@@ -28,6 +38,10 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         "gateway.base.url=https://test-gateway.com",
         "gateway.merchant.id=testMerchant",
         "gateway.api.password=testP4ssword",
+        "gateway.payment-options.warm-up=false",
+        "gateway.session-pool.high-watermark=0",
+        // A fresh log every run, so the notifications of earlier runs don't push ours off a page
+        "webhooks.log.directory=target/webhooks-notifications/WebHooksControllerTest-${random.uuid}",
 })
 public class WebHooksControllerTest {
     @Autowired
@@ -43,6 +57,9 @@ public class WebHooksControllerTest {
     @Autowired
     private Config config;
 
+    @Autowired
+    private WebhookLog webhookLog;
+
 
     @Test
     public void showWebhooks() throws Exception {
@@ -51,4 +68,119 @@ public class WebHooksControllerTest {
                 .andExpect(view().name("webhooks"))
                 .andDo(print());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void listsProcessedNotifications() throws Exception {
+        String orderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        int offset = (int) webhookLog.getNextOffset();
+        processNotification(orderId, "TRANS1", "CAPTURED");
+
+        mockMvc.perform(get("/list-webhook-notifications").param("cursor", String.valueOf(offset)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.notifications[?(@.orderId == '" + orderId + "')].orderStatus").value("CAPTURED"))
+                .andExpect(jsonPath("$.notifications[?(@.orderId == '" + orderId + "')].transactionId").value("TRANS1"))
+                .andExpect(jsonPath("$.notifications[?(@.orderId == '" + orderId + "')].offset").value(offset));
+    }
+
+    @Test
+    public void pagesThroughFilteredNotifications() throws Exception {
+        String orderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        processNotification(orderId, "TRANS1", "AUTHORIZED");
+        processNotification(Utils.createUniqueId(Utils.Prefixes.ORDER), "TRANS1", "CAPTURED");
+        processNotification(orderId, "TRANS2", "CAPTURED");
+        processNotification(orderId, "TRANS3", "REFUNDED");
+
+        MvcResult firstPage = mockMvc.perform(get("/list-webhook-notifications")
+                .param("orderId", orderId)
+                .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.notifications.length()").value(2))
+                .andExpect(jsonPath("$.notifications[0].transactionId").value("TRANS1"))
+                .andExpect(jsonPath("$.notifications[1].transactionId").value("TRANS2"))
+                .andExpect(jsonPath("$.nextCursor").isNumber())
+                .andReturn();
+        String cursor = JsonPath.read(firstPage.getResponse().getContentAsString(), "$.nextCursor").toString();
+
+        mockMvc.perform(get("/list-webhook-notifications")
+                .param("orderId", orderId)
+                .param("limit", "2")
+                .param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.notifications.length()").value(1))
+                .andExpect(jsonPath("$.notifications[0].transactionId").value("TRANS3"))
+                .andExpect(jsonPath("$.nextCursor").value(nullValue()));
+
+        mockMvc.perform(get("/list-webhook-notifications")
+                .param("orderId", orderId)
+                .param("orderStatus", "captured"))
+                .andExpect(jsonPath("$.notifications.length()").value(1))
+                .andExpect(jsonPath("$.notifications[0].transactionId").value("TRANS2"));
+
+        mockMvc.perform(get("/list-webhook-notifications")
+                .param("orderId", orderId)
+                .param("to", "0"))
+                .andExpect(jsonPath("$.notifications.length()").value(0));
+    }
+
+    @Test
+    public void streamsNewNotifications() throws Exception {
+        MvcResult stream = mockMvc.perform(get("/webhook-notifications/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String orderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        long offset = webhookLog.getNextOffset();
+        processNotification(orderId, "TRANS1", "CAPTURED");
+
+        String events = awaitContent(stream, orderId);
+        assertTrue(events.contains("id:" + offset + "\n"));
+        assertTrue(events.contains("event:notification\n"));
+    }
+
+    @Test
+    public void replaysMissedNotificationsAfterLastEventId() throws Exception {
+        String missedOrderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        String seenOrderId = Utils.createUniqueId(Utils.Prefixes.ORDER);
+        processNotification(seenOrderId, "TRANS1", "CAPTURED");
+        long lastEventId = webhookLog.getNextOffset() - 1;
+        processNotification(missedOrderId, "TRANS1", "CAPTURED");
+
+        MvcResult stream = mockMvc.perform(get("/webhook-notifications/stream").header("Last-Event-ID", lastEventId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String events = awaitContent(stream, missedOrderId);
+        assertFalse(events.contains(seenOrderId));
+    }
+
+    private static String awaitContent(MvcResult stream, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = stream.getResponse().getContentAsString();
+        while (!content.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            content = stream.getResponse().getContentAsString();
+        }
+        assertTrue("Expected " + expected + " in " + content, content.contains(expected));
+        return content;
+    }
+
+    /**
+     * Posts a notification and waits for the ingestion queue to log it
+     */
+    private void processNotification(String orderId, String transactionId, String orderStatus) throws Exception {
+        long logged = webhookLog.getNextOffset();
+        String notification = "{\"order\":{\"id\":\"" + orderId + "\",\"amount\":\"10.00\",\"status\":\"" + orderStatus + "\"},"
+                + "\"transaction\":{\"id\":\"" + transactionId + "\"},\"result\":\"SUCCESS\"}";
+
+        mockMvc.perform(post("/process-webhook")
+                .header("X-Notification-Secret", "")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(notification))
+                .andExpect(status().isOk());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (webhookLog.getNextOffset() == logged && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
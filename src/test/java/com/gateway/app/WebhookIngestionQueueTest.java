@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gateway.client.WebhookNotification;
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WebhookIngestionQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WebhookLog log;
+    private WebhookIngestionQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        log = new WebhookLog(folder.getRoot().toPath().resolve("log"), 4096);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (queue != null) {
+            queue.shutdown();
+        }
+        log.close();
+    }
+
+    @Test
+    public void logsQueuedNotificationsAndDropsDuplicates() throws Exception {
+        queue = createQueue(10, WebhookIngestionQueue.Overflow.REJECT);
+        queue.start();
+
+        assertTrue(queue.offer(null, notification("ORDER1", "TRANS1", "AUTHORIZED")));
+        assertTrue(queue.offer(null, notification("ORDER1", "TRANS1", "AUTHORIZED")));
+        assertTrue(queue.offer("NOTIFICATION2", notification("ORDER1", "TRANS2", "CAPTURED")));
+        assertTrue(queue.offer("NOTIFICATION2", notification("ORDER1", "TRANS2", "CAPTURED")));
+        queue.shutdown();
+
+        List<WebhookNotification> logged = readLog();
+        assertEquals(2, logged.size());
+        assertEquals("TRANS1", logged.get(0).getTransactionId());
+        assertEquals("CAPTURED", logged.get(1).getOrderStatus());
+        assertEquals("10.00", logged.get(1).getAmount());
+    }
+
+    @Test
+    public void keepsProcessingAfterAMalformedNotification() throws Exception {
+        queue = createQueue(10, WebhookIngestionQueue.Overflow.REJECT);
+        queue.start();
+
+        assertTrue(queue.offer(null, "{\"order\":{\"id\":{}}}"));
+        assertTrue(queue.offer(null, notification("ORDER1", "TRANS1", "CAPTURED")));
+        queue.shutdown();
+
+        List<WebhookNotification> logged = readLog();
+        assertEquals(1, logged.size());
+        assertEquals("ORDER1", logged.get(0).getOrderId());
+    }
+
+    @Test
+    public void rejectsNotificationsWhenFull() throws Exception {
+        queue = createQueue(1, WebhookIngestionQueue.Overflow.REJECT);
+
+        assertTrue(queue.offer(null, notification("ORDER1", "TRANS1", "CAPTURED")));
+        assertFalse(queue.offer(null, notification("ORDER2", "TRANS1", "CAPTURED")));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void blocksUntilTheTimeoutWhenFull() throws Exception {
+        queue = createQueue(1, WebhookIngestionQueue.Overflow.BLOCK);
+
+        assertTrue(queue.offer(null, notification("ORDER1", "TRANS1", "CAPTURED")));
+        long start = System.nanoTime();
+        assertFalse(queue.offer(null, notification("ORDER2", "TRANS1", "CAPTURED")));
+        assertTrue(System.nanoTime() - start >= 40_000_000L);
+    }
+
+    @Test
+    public void spillsToDiskWhenFullAndKeepsTheOrder() throws Exception {
+        queue = createQueue(1, WebhookIngestionQueue.Overflow.SPILL);
+
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(queue.offer(null, notification("ORDER" + i, "TRANS1", "CAPTURED")));
+        }
+        assertEquals(1, queue.size());
+
+        queue.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (log.getNextOffset() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        List<WebhookNotification> logged = readLog();
+        assertEquals(5, logged.size());
+        for (int i = 0; i < logged.size(); i++) {
+            assertEquals("ORDER" + (i + 1), logged.get(i).getOrderId());
+        }
+    }
+
+    private WebhookIngestionQueue createQueue(int capacity, WebhookIngestionQueue.Overflow overflow) throws IOException {
+        Path spill = folder.getRoot().toPath().resolve("spill");
+        return new WebhookIngestionQueue(log, capacity, 1, overflow, 50, spill, 4096);
+    }
+
+    private List<WebhookNotification> readLog() throws IOException {
+        List<WebhookNotification> notifications = new ArrayList<>();
+        log.read(0, (offset, payload) -> notifications.add(new Gson().fromJson(
+                StandardCharsets.UTF_8.decode(payload).toString(), WebhookNotification.class)));
+        return notifications;
+    }
+
+    private static String notification(String orderId, String transactionId, String orderStatus) {
+        return "{\"order\":{\"id\":\"" + orderId + "\",\"amount\":\"10.00\",\"status\":\"" + orderStatus + "\"},"
+                + "\"transaction\":{\"id\":\"" + transactionId + "\"},\"result\":\"SUCCESS\"}";
+    }
+}
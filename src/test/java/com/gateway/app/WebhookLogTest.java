@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WebhookLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsRecordsInOrderFromAnyOffset() throws Exception {
+        try (WebhookLog log = new WebhookLog(folder.getRoot().toPath(), 1024)) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, log.append(("record " + i).getBytes(StandardCharsets.UTF_8)));
+            }
+
+            assertEquals(10, readAll(log, 0).size());
+            assertEquals("record 0", readAll(log, 0).get(0));
+            List<String> tail = readAll(log, 7);
+            assertEquals(3, tail.size());
+            assertEquals("record 7", tail.get(0));
+            assertTrue(readAll(log, 10).isEmpty());
+        }
+    }
+
+    @Test
+    public void rollsSegmentsAndReadsAcrossThem() throws Exception {
+        try (WebhookLog log = new WebhookLog(folder.getRoot().toPath(), 64)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(("record " + i).getBytes(StandardCharsets.UTF_8));
+            }
+
+            assertTrue(segmentFiles().length > 1);
+            List<String> records = readAll(log, 5);
+            assertEquals(15, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals("record " + (i + 5), records.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void stopsWhenTheVisitorDoes() throws Exception {
+        try (WebhookLog log = new WebhookLog(folder.getRoot().toPath(), 64)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(("record " + i).getBytes(StandardCharsets.UTF_8));
+            }
+
+            List<Long> offsets = new ArrayList<>();
+            log.read(3, (offset, payload) -> offsets.add(offset) && offsets.size() < 4);
+            assertEquals(4, offsets.size());
+            assertEquals(Long.valueOf(6), offsets.get(3));
+        }
+    }
+
+    @Test
+    public void recoversTheLogAndTruncatesAnIncompleteRecord() throws Exception {
+        try (WebhookLog log = new WebhookLog(folder.getRoot().toPath(), 64)) {
+            for (int i = 0; i < 10; i++) {
+                log.append(("record " + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        File[] segments = segmentFiles();
+        File last = segments[segments.length - 1];
+        try (RandomAccessFile file = new RandomAccessFile(last, "rw")) {
+            file.seek(file.length());
+            file.writeInt(100);
+            file.writeInt(0);
+            file.write("cut short".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (WebhookLog log = new WebhookLog(folder.getRoot().toPath(), 64)) {
+            assertEquals(10, log.getNextOffset());
+            assertEquals(10, log.append("record 10".getBytes(StandardCharsets.UTF_8)));
+            List<String> records = readAll(log, 0);
+            assertEquals(11, records.size());
+            assertEquals("record 10", records.get(10));
+        }
+    }
+
+    @Test
+    public void dropsTheSegmentsAfterACorruptRecord() throws Exception {
+        try (WebhookLog log = new WebhookLog(folder.getRoot().toPath(), 64)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(("record " + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        File[] segments = segmentFiles();
+        assertTrue(segments.length > 2);
+        try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+            // Flip a byte of the first payload so it fails its checksum
+            file.seek(8);
+            file.write(file.read() ^ 0xFF);
+        }
+
+        try (WebhookLog log = new WebhookLog(folder.getRoot().toPath(), 64)) {
+            assertEquals(0, log.getNextOffset());
+            assertEquals(1, segmentFiles().length);
+            for (int i = 0; i < 20; i++) {
+                log.append(("rewritten " + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        try (WebhookLog log = new WebhookLog(folder.getRoot().toPath(), 64)) {
+            assertEquals(20, log.getNextOffset());
+            List<String> records = readAll(log, 0);
+            assertEquals(20, records.size());
+            assertEquals("rewritten 19", records.get(19));
+        }
+    }
+
+    @Test
+    public void givesConcurrentAppendsDistinctOffsets() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (WebhookLog log = new WebhookLog(folder.getRoot().toPath(), 4096)) {
+            Set<Long> offsets = ConcurrentHashMap.newKeySet();
+            List<Future<?>> appends = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String record = "record " + i;
+                appends.add(executor.submit(() -> offsets.add(log.append(record.getBytes(StandardCharsets.UTF_8)))));
+            }
+            for (Future<?> append : appends) {
+                append.get();
+            }
+
+            assertEquals(400, offsets.size());
+            assertEquals(400, readAll(log, 0).size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private File[] segmentFiles() {
+        File[] files = folder.getRoot().listFiles((dir, name) -> name.endsWith(WebhookLog.SEGMENT_SUFFIX));
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static List<String> readAll(WebhookLog log, long fromOffset) throws IOException {
+        List<String> records = new ArrayList<>();
+        log.read(fromOffset, (offset, payload) -> records.add(StandardCharsets.UTF_8.decode(payload).toString()));
+        return records;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.app;
+
+import com.gateway.client.WebhookNotification;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.stereotype.Controller;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+public class WebhookNotificationBroadcasterTest {
+
+    private final WebhookNotificationBroadcaster broadcaster = new WebhookNotificationBroadcaster(10, 60000, 5);
+
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new StreamController(broadcaster)).build();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        broadcaster.shutdown();
+    }
+
+    @Test
+    public void sendsNotificationsInLogOrder() throws Exception {
+        MvcResult stream = mockMvc.perform(get("/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        broadcaster.publish(6, notification("ORDER6"));
+        broadcaster.publish(7, notification("ORDER7"));
+        Thread.sleep(100);
+        assertFalse(stream.getResponse().getContentAsString().contains("ORDER6"));
+
+        broadcaster.publish(5, notification("ORDER5"));
+        String events = awaitContent(stream, "ORDER7");
+        assertTrue(events.indexOf("id:5\n") < events.indexOf("id:6\n"));
+        assertTrue(events.indexOf("id:6\n") < events.indexOf("id:7\n"));
+    }
+
+    @Test
+    public void skipsAGapLongerThanTheBuffer() throws Exception {
+        MvcResult stream = mockMvc.perform(get("/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        for (int offset = 6; offset <= 16; offset++) {
+            broadcaster.publish(offset, notification("ORDER" + offset));
+        }
+        broadcaster.publish(5, notification("ORDER5"));
+
+        String events = awaitContent(stream, "ORDER16");
+        assertTrue(events.contains("id:6\n"));
+        assertFalse(events.contains("ORDER5"));
+    }
+
+    private static String awaitContent(MvcResult stream, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = stream.getResponse().getContentAsString();
+        while (!content.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            content = stream.getResponse().getContentAsString();
+        }
+        assertTrue("Expected " + expected + " in " + content, content.contains(expected));
+        return content;
+    }
+
+    private static WebhookNotification notification(String orderId) {
+        return new WebhookNotification(orderId, "TRANS1", "CAPTURED", "10.00");
+    }
+
+    @Controller
+    static class StreamController {
+        private final WebhookNotificationBroadcaster broadcaster;
+
+        StreamController(WebhookNotificationBroadcaster broadcaster) {
+            this.broadcaster = broadcaster;
+        }
+
+        @GetMapping("/stream")
+        SseEmitter stream() {
+            return broadcaster.subscribe(null);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.gateway.app.Config;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ApiServiceTest {
+
+    private HttpServer server;
+    private Config config;
+    private final List<String> authorizationHeaders = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = ServerBootstrap.bootstrap()
+                .setListenerPort(0)
+                .registerHandler("*", (request, response, context) -> {
+                    if (request.getFirstHeader(HttpHeaders.AUTHORIZATION) == null) {
+                        authorizationHeaders.add("");
+                        response.setStatusCode(HttpStatus.SC_UNAUTHORIZED);
+                        response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Basic realm=\"gateway\"");
+                        response.setEntity(new StringEntity("{\"result\":\"ERROR\"}", ContentType.APPLICATION_JSON));
+                        return;
+                    }
+                    authorizationHeaders.add(request.getFirstHeader(HttpHeaders.AUTHORIZATION).getValue());
+                    if (request.getRequestLine().getUri().contains("/order/SLOW")) {
+                        try {
+                            Thread.sleep(2000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    if (request.getRequestLine().getUri().contains("/order/ERROR")) {
+                        response.setStatusCode(HttpStatus.SC_BAD_REQUEST);
+                        response.setEntity(new StringEntity("{\"result\":\"ERROR\",\"error\":{\"cause\":\"INVALID_REQUEST\","
+                                + "\"explanation\":\"Invalid request\"}}", ContentType.APPLICATION_JSON));
+                        return;
+                    }
+                    response.setEntity(new StringEntity("{\"result\":\"SUCCESS\"}", ContentType.APPLICATION_JSON));
+                })
+                .create();
+        server.start();
+
+        config = new Config();
+        config.setMerchantId("TESTMERCHANTID");
+        config.setApiUsername("merchant.TESTMERCHANTID");
+        config.setApiPassword("APIPASSWORD1234");
+        config.setAuthenticationType(Config.AuthenticationType.PASSWORD);
+        config.setGatewayHost("http://localhost:" + server.getLocalPort());
+        config.setApiVersion(45);
+    }
+
+    @After
+    public void tearDown() {
+        ApiService.setTransactionLedger(TransactionLedger.NONE);
+        RequestDeadline.clear();
+        HttpClientProvider.shutdown();
+        server.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void sendsCredentialsWithoutWaitingForChallenge() throws Exception {
+        long challenges = ApiService.getAuthenticationChallengeCount();
+
+        ApiResponse response = new RESTApiClient().getTransaction(ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config), config);
+
+        String expected = "Basic " + Base64.getEncoder()
+                .encodeToString("merchant.TESTMERCHANTID:APIPASSWORD1234".getBytes(StandardCharsets.UTF_8));
+        assertEquals("{\"result\":\"SUCCESS\"}", response.getBody());
+        assertEquals(1, authorizationHeaders.size());
+        assertEquals(expected, authorizationHeaders.get(0));
+        assertEquals(challenges, ApiService.getAuthenticationChallengeCount());
+    }
+
+    @Test
+    public void sendsChangedCredentials() throws Exception {
+        new RESTApiClient().getTransaction(ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config), config);
+        config.setApiPassword("APIPASSWORD5678");
+        new RESTApiClient().getTransaction(ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config), config);
+
+        String expected = "Basic " + Base64.getEncoder()
+                .encodeToString("merchant.TESTMERCHANTID:APIPASSWORD5678".getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, authorizationHeaders.size());
+        assertEquals(expected, authorizationHeaders.get(1));
+    }
+
+    @Test
+    public void executesAsynchronously() throws Exception {
+        CompletableFuture<ApiResponse> response = new AsyncRESTApiClient().getTransaction(
+                ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config), config, ApiOperation.RETRIEVE_SESSION);
+
+        assertEquals("SUCCESS", response.get(5, TimeUnit.SECONDS).getJson().get("result").getAsString());
+        assertEquals(1, authorizationHeaders.size());
+    }
+
+    @Test
+    public void completesAsynchronousErrorWithApiException() throws Exception {
+        CompletableFuture<ApiResponse> response = new AsyncRESTApiClient().getTransaction(
+                config.getGatewayHost() + "/api/rest/version/45/merchant/TESTMERCHANTID/order/ERROR", config, ApiOperation.RETRIEVE_ORDER);
+
+        try {
+            response.get(5, TimeUnit.SECONDS);
+            fail("Expected the gateway error to complete the future exceptionally");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ApiException);
+            assertEquals("INVALID_REQUEST", ((ApiException) e.getCause()).getErrorCode());
+            assertEquals("Invalid request", ((ApiException) e.getCause()).getExplanation());
+        }
+    }
+
+    @Test
+    public void appliesOperationSocketTimeout() throws Exception {
+        config.getTimeoutPolicy().setTimeouts(ApiOperation.RETRIEVE_ORDER, new TimeoutPolicy.Timeouts(1000, 200, 1000));
+        String url = config.getGatewayHost() + "/api/rest/version/45/merchant/TESTMERCHANTID/order/SLOW";
+
+        long start = System.currentTimeMillis();
+        try {
+            new RESTApiClient().getTransaction(url, config, ApiOperation.RETRIEVE_ORDER);
+            fail("Expected the call to time out");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 1500);
+    }
+
+    @Test
+    public void failsFastOnceDeadlineHasPassed() throws Exception {
+        RequestDeadline.set(System.currentTimeMillis() - 1);
+
+        try {
+            new RESTApiClient().sendTransaction("{}", ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config),
+                    config, ApiOperation.PAY);
+            fail("Expected the deadline to be exceeded");
+        } catch (ApiException e) {
+            assertEquals(RequestDeadline.DEADLINE_EXCEEDED, e.getErrorCode());
+        }
+        assertTrue(authorizationHeaders.isEmpty());
+    }
+
+    @Test
+    public void recordsCallsInTheTransactionLedger() throws Exception {
+        List<LedgerEntry> entries = new CopyOnWriteArrayList<>();
+        ApiService.setTransactionLedger(entries::add);
+
+        new RESTApiClient().getTransaction(ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config), config,
+                ApiOperation.RETRIEVE_SESSION);
+        try {
+            new RESTApiClient().getTransaction(config.getGatewayHost() + "/api/rest/version/45/merchant/TESTMERCHANTID/order/ERROR",
+                    config, ApiOperation.RETRIEVE_ORDER);
+            fail("Expected the gateway error");
+        } catch (ApiException e) {
+            // recorded below
+        }
+
+        assertEquals(2, entries.size());
+        assertEquals("RETRIEVE_SESSION", entries.get(0).getOperation());
+        assertEquals("SUCCESS", entries.get(0).getResult());
+        assertEquals("RETRIEVE_ORDER", entries.get(1).getOperation());
+        assertEquals("ERROR", entries.get(1).getResult());
+        assertEquals("INVALID_REQUEST", entries.get(1).getErrorCode());
+    }
+
+    @Test
+    public void recordsNoLatencyWhenTheRequestIsNeverSent() throws Exception {
+        config.setAuthenticationType(Config.AuthenticationType.CERTIFICATE);
+        config.setKeyStore("target/missing-keystore.p12");
+        config.setKeyStorePassword("password");
+        Map<String, Object> before = operationSnapshot("VOID PUT");
+
+        try {
+            new RESTApiClient().sendTransaction("{}", ApiRequestService.getSessionRequestUrl(ApiProtocol.REST, config),
+                    config, ApiOperation.VOID);
+            fail("Expected the keystore to be missing");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        Map<String, Object> after = operationSnapshot("VOID PUT");
+        assertEquals(count(before, "latency"), count(after, "latency"));
+        assertEquals((Long) before.get("errors") + 1, after.get("errors"));
+        assertTrue(authorizationHeaders.isEmpty());
+    }
+
+    @Test
+    public void reusesHttpClientForConfig() throws Exception {
+        assertSame(HttpClientProvider.getHttpClient(config), HttpClientProvider.getHttpClient(config));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> operationSnapshot(String key) {
+        Map<String, Object> operations = (Map<String, Object>) GatewayMetrics.snapshot().get("operations");
+        Map<String, Object> operation = (Map<String, Object>) operations.get(key);
+        if (operation == null) {
+            Map<String, Object> empty = new HashMap<>();
+            empty.put("latency", Collections.singletonMap("count", 0L));
+            empty.put("errors", 0L);
+            return empty;
+        }
+        return operation;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long count(Map<String, Object> operation, String histogram) {
+        return (Long) ((Map<String, Object>) operation.get(histogram)).get("count");
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.Map;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class GatewayGuardsTest {
+
+    private static final String ORDER_URL = "https://gateway/api/rest/version/50/merchant/TEST/order/1";
+
+    private final GatewayGuards guards = new GatewayGuards();
+
+    @After
+    public void tearDown() {
+        RequestDeadline.clear();
+    }
+
+    @Test
+    public void opensAfterFailuresAndRejectsCalls() throws Exception {
+        guards.setMinimumCalls(4);
+        guards.setFailureRateThreshold(50);
+        for (int i = 0; i < 4; i++) {
+            guards.acquire(ApiProtocol.REST, new HttpPut(ORDER_URL + "/transaction/" + i), ApiOperation.PAY)
+                    .release(i % 2 == 0);
+        }
+
+        assertRejected(GatewayGuards.CIRCUIT_OPEN, new HttpGet(ORDER_URL));
+        assertEquals("OPEN", state(EndpointFamily.ORDER));
+        // Other families are unaffected
+        guards.acquire(ApiProtocol.REST, new HttpPut("https://gateway/api/rest/version/50/merchant/TEST/session"),
+                ApiOperation.CREATE_CHECKOUT_SESSION).release(false);
+    }
+
+    @Test
+    public void closesOnceTrialCallsSucceed() throws Exception {
+        guards.setMinimumCalls(1);
+        guards.setOpenDuration(0);
+        guards.setHalfOpenCalls(2);
+        guards.acquire(ApiProtocol.REST, new HttpGet(ORDER_URL), ApiOperation.RETRIEVE_ORDER).release(true);
+        assertEquals("OPEN", state(EndpointFamily.ORDER));
+
+        GatewayGuards.Permit first = guards.acquire(ApiProtocol.REST, new HttpGet(ORDER_URL), ApiOperation.RETRIEVE_ORDER);
+        GatewayGuards.Permit second = guards.acquire(ApiProtocol.REST, new HttpGet(ORDER_URL), ApiOperation.RETRIEVE_ORDER);
+        assertEquals("HALF_OPEN", state(EndpointFamily.ORDER));
+        // Only as many trial calls as needed are let through
+        assertRejected(GatewayGuards.CIRCUIT_OPEN, new HttpGet(ORDER_URL));
+
+        first.release(false);
+        second.release(false);
+        assertEquals("CLOSED", state(EndpointFamily.ORDER));
+    }
+
+    @Test
+    public void fullReadBulkheadLeavesRoomForWrites() throws Exception {
+        guards.setMaxConcurrentCalls(1);
+        guards.setMaxWait(10);
+        GatewayGuards.Permit read = guards.acquire(ApiProtocol.REST, new HttpGet(ORDER_URL), ApiOperation.RETRIEVE_ORDER);
+
+        assertRejected(GatewayGuards.BULKHEAD_FULL, new HttpGet(ORDER_URL));
+        guards.acquire(ApiProtocol.REST, new HttpPut(ORDER_URL + "/transaction/1"), ApiOperation.PAY).release(false);
+
+        read.cancel();
+        read.cancel();
+        guards.acquire(ApiProtocol.REST, new HttpGet(ORDER_URL), ApiOperation.RETRIEVE_ORDER).release(false);
+        assertEquals(1, available("ORDER_READ"));
+    }
+
+    @Test
+    public void mapsRequestsToFamilies() {
+        assertEquals(EndpointFamily.SESSION, family("https://gateway/api/rest/version/50/merchant/TEST/session/SESSION1"));
+        assertEquals(EndpointFamily.ORDER, family(ORDER_URL + "/transaction/1"));
+        assertEquals(EndpointFamily.THREE_D_SECURE, family("https://gateway/api/rest/version/50/merchant/TEST/3DSecureId/1"));
+        assertEquals(EndpointFamily.TOKEN, family("https://gateway/api/rest/version/50/merchant/TEST/token"));
+        assertEquals(EndpointFamily.OTHER, family("https://gateway/api/rest/version/50/merchant/TEST/paymentOptionsInquiry"));
+        assertEquals(EndpointFamily.NVP, EndpointFamily.of(ApiProtocol.NVP, new HttpPut("https://gateway/api/nvp/version/50")));
+    }
+
+    private void assertRejected(String errorCode, HttpRequestBase httpMethod) throws InterruptedException {
+        try {
+            guards.acquire(ApiProtocol.REST, httpMethod, ApiOperation.RETRIEVE_ORDER);
+            fail("Expected the call to be rejected");
+        } catch (ApiException e) {
+            assertEquals(errorCode, e.getErrorCode());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private String state(EndpointFamily family) {
+        Map<String, Object> breakers = (Map<String, Object>) guards.snapshot().get("circuitBreakers");
+        return (String) ((Map<String, Object>) breakers.get(family.name())).get("state");
+    }
+
+    @SuppressWarnings("unchecked")
+    private int available(String compartment) {
+        return (Integer) ((Map<String, Object>) guards.snapshot().get("bulkheadsAvailable")).get(compartment);
+    }
+
+    private static EndpointFamily family(String url) {
+        return EndpointFamily.of(ApiProtocol.REST, new HttpGet(url));
+    }
+}
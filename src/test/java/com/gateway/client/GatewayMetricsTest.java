@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.net.ConnectException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.gateway.app.Config;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GatewayMetricsTest {
+
+    private static final String SUCCESS = "{\"result\":\"SUCCESS\"}";
+
+    private HttpServer server;
+    private Config config;
+
+    @Before
+    public void setUp() throws Exception {
+        server = ServerBootstrap.bootstrap()
+                .setListenerPort(0)
+                .registerHandler("*", (request, response, context) -> {
+                    if (request.getRequestLine().getUri().contains("/order/ERROR")) {
+                        response.setStatusCode(HttpStatus.SC_BAD_REQUEST);
+                        response.setEntity(new StringEntity("{\"result\":\"ERROR\",\"error\":{\"cause\":\"INVALID_REQUEST\","
+                                + "\"explanation\":\"Invalid request\"}}", ContentType.APPLICATION_JSON));
+                        return;
+                    }
+                    response.setEntity(new StringEntity(SUCCESS, ContentType.APPLICATION_JSON));
+                })
+                .create();
+        server.start();
+
+        config = new Config();
+        config.setMerchantId("TESTMERCHANTID");
+        config.setApiUsername("merchant.TESTMERCHANTID");
+        config.setApiPassword("APIPASSWORD1234");
+        config.setAuthenticationType(Config.AuthenticationType.PASSWORD);
+        config.setGatewayHost("http://localhost:" + server.getLocalPort());
+        config.setApiVersion(45);
+
+        GatewayMetrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        HttpClientProvider.shutdown();
+        server.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void recordsLatencyAndBytesPerOperationAndMethod() throws Exception {
+        String data = "{\"apiOperation\":\"PAY\"}";
+        RESTApiClient client = new RESTApiClient();
+        client.sendTransaction(data, orderUrl("ORDER1") + "/transaction/1", config, ApiOperation.PAY);
+        client.sendTransaction(data, orderUrl("ORDER2") + "/transaction/1", config, ApiOperation.PAY);
+        client.getTransaction(orderUrl("ORDER1"), config, ApiOperation.RETRIEVE_ORDER);
+
+        Map<String, Object> pay = operation("PAY PUT");
+        assertEquals(2L, latency(pay).get("count"));
+        assertEquals(2L * data.length(), pay.get("requestBytes"));
+        assertEquals(2L * SUCCESS.length(), pay.get("responseBytes"));
+        assertEquals(0L, pay.get("errors"));
+        assertTrue((Double) latency(pay).get("p99") >= (Double) latency(pay).get("p50"));
+
+        Map<String, Object> retrieve = operation("RETRIEVE_ORDER GET");
+        assertEquals(1L, latency(retrieve).get("count"));
+        assertEquals(0L, retrieve.get("requestBytes"));
+    }
+
+    @Test
+    public void countsGatewayErrorsByErrorCode() throws Exception {
+        try {
+            new RESTApiClient().getTransaction(orderUrl("ERROR"), config, ApiOperation.RETRIEVE_ORDER);
+            fail("Expected the gateway error to be thrown");
+        } catch (ApiException e) {
+            assertEquals("INVALID_REQUEST", e.getErrorCode());
+        }
+        new AsyncRESTApiClient().getTransaction(orderUrl("ERROR"), config, ApiOperation.RETRIEVE_ORDER)
+                .handle((response, e) -> response)
+                .get(5, TimeUnit.SECONDS);
+
+        Map<String, Object> retrieve = operation("RETRIEVE_ORDER GET");
+        assertEquals(2L, retrieve.get("errors"));
+        assertEquals(2L, ((Map<?, ?>) retrieve.get("errorCodes")).get("INVALID_REQUEST"));
+        assertEquals(2L, latency(retrieve).get("count"));
+    }
+
+    @Test
+    public void countsCallsThatGetNoResponseByExceptionType() throws Exception {
+        config.setGatewayHost("http://localhost:1");
+        try {
+            new RESTApiClient().getTransaction(orderUrl("ORDER1"), config, ApiOperation.RETRIEVE_ORDER);
+            fail("Expected the connection to be refused");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof ConnectException);
+        }
+
+        Map<?, ?> errorCodes = (Map<?, ?>) operation("RETRIEVE_ORDER GET").get("errorCodes");
+        assertEquals(1L, errorCodes.get("HttpHostConnectException"));
+    }
+
+    @Test
+    public void recordsConnectionLeaseWaits() throws Exception {
+        new RESTApiClient().getTransaction(orderUrl("ORDER1"), config, ApiOperation.RETRIEVE_ORDER);
+        new AsyncRESTApiClient().getTransaction(orderUrl("ORDER1"), config, ApiOperation.RETRIEVE_ORDER)
+                .get(5, TimeUnit.SECONDS);
+
+        Map<?, ?> leases = (Map<?, ?>) GatewayMetrics.snapshot().get("connectionLeases");
+        for (String pool : new String[] {GatewayMetrics.SYNC_POOL, GatewayMetrics.ASYNC_POOL}) {
+            Map<?, ?> lease = (Map<?, ?>) leases.get(pool);
+            assertEquals(1L, ((Map<?, ?>) lease.get("wait")).get("count"));
+            assertEquals(0L, lease.get("timeouts"));
+        }
+    }
+
+    private String orderUrl(String orderId) {
+        return config.getGatewayHost() + "/api/rest/version/45/merchant/TESTMERCHANTID/order/" + orderId;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> operation(String key) {
+        return (Map<String, Object>) ((Map<String, Object>) GatewayMetrics.snapshot().get("operations")).get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> latency(Map<String, Object> operation) {
+        return (Map<String, Object>) operation.get("latency");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdGeneratorTest {
+
+    @After
+    public void tearDown() {
+        Utils.setIdGenerator(new RandomIdGenerator());
+    }
+
+    @Test
+    public void randomIdsAreTenAlphanumericCharacters() {
+        String id = new RandomIdGenerator().nextId();
+
+        assertTrue(id, id.matches("[A-Za-z0-9]{10}"));
+    }
+
+    @Test
+    public void timeOrderedIdsAreUniqueAcrossThreads() throws Exception {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(7);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 20000; j++) {
+                        ids.add(generator.nextId());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(160000, ids.size());
+    }
+
+    @Test
+    public void timeOrderedIdsSortInCreationOrder() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(0);
+        String previous = generator.nextId();
+        // More than one millisecond worth of sequence numbers
+        for (int i = 0; i < 10000; i++) {
+            String id = generator.nextId();
+            assertTrue(id.matches("[0-9A-Z]{13}"));
+            assertTrue(previous + " < " + id, previous.compareTo(id) < 0);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void nodesProduceDistinctIds() {
+        assertNotEquals(new TimeOrderedIdGenerator(1).nextId(), new TimeOrderedIdGenerator(2).nextId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNodeOutOfRange() {
+        new TimeOrderedIdGenerator(1024);
+    }
+
+    @Test
+    public void createUniqueIdUsesConfiguredGenerator() {
+        Utils.setIdGenerator(() -> "FIXED");
+
+        assertEquals("order-FIXED", Utils.createUniqueId(Utils.Prefixes.ORDER));
+    }
+}
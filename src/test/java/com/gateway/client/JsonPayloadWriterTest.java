@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonPayloadWriterTest {
+
+    @Test
+    public void skipsEmptyObjects() {
+        String json = new JsonPayloadWriter(false)
+                .property("apiOperation", "PAY")
+                .beginObject("order").property("amount", "").endObject()
+                .beginObject("session").property("id", "SESSION0001").endObject()
+                .finish();
+
+        assertEquals("{\"apiOperation\":\"PAY\",\"session\":{\"id\":\"SESSION0001\"}}", json);
+    }
+
+    @Test
+    public void writesAfterALargePayload() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            description.append("item ");
+        }
+        String large = new JsonPayloadWriter(false).property("description", description.toString()).finish();
+        String small = new JsonPayloadWriter(false).property("apiOperation", "VOID").finish();
+
+        assertEquals(description.length() + 18, large.length());
+        assertEquals("{\"apiOperation\":\"VOID\"}", small);
+    }
+}
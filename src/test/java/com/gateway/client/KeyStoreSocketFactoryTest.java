@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import javax.net.ssl.SSLContext;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class KeyStoreSocketFactoryTest {
+
+    private static final long RELOAD_INTERVAL = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reloadsTheKeyStoreWhenTheFileChanges() throws Exception {
+        File keyStore = folder.newFile("keystore.p12");
+        copy("first.p12", keyStore);
+        KeyStoreSocketFactory socketFactory = new KeyStoreSocketFactory(keyStore.getPath(), "password", RELOAD_INTERVAL);
+        SSLContext first = socketFactory.getSSLContext();
+        assertSame(first, socketFactory.getSSLContext());
+
+        replace(keyStore, "second.p12");
+        Thread.sleep(RELOAD_INTERVAL + 50);
+
+        assertNotSame(first, socketFactory.getSSLContext());
+    }
+
+    @Test
+    public void keepsThePreviousKeyStoreWhenTheNewOneCantBeRead() throws Exception {
+        File keyStore = folder.newFile("keystore.p12");
+        copy("first.p12", keyStore);
+        KeyStoreSocketFactory socketFactory = new KeyStoreSocketFactory(keyStore.getPath(), "password", RELOAD_INTERVAL);
+        SSLContext first = socketFactory.getSSLContext();
+
+        long lastModified = keyStore.lastModified();
+        Files.write(keyStore.toPath(), "not a keystore".getBytes(StandardCharsets.UTF_8));
+        keyStore.setLastModified(lastModified + 2000);
+        Thread.sleep(RELOAD_INTERVAL + 50);
+
+        assertSame(first, socketFactory.getSSLContext());
+    }
+
+    /**
+     * Overwrites the keystore, moving its modification time on in case the file system only keeps whole seconds
+     */
+    private static void replace(File keyStore, String resource) throws Exception {
+        long lastModified = keyStore.lastModified();
+        copy(resource, keyStore);
+        keyStore.setLastModified(lastModified + 2000);
+    }
+
+    private static void copy(String resource, File target) throws Exception {
+        try (InputStream input = KeyStoreSocketFactoryTest.class.getResourceAsStream("/keystores/" + resource)) {
+            Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
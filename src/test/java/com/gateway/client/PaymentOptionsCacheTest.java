@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.gateway.model.TransactionMode;
+import com.gateway.response.PaymentOptionsResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PaymentOptionsCacheTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void loadsOnceForConcurrentMisses() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PaymentOptionsCache cache = new PaymentOptionsCache(() -> {
+            loads.incrementAndGet();
+            release.await();
+            return options(TransactionMode.PURCHASE);
+        }, 60000, 0, executor);
+
+        List<Future<PaymentOptionsResponse>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(cache::get));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        PaymentOptionsResponse first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<PaymentOptionsResponse> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void reloadsOnceExpired() throws Exception {
+        PaymentOptionsCache cache = new PaymentOptionsCache(() -> {
+            loads.incrementAndGet();
+            return options(TransactionMode.PURCHASE);
+        }, 50, 0, executor);
+
+        cache.get();
+        cache.get();
+        assertEquals(1, loads.get());
+
+        Thread.sleep(100);
+        cache.get();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void servesCachedOptionsWhileRefreshingAhead() throws Exception {
+        PaymentOptionsCache cache = new PaymentOptionsCache(() -> options(loads.incrementAndGet() == 1 ?
+                TransactionMode.PURCHASE : TransactionMode.AUTHORIZE_CAPTURE), 60000, 60000, executor);
+
+        assertEquals(TransactionMode.PURCHASE, cache.get().getTransactionMode());
+        // Every option is within the refresh window, so this returns the cached value and refreshes in the background
+        assertEquals(TransactionMode.PURCHASE, cache.get().getTransactionMode());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loads.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertEquals(TransactionMode.AUTHORIZE_CAPTURE, cache.get().getTransactionMode());
+    }
+
+    @Test
+    public void retriesAfterFailedLoad() throws Exception {
+        PaymentOptionsCache cache = new PaymentOptionsCache(() -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new ApiException("The API returned an error");
+            }
+            return options(TransactionMode.PURCHASE);
+        }, 60000, 0, executor);
+
+        try {
+            cache.get();
+            fail("Expected the gateway error");
+        } catch (ApiException e) {
+            assertEquals("The API returned an error", e.getMessage());
+        }
+        assertEquals(TransactionMode.PURCHASE, cache.get().getTransactionMode());
+        assertEquals(2, loads.get());
+    }
+
+    private static PaymentOptionsResponse options(TransactionMode transactionMode) {
+        return new PaymentOptionsResponse().setTransactionMode(transactionMode);
+    }
+}
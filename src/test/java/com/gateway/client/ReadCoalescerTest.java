@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ReadCoalescerTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        RequestDeadline.clear();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentReadsShareOneCall() throws Exception {
+        Map<String, Object> before = ReadCoalescer.snapshot();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ApiResponse response = ApiResponse.parse("{\"result\":\"SUCCESS\"}");
+
+        Future<ApiResponse> leader = executor.submit(() -> ReadCoalescer.execute("MERCHANT url", null, () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            release.await();
+            return response;
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<ApiResponse> follower1 = executor.submit(() -> ReadCoalescer.execute("MERCHANT url", null, () -> {
+            calls.incrementAndGet();
+            return ApiResponse.parse("{}");
+        }));
+        Future<ApiResponse> follower2 = executor.submit(() -> ReadCoalescer.execute("MERCHANT url", null, () -> {
+            calls.incrementAndGet();
+            return ApiResponse.parse("{}");
+        }));
+        waitForHits(before, 2);
+        release.countDown();
+
+        assertSame(response, leader.get(5, TimeUnit.SECONDS));
+        assertSame(response, follower1.get(5, TimeUnit.SECONDS));
+        assertSame(response, follower2.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        Map<String, Object> after = ReadCoalescer.snapshot();
+        assertEquals(1L, count(after, "misses") - count(before, "misses"));
+        assertEquals(2L, count(after, "hits") - count(before, "hits"));
+        assertEquals(1L, count(after, "merges") - count(before, "merges"));
+    }
+
+    @Test
+    public void followersGetTheErrorOfTheCall() throws Exception {
+        Map<String, Object> before = ReadCoalescer.snapshot();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ApiException error = new ApiException("The API returned an error");
+        error.setErrorCode("INVALID_REQUEST");
+
+        executor.submit(() -> ReadCoalescer.execute("MERCHANT failing", null, () -> {
+            started.countDown();
+            release.await();
+            throw error;
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<ApiResponse> follower = executor.submit(() -> ReadCoalescer.execute("MERCHANT failing", null,
+                () -> ApiResponse.parse("{}")));
+        waitForHits(before, 1);
+        release.countDown();
+
+        try {
+            follower.get(5, TimeUnit.SECONDS);
+            fail("Expected the error of the call");
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    @Test
+    public void followerWaitsNoLongerThanItsDeadline() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> ReadCoalescer.execute("MERCHANT slow", null, () -> {
+            started.countDown();
+            release.await();
+            return ApiResponse.parse("{}");
+        }));
+        started.await(5, TimeUnit.SECONDS);
+
+        RequestDeadline.set(System.currentTimeMillis() + 100);
+        try {
+            ReadCoalescer.execute("MERCHANT slow", ApiOperation.RETRIEVE_ORDER, () -> ApiResponse.parse("{}"));
+            fail("Expected the deadline to be exceeded");
+        } catch (ApiException e) {
+            assertEquals(RequestDeadline.DEADLINE_EXCEEDED, e.getErrorCode());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void sequentialReadsEachMakeTheCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ReadCoalescer.execute("MERCHANT again", null, () -> {
+            calls.incrementAndGet();
+            return ApiResponse.parse("{}");
+        });
+        ReadCoalescer.execute("MERCHANT again", null, () -> {
+            calls.incrementAndGet();
+            return ApiResponse.parse("{}");
+        });
+
+        assertEquals(2, calls.get());
+    }
+
+    private static void waitForHits(Map<String, Object> before, long hits) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count(ReadCoalescer.snapshot(), "hits") - count(before, "hits") < hits
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static long count(Map<String, Object> snapshot, String name) {
+        return (Long) snapshot.get(name);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TimeoutPolicyTest {
+
+    @Test
+    public void parseOperationTimeouts() {
+        TimeoutPolicy policy = new TimeoutPolicy(10000, 30000, 5000);
+        policy.parseOperationTimeouts("PAY=60000, RETRIEVE_ORDER=8000/2000/1000");
+
+        TimeoutPolicy.Timeouts pay = policy.getTimeouts(ApiOperation.PAY);
+        assertEquals(60000, pay.getSocketTimeout());
+        assertEquals(10000, pay.getConnectTimeout());
+        assertEquals(5000, pay.getConnectionRequestTimeout());
+
+        TimeoutPolicy.Timeouts retrieveOrder = policy.getTimeouts(ApiOperation.RETRIEVE_ORDER);
+        assertEquals(8000, retrieveOrder.getSocketTimeout());
+        assertEquals(2000, retrieveOrder.getConnectTimeout());
+        assertEquals(1000, retrieveOrder.getConnectionRequestTimeout());
+
+        assertSame(policy.getDefaults(), policy.getTimeouts(ApiOperation.VOID));
+        assertSame(policy.getDefaults(), policy.getTimeouts(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnknownOperation() {
+        new TimeoutPolicy(10000, 30000, 5000).parseOperationTimeouts("NOT_AN_OPERATION=1000");
+    }
+}
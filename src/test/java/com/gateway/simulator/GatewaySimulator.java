@@ -0,0 +1,877 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.net.ssl.SSLContext;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Stand-in for the payment gateway, so the throughput and latency of {@link com.gateway.client.ApiService} and the
+ * controllers can be measured without the gateway sandbox. It serves the REST endpoints the sample uses
+ * (<pre>/session</pre>, <pre>/session/{id}</pre>, <pre>/order/{o}</pre>, <pre>/order/{o}/transaction/{t}</pre>,
+ * <pre>/token</pre>, <pre>/3DSecureId/{id}</pre> and <pre>/paymentOptionsInquiry</pre>) and the NVP endpoint
+ * <pre>/api/nvp/version/N</pre>, with responses shaped like the gateway's. Sessions, orders and 3DS authentications are
+ * kept in memory so they can be updated and retrieved again.
+ *
+ * Requests must carry the merchant's API password, as Basic authentication for REST or as form fields for NVP. Each
+ * response is delayed by a {@link LatencyDistribution}, set for all endpoints or per endpoint, and a share of the
+ * requests can be failed or declined on purpose.
+ *
+ * Run it in-process with {@link #start()} and {@link #getBaseUrl()}, or standalone with
+ * <pre>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.gateway.simulator.GatewaySimulator -Dexec.args="--port 9443 --tls --latency lognormal:40,400"</pre>
+ * and point the app at it with <pre>gateway.base.url=https://localhost:9443</pre>. With <pre>--tls</pre> the app has to
+ * trust the simulator's self-signed certificate: <pre>-Djavax.net.ssl.trustStore=src/test/resources/simulator/gateway-simulator.p12 -Djavax.net.ssl.trustStorePassword=simulator</pre>.
+ */
+public class GatewaySimulator {
+
+    public static final String KEYSTORE = "simulator/gateway-simulator.p12";
+    public static final String KEYSTORE_PASSWORD = "simulator";
+
+    private static final Pattern REST_PATH = Pattern.compile("/api/rest/version/(\\d+)/merchant/([^/]+)(/.*)");
+    private static final Pattern NVP_PATH = Pattern.compile("/api/nvp/version/(\\d+)");
+    private static final Pattern SESSION_PATH = Pattern.compile("/session(?:/([^/]+))?");
+    private static final Pattern ORDER_PATH = Pattern.compile("/order/([^/]+)(?:/transaction/([^/]+))?");
+    private static final Pattern SECURE_ID_PATH = Pattern.compile("/3DSecureId/([^/]+)");
+
+    /**
+     * Endpoints that can be given their own latency
+     */
+    public enum Endpoint {
+        SESSION, ORDER, TRANSACTION, TOKEN, SECURE_ID, PAYMENT_OPTIONS, NVP
+    }
+
+    private final String merchantId;
+    private final String apiPassword;
+    private int port;
+    private SSLContext sslContext;
+    private LatencyDistribution latency = LatencyDistribution.none();
+    private final Map<Endpoint, LatencyDistribution> endpointLatency = new EnumMap<>(Endpoint.class);
+    private double errorRate;
+    private double declineRate;
+
+    private final Map<String, JsonObject> sessions = new ConcurrentHashMap<>();
+    private final Map<String, JsonObject> orders = new ConcurrentHashMap<>();
+    private final Map<String, JsonObject> transactions = new ConcurrentHashMap<>();
+    private final Map<String, JsonObject> secureIds = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong unauthorized = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private HttpServer server;
+
+    /**
+     * @param merchantId  merchant the simulator accepts requests for
+     * @param apiPassword API password the requests must authenticate with
+     */
+    public GatewaySimulator(String merchantId, String apiPassword) {
+        this.merchantId = merchantId;
+        this.apiPassword = apiPassword;
+    }
+
+    /**
+     * @param port port to listen on, 0 (the default) for any free port
+     */
+    public GatewaySimulator setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Serves HTTPS rather than HTTP
+     */
+    public GatewaySimulator setSslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        return this;
+    }
+
+    /**
+     * Sets the latency of the endpoints that don't have their own
+     */
+    public GatewaySimulator setLatency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    public GatewaySimulator setLatency(Endpoint endpoint, LatencyDistribution latency) {
+        endpointLatency.put(endpoint, latency);
+        return this;
+    }
+
+    /**
+     * @param errorRate share of the authenticated requests, between 0 and 1, answered with a gateway error
+     */
+    public GatewaySimulator setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param declineRate share of the payments, between 0 and 1, declined by the simulated issuer
+     */
+    public GatewaySimulator setDeclineRate(double declineRate) {
+        this.declineRate = declineRate;
+        return this;
+    }
+
+    public GatewaySimulator start() throws IOException {
+        server = ServerBootstrap.bootstrap()
+                .setListenerPort(port)
+                .setSslContext(sslContext)
+                .setSocketConfig(SocketConfig.custom().setSoReuseAddress(true).setTcpNoDelay(true).setBacklogSize(1024).build())
+                .setServerInfo("GatewaySimulator")
+                .registerHandler("*", this::handle)
+                .create();
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        if (server != null) {
+            // Idle keep-alive connections from pooled clients would otherwise hold up the shutdown for the whole grace period
+            server.shutdown(100, TimeUnit.MILLISECONDS);
+            server = null;
+        }
+    }
+
+    /**
+     * @return the URL to configure as <pre>gateway.base.url</pre>
+     */
+    public String getBaseUrl() {
+        return (sslContext != null ? "https" : "http") + "://localhost:" + server.getLocalPort();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getUnauthorizedCount() {
+        return unauthorized.get();
+    }
+
+    public long getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Loads the self-signed localhost certificate shipped with the tests. A client can use it as trust material.
+     *
+     * @return keystore holding the certificate and its key
+     */
+    public static KeyStore loadKeyStore() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream inputStream = GatewaySimulator.class.getClassLoader().getResourceAsStream(KEYSTORE)) {
+            keyStore.load(inputStream, KEYSTORE_PASSWORD.toCharArray());
+        }
+        return keyStore;
+    }
+
+    /**
+     * @return context serving the self-signed localhost certificate
+     */
+    public static SSLContext createSslContext() throws Exception {
+        return SSLContexts.custom()
+                .loadKeyMaterial(loadKeyStore(), KEYSTORE_PASSWORD.toCharArray())
+                .build();
+    }
+
+    private void handle(HttpRequest request, HttpResponse response, HttpContext context) throws IOException {
+        requests.incrementAndGet();
+        String method = request.getRequestLine().getMethod();
+        String path = request.getRequestLine().getUri().split("\\?", 2)[0];
+
+        Matcher nvp = NVP_PATH.matcher(path);
+        if (nvp.matches() && "POST".equals(method)) {
+            handleNVP(request, response, Integer.parseInt(nvp.group(1)));
+            return;
+        }
+        Matcher rest = REST_PATH.matcher(path);
+        if (!rest.matches()) {
+            respond(response, HttpStatus.SC_NOT_FOUND, error("INVALID_REQUEST", "Unknown resource " + path));
+            return;
+        }
+        int version = Integer.parseInt(rest.group(1));
+        String resource = rest.group(3);
+        delay(endpointOf(resource));
+
+        if (!rest.group(2).equals(merchantId) || !isAuthorized(request)) {
+            unauthorized.incrementAndGet();
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Basic realm=\"gateway\"");
+            respond(response, HttpStatus.SC_UNAUTHORIZED, error("INVALID_REQUEST", "Invalid credentials."));
+            return;
+        }
+        if (injectError()) {
+            respond(response, HttpStatus.SC_INTERNAL_SERVER_ERROR, error("SERVER_FAILED", "Simulated gateway failure"));
+            return;
+        }
+
+        JsonObject body = readJson(request);
+        JsonObject result = route(method, resource, body, version);
+        if (result == null) {
+            respond(response, HttpStatus.SC_NOT_FOUND, error("INVALID_REQUEST", "Unknown resource " + resource));
+        } else if ("ERROR".equals(string(result, "result"))) {
+            respond(response, HttpStatus.SC_BAD_REQUEST, result);
+        } else {
+            respond(response, HttpStatus.SC_OK, result);
+        }
+    }
+
+    /**
+     * NVP requests name the resource in the form fields rather than the path. The dotted field names are nested into
+     * the JSON the REST endpoints take, and the response is flattened back the same way.
+     */
+    private void handleNVP(HttpRequest request, HttpResponse response, int version) throws IOException {
+        delay(Endpoint.NVP);
+        List<NameValuePair> fields = readForm(request);
+        JsonObject body = new JsonObject();
+        String username = null;
+        String password = null;
+        for (NameValuePair field : fields) {
+            if ("apiUsername".equals(field.getName())) {
+                username = field.getValue();
+            } else if ("apiPassword".equals(field.getName())) {
+                password = field.getValue();
+            } else {
+                put(body, field.getName(), field.getValue());
+            }
+        }
+
+        JsonObject result;
+        if (!("merchant." + merchantId).equals(username) || !apiPassword.equals(password)
+                || !merchantId.equals(string(body, "merchant"))) {
+            unauthorized.incrementAndGet();
+            result = error("INVALID_REQUEST", "Invalid credentials.");
+        } else if (injectError()) {
+            result = error("SERVER_FAILED", "Simulated gateway failure");
+        } else {
+            result = routeNVP(body, version);
+        }
+
+        List<NameValuePair> pairs = new ArrayList<>();
+        flatten("", result, pairs);
+        response.setStatusCode(HttpStatus.SC_OK);
+        response.setEntity(new StringEntity(URLEncodedUtils.format(pairs, StandardCharsets.UTF_8),
+                ContentType.APPLICATION_FORM_URLENCODED));
+    }
+
+    private JsonObject route(String method, String resource, JsonObject body, int version) {
+        Matcher matcher;
+        if ((matcher = SESSION_PATH.matcher(resource)).matches()) {
+            String sessionId = matcher.group(1);
+            if (sessionId == null) {
+                return "POST".equals(method) ? createSession(body) : null;
+            }
+            return "GET".equals(method) ? retrieveSession(sessionId) : updateSession(sessionId, body);
+        }
+        if ((matcher = ORDER_PATH.matcher(resource)).matches()) {
+            String orderId = matcher.group(1);
+            String transactionId = matcher.group(2);
+            if (transactionId == null) {
+                return "GET".equals(method) ? retrieveOrder(orderId) : null;
+            }
+            return "GET".equals(method) ? retrieveTransaction(orderId, transactionId)
+                    : transaction(orderId, transactionId, body);
+        }
+        if ((matcher = SECURE_ID_PATH.matcher(resource)).matches()) {
+            return "GET".equals(method) ? retrieveSecureId(matcher.group(1)) : secureId(matcher.group(1), body);
+        }
+        if ("/token".equals(resource) && "POST".equals(method)) {
+            return createToken(body);
+        }
+        if ("/paymentOptionsInquiry".equals(resource) && "GET".equals(method)) {
+            return paymentOptions(version);
+        }
+        return null;
+    }
+
+    private JsonObject routeNVP(JsonObject body, int version) {
+        String operation = string(body, "apiOperation");
+        if (operation == null) {
+            return error("INVALID_REQUEST", "Missing apiOperation");
+        }
+        switch (operation) {
+            case "CREATE_SESSION":
+            case "CREATE_CHECKOUT_SESSION":
+                return createSession(body);
+            case "UPDATE_SESSION":
+                return updateSession(string(body, "session.id"), body);
+            case "RETRIEVE_SESSION":
+                return retrieveSession(string(body, "session.id"));
+            case "RETRIEVE_ORDER":
+                return retrieveOrder(string(body, "order.id"));
+            case "RETRIEVE_TRANSACTION":
+                return retrieveTransaction(string(body, "order.id"), string(body, "transaction.id"));
+            case "CHECK_3DS_ENROLLMENT":
+            case "PROCESS_ACS_RESULT":
+                return secureId(string(body, "3DSecureId"), body);
+            case "CREATE_TOKEN":
+                return createToken(body);
+            case "PAYMENT_OPTIONS_INQUIRY":
+                return paymentOptions(version);
+            default:
+                return transaction(string(body, "order.id"), string(body, "transaction.id"), body);
+        }
+    }
+
+    private JsonObject createSession(JsonObject body) {
+        JsonObject session = new JsonObject();
+        session.addProperty("id", "SESSION0002" + digits(20));
+        session.addProperty("updateStatus", "NO_UPDATE");
+        session.addProperty("version", hex(10));
+
+        JsonObject stored = body.deepCopy();
+        stored.remove("apiOperation");
+        stored.addProperty("merchant", merchantId);
+        stored.add("session", session);
+        sessions.put(session.get("id").getAsString(), stored);
+
+        JsonObject result = success();
+        result.add("session", session.deepCopy());
+        result.addProperty("successIndicator", hex(16));
+        return result;
+    }
+
+    private JsonObject updateSession(String sessionId, JsonObject body) {
+        JsonObject stored = sessionId != null ? sessions.get(sessionId) : null;
+        if (stored == null) {
+            return error("INVALID_REQUEST", "Session not found or expired.", "session.id");
+        }
+        synchronized (stored) {
+            for (Map.Entry<String, JsonElement> field : body.entrySet()) {
+                if (!"session".equals(field.getKey()) && !"apiOperation".equals(field.getKey())) {
+                    stored.add(field.getKey(), field.getValue().deepCopy());
+                }
+            }
+            JsonObject session = stored.getAsJsonObject("session");
+            session.addProperty("updateStatus", "SUCCESS");
+            session.addProperty("version", hex(10));
+            return stored.deepCopy();
+        }
+    }
+
+    private JsonObject retrieveSession(String sessionId) {
+        JsonObject stored = sessionId != null ? sessions.get(sessionId) : null;
+        if (stored == null) {
+            return error("INVALID_REQUEST", "Session not found or expired.", "session.id");
+        }
+        synchronized (stored) {
+            return stored.deepCopy();
+        }
+    }
+
+    /**
+     * Performs a payment operation on the order, e.g. PAY, AUTHORIZE, CAPTURE or INITIATE_BROWSER_PAYMENT, and
+     * records it so it can be retrieved with the order
+     */
+    private JsonObject transaction(String orderId, String transactionId, JsonObject body) {
+        String operation = string(body, "apiOperation");
+        if (orderId == null || transactionId == null || operation == null) {
+            return error("INVALID_REQUEST", "Missing order.id, transaction.id or apiOperation");
+        }
+        JsonObject order = orders.computeIfAbsent(orderId, id -> {
+            JsonObject created = new JsonObject();
+            created.addProperty("id", id);
+            created.addProperty("creationTime", Instant.now().toString());
+            created.add("transaction", new JsonArray());
+            return created;
+        });
+        boolean declined = ThreadLocalRandom.current().nextDouble() < declineRate;
+
+        synchronized (order) {
+            JsonObject requestOrder = body.has("order") ? body.getAsJsonObject("order") : new JsonObject();
+            JsonObject requestTransaction = body.has("transaction") ? body.getAsJsonObject("transaction") : new JsonObject();
+            copy(requestOrder, order, "amount", "currency", "description", "reference");
+            String amount = requestTransaction.has("amount") ? string(requestTransaction, "amount") : string(order, "amount");
+            String currency = requestTransaction.has("currency") ? string(requestTransaction, "currency") : string(order, "currency");
+
+            JsonObject transaction = new JsonObject();
+            transaction.addProperty("id", transactionId);
+            transaction.addProperty("type", transactionType(operation));
+            transaction.addProperty("amount", amount);
+            transaction.addProperty("currency", currency);
+            transaction.addProperty("authorizationCode", digits(6));
+            transaction.addProperty("receipt", digits(12));
+
+            JsonObject gatewayResponse = new JsonObject();
+            JsonObject result = new JsonObject();
+            if (declined) {
+                gatewayResponse.addProperty("gatewayCode", "DECLINED");
+                gatewayResponse.addProperty("acquirerCode", "05");
+                result.addProperty("result", "FAILURE");
+            } else if ("INITIATE_BROWSER_PAYMENT".equals(operation)) {
+                gatewayResponse.addProperty("gatewayCode", "SUBMITTED");
+                result.addProperty("result", "SUCCESS");
+                order.addProperty("status", "INITIATED");
+                JsonObject browserPayment = body.has("browserPayment") ? body.getAsJsonObject("browserPayment").deepCopy() : new JsonObject();
+                JsonObject interaction = new JsonObject();
+                interaction.addProperty("status", "INITIATED");
+                browserPayment.add("interaction", interaction);
+                browserPayment.addProperty("redirectUrl", getBaseUrl() + "/bpui/out/BP-" + hex(32));
+                result.add("browserPayment", browserPayment);
+            } else {
+                gatewayResponse.addProperty("gatewayCode", "APPROVED");
+                gatewayResponse.addProperty("acquirerCode", "00");
+                result.addProperty("result", "SUCCESS");
+                String status = orderStatus(operation);
+                if (status != null) {
+                    order.addProperty("status", status);
+                }
+            }
+            if (!order.has("status")) {
+                order.addProperty("status", declined ? "FAILED" : "INITIATED");
+            }
+
+            result.addProperty("merchant", merchantId);
+            result.addProperty("gatewayEntryPoint", "WEB_SERVICES_API");
+            result.add("order", orderSummary(order));
+            result.add("response", gatewayResponse);
+            result.add("transaction", transaction);
+            result.addProperty("timeOfRecord", Instant.now().toString());
+            if (body.has("sourceOfFunds")) {
+                result.add("sourceOfFunds", maskSourceOfFunds(body.getAsJsonObject("sourceOfFunds")));
+            }
+            result.addProperty("version", "1");
+
+            order.getAsJsonArray("transaction").add(result.deepCopy());
+            transactions.put(orderId + "/" + transactionId, result);
+            return result.deepCopy();
+        }
+    }
+
+    private JsonObject retrieveOrder(String orderId) {
+        JsonObject order = orderId != null ? orders.get(orderId) : null;
+        if (order == null) {
+            return error("INVALID_REQUEST", "Order not found", "order.id");
+        }
+        synchronized (order) {
+            JsonObject result = order.deepCopy();
+            result.addProperty("merchant", merchantId);
+            result.addProperty("result", "SUCCESS");
+            return result;
+        }
+    }
+
+    private JsonObject retrieveTransaction(String orderId, String transactionId) {
+        JsonObject transaction = transactions.get(orderId + "/" + transactionId);
+        if (transaction == null) {
+            return error("INVALID_REQUEST", "Transaction not found", "transaction.id");
+        }
+        synchronized (orders.get(orderId)) {
+            return transaction.deepCopy();
+        }
+    }
+
+    /**
+     * CHECK_3DS_ENROLLMENT finds every card enrolled; PROCESS_ACS_RESULT authenticates every payer
+     */
+    private JsonObject secureId(String secureId, JsonObject body) {
+        String operation = string(body, "apiOperation");
+        if (secureId == null || operation == null) {
+            return error("INVALID_REQUEST", "Missing 3DSecureId or apiOperation");
+        }
+        JsonObject threeDS = new JsonObject();
+        String gatewayCode;
+        if ("PROCESS_ACS_RESULT".equals(operation)) {
+            if (!secureIds.containsKey(secureId)) {
+                return error("INVALID_REQUEST", "3DSecureId not found", "3DSecureId");
+            }
+            gatewayCode = "AUTHENTICATION_SUCCESSFUL";
+            threeDS.addProperty("paResStatus", "Y");
+            threeDS.addProperty("veResEnrolled", "Y");
+            threeDS.addProperty("authenticationToken", Base64.getEncoder().encodeToString(hex(20).getBytes(StandardCharsets.UTF_8)));
+        } else {
+            gatewayCode = "CARD_ENROLLED";
+            JsonObject customized = new JsonObject();
+            customized.addProperty("acsUrl", getBaseUrl() + "/acs/" + secureId);
+            customized.addProperty("paReq", Base64.getEncoder().encodeToString(hex(64).getBytes(StandardCharsets.UTF_8)));
+            JsonObject authenticationRedirect = new JsonObject();
+            authenticationRedirect.add("customized", customized);
+            threeDS.add("authenticationRedirect", authenticationRedirect);
+            threeDS.addProperty("veResEnrolled", "Y");
+        }
+        threeDS.addProperty("summaryStatus", gatewayCode);
+        threeDS.addProperty("xid", Base64.getEncoder().encodeToString(hex(20).getBytes(StandardCharsets.UTF_8)));
+
+        JsonObject result = new JsonObject();
+        result.add("3DSecure", threeDS);
+        result.addProperty("3DSecureId", secureId);
+        result.addProperty("merchant", merchantId);
+        JsonObject responseThreeDS = new JsonObject();
+        responseThreeDS.addProperty("gatewayCode", gatewayCode);
+        JsonObject gatewayResponse = new JsonObject();
+        gatewayResponse.add("3DSecure", responseThreeDS);
+        result.add("response", gatewayResponse);
+        secureIds.put(secureId, result);
+        return result.deepCopy();
+    }
+
+    private JsonObject retrieveSecureId(String secureId) {
+        JsonObject result = secureIds.get(secureId);
+        return result != null ? result.deepCopy() : error("INVALID_REQUEST", "3DSecureId not found", "3DSecureId");
+    }
+
+    private JsonObject createToken(JsonObject body) {
+        JsonObject result = success();
+        result.addProperty("repositoryId", "7000000000000001");
+        result.addProperty("token", "9" + digits(15));
+        result.addProperty("status", "VALID");
+        result.addProperty("verificationStrategy", "BASIC");
+        if (body.has("sourceOfFunds")) {
+            result.add("sourceOfFunds", maskSourceOfFunds(body.getAsJsonObject("sourceOfFunds")));
+        }
+        return result;
+    }
+
+    /**
+     * Version 52 and later report the supported payment operations, older versions the transaction mode
+     */
+    private JsonObject paymentOptions(int version) {
+        JsonObject result = success();
+        if (version >= 52) {
+            JsonArray operations = new JsonArray();
+            JsonObject purchase = new JsonObject();
+            purchase.addProperty("supportedPaymentOperation", "PURCHASE");
+            operations.add(purchase);
+            result.add("supportedPaymentOperations", operations);
+        } else {
+            result.addProperty("transactionMode", "PURCHASE");
+        }
+        JsonArray currencies = new JsonArray();
+        JsonObject currency = new JsonObject();
+        currency.addProperty("currency", "USD");
+        currencies.add(currency);
+        result.add("currencies", currencies);
+        return result;
+    }
+
+    private JsonObject orderSummary(JsonObject order) {
+        JsonObject summary = new JsonObject();
+        for (Map.Entry<String, JsonElement> field : order.entrySet()) {
+            if (!"transaction".equals(field.getKey())) {
+                summary.add(field.getKey(), field.getValue().deepCopy());
+            }
+        }
+        return summary;
+    }
+
+    private static JsonObject maskSourceOfFunds(JsonObject sourceOfFunds) {
+        JsonObject masked = sourceOfFunds.deepCopy();
+        JsonObject provided = masked.has("provided") ? masked.getAsJsonObject("provided") : null;
+        JsonObject card = provided != null && provided.has("card") ? provided.getAsJsonObject("card") : null;
+        if (card != null) {
+            String number = string(card, "number");
+            if (number != null && number.length() > 10) {
+                card.addProperty("number", number.substring(0, 6)
+                        + new String(new char[number.length() - 10]).replace('\0', 'x')
+                        + number.substring(number.length() - 4));
+            }
+            card.remove("securityCode");
+            card.addProperty("brand", "MASTERCARD");
+            card.addProperty("fundingMethod", "CREDIT");
+        }
+        return masked;
+    }
+
+    private static String transactionType(String operation) {
+        switch (operation) {
+            case "AUTHORIZE":
+                return "AUTHORIZATION";
+            case "UPDATE_AUTHORIZATION":
+                return "AUTHORIZATION_UPDATE";
+            case "CAPTURE":
+                return "CAPTURE";
+            case "REFUND":
+                return "REFUND";
+            case "VOID":
+                return "VOID_AUTHORIZATION";
+            case "VERIFY":
+                return "VERIFICATION";
+            default:
+                return "PAYMENT";
+        }
+    }
+
+    private static String orderStatus(String operation) {
+        switch (operation) {
+            case "PAY":
+            case "CONFIRM_BROWSER_PAYMENT":
+            case "CAPTURE":
+                return "CAPTURED";
+            case "AUTHORIZE":
+            case "UPDATE_AUTHORIZATION":
+                return "AUTHORIZED";
+            case "REFUND":
+                return "REFUNDED";
+            case "VOID":
+                return "CANCELLED";
+            case "VERIFY":
+                return "VERIFIED";
+            default:
+                return null;
+        }
+    }
+
+    private static Endpoint endpointOf(String resource) {
+        if (resource.startsWith("/session")) {
+            return Endpoint.SESSION;
+        }
+        if (resource.startsWith("/order")) {
+            return resource.contains("/transaction/") ? Endpoint.TRANSACTION : Endpoint.ORDER;
+        }
+        if (resource.startsWith("/token")) {
+            return Endpoint.TOKEN;
+        }
+        if (resource.startsWith("/3DSecureId")) {
+            return Endpoint.SECURE_ID;
+        }
+        return Endpoint.PAYMENT_OPTIONS;
+    }
+
+    private void delay(Endpoint endpoint) {
+        long delay = endpointLatency.getOrDefault(endpoint, latency).nextDelay();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean isAuthorized(HttpRequest request) {
+        if (request.getFirstHeader(HttpHeaders.AUTHORIZATION) == null) {
+            return false;
+        }
+        String expected = "Basic " + Base64.getEncoder().encodeToString(
+                ("merchant." + merchantId + ":" + apiPassword).getBytes(StandardCharsets.UTF_8));
+        return expected.equals(request.getFirstHeader(HttpHeaders.AUTHORIZATION).getValue());
+    }
+
+    private boolean injectError() {
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private static JsonObject readJson(HttpRequest request) throws IOException {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            String body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity(), StandardCharsets.UTF_8);
+            if (!body.trim().isEmpty()) {
+                return new JsonParser().parse(body).getAsJsonObject();
+            }
+        }
+        return new JsonObject();
+    }
+
+    private static List<NameValuePair> readForm(HttpRequest request) throws IOException {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            return URLEncodedUtils.parse(((HttpEntityEnclosingRequest) request).getEntity());
+        }
+        return new ArrayList<>();
+    }
+
+    private static void respond(HttpResponse response, int status, JsonObject body) {
+        response.setStatusCode(status);
+        response.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+    }
+
+    private JsonObject success() {
+        JsonObject result = new JsonObject();
+        result.addProperty("merchant", merchantId);
+        result.addProperty("result", "SUCCESS");
+        return result;
+    }
+
+    private static JsonObject error(String cause, String explanation) {
+        return error(cause, explanation, null);
+    }
+
+    private static JsonObject error(String cause, String explanation, String field) {
+        JsonObject error = new JsonObject();
+        error.addProperty("cause", cause);
+        error.addProperty("explanation", explanation);
+        if (field != null) {
+            error.addProperty("field", field);
+            error.addProperty("validationType", "INVALID");
+        }
+        JsonObject result = new JsonObject();
+        result.add("error", error);
+        result.addProperty("result", "ERROR");
+        return result;
+    }
+
+    /**
+     * @param path dotted path of the field, e.g. <pre>order.amount</pre>
+     * @return the field as a string, or null if it isn't there
+     */
+    private static String string(JsonObject json, String path) {
+        JsonElement element = json;
+        for (String name : path.split("\\.")) {
+            if (element == null || !element.isJsonObject()) {
+                return null;
+            }
+            element = element.getAsJsonObject().get(name);
+        }
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    private static void put(JsonObject json, String path, String value) {
+        String[] names = path.split("\\.");
+        JsonObject parent = json;
+        for (int i = 0; i < names.length - 1; i++) {
+            JsonElement child = parent.get(names[i]);
+            if (child == null || !child.isJsonObject()) {
+                child = new JsonObject();
+                parent.add(names[i], child);
+            }
+            parent = child.getAsJsonObject();
+        }
+        parent.addProperty(names[names.length - 1], value);
+    }
+
+    private static void flatten(String prefix, JsonElement element, List<NameValuePair> pairs) {
+        if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> field : element.getAsJsonObject().entrySet()) {
+                flatten(prefix.isEmpty() ? field.getKey() : prefix + "." + field.getKey(), field.getValue(), pairs);
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                flatten(prefix + "[" + i + "]", array.get(i), pairs);
+            }
+        } else if (!element.isJsonNull()) {
+            pairs.add(new BasicNameValuePair(prefix, element.getAsString()));
+        }
+    }
+
+    private static void copy(JsonObject from, JsonObject to, String... names) {
+        for (String name : names) {
+            if (from.has(name)) {
+                to.add(name, from.get(name).deepCopy());
+            }
+        }
+    }
+
+    private static String digits(int length) {
+        StringBuilder digits = new StringBuilder(length);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < length; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    private static String hex(int length) {
+        StringBuilder hex = new StringBuilder(length);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < length; i++) {
+            hex.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Runs the simulator until the process is stopped. Options:
+     * <pre>
+     * --port N               port to listen on (default 9443)
+     * --merchant ID          merchant ID (default TESTMERCHANTID)
+     * --password PASSWORD    API password (default APIPASSWORD1234)
+     * --tls                  serve HTTPS with the self-signed localhost certificate
+     * --latency SPEC         latency of all endpoints, see {@link LatencyDistribution#parse}
+     * --latency-ENDPOINT SPEC latency of one endpoint, e.g. --latency-transaction lognormal:200,1500
+     * --error-rate R         share of requests failed with a gateway error
+     * --decline-rate R       share of payments declined
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 9443;
+        String merchant = "TESTMERCHANTID";
+        String password = "APIPASSWORD1234";
+        boolean tls = false;
+        LatencyDistribution latency = LatencyDistribution.none();
+        Map<Endpoint, LatencyDistribution> endpointLatency = new EnumMap<>(Endpoint.class);
+        double errorRate = 0;
+        double declineRate = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if ("--tls".equals(option)) {
+                tls = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            if ("--port".equals(option)) {
+                port = Integer.parseInt(value);
+            } else if ("--merchant".equals(option)) {
+                merchant = value;
+            } else if ("--password".equals(option)) {
+                password = value;
+            } else if ("--latency".equals(option)) {
+                latency = LatencyDistribution.parse(value);
+            } else if (option.startsWith("--latency-")) {
+                endpointLatency.put(Endpoint.valueOf(option.substring("--latency-".length()).replace('-', '_').toUpperCase()),
+                        LatencyDistribution.parse(value));
+            } else if ("--error-rate".equals(option)) {
+                errorRate = Double.parseDouble(value);
+            } else if ("--decline-rate".equals(option)) {
+                declineRate = Double.parseDouble(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        GatewaySimulator simulator = new GatewaySimulator(merchant, password)
+                .setPort(port)
+                .setSslContext(tls ? createSslContext() : null)
+                .setLatency(latency)
+                .setErrorRate(errorRate)
+                .setDeclineRate(declineRate);
+        endpointLatency.forEach(simulator::setLatency);
+        simulator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop));
+        System.out.println("Gateway simulator for merchant " + merchant + " listening on " + simulator.getBaseUrl());
+        simulator.server.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+}
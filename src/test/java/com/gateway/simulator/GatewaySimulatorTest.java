@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.simulator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import com.gateway.app.Config;
+import com.gateway.client.ApiException;
+import com.gateway.client.ApiOperation;
+import com.gateway.client.ApiProtocol;
+import com.gateway.client.ApiRequest;
+import com.gateway.client.ApiRequestService;
+import com.gateway.client.ApiResponseService;
+import com.gateway.client.HostedSession;
+import com.gateway.client.NVPApiClient;
+import com.gateway.client.RESTApiClient;
+import com.gateway.model.SupportedPaymentOperation;
+import com.gateway.response.SecureIdEnrollmentResponse;
+import com.gateway.response.TransactionResponse;
+import com.google.gson.JsonObject;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GatewaySimulatorTest {
+
+    private static final String MERCHANT_ID = "TESTMERCHANTID";
+    private static final String API_PASSWORD = "APIPASSWORD1234";
+
+    private GatewaySimulator simulator;
+    private final RESTApiClient connection = new RESTApiClient();
+
+    @Before
+    public void setUp() {
+        simulator = new GatewaySimulator(MERCHANT_ID, API_PASSWORD);
+    }
+
+    @After
+    public void tearDown() {
+        simulator.stop();
+    }
+
+    @Test
+    public void createsUpdatesAndRetrievesSessions() throws Exception {
+        Config config = config(simulator.start(), API_PASSWORD);
+
+        HostedSession session = ApiRequestService.createHostedSession(config);
+        assertEquals("NO_UPDATE", session.getUpdateStatus());
+
+        ApiRequest request = ApiRequestService.createApiRequest(ApiOperation.UPDATE_SESSION.toString(), config);
+        ApiRequestService.updateSessionWithOrderInfo(ApiProtocol.REST, request, config, session.getId());
+
+        HostedSession retrieved = ApiRequestService.retrieveSession(config, session.getId());
+        assertEquals(session.getId(), retrieved.getId());
+        assertEquals("SUCCESS", retrieved.getUpdateStatus());
+    }
+
+    @Test
+    public void paysAndRetrievesOrder() throws Exception {
+        Config config = config(simulator.start(), API_PASSWORD);
+
+        ApiRequest request = ApiRequestService.createApiRequest(ApiOperation.PAY.toString(), config);
+        request.setSourceType("CARD");
+        request.setCardNumber("5123450000000008");
+        request.setExpiryMonth("05");
+        request.setExpiryYear("39");
+        request.setSecurityCode("100");
+        TransactionResponse payment = ApiResponseService.parseAuthorizeResponse(connection.sendTransaction(
+                ApiRequestService.buildJSONPayload(request), ApiRequestService.getRequestUrl(ApiProtocol.REST, config, request),
+                config, ApiOperation.PAY));
+        assertEquals("APPROVED", payment.getGatewayCode());
+        assertEquals("5000", payment.getOrderAmount());
+
+        ApiRequest retrieve = new ApiRequest();
+        retrieve.setOrderId(request.getOrderId());
+        JsonObject order = connection.getTransaction(ApiRequestService.getRequestUrl(ApiProtocol.REST, config, retrieve),
+                config, ApiOperation.RETRIEVE_ORDER).getJson();
+        assertEquals("CAPTURED", order.get("status").getAsString());
+        assertEquals(1, order.getAsJsonArray("transaction").size());
+    }
+
+    @Test
+    public void checksEnrollmentAndPaymentOptions() throws Exception {
+        Config config = config(simulator.start(), API_PASSWORD);
+
+        ApiRequest request = ApiRequestService.createApiRequest(ApiOperation.CHECK_3DS_ENROLLMENT.toString(), config);
+        request.setSecureId("3DS-SIMULATED");
+        SecureIdEnrollmentResponse enrollment = ApiResponseService.parse3DSecureResponse(connection.sendTransaction(
+                ApiRequestService.buildJSONPayload(request), ApiRequestService.getSecureIdRequest(ApiProtocol.REST, config,
+                        request.getSecureId()), config, ApiOperation.CHECK_3DS_ENROLLMENT));
+        assertEquals("CARD_ENROLLED", enrollment.getStatus());
+        assertTrue(enrollment.getAcsUrl().startsWith(simulator.getBaseUrl()));
+
+        assertTrue(ApiRequestService.retrievePaymentOptionsInquiry(config).getSupportedPaymentOperations()
+                .contains(SupportedPaymentOperation.PURCHASE));
+    }
+
+    @Test
+    public void paysOverNVP() throws Exception {
+        Config config = config(simulator.start(), API_PASSWORD);
+
+        ApiRequest request = ApiRequestService.createApiRequest(ApiOperation.PAY.toString(), config);
+        request.setSessionId("SESSION0002000000000000000000");
+        Map<String, String> response = ApiResponseService.parseNVPResponse(new NVPApiClient().postTransaction(
+                ApiRequestService.buildMap(request), ApiRequestService.getRequestUrl(ApiProtocol.NVP, config, request), config));
+
+        assertEquals("SUCCESS", response.get("result"));
+        assertEquals("APPROVED", response.get("response.gatewayCode"));
+        assertEquals(request.getOrderId(), response.get("order.id"));
+    }
+
+    @Test
+    public void rejectsWrongPassword() throws Exception {
+        Config config = config(simulator.start(), "WRONGPASSWORD");
+
+        try {
+            ApiRequestService.createHostedSession(config);
+            fail("Expected the credentials to be rejected");
+        } catch (ApiException e) {
+            assertEquals("INVALID_REQUEST", e.getErrorCode());
+        }
+        try {
+            ApiRequest request = ApiRequestService.createApiRequest(ApiOperation.PAY.toString(), config);
+            ApiResponseService.parseNVPResponse(new NVPApiClient().postTransaction(ApiRequestService.buildMap(request),
+                    ApiRequestService.getRequestUrl(ApiProtocol.NVP, config, request), config));
+            fail("Expected the credentials to be rejected");
+        } catch (ApiException e) {
+            assertEquals("INVALID_REQUEST", e.getErrorCode());
+        }
+        assertTrue(simulator.getUnauthorizedCount() >= 2);
+    }
+
+    @Test
+    public void injectsErrorsAndLatency() throws Exception {
+        Config config = config(simulator.setErrorRate(1)
+                .setLatency(GatewaySimulator.Endpoint.SESSION, LatencyDistribution.fixed(200))
+                .start(), API_PASSWORD);
+
+        long start = System.currentTimeMillis();
+        try {
+            ApiRequestService.createHostedSession(config);
+            fail("Expected a simulated gateway error");
+        } catch (ApiException e) {
+            assertEquals("SERVER_FAILED", e.getErrorCode());
+        }
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertEquals(1, simulator.getInjectedErrorCount());
+    }
+
+    @Test
+    public void servesHttpsWithSelfSignedCertificate() throws Exception {
+        simulator.setSslContext(GatewaySimulator.createSslContext()).start();
+        assertTrue(simulator.getBaseUrl().startsWith("https://localhost:"));
+
+        HttpGet get = new HttpGet(simulator.getBaseUrl() + "/api/rest/version/52/merchant/" + MERCHANT_ID
+                + "/paymentOptionsInquiry");
+        get.setHeader(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(
+                ("merchant." + MERCHANT_ID + ":" + API_PASSWORD).getBytes(StandardCharsets.UTF_8)));
+        try (CloseableHttpClient client = HttpClients.custom()
+                .setSSLContext(SSLContexts.custom().loadTrustMaterial(GatewaySimulator.loadKeyStore(), null).build())
+                .build();
+             CloseableHttpResponse response = client.execute(get)) {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+            assertTrue(EntityUtils.toString(response.getEntity()).contains("\"PURCHASE\""));
+        }
+    }
+
+    @Test
+    public void parsesLatencyDistributions() {
+        assertEquals(50, LatencyDistribution.parse("fixed:50").nextDelay());
+        assertEquals(0, LatencyDistribution.parse("none").nextDelay());
+        long uniform = LatencyDistribution.parse("uniform:20-80").nextDelay();
+        assertTrue(uniform >= 20 && uniform <= 80);
+        assertTrue(LatencyDistribution.parse("lognormal:40,400").nextDelay() >= 0);
+        try {
+            LatencyDistribution.parse("gaussian:40");
+            fail("Expected an unknown distribution");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown latency distribution gaussian:40", e.getMessage());
+        }
+    }
+
+    private static Config config(GatewaySimulator simulator, String apiPassword) {
+        Config config = new Config();
+        config.setMerchantId(MERCHANT_ID);
+        config.setApiUsername("merchant." + MERCHANT_ID);
+        config.setApiPassword(apiPassword);
+        config.setAuthenticationType(Config.AuthenticationType.PASSWORD);
+        config.setApiBaseURL(simulator.getBaseUrl());
+        config.setGatewayHost(simulator.getBaseUrl());
+        config.setCurrency("USD");
+        config.setApiVersion(52);
+        return config;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019 MasterCard. All rights reserved.
+ */
+
+package com.gateway.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Time the {@link GatewaySimulator} waits before answering a request, to stand in for the network and processing time
+ * of the real gateway.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * z-score of the 99th percentile of the standard normal distribution
+     */
+    double Z_99 = 2.326;
+
+    /**
+     * @return the next delay in milliseconds
+     */
+    long nextDelay();
+
+    static LatencyDistribution none() {
+        return () -> 0;
+    }
+
+    static LatencyDistribution fixed(long delay) {
+        return () -> delay;
+    }
+
+    static LatencyDistribution uniform(long min, long max) {
+        if (max < min) {
+            throw new IllegalArgumentException("Maximum latency is below the minimum");
+        }
+        return () -> ThreadLocalRandom.current().nextLong(min, max + 1);
+    }
+
+    /**
+     * Log-normal latency, which has the long tail of real payment traffic: most requests are close to the median and a
+     * few take many times as long.
+     *
+     * @param median latency in milliseconds half of the requests stay below
+     * @param p99    latency in milliseconds 99% of the requests stay below
+     */
+    static LatencyDistribution logNormal(long median, long p99) {
+        if (median <= 0 || p99 < median) {
+            throw new IllegalArgumentException("The 99th percentile must be at least the (positive) median");
+        }
+        double mu = Math.log(median);
+        double sigma = (Math.log(p99) - mu) / Z_99;
+        return () -> Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    /**
+     * Parses a distribution from its command line form: <pre>none</pre>, <pre>fixed:50</pre>, <pre>uniform:20-80</pre>
+     * or <pre>lognormal:40,400</pre> (median and 99th percentile), all in milliseconds.
+     *
+     * @param spec distribution and its parameters
+     * @return the distribution
+     */
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().split(":", 2);
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "none":
+                    return none();
+                case "fixed":
+                    return fixed(Long.parseLong(parts[1].trim()));
+                case "uniform": {
+                    String[] range = parts[1].split("-");
+                    return uniform(Long.parseLong(range[0].trim()), Long.parseLong(range[1].trim()));
+                }
+                case "lognormal": {
+                    String[] percentiles = parts[1].split(",");
+                    return logNormal(Long.parseLong(percentiles[0].trim()), Long.parseLong(percentiles[1].trim()));
+                }
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution " + spec, e);
+        }
+        throw new IllegalArgumentException("Unknown latency distribution " + spec);
+    }
+}